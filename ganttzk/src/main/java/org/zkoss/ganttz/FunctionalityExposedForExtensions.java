@@ -27,8 +27,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.joda.time.LocalDate;
@@ -47,7 +49,7 @@ import org.zkoss.ganttz.data.Position;
 import org.zkoss.ganttz.data.Task;
 import org.zkoss.ganttz.data.TaskContainer;
 import org.zkoss.ganttz.data.TaskLeaf;
-import org.zkoss.ganttz.data.criticalpath.CriticalPathCalculator;
+import org.zkoss.ganttz.data.criticalpath.CriticalPathEngine;
 import org.zkoss.ganttz.extensions.IContext;
 import org.zkoss.ganttz.timetracker.TimeTracker;
 import org.zkoss.ganttz.timetracker.zoom.IDetailItemModificator;
@@ -400,17 +402,16 @@ public class FunctionalityExposedForExtensions<T> implements IContext<T> {
 
     @Override
     public void showCriticalPath() {
-        CriticalPathCalculator<Task, Dependency> criticalPathCalculator = CriticalPathCalculator
-                .create(configuration.isDependenciesConstraintsHavePriority());
-
-        List<Task> criticalPath = criticalPathCalculator
-                .calculateCriticalPath(diagramGraph);
+        Set<Task> criticalPath = new HashSet<Task>(CriticalPathEngine
+                .compile(diagramGraph,
+                        configuration.isDependenciesConstraintsHavePriority())
+                .calculateCriticalPath());
         for (Task task : diagramGraph.getTasks()) {
             task.setInCriticalPath(isInCriticalPath(criticalPath, task));
         }
     }
 
-    private boolean isInCriticalPath(List<Task> criticalPath, Task task) {
+    private boolean isInCriticalPath(Set<Task> criticalPath, Task task) {
         if (task.isContainer()) {
             List<Task> allTaskLeafs = ((TaskContainer) task).getAllTaskLeafs();
             return CollectionUtils.containsAny(criticalPath, allTaskLeafs);
@@ -422,10 +423,10 @@ public class FunctionalityExposedForExtensions<T> implements IContext<T> {
     @Override
     public List<T> getCriticalPath() {
         List<T> result = new ArrayList<T>();
-        CriticalPathCalculator<Task, Dependency> criticalPathCalculator = CriticalPathCalculator
-                .create(configuration.isDependenciesConstraintsHavePriority());
-        for (Task each : criticalPathCalculator
-                .calculateCriticalPath(diagramGraph)) {
+        CriticalPathEngine<Task> criticalPathEngine = CriticalPathEngine
+                .compile(diagramGraph,
+                        configuration.isDependenciesConstraintsHavePriority());
+        for (Task each : criticalPathEngine.calculateCriticalPath()) {
             result.add(mapper.findAssociatedDomainObject(each));
         }
         return result;
@@ -24,6 +24,7 @@ package org.zkoss.ganttz.data;
 import static java.util.Arrays.asList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -35,6 +36,7 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 
@@ -53,6 +55,7 @@ import org.zkoss.ganttz.data.constraint.ConstraintOnComparableValues;
 import org.zkoss.ganttz.data.constraint.ConstraintOnComparableValues.ComparisonType;
 import org.zkoss.ganttz.data.criticalpath.ICriticalPathCalculable;
 import org.zkoss.ganttz.util.IAction;
+import org.zkoss.ganttz.util.IncrementalTopologicalOrder;
 import org.zkoss.ganttz.util.PreAndPostNotReentrantActionsWrapper;
 import org.zkoss.ganttz.util.ReentranceGuard;
 import org.zkoss.ganttz.util.ReentranceGuard.IReentranceCases;
@@ -281,7 +284,7 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
 
     private final DirectedGraph<V, D> graph;
 
-    private final TopologicalSorter topologicalSorter;
+    private final IncrementalTopologicalOrder<TaskPoint> topologicalOrder;
 
     private List<V> topLevelTasks = new ArrayList<V>();
 
@@ -380,7 +383,7 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
         this.globalEndConstraints = globalEndConstraints;
         this.dependenciesConstraintsHavePriority = dependenciesConstraintsHavePriority;
         this.graph = new SimpleDirectedGraph<V, D>(adapter.getDependencyType());
-        this.topologicalSorter = new TopologicalSorter();
+        this.topologicalOrder = createTopologicalOrder();
     }
 
     public void enforceAllRestrictions() {
@@ -425,94 +428,75 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
         }
     }
 
-    class TopologicalSorter {
+    private IncrementalTopologicalOrder<TaskPoint> createTopologicalOrder() {
+        return IncrementalTopologicalOrder
+                .create(new IncrementalTopologicalOrder.IGraph<TaskPoint>() {
 
-        private Map<TaskPoint, Integer> taskPointsByDepthCached = null;
-
-        private Map<TaskPoint, Integer> taskPointsByDepth() {
-            if (taskPointsByDepthCached != null) {
-                return taskPointsByDepthCached;
-            }
-
-            Map<TaskPoint, Integer> result = new HashMap<TaskPoint, Integer>();
-            Map<TaskPoint, Set<TaskPoint>> visitedBy = new HashMap<TaskPoint, Set<TaskPoint>>();
-
-            Queue<TaskPoint> withoutIncoming = getInitial(withoutVisibleIncomingDependencies(getTopLevelTasks()));
-            for (TaskPoint each : withoutIncoming) {
-                initializeIfNeededForKey(result, each, 0);
-            }
+                    @Override
+                    public Collection<TaskPoint> getSuccessors(TaskPoint node) {
+                        return node.getImmediateSuccessors();
+                    }
 
-            while (!withoutIncoming.isEmpty()) {
-                TaskPoint current = withoutIncoming.poll();
-                for (TaskPoint each : current.getImmediateSuccessors()) {
-                    initializeIfNeededForKey(visitedBy, each,
-                            new HashSet<TaskPoint>());
-                    Set<TaskPoint> visitors = visitedBy.get(each);
-                    visitors.add(current);
-                    Set<TaskPoint> predecessorsRequired = each
-                            .getImmediatePredecessors();
-                    if (visitors.containsAll(predecessorsRequired)) {
-                        initializeIfNeededForKey(result, each,
-                                result.get(current) + 1);
-                        withoutIncoming.offer(each);
+                    @Override
+                    public Collection<TaskPoint> getPredecessors(
+                            TaskPoint node) {
+                        return node.getSendingPredecessors();
                     }
-                }
-            }
-            return taskPointsByDepthCached = Collections
-                    .unmodifiableMap(result);
+                });
+    }
+
+    private void addToTopologicalOrder(V task) {
+        for (TaskPoint each : taskPointsOf(task)) {
+            topologicalOrder.add(each);
         }
+    }
 
-        private <K, T> void initializeIfNeededForKey(Map<K, T> map, K key,
-                T initialValue) {
-            if (!map.containsKey(key)) {
-                map.put(key, initialValue);
-            }
+    private void removeFromTopologicalOrder(V task) {
+        for (TaskPoint each : taskPointsOf(task)) {
+            topologicalOrder.remove(each);
         }
+    }
 
-        private LinkedList<TaskPoint> getInitial(List<V> initial) {
-            LinkedList<TaskPoint> result = new LinkedList<TaskPoint>();
-            for (V each : initial) {
-                result.add(allPointsPotentiallyModified(each));
+    private void addToTopologicalOrder(D dependency) {
+        TaskPoint destination = destinationPoint(dependency);
+        for (TaskPoint each : taskPointsOf(getDependencySource(dependency))) {
+            if (each.sendsModificationsThrough(dependency)
+                    && !topologicalOrder.edgeAdded(each, destination)) {
+                LOG.warn("the dependency " + dependency + " causes a cycle");
             }
-            return result;
         }
+    }
 
-        public void recalculationNeeded() {
-            taskPointsByDepthCached = null;
-        }
+    private List<TaskPoint> taskPointsOf(V task) {
+        return Arrays.asList(allPointsPotentiallyModified(task),
+                new TaskPoint(task, getDominatingPoint().getOther()));
+    }
 
-        public List<Recalculation> sort(
-                Collection<? extends Recalculation> recalculationsToBeSorted) {
+    private int positionOf(TaskPoint taskPoint) {
+        Integer position = topologicalOrder.contains(taskPoint) ? topologicalOrder
+                .getPosition(taskPoint) : null;
+        return onNullDefault(position, Integer.MAX_VALUE,
+                "no position for " + taskPoint);
+    }
 
-            List<Recalculation> result = new ArrayList<Recalculation>(
-                    recalculationsToBeSorted);
-            final Map<TaskPoint, Integer> taskPointsByDepth = taskPointsByDepth();
-            Collections.sort(result, new Comparator<Recalculation>() {
+    private Comparator<Recalculation> byTopologicalOrder() {
+        return new Comparator<Recalculation>() {
 
-                @Override
-                public int compare(Recalculation o1, Recalculation o2) {
-                    int o1Depth = onNullDefault(
-                            taskPointsByDepth.get(o1.taskPoint),
-                            Integer.MAX_VALUE, "no depth value for "
-                                    + o1.taskPoint);
-                    int o2Depth = onNullDefault(
-                            taskPointsByDepth.get(o2.taskPoint),
-                            Integer.MAX_VALUE, "no depth value for "
-                                    + o2.taskPoint);
-                    int result = o1Depth - o2Depth;
-                    if (result == 0) {
-                        return asInt(o1.parentRecalculation)
-                                - asInt(o2.parentRecalculation);
-                    }
-                    return result;
+            @Override
+            public int compare(Recalculation o1, Recalculation o2) {
+                int o1Position = positionOf(o1.taskPoint);
+                int o2Position = positionOf(o2.taskPoint);
+                if (o1Position != o2Position) {
+                    return o1Position < o2Position ? -1 : 1;
                 }
+                return asInt(o1.parentRecalculation)
+                        - asInt(o2.parentRecalculation);
+            }
 
-                private int asInt(boolean b) {
-                    return b ? 1 : 0;
-                }
-            });
-            return result;
-        }
+            private int asInt(boolean b) {
+                return b ? 1 : 0;
+            }
+        };
     }
 
     private static <T> T onNullDefault(T value, T defaultValue,
@@ -533,7 +517,7 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
         while (!stack.isEmpty()){
             V task = stack.remove(0);
             graph.addVertex(task);
-            topologicalSorter.recalculationNeeded();
+            addToTopologicalOrder(task);
             adapter.registerDependenciesEnforcerHookOn(task, enforcer);
             if (adapter.isContainer(task)) {
                 for (V child : adapter.getChildren(task)) {
@@ -917,25 +901,16 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
 
         }
 
-        void enforceRestrictionsOn(Collection<? extends V> tasks) {
-            List<Recalculation> allRecalculations = new ArrayList<Recalculation>();
-            for (V each : tasks) {
-                allRecalculations.addAll(getRecalculationsNeededFrom(each));
-            }
-            enforceRestrictionsOn(allRecalculations, tasks);
-        }
-
         void enforceRestrictionsOn(V task) {
-            enforceRestrictionsOn(getRecalculationsNeededFrom(task),
-                    Collections.singleton(task));
+            enforceRestrictionsOn(Collections.singleton(task));
         }
 
-        void enforceRestrictionsOn(final List<Recalculation> recalculations,
+        void enforceRestrictionsOn(
                 final Collection<? extends V> initiallyModified) {
             executeWithPreAndPostActionsOnlyIfNewEntrance(new IAction() {
                 @Override
                 public void doAction() {
-                    doRecalculations(recalculations, initiallyModified);
+                    doRecalculations(initiallyModified);
                 }
             });
         }
@@ -1019,27 +994,17 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
             executeWithPreAndPostActionsOnlyIfNewEntrance(new IAction() {
                 @Override
                 public void doAction() {
-                    List<Recalculation> recalculationsNeededFrom = getRecalculationsNeededFrom(task);
-                    doRecalculations(recalculationsNeededFrom,
-                            Collections.singletonList(task));
+                    doRecalculations(Collections.singletonList(task));
                 }
             });
         }
 
-        private void doRecalculations(List<Recalculation> recalculationsNeeded,
+        private void doRecalculations(
                 Collection<? extends V> initiallyModified) {
-            Set<V> allModified = new HashSet<V>();
-            allModified.addAll(initiallyModified);
-            for (Recalculation each : recalculationsNeeded) {
-                boolean modified = each.doRecalculation();
-                if (modified) {
-                    allModified.add(each.taskPoint.task);
-                }
-            }
+            Set<V> allModified = new Propagation(initiallyModified).run();
             List<V> shrunkContainers = shrunkContainersOfModified(allModified);
             for (V each : getTaskAffectedByShrinking(shrunkContainers)) {
-                doRecalculations(getRecalculationsNeededFrom(each),
-                        Collections.singletonList(each));
+                doRecalculations(Collections.singletonList(each));
             }
         }
 
@@ -1059,13 +1024,8 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
 
         private List<V> shrunkContainersOfModified(
                 Set<V> allModified) {
-            Set<V> topmostToShrink = getTopMostThatCouldPotentiallyNeedShrinking(allModified);
-            List<V> allToShrink = new ArrayList<V>();
-            for (V each : topmostToShrink) {
-                allToShrink.addAll(getContainersBottomUp(each));
-            }
             List<V> result = new ArrayList<V>();
-            for (V each : allToShrink) {
+            for (V each : getContainersBottomUp(allModified)) {
                 boolean modified = enforceParentShrinkage(each);
                 if (modified) {
                     result.add(each);
@@ -1074,29 +1034,34 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
             return result;
         }
 
-        private Set<V> getTopMostThatCouldPotentiallyNeedShrinking(
-                Collection<V> modified) {
-            Set<V> result = new HashSet<V>();
+        /**
+         * The containers that are modified or contain a modified task. The
+         * deepest ones are returned first, so a container is shrunk after its
+         * children containers. The containers whose descendants have not been
+         * modified are not visited.
+         */
+        private List<V> getContainersBottomUp(Collection<V> modified) {
+            final Map<V, Integer> depths = new HashMap<V, Integer>();
             for (V each : modified) {
-                V t = getTopmostFor(each);
-                if (adapter.isContainer(t)) {
-                    result.add(t);
+                List<V> path = fromTaskToTop(each);
+                for (int i = 0; i < path.size(); i++) {
+                    V current = path.get(i);
+                    if (depths.containsKey(current)) {
+                        break;
+                    }
+                    if (adapter.isContainer(current)) {
+                        depths.put(current, path.size() - 1 - i);
+                    }
                 }
             }
-            return result;
-        }
+            List<V> result = new ArrayList<V>(depths.keySet());
+            Collections.sort(result, new Comparator<V>() {
 
-        private Collection<? extends V> getContainersBottomUp(
-                V container) {
-            List<V> result = new ArrayList<V>();
-            List<V> tasks = adapter.getChildren(container);
-            for (V each : tasks) {
-                if (adapter.isContainer(each)) {
-                    result.addAll(getContainersBottomUp(each));
-                    result.add(each);
+                @Override
+                public int compare(V o1, V o2) {
+                    return depths.get(o2) - depths.get(o1);
                 }
-            }
-            result.add(container);
+            });
             return result;
         }
 
@@ -1144,66 +1109,79 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
         }
     }
 
-    List<Recalculation> getRecalculationsNeededFrom(V task) {
-        List<Recalculation> result = new ArrayList<Recalculation>();
-        Set<Recalculation> parentRecalculationsAlreadyDone = new HashSet<Recalculation>();
-        Recalculation first = recalculationFor(allPointsPotentiallyModified(task));
-        first.couldHaveBeenModifiedBeforehand();
+    /**
+     * Recalculates the positions of the task points affected by the
+     * modification of some tasks. The recalculations are done following the
+     * topological order and the successors of a task point are only visited if
+     * it has been modified, so only the tasks whose dates could change are
+     * recalculated.
+     */
+    private class Propagation {
 
-        result.addAll(getParentsRecalculations(parentRecalculationsAlreadyDone,
-                first.taskPoint));
-        result.add(first);
+        private static final int INITIAL_CAPACITY = 16;
 
-        Queue<Recalculation> pendingOfVisit = new LinkedList<Recalculation>();
-        pendingOfVisit.offer(first);
+        private final PriorityQueue<Recalculation> pending = new PriorityQueue<Recalculation>(
+                INITIAL_CAPACITY, byTopologicalOrder());
 
-        Map<Recalculation, Recalculation> alreadyVisited = new HashMap<Recalculation, Recalculation>();
-        alreadyVisited.put(first, first);
+        private final Map<Recalculation, Recalculation> scheduled = new HashMap<Recalculation, Recalculation>();
 
-        while (!pendingOfVisit.isEmpty()) {
-            Recalculation current = pendingOfVisit.poll();
-            for (TaskPoint each : current.taskPoint.getImmediateSuccessors()) {
-                if (each.isImmediatelyDerivedFrom(current.taskPoint)) {
-                    continue;
-                }
-                Recalculation recalculationToAdd = getRecalcualtionToAdd(each,
-                        alreadyVisited);
-                recalculationToAdd.comesFromPredecessor(current);
-                if (!alreadyVisited.containsKey(recalculationToAdd)) {
-                    result.addAll(getParentsRecalculations(
-                            parentRecalculationsAlreadyDone, each));
-                    result.add(recalculationToAdd);
-                    pendingOfVisit.offer(recalculationToAdd);
-                    alreadyVisited.put(recalculationToAdd, recalculationToAdd);
+        private final Set<V> modified = new HashSet<V>();
+
+        Propagation(Collection<? extends V> initiallyModified) {
+            for (V each : initiallyModified) {
+                modified.add(each);
+                schedule(recalculationFor(allPointsPotentiallyModified(each)))
+                        .couldHaveBeenModifiedBeforehand();
+            }
+        }
+
+        private Recalculation schedule(Recalculation recalculation) {
+            Recalculation existent = scheduled.get(recalculation);
+            if (existent != null) {
+                return existent;
+            }
+            scheduleParentsOf(recalculation.taskPoint);
+            scheduled.put(recalculation, recalculation);
+            pending.offer(recalculation);
+            return recalculation;
+        }
+
+        private void scheduleParentsOf(TaskPoint taskPoint) {
+            for (TaskPoint each : parentsRecalculationsNeededFor(taskPoint)) {
+                Recalculation parentRecalculation = parentRecalculation(each.task);
+                if (!scheduled.containsKey(parentRecalculation)) {
+                    scheduled.put(parentRecalculation, parentRecalculation);
+                    pending.offer(parentRecalculation);
                 }
             }
         }
-        return topologicalSorter.sort(result);
-    }
 
-    private Recalculation getRecalcualtionToAdd(TaskPoint taskPoint,
-            Map<Recalculation, Recalculation> alreadyVisited) {
-        Recalculation result = recalculationFor(taskPoint);
-        if (alreadyVisited.containsKey(result)) {
-            return alreadyVisited.get(result);
-        } else {
-            return result;
+        /**
+         * @return the tasks modified, including the initially modified ones
+         */
+        Set<V> run() {
+            while (!pending.isEmpty()) {
+                Recalculation current = pending.poll();
+                if (current.doRecalculation()) {
+                    modified.add(current.taskPoint.task);
+                }
+                if (!current.parentRecalculation
+                        && current.couldHaveModifiedSuccessors()) {
+                    scheduleSuccessorsOf(current);
+                }
+            }
+            return modified;
         }
-    }
 
-    private List<Recalculation> getParentsRecalculations(
-            Set<Recalculation> parentRecalculationsAlreadyDone,
-            TaskPoint taskPoint) {
-        List<Recalculation> result = new ArrayList<Recalculation>();
-        for (TaskPoint eachParent : parentsRecalculationsNeededFor(taskPoint)) {
-            Recalculation parentRecalculation = parentRecalculation(eachParent.task);
-            if (!parentRecalculationsAlreadyDone
-                    .contains(parentRecalculation)) {
-                parentRecalculationsAlreadyDone.add(parentRecalculation);
-                result.add(parentRecalculation);
+        private void scheduleSuccessorsOf(Recalculation current) {
+            for (TaskPoint each : current.taskPoint.getImmediateSuccessors()) {
+                if (!each.isImmediatelyDerivedFrom(current.taskPoint)) {
+                    schedule(recalculationFor(each)).comesFromPredecessor(
+                            current);
+                }
             }
         }
-        return result;
+
     }
 
     private Set<TaskPoint> parentsRecalculationsNeededFor(TaskPoint current) {
@@ -1280,6 +1258,10 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
             return dataPointModified;
         }
 
+        boolean couldHaveModifiedSuccessors() {
+            return dataPointModified || couldHaveBeenModifiedBeforehand;
+        }
+
         private boolean haveToDoCalculation() {
             return recalculationsCouldAffectThis.isEmpty()
                     || predecessorsHaveBeenModified();
@@ -1941,6 +1923,7 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
     public void remove(final V task) {
         Set<V> needingEnforcing = getOutgoingTasksFor(task);
         graph.removeVertex(task);
+        removeFromTopologicalOrder(task);
         topLevelTasks.remove(task);
         fromChildToParent.remove(task);
         if (adapter.isContainer(task)) {
@@ -1948,13 +1931,11 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
                 remove(t);
             }
         }
-        topologicalSorter.recalculationNeeded();
         enforcer.enforceRestrictionsOn(needingEnforcing);
     }
 
     public void removeDependency(D dependency) {
         graph.removeEdge(dependency);
-        topologicalSorter.recalculationNeeded();
         V destination = adapter.getDestination(dependency);
         V source = adapter.getSource(dependency);
         enforcer.enforceRestrictionsOn(destination);
@@ -2002,7 +1983,7 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
         V source = adapter.getSource(dependency);
         V destination = adapter.getDestination(dependency);
         graph.addEdge(source, destination, dependency);
-        topologicalSorter.recalculationNeeded();
+        addToTopologicalOrder(dependency);
         if (enforceRestrictions) {
             enforceRestrictions(destination);
         }
@@ -2224,6 +2205,8 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
 
         private final Point entryPoint;
 
+        private final int hashCode;
+
         TaskPoint(V task, Point entryPoint) {
             Validate.notNull(task);
             Validate.notNull(entryPoint);
@@ -2232,6 +2215,8 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
             this.pointsModified = isDominatingPoint(entryPoint) ? EnumSet.of(
                     Point.START, Point.END) : EnumSet.of(entryPoint);
             this.isContainer = adapter.isContainer(task);
+            this.hashCode = new HashCodeBuilder().append(task)
+                    .append(pointsModified).toHashCode();
         }
 
 
@@ -2253,8 +2238,7 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
 
         @Override
         public int hashCode() {
-            return new HashCodeBuilder().append(task).append(pointsModified)
-                    .toHashCode();
+            return hashCode;
         }
 
         public boolean areAllPointsPotentiallyModified() {
@@ -2336,6 +2320,28 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
                     .unmodifiableSet(result);
         }
 
+        /**
+         * Unlike {@link #getImmediatePredecessors()} it returns all the task
+         * points that have this one among their immediate successors
+         */
+        Set<TaskPoint> getSendingPredecessors() {
+            Set<TaskPoint> result = new HashSet<TaskPoint>();
+            if (!isDominatingPoint(entryPoint)) {
+                result.add(allPointsPotentiallyModified(task));
+            }
+            for (D each : immediateIncomingDependencies()) {
+                if (!destinationPoint(each).equals(this)) {
+                    continue;
+                }
+                for (TaskPoint source : taskPointsOf(getDependencySource(each))) {
+                    if (source.sendsModificationsThrough(each)) {
+                        result.add(source);
+                    }
+                }
+            }
+            return result;
+        }
+
         private Collection<TaskPoint> getImmediatelyDerivedOnSameTask() {
             for (Point each : pointsModified) {
                 if (isDominatingPoint(each)) {
@@ -2383,14 +2389,6 @@ public class GanttDiagramGraph<V, D extends IDependency<V>> implements
 
 
 
-    private V getTopmostFor(V task) {
-        V result = task;
-        while (fromChildToParent.containsKey(result)) {
-            result = fromChildToParent.get(result);
-        }
-        return result;
-    }
-
     public boolean isScheduleForward() {
         return !isScheduleBackwards();
     }
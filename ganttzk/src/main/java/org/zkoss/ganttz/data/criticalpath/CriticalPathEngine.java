@@ -0,0 +1,761 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.zkoss.ganttz.data.criticalpath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.zkoss.ganttz.data.DependencyType;
+import org.zkoss.ganttz.data.GanttDate;
+import org.zkoss.ganttz.data.IDependency;
+import org.zkoss.ganttz.data.constraint.Constraint;
+
+/**
+ * <p>
+ * Calculates the critical path of a graph like {@link CriticalPathCalculator}
+ * does, but the graph is compiled first into arrays indexed by the position of
+ * each task. The predecessors and successors of each task are stored as
+ * compressed sparse rows, and the forward and backward passes are loops over
+ * the topological order of the tasks, so the cost is proportional to the
+ * number of tasks plus the number of dependencies and there is no recursion.
+ * </p>
+ * <p>
+ * Once compiled, {@link #taskMoved(Object)} recalculates only the tasks
+ * affected by a change in the dates or constraints of a task. The structure of
+ * the graph must not change; if dependencies are added or removed a new engine
+ * must be compiled.
+ * </p>
+ * <p>
+ * Containers are replaced by their leaves as {@link CriticalPathCalculator}
+ * does. The {@link DependencyType#START_END} dependencies are honoured: the
+ * end of the destination can't be before the start of the origin.
+ * </p>
+ */
+public class CriticalPathEngine<T> {
+
+    private static final int NOT_CALCULATED = Integer.MAX_VALUE;
+
+    private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+    public static <T> CriticalPathEngine<T> compile(
+            ICriticalPathCalculable<T> graph,
+            boolean dependenciesConstraintsHavePriority) {
+        return new Compiler<T>(graph, dependenciesConstraintsHavePriority)
+                .compile();
+    }
+
+    private static class Compiler<T> {
+
+        private final ICriticalPathCalculable<T> graph;
+
+        private final boolean dependenciesConstraintsHavePriority;
+
+        private final List<T> tasks = new ArrayList<T>();
+
+        private final Map<T, Integer> indexes = new HashMap<T, Integer>();
+
+        private final List<Set<Integer>> successors = new ArrayList<Set<Integer>>();
+
+        private final Map<Long, DependencyType> typesFromContainers = new HashMap<Long, DependencyType>();
+
+        Compiler(ICriticalPathCalculable<T> graph,
+                boolean dependenciesConstraintsHavePriority) {
+            this.graph = graph;
+            this.dependenciesConstraintsHavePriority = dependenciesConstraintsHavePriority;
+        }
+
+        CriticalPathEngine<T> compile() {
+            for (T each : graph.getTasks()) {
+                if (!graph.isContainer(each) && !indexes.containsKey(each)) {
+                    indexes.put(each, tasks.size());
+                    tasks.add(each);
+                    successors.add(new LinkedHashSet<Integer>());
+                }
+            }
+            for (T each : tasks) {
+                for (T origin : graph.getIncomingTasksFor(each)) {
+                    addEdge(origin, each);
+                }
+                for (T destination : graph.getOutgoingTasksFor(each)) {
+                    addEdge(each, destination);
+                }
+            }
+            for (T each : graph.getTasks()) {
+                if (graph.isContainer(each)) {
+                    addContainerEdges(each);
+                }
+            }
+            CriticalPathEngine<T> result = new CriticalPathEngine<T>(graph,
+                    dependenciesConstraintsHavePriority, tasks, indexes);
+            result.initial = indexesOf(withoutVisibleIncomingDependencies(leaves(graph
+                    .getInitialTasks())));
+            result.latest = indexesOf(withoutVisibleOutgoingDependencies(leaves(graph
+                    .getLatestTasks())));
+            buildAdjacency(result);
+            result.calculateOrders();
+            return result;
+        }
+
+        private void addEdge(T origin, T destination) {
+            Integer from = indexes.get(origin);
+            Integer to = indexes.get(destination);
+            if (from != null && to != null) {
+                successors.get(from).add(to);
+            }
+        }
+
+        private void addContainerEdges(T container) {
+            List<T> children = leaves(Collections.singletonList(container));
+            for (T origin : notRelatives(container,
+                    graph.getIncomingTasksFor(container))) {
+                DependencyType type = typeOf(graph.getDependencyFrom(origin,
+                        container));
+                addEdges(leaves(Collections.singletonList(origin)), children,
+                        type);
+            }
+            for (T destination : notRelatives(container,
+                    graph.getOutgoingTasksFor(container))) {
+                DependencyType type = typeOf(graph.getDependencyFrom(
+                        container, destination));
+                addEdges(children,
+                        leaves(Collections.singletonList(destination)), type);
+            }
+        }
+
+        private DependencyType typeOf(IDependency<T> dependency) {
+            return dependency != null ? dependency.getType()
+                    : DependencyType.END_START;
+        }
+
+        private void addEdges(List<T> origins, List<T> destinations,
+                DependencyType type) {
+            for (T origin : origins) {
+                for (T destination : destinations) {
+                    Integer from = indexes.get(origin);
+                    Integer to = indexes.get(destination);
+                    if (from != null && to != null) {
+                        successors.get(from).add(to);
+                        typesFromContainers.put(key(from, to), type);
+                    }
+                }
+            }
+        }
+
+        private long key(int from, int to) {
+            return ((long) from << 32) | to;
+        }
+
+        private List<T> notRelatives(T container, Collection<T> related) {
+            List<T> result = new ArrayList<T>();
+            for (T each : related) {
+                if (!graph.contains(container, each)
+                        && !graph.contains(each, container)) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        private List<T> leaves(Collection<T> tasks) {
+            List<T> result = new ArrayList<T>();
+            if (tasks == null) {
+                return result;
+            }
+            for (T each : tasks) {
+                if (graph.isContainer(each)) {
+                    result.addAll(leaves(graph.getChildren(each)));
+                } else {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        private List<T> withoutVisibleIncomingDependencies(List<T> tasks) {
+            List<T> result = new ArrayList<T>();
+            for (T each : tasks) {
+                if (!graph.hasVisibleIncomingDependencies(each)) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        private List<T> withoutVisibleOutgoingDependencies(List<T> tasks) {
+            List<T> result = new ArrayList<T>();
+            for (T each : tasks) {
+                if (!graph.hasVisibleOutcomingDependencies(each)) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        private int[] indexesOf(List<T> tasks) {
+            Set<Integer> found = new LinkedHashSet<Integer>();
+            for (T each : tasks) {
+                Integer index = indexes.get(each);
+                if (index != null) {
+                    found.add(index);
+                }
+            }
+            return toArray(found);
+        }
+
+        private void buildAdjacency(CriticalPathEngine<T> engine) {
+            int n = tasks.size();
+            int edges = 0;
+            int[] inDegree = new int[n];
+            for (Set<Integer> each : successors) {
+                edges += each.size();
+                for (Integer destination : each) {
+                    inDegree[destination]++;
+                }
+            }
+            engine.successorsStart = new int[n + 1];
+            engine.successors = new int[edges];
+            engine.successorTypes = new DependencyType[edges];
+            engine.predecessorsStart = new int[n + 1];
+            engine.predecessors = new int[edges];
+            engine.predecessorTypes = new DependencyType[edges];
+            for (int i = 0; i < n; i++) {
+                engine.predecessorsStart[i + 1] = engine.predecessorsStart[i]
+                        + inDegree[i];
+            }
+            int[] filled = new int[n];
+            int position = 0;
+            for (int from = 0; from < n; from++) {
+                engine.successorsStart[from] = position;
+                for (Integer to : successors.get(from)) {
+                    DependencyType type = typeBetween(from, to);
+                    engine.successors[position] = to;
+                    engine.successorTypes[position] = type;
+                    position++;
+                    int predecessor = engine.predecessorsStart[to]
+                            + filled[to]++;
+                    engine.predecessors[predecessor] = from;
+                    engine.predecessorTypes[predecessor] = type;
+                }
+            }
+            engine.successorsStart[n] = position;
+        }
+
+        private DependencyType typeBetween(int from, int to) {
+            IDependency<T> dependency = graph.getDependencyFrom(
+                    tasks.get(from), tasks.get(to));
+            if (dependency != null) {
+                return dependency.getType();
+            }
+            DependencyType result = typesFromContainers.get(key(from, to));
+            return result != null ? result : DependencyType.END_START;
+        }
+
+    }
+
+    private final ICriticalPathCalculable<T> graph;
+
+    private final boolean dependenciesConstraintsHavePriority;
+
+    private final List<T> tasks;
+
+    private final Map<T, Integer> indexes;
+
+    private int[] initial;
+
+    private int[] latest;
+
+    private int[] successorsStart;
+
+    private int[] successors;
+
+    private DependencyType[] successorTypes;
+
+    private int[] predecessorsStart;
+
+    private int[] predecessors;
+
+    private DependencyType[] predecessorTypes;
+
+    private boolean[] isInitial;
+
+    private boolean[] isLatest;
+
+    private boolean[] finishesProject;
+
+    private int[] forwardOrder;
+
+    private int[] forwardPosition;
+
+    private boolean[] forwardVisited;
+
+    private int[] backwardOrder;
+
+    private int[] backwardPosition;
+
+    private boolean[] backwardVisited;
+
+    private LocalDate initDate;
+
+    private final int[] starts;
+
+    private final int[] durations;
+
+    private final List<Constraint<GanttDate>> constraints;
+
+    private final int[] earliestStart;
+
+    private final int[] latestFinish;
+
+    private int projectEnd;
+
+    private final boolean[] dirty;
+
+    private CriticalPathEngine(ICriticalPathCalculable<T> graph,
+            boolean dependenciesConstraintsHavePriority, List<T> tasks,
+            Map<T, Integer> indexes) {
+        this.graph = graph;
+        this.dependenciesConstraintsHavePriority = dependenciesConstraintsHavePriority;
+        this.tasks = tasks;
+        this.indexes = indexes;
+        int n = tasks.size();
+        this.starts = new int[n];
+        this.durations = new int[n];
+        this.constraints = new ArrayList<Constraint<GanttDate>>(
+                Collections.<Constraint<GanttDate>> nCopies(n, null));
+        this.earliestStart = new int[n];
+        this.latestFinish = new int[n];
+        this.dirty = new boolean[n];
+    }
+
+    /**
+     * Calculates the order in which the tasks are visited by the forward and
+     * backward passes. A task is visited once all its predecessors (or
+     * successors for the backward pass) have been visited. The tasks that are
+     * never visited, for example the ones in a cycle, are placed at the end.
+     */
+    private void calculateOrders() {
+        int n = tasks.size();
+        isInitial = mark(initial);
+        isLatest = mark(latest);
+        finishesProject = new boolean[n];
+        List<Integer> latestOrFinishing = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            finishesProject[i] = onlyStartOfSuccessorsDependsOnEnd(i);
+            // the end of the project is calculated from them, so it limits
+            // their latest finish too
+            isLatest[i] = isLatest[i] || finishesProject[i];
+            if (isLatest[i]) {
+                latestOrFinishing.add(i);
+            }
+        }
+        forwardVisited = new boolean[n];
+        forwardOrder = topologicalOrder(initial, predecessorsStart,
+                successorsStart, successors, forwardVisited);
+        forwardPosition = positions(forwardOrder);
+        backwardVisited = new boolean[n];
+        backwardOrder = topologicalOrder(toArray(latestOrFinishing),
+                successorsStart, predecessorsStart, predecessors,
+                backwardVisited);
+        backwardPosition = positions(backwardOrder);
+    }
+
+    private static int[] toArray(Collection<Integer> values) {
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (Integer each : values) {
+            result[i++] = each;
+        }
+        return result;
+    }
+
+    private boolean[] mark(int[] indexes) {
+        boolean[] result = new boolean[tasks.size()];
+        for (int each : indexes) {
+            result[each] = true;
+        }
+        return result;
+    }
+
+    private boolean onlyStartOfSuccessorsDependsOnEnd(int task) {
+        for (int i = successorsStart[task]; i < successorsStart[task + 1]; i++) {
+            if (!isFromStart(successorTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFromStart(DependencyType type) {
+        return type == DependencyType.START_START
+                || type == DependencyType.START_END;
+    }
+
+    private static int[] topologicalOrder(int[] sources, int[] incomingStart,
+            int[] outgoingStart, int[] outgoing, boolean[] visited) {
+        int n = visited.length;
+        int[] pending = new int[n];
+        for (int i = 0; i < n; i++) {
+            pending[i] = incomingStart[i + 1] - incomingStart[i];
+        }
+        int[] result = new int[n];
+        int head = 0;
+        int tail = 0;
+        boolean[] queued = new boolean[n];
+        for (int each : sources) {
+            if (pending[each] == 0 && !queued[each]) {
+                queued[each] = true;
+                result[tail++] = each;
+            }
+        }
+        while (head < tail) {
+            int current = result[head++];
+            visited[current] = true;
+            for (int i = outgoingStart[current]; i < outgoingStart[current + 1]; i++) {
+                int next = outgoing[i];
+                if (--pending[next] == 0 && !queued[next]) {
+                    queued[next] = true;
+                    result[tail++] = next;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (!queued[i]) {
+                result[tail++] = i;
+            }
+        }
+        return result;
+    }
+
+    private static int[] positions(int[] order) {
+        int[] result = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[order[i]] = i;
+        }
+        return result;
+    }
+
+    /**
+     * @return the tasks in the critical path, in the same order as they are
+     *         returned by {@link ICriticalPathCalculable#getTasks()}
+     */
+    public List<T> calculateCriticalPath() {
+        loadDates();
+        initDate = calculateInitDate();
+        forward();
+        projectEnd = calculateProjectEnd();
+        backward();
+        return getCriticalPath();
+    }
+
+    private void loadDates() {
+        for (int i = 0; i < tasks.size(); i++) {
+            loadDates(i);
+        }
+    }
+
+    private void loadDates(int task) {
+        T each = tasks.get(task);
+        int start = dayNumber(graph.getStartDate(each));
+        starts[task] = start;
+        durations[task] = dayNumber(graph.getEndDateFor(each)) - start;
+        constraints.set(task, constraintsFor(each));
+    }
+
+    private static int dayNumber(GanttDate date) {
+        return dayNumber(LocalDate.fromDateFields(date.toDayRoundedDate()));
+    }
+
+    private static int dayNumber(LocalDate date) {
+        return Days.daysBetween(EPOCH, date).getDays();
+    }
+
+    private Constraint<GanttDate> constraintsFor(T task) {
+        if (dependenciesConstraintsHavePriority) {
+            return null;
+        }
+        List<Constraint<GanttDate>> all = new ArrayList<Constraint<GanttDate>>();
+        addAll(all, graph.getStartConstraintsFor(task));
+        addAll(all, graph.getEndConstraintsFor(task));
+        return all.isEmpty() ? null : Constraint.coalesce(all);
+    }
+
+    private static <E> void addAll(List<E> result, List<E> toAdd) {
+        if (toAdd != null) {
+            result.addAll(toAdd);
+        }
+    }
+
+    private LocalDate calculateInitDate() {
+        GanttDate min = null;
+        for (T each : graph.getTasks()) {
+            GanttDate start = graph.getStartDate(each);
+            if (min == null || start.compareTo(min) < 0) {
+                min = start;
+            }
+        }
+        return min == null ? null : LocalDate.fromDateFields(min
+                .toDayRoundedDate());
+    }
+
+    private void forward() {
+        for (int each : forwardOrder) {
+            earliestStart[each] = calculateEarliestStart(each);
+        }
+    }
+
+    private int calculateEarliestStart(int task) {
+        int result = 0;
+        if (isInitial[task]) {
+            result = constrainStart(task, 0);
+        }
+        for (int i = predecessorsStart[task]; i < predecessorsStart[task + 1]; i++) {
+            int origin = predecessors[i];
+            if (!forwardVisited[origin]) {
+                continue;
+            }
+            int originStart = earliestStart[origin];
+            int originEnd = originStart + durations[origin];
+            int start;
+            switch (predecessorTypes[i]) {
+            case START_START:
+                start = originStart;
+                break;
+            case END_END:
+                start = originEnd - durations[task];
+                break;
+            case START_END:
+                start = originStart - durations[task];
+                break;
+            case END_START:
+            default:
+                start = originEnd;
+                break;
+            }
+            result = Math.max(result, constrainStart(task, start));
+        }
+        return result;
+    }
+
+    private int constrainStart(int task, int start) {
+        Constraint<GanttDate> constraint = constraints.get(task);
+        if (constraint == null) {
+            return start;
+        }
+        GanttDate date = constraint.applyTo(GanttDate.createFrom(initDate
+                .plusDays(start)));
+        return Days.daysBetween(initDate,
+                LocalDate.fromDateFields(date.toDayRoundedDate())).getDays();
+    }
+
+    private int calculateProjectEnd() {
+        int result = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            if (forwardVisited[i] && finishesProject[i]) {
+                result = Math.max(result, earliestStart[i] + durations[i]);
+            }
+        }
+        return result;
+    }
+
+    private void backward() {
+        for (int each : backwardOrder) {
+            latestFinish[each] = calculateLatestFinish(each);
+        }
+    }
+
+    private int calculateLatestFinish(int task) {
+        int result = NOT_CALCULATED;
+        if (isLatest[task]) {
+            result = constrainFinish(task, projectEnd);
+        }
+        for (int i = successorsStart[task]; i < successorsStart[task + 1]; i++) {
+            int destination = successors[i];
+            if (!backwardVisited[destination]
+                    || latestFinish[destination] == NOT_CALCULATED) {
+                continue;
+            }
+            int destinationFinish = latestFinish[destination];
+            int destinationStart = destinationFinish
+                    - durations[destination];
+            int finish;
+            switch (successorTypes[i]) {
+            case START_START:
+                finish = destinationStart + durations[task];
+                break;
+            case END_END:
+                finish = destinationFinish;
+                break;
+            case START_END:
+                finish = destinationFinish + durations[task];
+                break;
+            case END_START:
+            default:
+                finish = destinationStart;
+                break;
+            }
+            result = Math.min(result, constrainFinish(task, finish));
+        }
+        return result;
+    }
+
+    private int constrainFinish(int task, int finish) {
+        return constrainStart(task, finish - durations[task])
+                + durations[task];
+    }
+
+    private List<T> getCriticalPath() {
+        List<T> result = new ArrayList<T>();
+        for (int i = 0; i < tasks.size(); i++) {
+            if (isCritical(i)) {
+                result.add(tasks.get(i));
+            }
+        }
+        return result;
+    }
+
+    private boolean isCritical(int task) {
+        return latestFinish[task] != NOT_CALCULATED
+                && latestFinish[task] - durations[task] == earliestStart[task];
+    }
+
+    /**
+     * Recalculates the critical path after the dates or the constraints of a
+     * task have changed. Only the successors of the task are visited by the
+     * forward pass, and only its predecessors by the backward pass unless the
+     * end of the project changes.
+     *
+     * @return the tasks in the critical path
+     * @throws IllegalArgumentException
+     *             if the task is not a leaf of the compiled graph
+     */
+    public List<T> taskMoved(T task) {
+        Integer index = indexes.get(task);
+        if (index == null) {
+            throw new IllegalArgumentException("the task " + task
+                    + " is not a leaf of the compiled graph");
+        }
+        if (initDate == null) {
+            return calculateCriticalPath();
+        }
+        int previousStart = starts[index];
+        loadDates(index);
+        if (startOfProjectChanges(previousStart, starts[index])) {
+            return calculateCriticalPath();
+        }
+        propagateForward(index);
+        int previousProjectEnd = projectEnd;
+        projectEnd = calculateProjectEnd();
+        if (projectEnd != previousProjectEnd) {
+            backward();
+        } else {
+            propagateBackward(index);
+        }
+        return getCriticalPath();
+    }
+
+    private boolean startOfProjectChanges(int previousStart, int newStart) {
+        int initDay = dayNumber(initDate);
+        if (newStart < initDay) {
+            return true;
+        }
+        return previousStart == initDay && newStart != initDay
+                && !initDate.equals(calculateInitDate());
+    }
+
+    private void propagateForward(int moved) {
+        dirty[moved] = true;
+        for (int i = forwardPosition[moved]; i < forwardOrder.length; i++) {
+            int each = forwardOrder[i];
+            if (!dirty[each]) {
+                continue;
+            }
+            dirty[each] = false;
+            int start = calculateEarliestStart(each);
+            if (start == earliestStart[each] && each != moved) {
+                continue;
+            }
+            earliestStart[each] = start;
+            if (forwardVisited[each]) {
+                for (int j = successorsStart[each]; j < successorsStart[each + 1]; j++) {
+                    dirty[successors[j]] = true;
+                }
+            }
+        }
+    }
+
+    private void propagateBackward(int moved) {
+        dirty[moved] = true;
+        for (int i = backwardPosition[moved]; i < backwardOrder.length; i++) {
+            int each = backwardOrder[i];
+            if (!dirty[each]) {
+                continue;
+            }
+            dirty[each] = false;
+            int finish = calculateLatestFinish(each);
+            if (finish == latestFinish[each] && each != moved) {
+                continue;
+            }
+            latestFinish[each] = finish;
+            if (backwardVisited[each]) {
+                for (int j = predecessorsStart[each]; j < predecessorsStart[each + 1]; j++) {
+                    dirty[predecessors[j]] = true;
+                }
+            }
+        }
+    }
+
+    public int getEarliestStart(T task) {
+        return earliestStart[indexOf(task)];
+    }
+
+    public int getLatestStart(T task) {
+        int index = indexOf(task);
+        if (latestFinish[index] == NOT_CALCULATED) {
+            throw new IllegalStateException("the latest start of " + task
+                    + " has not been calculated");
+        }
+        return latestFinish[index] - durations[index];
+    }
+
+    /**
+     * @return the days from the earliest start of the project to its end
+     */
+    public int getProjectDuration() {
+        return projectEnd;
+    }
+
+    private int indexOf(T task) {
+        Integer result = indexes.get(task);
+        if (result == null) {
+            throw new IllegalArgumentException("the task " + task
+                    + " is not a leaf of the compiled graph");
+        }
+        return result;
+    }
+
+}
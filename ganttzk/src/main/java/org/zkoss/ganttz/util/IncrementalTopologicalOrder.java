@@ -0,0 +1,233 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.zkoss.ganttz.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * It keeps a topological order of the nodes of a directed acyclic graph while
+ * nodes and edges are added or removed, so it's not needed to sort the whole
+ * graph again after each change.
+ * </p>
+ * <p>
+ * Each node has a position. A new node is placed after all the existent ones,
+ * and removing nodes or edges never breaks the order. When an edge that goes
+ * against the order is added, only the nodes between the two ends of the edge
+ * that are reachable from one of them are moved. This is the algorithm
+ * described by Pearce and Kelly in "A Dynamic Topological Sort Algorithm for
+ * Directed Acyclic Graphs".
+ * </p>
+ * <p>
+ * The edges are not stored. They are retrieved from the {@link IGraph} when
+ * needed, so it must already contain an edge when {@link #edgeAdded(Object,
+ * Object)} is called.
+ * </p>
+ *
+ * @param <T>
+ *            the type of the nodes. They must implement equals and hashCode.
+ */
+public class IncrementalTopologicalOrder<T> {
+
+    public interface IGraph<T> {
+
+        Collection<? extends T> getSuccessors(T node);
+
+        Collection<? extends T> getPredecessors(T node);
+
+    }
+
+    public static <T> IncrementalTopologicalOrder<T> create(IGraph<T> graph) {
+        return new IncrementalTopologicalOrder<T>(graph);
+    }
+
+    private final IGraph<T> graph;
+
+    private final Map<T, Integer> positions = new HashMap<T, Integer>();
+
+    private int nextPosition = 0;
+
+    private IncrementalTopologicalOrder(IGraph<T> graph) {
+        this.graph = graph;
+    }
+
+    public void add(T node) {
+        if (!positions.containsKey(node)) {
+            positions.put(node, nextPosition++);
+        }
+    }
+
+    public void remove(T node) {
+        positions.remove(node);
+    }
+
+    public boolean contains(T node) {
+        return positions.containsKey(node);
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * @return the position of the node. If a node is before other one in the
+     *         topological order its position is lower.
+     * @throws IllegalArgumentException
+     *             if the node has not been added
+     */
+    public int getPosition(T node) {
+        Integer result = positions.get(node);
+        if (result == null) {
+            throw new IllegalArgumentException(node + " has not been added");
+        }
+        return result;
+    }
+
+    public Comparator<T> comparator() {
+        return new Comparator<T>() {
+
+            @Override
+            public int compare(T o1, T o2) {
+                int p1 = getPosition(o1);
+                int p2 = getPosition(o2);
+                return p1 < p2 ? -1 : (p1 == p2 ? 0 : 1);
+            }
+        };
+    }
+
+    /**
+     * Updates the order after adding an edge to the graph. The nodes not added
+     * yet are ignored.
+     *
+     * @return <code>false</code> if the edge causes a cycle. In that case the
+     *         order is not modified.
+     */
+    public boolean edgeAdded(T origin, T destination) {
+        Integer upperBound = positions.get(origin);
+        Integer lowerBound = positions.get(destination);
+        if (upperBound == null || lowerBound == null) {
+            return true;
+        }
+        if (lowerBound > upperBound) {
+            return true;
+        }
+        if (lowerBound.equals(upperBound)) {
+            return false;
+        }
+        List<T> reachableFromDestination = new ArrayList<T>();
+        if (!collectForward(destination, upperBound,
+                reachableFromDestination)) {
+            return false;
+        }
+        List<T> reachingOrigin = new ArrayList<T>();
+        collectBackward(origin, lowerBound, reachingOrigin);
+        reorder(reachingOrigin, reachableFromDestination);
+        return true;
+    }
+
+    /**
+     * Collects the nodes reachable from the start whose position is lower than
+     * the bound.
+     *
+     * @return <code>false</code> if the node at the bound is reached
+     */
+    private boolean collectForward(T start, int upperBound, List<T> result) {
+        Set<T> visited = new HashSet<T>();
+        LinkedList<T> pending = new LinkedList<T>();
+        visited.add(start);
+        pending.add(start);
+        while (!pending.isEmpty()) {
+            T current = pending.removeFirst();
+            result.add(current);
+            for (T each : graph.getSuccessors(current)) {
+                Integer position = positions.get(each);
+                if (position == null || visited.contains(each)) {
+                    continue;
+                }
+                if (position == upperBound) {
+                    return false;
+                }
+                if (position < upperBound) {
+                    visited.add(each);
+                    pending.add(each);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the nodes that reach the start whose position is bigger than
+     * the bound
+     */
+    private void collectBackward(T start, int lowerBound, List<T> result) {
+        Set<T> visited = new HashSet<T>();
+        LinkedList<T> pending = new LinkedList<T>();
+        visited.add(start);
+        pending.add(start);
+        while (!pending.isEmpty()) {
+            T current = pending.removeFirst();
+            result.add(current);
+            for (T each : graph.getPredecessors(current)) {
+                Integer position = positions.get(each);
+                if (position != null && position > lowerBound
+                        && visited.add(each)) {
+                    pending.add(each);
+                }
+            }
+        }
+    }
+
+    /**
+     * The nodes reaching the origin are placed before the nodes reachable from
+     * the destination, reusing the positions they occupied. The relative order
+     * inside each group is kept.
+     */
+    private void reorder(List<T> reachingOrigin,
+            List<T> reachableFromDestination) {
+        Comparator<T> byPosition = comparator();
+        Collections.sort(reachingOrigin, byPosition);
+        Collections.sort(reachableFromDestination, byPosition);
+        List<Integer> freePositions = new ArrayList<Integer>();
+        for (T each : reachingOrigin) {
+            freePositions.add(positions.get(each));
+        }
+        for (T each : reachableFromDestination) {
+            freePositions.add(positions.get(each));
+        }
+        Collections.sort(freePositions);
+        int i = 0;
+        for (T each : reachingOrigin) {
+            positions.put(each, freePositions.get(i++));
+        }
+        for (T each : reachableFromDestination) {
+            positions.put(each, freePositions.get(i++));
+        }
+    }
+
+}
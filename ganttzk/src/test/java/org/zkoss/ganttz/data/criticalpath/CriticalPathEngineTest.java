@@ -0,0 +1,435 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.zkoss.ganttz.data.criticalpath;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.zkoss.ganttz.data.constraint.ConstraintOnComparableValues.biggerOrEqualThan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.zkoss.ganttz.data.DependencyType;
+import org.zkoss.ganttz.data.GanttDate;
+import org.zkoss.ganttz.data.IDependency;
+import org.zkoss.ganttz.data.constraint.Constraint;
+
+/**
+ * Tests for {@link CriticalPathEngine}. The results are compared with the ones
+ * of {@link CriticalPathCalculator} for generated graphs.
+ */
+public class CriticalPathEngineTest {
+
+    private static final LocalDate START = new LocalDate(2009, 12, 1);
+
+    private static final DependencyType[] TYPES = { DependencyType.END_START,
+            DependencyType.END_START, DependencyType.START_START,
+            DependencyType.END_END };
+
+    static class ExampleTask {
+
+        private final String name;
+
+        private LocalDate start;
+
+        private int duration;
+
+        private List<Constraint<GanttDate>> startConstraints = new ArrayList<Constraint<GanttDate>>();
+
+        private final List<ExampleTask> children = new ArrayList<ExampleTask>();
+
+        ExampleTask(String name, LocalDate start, int duration) {
+            this.name = name;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        boolean isContainer() {
+            return !children.isEmpty();
+        }
+
+        GanttDate getStart() {
+            if (!isContainer()) {
+                return GanttDate.createFrom(start);
+            }
+            GanttDate result = null;
+            for (ExampleTask each : children) {
+                if (result == null || each.getStart().compareTo(result) < 0) {
+                    result = each.getStart();
+                }
+            }
+            return result;
+        }
+
+        GanttDate getEnd() {
+            if (!isContainer()) {
+                return GanttDate.createFrom(start.plusDays(duration));
+            }
+            GanttDate result = null;
+            for (ExampleTask each : children) {
+                if (result == null || each.getEnd().compareTo(result) > 0) {
+                    result = each.getEnd();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    static class ExampleDependency implements IDependency<ExampleTask> {
+
+        private final ExampleTask source;
+
+        private final ExampleTask destination;
+
+        private final DependencyType type;
+
+        ExampleDependency(ExampleTask source, ExampleTask destination,
+                DependencyType type) {
+            this.source = source;
+            this.destination = destination;
+            this.type = type;
+        }
+
+        @Override
+        public ExampleTask getSource() {
+            return source;
+        }
+
+        @Override
+        public ExampleTask getDestination() {
+            return destination;
+        }
+
+        @Override
+        public DependencyType getType() {
+            return type;
+        }
+
+    }
+
+    /**
+     * Graph that answers like {@link org.zkoss.ganttz.data.GanttDiagramGraph}
+     */
+    static class ExampleGraph implements ICriticalPathCalculable<ExampleTask> {
+
+        private final List<ExampleTask> tasks = new ArrayList<ExampleTask>();
+
+        private final List<ExampleDependency> dependencies = new ArrayList<ExampleDependency>();
+
+        ExampleTask task(LocalDate start, int duration) {
+            ExampleTask result = new ExampleTask("T" + tasks.size(), start,
+                    duration);
+            tasks.add(result);
+            return result;
+        }
+
+        ExampleTask container(ExampleTask... children) {
+            ExampleTask result = new ExampleTask("C" + tasks.size(), null, 0);
+            result.children.addAll(Arrays.asList(children));
+            tasks.add(result);
+            return result;
+        }
+
+        void dependency(ExampleTask source, ExampleTask destination,
+                DependencyType type) {
+            dependencies.add(new ExampleDependency(source, destination, type));
+        }
+
+        private List<ExampleDependency> incoming(ExampleTask task) {
+            List<ExampleDependency> result = new ArrayList<ExampleDependency>();
+            for (ExampleDependency each : dependencies) {
+                if (each.getDestination() == task) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        private List<ExampleDependency> outgoing(ExampleTask task) {
+            List<ExampleDependency> result = new ArrayList<ExampleDependency>();
+            for (ExampleDependency each : dependencies) {
+                if (each.getSource() == task) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        private static boolean allOfType(List<ExampleDependency> dependencies,
+                DependencyType type) {
+            for (ExampleDependency each : dependencies) {
+                if (each.getType() != type) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public List<ExampleTask> getInitialTasks() {
+            List<ExampleTask> result = new ArrayList<ExampleTask>();
+            for (ExampleTask each : tasks) {
+                if (allOfType(incoming(each), DependencyType.END_END)) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public List<ExampleTask> getLatestTasks() {
+            List<ExampleTask> result = new ArrayList<ExampleTask>();
+            for (ExampleTask each : tasks) {
+                if (allOfType(outgoing(each), DependencyType.START_START)) {
+                    result.add(each);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean hasVisibleIncomingDependencies(ExampleTask task) {
+            return !allOfType(incoming(task), DependencyType.END_END);
+        }
+
+        @Override
+        public boolean hasVisibleOutcomingDependencies(ExampleTask task) {
+            return !allOfType(outgoing(task), DependencyType.START_START);
+        }
+
+        @Override
+        public Set<ExampleTask> getIncomingTasksFor(ExampleTask task) {
+            Set<ExampleTask> result = new HashSet<ExampleTask>();
+            for (ExampleDependency each : incoming(task)) {
+                result.add(each.getSource());
+            }
+            return result;
+        }
+
+        @Override
+        public Set<ExampleTask> getOutgoingTasksFor(ExampleTask task) {
+            Set<ExampleTask> result = new HashSet<ExampleTask>();
+            for (ExampleDependency each : outgoing(task)) {
+                result.add(each.getDestination());
+            }
+            return result;
+        }
+
+        @Override
+        public IDependency<ExampleTask> getDependencyFrom(ExampleTask from,
+                ExampleTask to) {
+            for (ExampleDependency each : dependencies) {
+                if (each.getSource() == from && each.getDestination() == to) {
+                    return each;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public List<ExampleTask> getTasks() {
+            return tasks;
+        }
+
+        @Override
+        public boolean isContainer(ExampleTask task) {
+            return task != null && task.isContainer();
+        }
+
+        @Override
+        public boolean contains(ExampleTask container, ExampleTask task) {
+            return container != null && container.children.contains(task);
+        }
+
+        @Override
+        public GanttDate getStartDate(ExampleTask task) {
+            return task.getStart();
+        }
+
+        @Override
+        public GanttDate getEndDateFor(ExampleTask task) {
+            return task.getEnd();
+        }
+
+        @Override
+        public List<Constraint<GanttDate>> getStartConstraintsFor(
+                ExampleTask task) {
+            return new ArrayList<Constraint<GanttDate>>(task.startConstraints);
+        }
+
+        @Override
+        public List<Constraint<GanttDate>> getEndConstraintsFor(
+                ExampleTask task) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<ExampleTask> getChildren(ExampleTask task) {
+            return task.children;
+        }
+
+    }
+
+    private static ExampleGraph randomGraph(Random random, int size) {
+        ExampleGraph result = new ExampleGraph();
+        List<ExampleTask> tasks = new ArrayList<ExampleTask>();
+        for (int i = 0; i < size; i++) {
+            ExampleTask task = result.task(START.plusDays(random.nextInt(5)),
+                    1 + random.nextInt(10));
+            if (random.nextInt(8) == 0) {
+                task.startConstraints.add(biggerOrEqualThan(GanttDate
+                        .createFrom(START.plusDays(random.nextInt(30)))));
+            }
+            tasks.add(task);
+        }
+        for (int i = 1; i < size; i++) {
+            int predecessors = random.nextInt(3);
+            for (int j = 0; j < predecessors; j++) {
+                ExampleTask origin = tasks.get(random.nextInt(i));
+                if (result.getDependencyFrom(origin, tasks.get(i)) == null) {
+                    result.dependency(origin, tasks.get(i),
+                            TYPES[random.nextInt(TYPES.length)]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Set<ExampleTask> calculatorResult(ExampleGraph graph) {
+        CriticalPathCalculator<ExampleTask, IDependency<ExampleTask>> calculator = CriticalPathCalculator
+                .create(false);
+        return new HashSet<ExampleTask>(calculator.calculateCriticalPath(graph));
+    }
+
+    private static Set<ExampleTask> engineResult(ExampleGraph graph) {
+        return new HashSet<ExampleTask>(CriticalPathEngine.compile(graph,
+                false).calculateCriticalPath());
+    }
+
+    @Test
+    public void theCriticalPathIsTheSameAsTheOneOfTheCalculator() {
+        Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            ExampleGraph graph = randomGraph(random, 2 + random.nextInt(40));
+            assertThat(engineResult(graph), equalTo(calculatorResult(graph)));
+        }
+    }
+
+    @Test
+    public void theDependenciesOfContainersApplyToTheirLeaves() {
+        ExampleGraph graph = new ExampleGraph();
+        ExampleTask first = graph.task(START, 5);
+        ExampleTask child1 = graph.task(START, 3);
+        ExampleTask child2 = graph.task(START, 8);
+        ExampleTask container = graph.container(child1, child2);
+        ExampleTask last = graph.task(START, 2);
+        graph.dependency(first, container, DependencyType.END_START);
+        graph.dependency(container, last, DependencyType.END_START);
+
+        CriticalPathEngine<ExampleTask> engine = CriticalPathEngine.compile(
+                graph, false);
+
+        assertThat(engine.calculateCriticalPath(),
+                equalTo(Arrays.asList(first, child2, last)));
+        assertThat(engine.getEarliestStart(last), equalTo(13));
+        assertThat(engine.getProjectDuration(), equalTo(15));
+        assertThat(new HashSet<ExampleTask>(engine.calculateCriticalPath()),
+                equalTo(calculatorResult(graph)));
+    }
+
+    @Test
+    public void longChainsCanBeCalculated() {
+        ExampleGraph graph = new ExampleGraph();
+        ExampleTask previous = null;
+        for (int i = 0; i < 5000; i++) {
+            ExampleTask task = graph.task(START, 1);
+            if (previous != null) {
+                graph.dependency(previous, task, DependencyType.END_START);
+            }
+            previous = task;
+        }
+
+        CriticalPathEngine<ExampleTask> engine = CriticalPathEngine.compile(
+                graph, false);
+
+        assertThat(engine.calculateCriticalPath().size(), equalTo(5000));
+        assertThat(engine.getProjectDuration(), equalTo(5000));
+    }
+
+    @Test
+    public void theEndOfTheDestinationOfAStartEndDependencyIsAfterTheStartOfTheOrigin() {
+        ExampleGraph graph = new ExampleGraph();
+        ExampleTask first = graph.task(START, 4);
+        ExampleTask origin = graph.task(START, 5);
+        ExampleTask destination = graph.task(START, 3);
+        graph.dependency(first, origin, DependencyType.END_START);
+        graph.dependency(origin, destination, DependencyType.START_END);
+
+        CriticalPathEngine<ExampleTask> engine = CriticalPathEngine.compile(
+                graph, false);
+
+        assertThat(engine.calculateCriticalPath(),
+                equalTo(Arrays.asList(first, origin)));
+        assertThat(engine.getEarliestStart(destination), equalTo(1));
+        assertThat(engine.getLatestStart(destination), equalTo(6));
+    }
+
+    @Test
+    public void movingATaskGivesTheSameResultAsCompilingAgain() {
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            ExampleGraph graph = randomGraph(random, 2 + random.nextInt(40));
+            CriticalPathEngine<ExampleTask> engine = CriticalPathEngine
+                    .compile(graph, false);
+            engine.calculateCriticalPath();
+            for (int j = 0; j < 5; j++) {
+                ExampleTask moved = graph.getTasks().get(
+                        random.nextInt(graph.getTasks().size()));
+                moved.duration = 1 + random.nextInt(10);
+                moved.start = START.plusDays(random.nextInt(5));
+
+                List<ExampleTask> result = engine.taskMoved(moved);
+
+                CriticalPathEngine<ExampleTask> compiled = CriticalPathEngine
+                        .compile(graph, false);
+                assertThat(result, equalTo(compiled.calculateCriticalPath()));
+                assertThat(engine.getProjectDuration(),
+                        equalTo(compiled.getProjectDuration()));
+                for (ExampleTask each : graph.getTasks()) {
+                    assertThat(engine.getEarliestStart(each),
+                            equalTo(compiled.getEarliestStart(each)));
+                }
+            }
+        }
+    }
+
+}
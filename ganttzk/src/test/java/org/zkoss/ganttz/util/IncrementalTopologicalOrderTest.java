@@ -0,0 +1,202 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.zkoss.ganttz.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zkoss.ganttz.util.IncrementalTopologicalOrder.IGraph;
+
+public class IncrementalTopologicalOrderTest {
+
+    private static class ExampleGraph implements IGraph<Integer> {
+
+        private final Map<Integer, Set<Integer>> successors = new HashMap<Integer, Set<Integer>>();
+
+        private final Map<Integer, Set<Integer>> predecessors = new HashMap<Integer, Set<Integer>>();
+
+        void addEdge(Integer origin, Integer destination) {
+            get(successors, origin).add(destination);
+            get(predecessors, destination).add(origin);
+        }
+
+        void removeEdge(Integer origin, Integer destination) {
+            get(successors, origin).remove(destination);
+            get(predecessors, destination).remove(origin);
+        }
+
+        private static Set<Integer> get(Map<Integer, Set<Integer>> map,
+                Integer key) {
+            if (!map.containsKey(key)) {
+                map.put(key, new HashSet<Integer>());
+            }
+            return map.get(key);
+        }
+
+        @Override
+        public Collection<Integer> getSuccessors(Integer node) {
+            return get(successors, node);
+        }
+
+        @Override
+        public Collection<Integer> getPredecessors(Integer node) {
+            return get(predecessors, node);
+        }
+
+    }
+
+    private ExampleGraph graph;
+
+    private IncrementalTopologicalOrder<Integer> order;
+
+    @Before
+    public void createOrder() {
+        graph = new ExampleGraph();
+        order = IncrementalTopologicalOrder.create(graph);
+    }
+
+    private void addNodes(int size) {
+        for (int i = 0; i < size; i++) {
+            order.add(i);
+        }
+    }
+
+    private boolean addEdge(int origin, int destination) {
+        graph.addEdge(origin, destination);
+        boolean result = order.edgeAdded(origin, destination);
+        if (!result) {
+            graph.removeEdge(origin, destination);
+        }
+        return result;
+    }
+
+    private void assertIsTopologicalOrder() {
+        for (Integer origin : graph.successors.keySet()) {
+            for (Integer destination : graph.successors.get(origin)) {
+                assertTrue(origin + " must be before " + destination,
+                        order.getPosition(origin) < order
+                                .getPosition(destination));
+            }
+        }
+    }
+
+    @Test
+    public void theNodesAreOrderedByInsertionIfThereAreNoEdges() {
+        addNodes(3);
+        assertThat(order.size(), equalTo(3));
+        assertTrue(order.getPosition(0) < order.getPosition(1));
+        assertTrue(order.getPosition(1) < order.getPosition(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void theNodesNotAddedHaveNoPosition() {
+        order.getPosition(1);
+    }
+
+    @Test
+    public void anEdgeFollowingTheOrderDoesNotChangeIt() {
+        addNodes(3);
+        assertTrue(addEdge(0, 2));
+        assertThat(order.getPosition(0), equalTo(0));
+        assertThat(order.getPosition(1), equalTo(1));
+        assertThat(order.getPosition(2), equalTo(2));
+    }
+
+    @Test
+    public void anEdgeAgainstTheOrderMovesTheAffectedNodes() {
+        addNodes(4);
+        assertTrue(addEdge(0, 1));
+        assertTrue(addEdge(3, 0));
+        assertIsTopologicalOrder();
+        assertThat(order.getPosition(2), equalTo(2));
+    }
+
+    @Test
+    public void anEdgeCausingACycleIsRejected() {
+        addNodes(3);
+        assertTrue(addEdge(0, 1));
+        assertTrue(addEdge(1, 2));
+        assertFalse(addEdge(2, 0));
+        assertFalse(order.edgeAdded(1, 1));
+        assertIsTopologicalOrder();
+    }
+
+    @Test
+    public void theRemovedNodesAreIgnored() {
+        addNodes(3);
+        order.remove(1);
+        assertFalse(order.contains(1));
+        graph.addEdge(1, 0);
+        assertTrue(order.edgeAdded(1, 0));
+        assertTrue(addEdge(2, 0));
+        assertTrue(order.getPosition(2) < order.getPosition(0));
+    }
+
+    @Test
+    public void theOrderIsKeptAfterManyRandomEdges() {
+        Random random = new Random(7);
+        int size = 200;
+        addNodes(size);
+        List<Integer> nodes = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            nodes.add(i);
+        }
+        Collections.shuffle(nodes, random);
+        // the shuffled list is a valid order, so edges following it never
+        // create a cycle
+        for (int i = 0; i < 2000; i++) {
+            int a = random.nextInt(size);
+            int b = random.nextInt(size);
+            if (a == b) {
+                continue;
+            }
+            int origin = nodes.get(Math.min(a, b));
+            int destination = nodes.get(Math.max(a, b));
+            assertTrue(addEdge(origin, destination));
+        }
+        assertIsTopologicalOrder();
+        for (int i = 0; i < 200; i++) {
+            int a = random.nextInt(size);
+            int b = random.nextInt(size);
+            if (a == b) {
+                continue;
+            }
+            int origin = nodes.get(Math.max(a, b));
+            int destination = nodes.get(Math.min(a, b));
+            addEdge(origin, destination);
+            assertIsTopologicalOrder();
+        }
+    }
+
+}
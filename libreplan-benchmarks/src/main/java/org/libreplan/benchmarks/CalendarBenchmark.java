@@ -0,0 +1,107 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.calendars.entities.ResourceCalendar;
+import org.libreplan.business.workingday.EffortDuration;
+import org.libreplan.business.workingday.IntraDayDate.PartialDay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Capacity lookups on {@link BaseCalendar}, the most frequent operation
+ * during the allocations and the load charts. Each invocation asks for the
+ * capacity of every day of the interval.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CalendarBenchmark {
+
+    @Param({ "30", "365", "1825" })
+    private int days;
+
+    @Param({ "0", "100" })
+    private int holidays;
+
+    private BaseCalendar calendar;
+
+    private ResourceCalendar resourceCalendar;
+
+    private PartialDay[] wholeDays;
+
+    private LocalDate[] dates;
+
+    @Setup
+    public void createCalendars() {
+        SyntheticData data = new SyntheticData(1);
+        calendar = data.calendarWithHolidays(days, holidays);
+        resourceCalendar = calendar.newDerivedResourceCalendar();
+        wholeDays = new PartialDay[days];
+        dates = new LocalDate[days];
+        for (int i = 0; i < days; i++) {
+            dates[i] = SyntheticData.START.plusDays(i);
+            wholeDays[i] = PartialDay.wholeDay(dates[i]);
+        }
+    }
+
+    @Benchmark
+    public EffortDuration capacityOn() {
+        return sumCapacities(calendar);
+    }
+
+    @Benchmark
+    public EffortDuration capacityOnDerivedResourceCalendar() {
+        return sumCapacities(resourceCalendar);
+    }
+
+    private EffortDuration sumCapacities(BaseCalendar calendar) {
+        EffortDuration result = EffortDuration.zero();
+        for (PartialDay each : wholeDays) {
+            result = result.plus(calendar.getCapacityOn(each));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public void capacityWithOvertime(Blackhole blackhole) {
+        for (LocalDate each : dates) {
+            blackhole.consume(calendar.getCapacityWithOvertime(each));
+        }
+    }
+
+}
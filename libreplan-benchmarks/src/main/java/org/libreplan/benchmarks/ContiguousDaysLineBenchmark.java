@@ -0,0 +1,123 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.planner.chart.ContiguousDaysLine;
+import org.libreplan.business.planner.chart.EffortDaysLine;
+import org.libreplan.business.workingday.EffortDuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The operations between lines used by the load charts, both on
+ * {@link ContiguousDaysLine} and on its array based specialization
+ * {@link EffortDaysLine}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ContiguousDaysLineBenchmark {
+
+    @Param({ "30", "365", "3650" })
+    private int days;
+
+    private ContiguousDaysLine<EffortDuration> assigned;
+
+    private ContiguousDaysLine<EffortDuration> capacity;
+
+    private EffortDaysLine assignedArray;
+
+    private EffortDaysLine capacityArray;
+
+    @Setup
+    public void createLines() {
+        Random random = new SyntheticData(1).getRandom();
+        int[] assignedSeconds = new int[days];
+        int[] capacitySeconds = new int[days];
+        for (int i = 0; i < days; i++) {
+            assignedSeconds[i] = random.nextInt(12 * 3600);
+            capacitySeconds[i] = random.nextBoolean() ? 8 * 3600 : 0;
+        }
+        assignedArray = EffortDaysLine.wrap(SyntheticData.START,
+                assignedSeconds);
+        capacityArray = EffortDaysLine.wrap(SyntheticData.START,
+                capacitySeconds);
+        assigned = assignedArray.toContiguousDaysLine();
+        capacity = capacityArray.toContiguousDaysLine();
+    }
+
+    @Benchmark
+    public ContiguousDaysLine<EffortDuration> sum() {
+        return ContiguousDaysLine.sum(assigned, capacity);
+    }
+
+    @Benchmark
+    public ContiguousDaysLine<EffortDuration> min() {
+        return ContiguousDaysLine.min(assigned, capacity);
+    }
+
+    @Benchmark
+    public ContiguousDaysLine<EffortDuration> substract() {
+        return ContiguousDaysLine.substract(assigned, capacity);
+    }
+
+    @Benchmark
+    public SortedMap<LocalDate, EffortDuration> toSortedMap() {
+        return ContiguousDaysLine.toSortedMap(assigned);
+    }
+
+    @Benchmark
+    public EffortDaysLine sumOnArrays() {
+        return EffortDaysLine.sum(assignedArray, capacityArray);
+    }
+
+    @Benchmark
+    public EffortDaysLine minOnArrays() {
+        return EffortDaysLine.min(assignedArray, capacityArray);
+    }
+
+    @Benchmark
+    public EffortDaysLine substractOnArrays() {
+        return EffortDaysLine.substract(assignedArray, capacityArray);
+    }
+
+    @Benchmark
+    public SortedMap<LocalDate, EffortDuration> toSortedMapOnArrays() {
+        return assignedArray.toSortedMap();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zkoss.ganttz.data.Dependency;
+import org.zkoss.ganttz.data.GanttDiagramGraph.GanttZKDiagramGraph;
+import org.zkoss.ganttz.data.Task;
+import org.zkoss.ganttz.data.criticalpath.CriticalPathCalculator;
+import org.zkoss.ganttz.data.criticalpath.CriticalPathEngine;
+
+/**
+ * Critical path calculation with {@link CriticalPathCalculator} and with
+ * {@link CriticalPathEngine}, both compiling the graph on each invocation and
+ * reusing an already compiled one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CriticalPathBenchmark {
+
+    @Param({ "100", "1000", "5000" })
+    private int tasks;
+
+    private GanttZKDiagramGraph graph;
+
+    private CriticalPathEngine<Task> compiled;
+
+    @Setup
+    public void createGraph() {
+        graph = new SyntheticData(1).ganttGraph(tasks, 3);
+        compiled = CriticalPathEngine.compile(graph, false);
+    }
+
+    @Benchmark
+    public List<Task> calculator() {
+        return CriticalPathCalculator.<Task, Dependency> create(false)
+                .calculateCriticalPath(graph);
+    }
+
+    @Benchmark
+    public List<Task> engine() {
+        return CriticalPathEngine.compile(graph, false)
+                .calculateCriticalPath();
+    }
+
+    @Benchmark
+    public List<Task> compiledEngine() {
+        return compiled.calculateCriticalPath();
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zkoss.ganttz.data.GanttDate;
+import org.zkoss.ganttz.data.GanttDiagramGraph;
+import org.zkoss.ganttz.data.GanttDiagramGraph.GanttZKDiagramGraph;
+import org.zkoss.ganttz.data.ITaskFundamentalProperties.IModifications;
+import org.zkoss.ganttz.data.ITaskFundamentalProperties.IUpdatablePosition;
+import org.zkoss.ganttz.data.Task;
+
+/**
+ * Dependencies enforcement on {@link GanttDiagramGraph}. A random task is
+ * moved on each invocation, so the cost depends on how many tasks are
+ * affected by the move.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GanttDiagramGraphBenchmark {
+
+    @Param({ "100", "1000" })
+    private int tasks;
+
+    @Param({ "1", "3" })
+    private int maxDependencies;
+
+    private GanttZKDiagramGraph graph;
+
+    private List<Task> allTasks;
+
+    private Random random;
+
+    @Setup
+    public void createGraph() {
+        SyntheticData data = new SyntheticData(1);
+        random = data.getRandom();
+        graph = data.ganttGraph(tasks, maxDependencies);
+        allTasks = graph.getTasks();
+    }
+
+    @Benchmark
+    public GanttZKDiagramGraph enforceAllRestrictions() {
+        graph.enforceAllRestrictions();
+        return graph;
+    }
+
+    @Benchmark
+    public Task moveTask() {
+        Task task = allTasks.get(random.nextInt(allTasks.size()));
+        final GanttDate newStart = GanttDate.createFrom(SyntheticData.START
+                .plusDays(random.nextInt(tasks)));
+        task.doPositionModifications(new IModifications() {
+
+            @Override
+            public void doIt(IUpdatablePosition position) {
+                position.moveTo(newStart);
+            }
+        });
+        return task;
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.planner.limiting.entities.DateAndHour;
+import org.libreplan.business.planner.limiting.entities.Gap;
+import org.libreplan.business.planner.limiting.entities.LimitingResourceAllocator;
+import org.libreplan.business.planner.limiting.entities.LimitingResourceQueueElement;
+import org.libreplan.business.resources.entities.LimitingResourceQueue;
+import org.libreplan.business.resources.entities.Worker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Search of the gaps where an element fits in a {@link LimitingResourceQueue}.
+ * The element to insert is bigger than most of the gaps, so the search has to
+ * go through a big part of the queue.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LimitingResourceAllocatorBenchmark {
+
+    @Param({ "100", "1000" })
+    private int queueElements;
+
+    private LimitingResourceQueue queue;
+
+    private LimitingResourceQueueElement element;
+
+    private DateAndHour since;
+
+    @Setup
+    public void createQueue() {
+        SyntheticData data = new SyntheticData(1);
+        BaseCalendar calendar = data.calendarWithHolidays(queueElements * 5,
+                queueElements / 10);
+        Worker worker = data.worker(calendar);
+        queue = data.limitingQueue(calendar, worker, queueElements, 3);
+        LocalDate start = SyntheticData.START.plusDays(queueElements / 2);
+        element = data.limitingElement(calendar, worker, start, 4);
+        since = new DateAndHour(start, 0);
+    }
+
+    @Benchmark
+    public Gap firstValidGap() {
+        return LimitingResourceAllocator.getFirstValidGap(queue, element);
+    }
+
+    @Benchmark
+    public List<Gap> validGapsSince() {
+        return LimitingResourceAllocator.getValidGapsForElementSince(element,
+                queue, since);
+    }
+
+}
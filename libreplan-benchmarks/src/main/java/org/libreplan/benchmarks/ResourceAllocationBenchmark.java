@@ -0,0 +1,99 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.planner.entities.ResourceAllocation;
+import org.libreplan.business.planner.entities.SpecificResourceAllocation;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.planner.entities.allocationalgorithms.ResourcesPerDayModification;
+import org.libreplan.business.workingday.IntraDayDate;
+import org.libreplan.business.workingday.ResourcesPerDay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocation of specific resources to a task, both keeping the task length
+ * with {@link ResourcesPerDayModification} and calculating the end of the
+ * task until filling some hours.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResourceAllocationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int taskDays;
+
+    @Param({ "1", "5" })
+    private int resources;
+
+    private List<ResourcesPerDayModification> modifications;
+
+    private List<SpecificResourceAllocation> allocations;
+
+    @Setup
+    public void createAllocations() {
+        SyntheticData data = new SyntheticData(1);
+        BaseCalendar calendar = data.calendarWithHolidays(taskDays,
+                taskDays / 20);
+        Task task = data.task(calendar, SyntheticData.START, taskDays);
+        modifications = new ArrayList<ResourcesPerDayModification>();
+        allocations = new ArrayList<SpecificResourceAllocation>();
+        for (int i = 0; i < resources; i++) {
+            SpecificResourceAllocation allocation = data.specificAllocation(
+                    task, data.worker(calendar));
+            allocations.add(allocation);
+            modifications.add(ResourcesPerDayModification.create(allocation,
+                    ResourcesPerDay.amount(1)));
+        }
+    }
+
+    @Benchmark
+    public List<SpecificResourceAllocation> allocateOnTaskLength() {
+        ResourceAllocation.allocating(modifications).allocateOnTaskLength();
+        return allocations;
+    }
+
+    @Benchmark
+    public IntraDayDate untilFillingHours() {
+        return ResourceAllocation.allocating(modifications).untilAllocating(
+                hours(taskDays * 8 * resources / 2));
+    }
+
+}
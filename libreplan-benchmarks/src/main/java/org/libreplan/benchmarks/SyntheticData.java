@@ -0,0 +1,220 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.benchmarks;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.calendars.entities.CalendarData.Days;
+import org.libreplan.business.calendars.entities.CalendarException;
+import org.libreplan.business.calendars.entities.CalendarExceptionType;
+import org.libreplan.business.calendars.entities.CalendarExceptionTypeColor;
+import org.libreplan.business.calendars.entities.Capacity;
+import org.libreplan.business.planner.entities.SpecificResourceAllocation;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.planner.limiting.entities.LimitingResourceQueueElement;
+import org.libreplan.business.resources.entities.Criterion;
+import org.libreplan.business.resources.entities.LimitingResourceQueue;
+import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.workingday.IntraDayDate;
+import org.zkoss.ganttz.data.DefaultFundamentalProperties;
+import org.zkoss.ganttz.data.Dependency;
+import org.zkoss.ganttz.data.DependencyType;
+import org.zkoss.ganttz.data.GanttDate;
+import org.zkoss.ganttz.data.GanttDiagramGraph;
+import org.zkoss.ganttz.data.GanttDiagramGraph.GanttZKDiagramGraph;
+import org.zkoss.ganttz.data.TaskLeaf;
+import org.zkoss.ganttz.data.constraint.Constraint;
+
+/**
+ * Generators of the data used by the benchmarks. Everything is created in
+ * memory, so no database is needed. The generated data only depends on the
+ * seed of the provided {@link Random}, so two runs of a benchmark use the same
+ * data.
+ */
+public class SyntheticData {
+
+    public static final LocalDate START = new LocalDate(2013, 1, 7);
+
+    private static final long DAY_MILLISECONDS = 24 * 60 * 60 * 1000L;
+
+    private final Random random;
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * A calendar of eight hours from monday to friday with some holidays
+     * randomly spread along the provided days
+     */
+    public BaseCalendar calendarWithHolidays(int days, int holidays) {
+        BaseCalendar result = BaseCalendar.create();
+        result.setName("benchmark-" + random.nextInt());
+        Capacity eightHours = Capacity.create(hours(8))
+                .overAssignableWithoutLimit();
+        for (Days each : Days.values()) {
+            boolean weekend = each == Days.SATURDAY || each == Days.SUNDAY;
+            result.setCapacityAt(each, weekend ? Capacity.zero() : eightHours);
+        }
+        CalendarExceptionType holiday = CalendarExceptionType.create(
+                "holiday", CalendarExceptionTypeColor.DEFAULT, true);
+        for (int i = 0; i < holidays; i++) {
+            LocalDate day = START.plusDays(random.nextInt(days));
+            if (result.getExceptionDay(day) == null) {
+                result.addExceptionDay(CalendarException.create(day,
+                        Capacity.zero(), holiday));
+            }
+        }
+        return result;
+    }
+
+    public Worker worker(BaseCalendar calendar) {
+        Worker result = Worker.create();
+        result.setFirstName("benchmark");
+        result.setSurname("worker " + random.nextInt());
+        result.setCalendar(calendar.newDerivedResourceCalendar());
+        return result;
+    }
+
+    /**
+     * A mocked task, so the allocations can be done without the whole order
+     * structure
+     */
+    public Task task(BaseCalendar calendar, LocalDate start, int days) {
+        Task result = createNiceMock(Task.class);
+        IntraDayDate startDate = IntraDayDate.startOfDay(start);
+        IntraDayDate endDate = IntraDayDate.startOfDay(start.plusDays(days));
+        expect(result.getCalendar()).andReturn(calendar).anyTimes();
+        expect(result.getStartDate()).andReturn(
+                startDate.toDateTimeAtStartOfDay().toDate()).anyTimes();
+        expect(result.getIntraDayStartDate()).andReturn(startDate)
+                .anyTimes();
+        expect(result.getEndDate()).andReturn(
+                endDate.toDateTimeAtStartOfDay().toDate()).anyTimes();
+        expect(result.getIntraDayEndDate()).andReturn(endDate).anyTimes();
+        expect(result.getFirstDayNotConsolidated()).andReturn(startDate)
+                .anyTimes();
+        expect(result.getCriterions()).andReturn(
+                Collections.<Criterion> emptySet()).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    public SpecificResourceAllocation specificAllocation(Task task,
+            Worker worker) {
+        SpecificResourceAllocation result = SpecificResourceAllocation
+                .create(task);
+        result.setResource(worker);
+        return result;
+    }
+
+    /**
+     * A limiting queue for the worker with the provided number of elements.
+     * Between two consecutive elements there is a gap of zero to
+     * <code>maxGapDays</code> days.
+     */
+    public LimitingResourceQueue limitingQueue(BaseCalendar calendar,
+            Worker worker, int elements, int maxGapDays) {
+        LimitingResourceQueue result = LimitingResourceQueue.create();
+        result.setResource(worker);
+        LocalDate current = START;
+        for (int i = 0; i < elements; i++) {
+            LocalDate start = current.plusDays(random.nextInt(maxGapDays + 1));
+            int days = 1 + random.nextInt(5);
+            LimitingResourceQueueElement element = limitingElement(calendar,
+                    worker, start, days);
+            element.setStartDate(start);
+            element.setStartHour(0);
+            element.setEndDate(start.plusDays(days));
+            element.setEndHour(0);
+            result.addLimitingResourceQueueElement(element);
+            current = start.plusDays(days);
+        }
+        return result;
+    }
+
+    public LimitingResourceQueueElement limitingElement(
+            BaseCalendar calendar, Worker worker, LocalDate start, int days) {
+        SpecificResourceAllocation allocation = specificAllocation(
+                task(calendar, start, days), worker);
+        allocation.setIntendedTotalHours(days * 8);
+        LimitingResourceQueueElement result = LimitingResourceQueueElement
+                .create();
+        result.setResourceAllocation(allocation);
+        result.setEarlierStartDateBecauseOfGantt(start.toDateTimeAtStartOfDay()
+                .toDate());
+        return result;
+    }
+
+    /**
+     * A Gantt graph with the provided number of tasks. Each task has from
+     * zero to <code>maxDependencies</code> end-start dependencies coming from
+     * previous tasks, so the graph has no cycles.
+     */
+    public GanttZKDiagramGraph ganttGraph(int tasks, int maxDependencies) {
+        GanttZKDiagramGraph result = GanttDiagramGraph.create(false,
+                Collections.<Constraint<GanttDate>> emptyList(),
+                Collections.<Constraint<GanttDate>> emptyList(), false);
+        List<org.zkoss.ganttz.data.Task> created = new ArrayList<org.zkoss.ganttz.data.Task>();
+        for (int i = 0; i < tasks; i++) {
+            org.zkoss.ganttz.data.Task task = ganttTask("task " + i,
+                    START.plusDays(random.nextInt(tasks)),
+                    1 + random.nextInt(10));
+            result.addTopLevel(task);
+            int dependencies = i == 0 ? 0 : random.nextInt(maxDependencies + 1);
+            for (int j = 0; j < dependencies; j++) {
+                org.zkoss.ganttz.data.Task origin = created.get(random
+                        .nextInt(created.size()));
+                if (!result.contains(new Dependency(origin, task,
+                        DependencyType.END_START))) {
+                    result.add(new Dependency(origin, task,
+                            DependencyType.END_START));
+                }
+            }
+            created.add(task);
+        }
+        return result;
+    }
+
+    public static org.zkoss.ganttz.data.Task ganttTask(String name,
+            LocalDate start, int days) {
+        Date begin = start.toDateTimeAtStartOfDay().toDate();
+        return new TaskLeaf(new DefaultFundamentalProperties(name, begin,
+                days * DAY_MILLISECONDS, "", begin, begin, begin,
+                BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+}
@@ -28,7 +28,10 @@ import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 import org.libreplan.business.calendars.entities.BaseCalendar;
 import org.libreplan.business.calendars.entities.CalendarData;
 import org.libreplan.business.calendars.entities.ResourceCalendar;
@@ -74,6 +77,17 @@ public class BaseCalendarDAO extends IntegrationEntityDAO<BaseCalendar>
         }
     }
 
+    /**
+     * Like {@link #getBaseCalendars()}, resource calendars are excluded
+     */
+    @Override
+    protected Criteria createCriteriaForAll() {
+        DetachedCriteria resourceCalendars = DetachedCriteria.forClass(
+                ResourceCalendar.class).setProjection(Projections.id());
+        return super.createCriteriaForAll().add(
+                Subqueries.propertyNotIn("id", resourceCalendars));
+    }
+
     @Override
     public List<BaseCalendar> findByParent(BaseCalendar baseCalendar) {
         if (baseCalendar == null) {
@@ -44,8 +44,6 @@ import org.libreplan.business.common.entities.EntitySequence;
 import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.resources.entities.VirtualWorker;
 import org.libreplan.business.workingday.EffortDuration;
-import org.libreplan.business.workingday.EffortDuration.IEffortFrom;
-import org.libreplan.business.workingday.IntraDayDate;
 import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 import org.libreplan.business.workingday.ResourcesPerDay;
 
@@ -106,6 +104,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
 
         if ((calendarDataVersions != null) && (!calendarDataVersions.isEmpty())) {
             baseCalendar.calendarDataVersions = calendarDataVersions;
+            baseCalendar.capacityChanged();
         }
 
         if (parent != null) {
@@ -141,6 +140,16 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
 
     private Integer lastSequenceCode = 0;
 
+    private volatile CalendarCapacityIndex capacityIndex;
+
+    /**
+     * Not persisted. It's increased whenever something affecting the capacity
+     * of this calendar is modified, so the {@link CalendarCapacityIndex
+     * indexes} built from it, including the ones of the derived calendars,
+     * are discarded. It's only modified by the thread using the session.
+     */
+    private volatile long capacityVersion = 0;
+
     /**
      * Constructor for hibernate. Do not use!
      */
@@ -245,6 +254,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         }
 
         exceptions.add(day);
+        capacityChanged();
     }
 
     public void removeExceptionDay(LocalDate date)
@@ -256,6 +266,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         }
 
         exceptions.remove(day);
+        capacityChanged();
     }
 
     public void updateExceptionDay(LocalDate date, Capacity capacity,
@@ -277,13 +288,8 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
     }
 
     public CalendarException getExceptionDay(LocalDate date) {
-        for (CalendarException exceptionDay : getExceptions(date)) {
-            if (exceptionDay.getDate().equals(date)) {
-                return exceptionDay;
-            }
-        }
-
-        return null;
+        return getCapacityIndex().getExceptionAt(
+                CalendarCapacityIndex.toDayNumber(date));
     }
 
     public EffortDuration getCapacityOn(PartialDay date) {
@@ -298,18 +304,51 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
     }
 
     private Capacity findCapacityAt(LocalDate date) {
-        if (!isActive(date)) {
-            return Capacity.zero();
-        }
-        CalendarException exceptionDay = getExceptionDay(date);
-        if (exceptionDay != null) {
-            return exceptionDay.getCapacity();
+        return getCapacityIndex().getCapacityAt(date);
+    }
+
+    void capacityChanged() {
+        capacityVersion++;
+    }
+
+    long getCapacityVersion() {
+        return capacityVersion;
+    }
+
+    /**
+     * Returns the {@link CalendarCapacityIndex} for this calendar, building it
+     * again if this calendar or any of its parents has been modified since the
+     * last time it was built.<br />
+     *
+     * Several threads can ask for the capacity at the same time, so the index
+     * is only built by one of them. Building it reads all the data of the
+     * calendar and its parents, so if it can be loaded lazily
+     * {@link #loadCapacityIndex()} must be called first in the thread owning
+     * the session.
+     */
+    CalendarCapacityIndex getCapacityIndex() {
+        CalendarCapacityIndex result = capacityIndex;
+        if (result != null && result.isUpToDate()) {
+            return result;
+        }
+        synchronized (this) {
+            result = capacityIndex;
+            if (result == null || !result.isUpToDate()) {
+                result = CalendarCapacityIndex.build(this);
+                capacityIndex = result;
+            }
+            return result;
         }
-        return getCapacityConsideringCalendarDatasOn(date, getDayFrom(date));
     }
 
-    private Days getDayFrom(LocalDate date) {
-        return Days.values()[date.getDayOfWeek() - 1];
+    /**
+     * Builds the {@link CalendarCapacityIndex} if it's not up to date, loading
+     * all the data about the capacity of this calendar and its parents. While
+     * the calendar is not modified, its capacity can be asked from other
+     * threads afterwards.
+     */
+    public void loadCapacityIndex() {
+        getCapacityIndex();
     }
 
     public Capacity getCapacityConsideringCalendarDatasOn(LocalDate date, Days day) {
@@ -344,18 +383,39 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
      */
     public EffortDuration getWorkableDuration(LocalDate init,
             LocalDate endInclusive) {
-        Iterable<PartialDay> daysBetween = IntraDayDate.startOfDay(init)
-                .daysUntil(
-                        IntraDayDate.startOfDay(endInclusive).nextDayAtStart());
-
-        return EffortDuration.sum(daysBetween, new IEffortFrom<PartialDay>() {
+        LocalDate endExclusive = endInclusive.plusDays(1);
+        int size = CalendarCapacityIndex.toDayNumber(endExclusive)
+                - CalendarCapacityIndex.toDayNumber(init);
+        if (size <= 0) {
+            return EffortDuration.zero();
+        }
+        int[] standardSeconds = new int[size];
+        fillCapacitiesBetween(init, endExclusive, standardSeconds, null);
+        int result = 0;
+        for (int each : standardSeconds) {
+            result += each;
+        }
+        return EffortDuration.seconds(result);
+    }
 
-            @Override
-            public EffortDuration from(PartialDay each) {
-                return getCapacityOn(each);
+    @Override
+    public void fillCapacitiesBetween(LocalDate startInclusive,
+            LocalDate endExclusive, int[] standardSeconds, int[] extraSeconds) {
+        int first = CalendarCapacityIndex.toDayNumber(startInclusive);
+        int size = CalendarCapacityIndex.toDayNumber(endExclusive) - first;
+        Validate.isTrue(standardSeconds.length >= size);
+        Validate.isTrue(extraSeconds == null || extraSeconds.length >= size);
+        CalendarCapacityIndex index = getCapacityIndex();
+        int units = getCalendarUnits();
+        for (int i = 0; i < size; i++) {
+            Capacity capacity = index.getCapacityAt(first + i);
+            standardSeconds[i] = capacity.getStandardEffort().getSeconds()
+                    * units;
+            if (extraSeconds != null) {
+                extraSeconds[i] = capacity.isOverAssignableWithoutLimit() ? UNLIMITED_EXTRA_EFFORT
+                        : capacity.getAllowedExtraEffort().getSeconds() * units;
             }
-
-        });
+        }
     }
 
     /**
@@ -443,6 +503,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
 
                         Collections.sort(calendarDataVersions,
                                 CalendarData.BY_EXPIRING_DATE_COMPARATOR);
+                        capacityChanged();
                         return newCalendarData;
                     }
                 } else {
@@ -489,6 +550,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         calendarDataVersions.add(newCalendarData);
         Collections.sort(calendarDataVersions,
                 CalendarData.BY_EXPIRING_DATE_COMPARATOR);
+        capacityChanged();
         return newCalendarData;
     }
 
@@ -508,6 +570,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         calendarDataVersions.add(newCalendarData);
         Collections.sort(calendarDataVersions,
                 CalendarData.BY_EXPIRING_DATE_COMPARATOR);
+        capacityChanged();
         return newCalendarData;
     }
 
@@ -564,6 +627,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
                 calendarDataVersions.add(version);
                 Collections.sort(calendarDataVersions,
                         CalendarData.BY_EXPIRING_DATE_COMPARATOR);
+                capacityChanged();
                 return;
             }
         }
@@ -585,6 +649,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
                             "the date is null and overlap with the other work week.");
                 }
                 calendarDataVersions.add(i, version);
+                capacityChanged();
                 return;
             }
         }
@@ -592,7 +657,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         calendarDataVersions.add(version);
         Collections.sort(calendarDataVersions,
                 CalendarData.BY_EXPIRING_DATE_COMPARATOR);
-
+        capacityChanged();
     }
 
     public BaseCalendar newCopy() {
@@ -806,6 +871,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         } else {
             calendarDataVersions.remove(calendarData);
         }
+        capacityChanged();
     }
 
     public LocalDate getValidFrom(CalendarData calendarData) {
@@ -857,6 +923,7 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
                 }
             }
             calendarAvailabilities.add(calendarAvailability);
+            capacityChanged();
         }
     }
 
@@ -864,18 +931,12 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
             CalendarAvailability calendarAvailability)
             throws IllegalArgumentException {
         calendarAvailabilities.remove(calendarAvailability);
+        capacityChanged();
     }
 
     public boolean isActive(LocalDate date) {
-        if (getCalendarAvailabilities().isEmpty()) {
-            return true;
-        }
-        for (CalendarAvailability calendarAvailability : getCalendarAvailabilities()) {
-            if (calendarAvailability.isActive(date)) {
-                return true;
-            }
-        }
-        return false;
+        return getCapacityIndex().isActive(
+                CalendarCapacityIndex.toDayNumber(date));
     }
 
     public boolean isActiveBetween(LocalDate startDate, LocalDate endDate) {
@@ -968,6 +1029,11 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
         return duration.atNearestMinute();
     }
 
+    protected Capacity multiplyByCalendarUnits(Capacity capacity) {
+        int units = getCalendarUnits();
+        return units == 1 ? capacity : capacity.multiplyBy(units);
+    }
+
     /**
      * <p>
      * Calendar units are the number of units this calendar is applied to. For
@@ -979,8 +1045,8 @@ public class BaseCalendar extends IntegrationEntity implements ICalendar,
      * </p>
      *
      */
-    protected Capacity multiplyByCalendarUnits(Capacity capacity) {
-        return capacity;
+    protected int getCalendarUnits() {
+        return 1;
     }
 
     @Override
@@ -58,6 +58,12 @@ public class CalendarAvailability extends IntegrationEntity {
 
     private LocalDate endDate;
 
+    private final CalendarCapacityIndex.PartOwner capacityOwner = new CalendarCapacityIndex.PartOwner();
+
+    void indexedBy(BaseCalendar calendar) {
+        capacityOwner.indexedBy(calendar);
+    }
+
     public static final Comparator<CalendarAvailability> BY_START_DATE_COMPARATOR = new Comparator<CalendarAvailability>() {
 
         @Override
@@ -94,6 +100,7 @@ public class CalendarAvailability extends IntegrationEntity {
             }
         }
         this.startDate = startDate;
+        capacityOwner.modified();
     }
 
     public LocalDate getEndDate() {
@@ -108,6 +115,7 @@ public class CalendarAvailability extends IntegrationEntity {
             }
         }
         this.endDate = endDate;
+        capacityOwner.modified();
     }
 
     public boolean isActive(LocalDate date) {
@@ -0,0 +1,460 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.calendars.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.CalendarData.Days;
+
+/**
+ * <p>
+ * Immutable snapshot of the capacity defined by a {@link BaseCalendar}. It
+ * flattens the parent chain, the {@link CalendarData} versions, the
+ * {@link CalendarException exceptions} and the {@link CalendarAvailability
+ * availabilities} into sorted primitive arrays, so the capacity at a date is
+ * found with a couple of binary searches instead of traversing the calendar
+ * hierarchy.
+ * </p>
+ * <p>
+ * Days are represented as the number of days since 1970-01-01. The index
+ * keeps the capacity version of the calendar and of all its ancestors at the
+ * time it was built. Any modification on a calendar or its parts increases the
+ * version of that calendar, so the indexes of it and of the calendars derived
+ * from it are discarded the next time they are used, while the indexes of
+ * unrelated calendars are kept.
+ * </p>
+ */
+public class CalendarCapacityIndex {
+
+    private static final AtomicLong generation = new AtomicLong();
+
+    private static final int DAYS_PER_WEEK = Days.values().length;
+
+    /**
+     * Makes all the indexes built until now to be considered out of date. It's
+     * only needed when the calendar affected by a modification is not known.
+     */
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * <p>
+     * Remembers the calendar whose indexes include a {@link CalendarData}, a
+     * {@link CalendarException} or a {@link CalendarAvailability}, since they
+     * don't know the calendar they belong to. When the part is modified the
+     * version of that calendar is increased. If no index includes the part
+     * yet, there is nothing to discard.
+     * </p>
+     * <p>
+     * The copies of a calendar share its exceptions. If a part is included by
+     * the indexes of several calendars, all the indexes are discarded when it
+     * is modified.
+     * </p>
+     * <p>
+     * The indexes of different calendars can be built at the same time by
+     * several threads, so the owner is synchronized.
+     * </p>
+     */
+    static class PartOwner {
+
+        private BaseCalendar calendar;
+
+        private boolean several = false;
+
+        synchronized void indexedBy(BaseCalendar calendar) {
+            if (this.calendar != null && this.calendar != calendar) {
+                several = true;
+            }
+            this.calendar = calendar;
+        }
+
+        synchronized void modified() {
+            if (several) {
+                invalidateAll();
+            } else if (calendar != null) {
+                calendar.capacityChanged();
+            }
+        }
+    }
+
+    static CalendarCapacityIndex build(BaseCalendar calendar) {
+        long builtAt = generation.get();
+        BaseCalendar[] calendars = calendarAndAncestors(calendar);
+        long[] versions = new long[calendars.length];
+        for (int i = 0; i < calendars.length; i++) {
+            versions[i] = calendars[i].getCapacityVersion();
+            indexParts(calendars[i]);
+        }
+        return new CalendarCapacityIndex(builtAt, calendars, versions,
+                buildAvailabilities(calendar), buildExceptions(calendar),
+                buildSegments(calendar));
+    }
+
+    /**
+     * @return the calendar and the parents of all its versions, recursively
+     */
+    private static BaseCalendar[] calendarAndAncestors(BaseCalendar calendar) {
+        Set<BaseCalendar> result = new LinkedHashSet<BaseCalendar>();
+        collectAncestors(calendar, result);
+        return result.toArray(new BaseCalendar[0]);
+    }
+
+    private static void collectAncestors(BaseCalendar calendar,
+            Set<BaseCalendar> result) {
+        if (!result.add(calendar)) {
+            return;
+        }
+        for (CalendarData version : calendar.getCalendarDataVersions()) {
+            BaseCalendar parent = version.getParent();
+            if (parent != null) {
+                collectAncestors(parent, result);
+            }
+        }
+    }
+
+    private static void indexParts(BaseCalendar calendar) {
+        for (CalendarData each : calendar.getCalendarDataVersions()) {
+            each.indexedBy(calendar);
+        }
+        for (CalendarException each : calendar.getOwnExceptions()) {
+            each.indexedBy(calendar);
+        }
+        for (CalendarAvailability each : calendar.getCalendarAvailabilities()) {
+            each.indexedBy(calendar);
+        }
+    }
+
+    /**
+     * Converts the date to the number of days since 1970-01-01. It's computed
+     * arithmetically, so no objects are created.
+     */
+    public static int toDayNumber(LocalDate date) {
+        int year = date.getYear();
+        int month = date.getMonthOfYear();
+        int day = date.getDayOfMonth();
+        if (month <= 2) {
+            year--;
+        }
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5
+                + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+                + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Inverse of {@link #toDayNumber(LocalDate)}
+     */
+    public static LocalDate fromDayNumber(int dayNumber) {
+        int z = dayNumber + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra
+                - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new LocalDate(year, month, day);
+    }
+
+    /**
+     * @return the index of the day of week, zero being monday
+     */
+    static int dayOfWeekIndex(int dayNumber) {
+        // 1970-01-01 was thursday
+        int result = (dayNumber + 3) % DAYS_PER_WEEK;
+        return result < 0 ? result + DAYS_PER_WEEK : result;
+    }
+
+    private static int[][] buildAvailabilities(BaseCalendar calendar) {
+        List<CalendarAvailability> availabilities = new ArrayList<CalendarAvailability>(
+                calendar.getCalendarAvailabilities());
+        if (availabilities.isEmpty()) {
+            return null;
+        }
+        Collections.sort(availabilities,
+                CalendarAvailability.BY_START_DATE_COMPARATOR);
+        List<int[]> merged = new ArrayList<int[]>();
+        for (CalendarAvailability each : availabilities) {
+            int start = toDayNumber(each.getStartDate());
+            int endInclusive = each.getEndDate() == null ? Integer.MAX_VALUE
+                    : toDayNumber(each.getEndDate());
+            int[] last = merged.isEmpty() ? null : merged
+                    .get(merged.size() - 1);
+            if (last != null
+                    && (last[1] == Integer.MAX_VALUE || start <= last[1] + 1)) {
+                last[1] = Math.max(last[1], endInclusive);
+            } else {
+                merged.add(new int[] { start, endInclusive });
+            }
+        }
+        int[] starts = new int[merged.size()];
+        int[] ends = new int[merged.size()];
+        for (int i = 0; i < merged.size(); i++) {
+            starts[i] = merged.get(i)[0];
+            ends[i] = merged.get(i)[1];
+        }
+        return new int[][] { starts, ends };
+    }
+
+    private static final Comparator<CalendarException> BY_DATE = new Comparator<CalendarException>() {
+
+        @Override
+        public int compare(CalendarException o1, CalendarException o2) {
+            return o1.getDate().compareTo(o2.getDate());
+        }
+    };
+
+    /**
+     * The exceptions applying at a date are the own exceptions plus the
+     * exceptions of the parent at that date, so the parent's ones are only
+     * taken into account inside the range of each {@link CalendarData}
+     * version.
+     */
+    private static List<CalendarException> buildExceptions(
+            BaseCalendar calendar) {
+        Set<CalendarException> own = calendar.getOwnExceptions();
+        Set<LocalDate> added = new HashSet<LocalDate>();
+        for (CalendarException each : own) {
+            added.add(each.getDate());
+        }
+        List<CalendarException> result = new ArrayList<CalendarException>(
+                own);
+        LocalDate validFrom = null;
+        for (CalendarData version : calendar.getCalendarDataVersions()) {
+            BaseCalendar parent = version.getParent();
+            LocalDate expiringDate = version.getExpiringDate();
+            if (parent != null) {
+                for (CalendarException each : parent.getExceptions()) {
+                    LocalDate date = each.getDate();
+                    if (isInside(date, validFrom, expiringDate)
+                            && added.add(date)) {
+                        result.add(each);
+                    }
+                }
+            }
+            validFrom = expiringDate;
+        }
+        Collections.sort(result, BY_DATE);
+        return result;
+    }
+
+    private static boolean isInside(LocalDate date, LocalDate validFrom,
+            LocalDate expiringDate) {
+        return (validFrom == null || date.compareTo(validFrom) >= 0)
+                && (expiringDate == null || date.compareTo(expiringDate) < 0);
+    }
+
+    private static Segments buildSegments(BaseCalendar calendar) {
+        SortedSet<LocalDate> boundaries = new TreeSet<LocalDate>();
+        collectBoundaries(calendar, null, null, boundaries,
+                new HashSet<BaseCalendar>());
+        int[] starts = new int[boundaries.size() + 1];
+        Capacity[] capacities = new Capacity[starts.length * DAYS_PER_WEEK];
+        starts[0] = Integer.MIN_VALUE;
+        int i = 0;
+        LocalDate representative = boundaries.isEmpty() ? new LocalDate()
+                : boundaries.first().minusDays(1);
+        fillSegment(calendar, capacities, i, representative);
+        for (LocalDate each : boundaries) {
+            i++;
+            starts[i] = toDayNumber(each);
+            fillSegment(calendar, capacities, i, each);
+        }
+        return new Segments(starts, capacities);
+    }
+
+    private static void fillSegment(BaseCalendar calendar,
+            Capacity[] capacities, int segment, LocalDate representative) {
+        for (Days day : Days.values()) {
+            capacities[segment * DAYS_PER_WEEK + day.ordinal()] = calendar
+                    .getCapacityConsideringCalendarDatasOn(representative, day);
+        }
+    }
+
+    /**
+     * Collects the dates in which the week capacities could change, i.e. the
+     * expiring dates of the versions of the calendar and its ancestors,
+     * restricted to the period in which each ancestor is used.
+     */
+    private static void collectBoundaries(BaseCalendar calendar,
+            LocalDate from, LocalDate to, SortedSet<LocalDate> result,
+            Set<BaseCalendar> visiting) {
+        if (!visiting.add(calendar)) {
+            return;
+        }
+        LocalDate validFrom = null;
+        for (CalendarData version : calendar.getCalendarDataVersions()) {
+            LocalDate expiringDate = version.getExpiringDate();
+            LocalDate start = max(validFrom, from);
+            LocalDate end = min(expiringDate, to);
+            if (start == null || end == null || start.compareTo(end) < 0) {
+                if (expiringDate != null
+                        && isInside(expiringDate, from, to)) {
+                    result.add(expiringDate);
+                }
+                BaseCalendar parent = version.getParent();
+                if (parent != null) {
+                    collectBoundaries(parent, start, end, result, visiting);
+                }
+            }
+            validFrom = expiringDate;
+        }
+        visiting.remove(calendar);
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static class Segments {
+
+        private final int[] starts;
+
+        private final Capacity[] capacitiesByDayOfWeek;
+
+        Segments(int[] starts, Capacity[] capacitiesByDayOfWeek) {
+            this.starts = starts;
+            this.capacitiesByDayOfWeek = capacitiesByDayOfWeek;
+        }
+
+        Capacity at(int dayNumber) {
+            int position = Arrays.binarySearch(starts, dayNumber);
+            int segment = position >= 0 ? position : -position - 2;
+            return capacitiesByDayOfWeek[segment * DAYS_PER_WEEK
+                    + dayOfWeekIndex(dayNumber)];
+        }
+    }
+
+    private final long builtAt;
+
+    private final BaseCalendar[] calendars;
+
+    private final long[] versions;
+
+    private final int[] availabilityStarts;
+
+    private final int[] availabilityEnds;
+
+    private final int[] exceptionDays;
+
+    private final CalendarException[] exceptions;
+
+    private final Segments segments;
+
+    private CalendarCapacityIndex(long builtAt, BaseCalendar[] calendars,
+            long[] versions, int[][] availabilities,
+            List<CalendarException> sortedExceptions, Segments segments) {
+        this.builtAt = builtAt;
+        this.calendars = calendars;
+        this.versions = versions;
+        this.availabilityStarts = availabilities == null ? null
+                : availabilities[0];
+        this.availabilityEnds = availabilities == null ? null
+                : availabilities[1];
+        this.exceptionDays = new int[sortedExceptions.size()];
+        this.exceptions = sortedExceptions
+                .toArray(new CalendarException[0]);
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptionDays[i] = toDayNumber(exceptions[i].getDate());
+        }
+        this.segments = segments;
+    }
+
+    /**
+     * @return <code>false</code> if the calendar or any of its ancestors has
+     *         been modified since this index was built
+     */
+    public boolean isUpToDate() {
+        if (builtAt != generation.get()) {
+            return false;
+        }
+        for (int i = 0; i < calendars.length; i++) {
+            if (calendars[i].getCapacityVersion() != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isActive(int dayNumber) {
+        if (availabilityStarts == null) {
+            return true;
+        }
+        int position = Arrays.binarySearch(availabilityStarts, dayNumber);
+        if (position >= 0) {
+            return true;
+        }
+        int previous = -position - 2;
+        return previous >= 0 && dayNumber <= availabilityEnds[previous];
+    }
+
+    public CalendarException getExceptionAt(int dayNumber) {
+        int position = Arrays.binarySearch(exceptionDays, dayNumber);
+        return position >= 0 ? exceptions[position] : null;
+    }
+
+    /**
+     * @return the capacity at the given day without taking into account the
+     *         calendar units
+     */
+    public Capacity getCapacityAt(int dayNumber) {
+        if (!isActive(dayNumber)) {
+            return Capacity.zero();
+        }
+        CalendarException exception = getExceptionAt(dayNumber);
+        if (exception != null) {
+            return exception.getCapacity();
+        }
+        return segments.at(dayNumber);
+    }
+
+    public Capacity getCapacityAt(LocalDate date) {
+        return getCapacityAt(toDayNumber(date));
+    }
+
+}
@@ -76,6 +76,7 @@ public class CalendarData extends IntegrationEntity {
         if (parent != null) {
             this.parent = parent;
         }
+        capacityOwner.modified();
     }
 
     public void updateCapacitiesPerDay(Map<Integer, Capacity> capacityPerDay)
@@ -97,6 +98,12 @@ public class CalendarData extends IntegrationEntity {
 
     private BaseCalendar parent;
 
+    private final CalendarCapacityIndex.PartOwner capacityOwner = new CalendarCapacityIndex.PartOwner();
+
+    void indexedBy(BaseCalendar calendar) {
+        capacityOwner.indexedBy(calendar);
+    }
+
     public enum Days {
         MONDAY(Calendar.MONDAY),
         TUESDAY(Calendar.TUESDAY),
@@ -128,7 +135,7 @@ public class CalendarData extends IntegrationEntity {
     public CalendarData() {
         capacityPerDay = new HashMap<Integer, Capacity>();
         for (Days each : Days.values()) {
-            setCapacityAt(each, null);
+            capacityPerDay.put(each.ordinal(), null);
         }
     }
 
@@ -162,6 +169,7 @@ public class CalendarData extends IntegrationEntity {
 
     public void setCapacityAt(Days day, Capacity capacity) {
         capacityPerDay.put(day.ordinal(), capacity);
+        capacityOwner.modified();
     }
 
 
@@ -182,6 +190,7 @@ public class CalendarData extends IntegrationEntity {
 
     public void setExpiringDate(LocalDate expiringDate) {
         this.expiringDate = expiringDate;
+        capacityOwner.modified();
     }
 
     public CalendarData copy() {
@@ -200,10 +209,12 @@ public class CalendarData extends IntegrationEntity {
 
     public void setParent(BaseCalendar parent) {
         this.parent = parent;
+        capacityOwner.modified();
     }
 
     public void removeExpiringDate() {
         this.expiringDate = null;
+        capacityOwner.modified();
     }
 
     public boolean isPosteriorTo(LocalDate date) {
@@ -82,6 +82,7 @@ public class CalendarException extends IntegrationEntity {
         if (type != null) {
             this.type = type;
         }
+        capacityOwner.modified();
     }
 
     private LocalDate date;
@@ -90,6 +91,12 @@ public class CalendarException extends IntegrationEntity {
 
     private CalendarExceptionType type;
 
+    private final CalendarCapacityIndex.PartOwner capacityOwner = new CalendarCapacityIndex.PartOwner();
+
+    void indexedBy(BaseCalendar calendar) {
+        capacityOwner.indexedBy(calendar);
+    }
+
     /**
      * Constructor for hibernate. Do not use!
      */
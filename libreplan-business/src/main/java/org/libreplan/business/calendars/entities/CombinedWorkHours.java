@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.lang.Validate;
+import org.joda.time.Days;
 import org.joda.time.LocalDate;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.IntraDayDate.PartialDay;
@@ -103,6 +104,36 @@ public abstract class CombinedWorkHours implements ICalendar {
         return result;
     }
 
+    @Override
+    public void fillCapacitiesBetween(LocalDate startInclusive,
+            LocalDate endExclusive, int[] standardSeconds, int[] extraSeconds) {
+        int size = Math.max(0, Days.daysBetween(startInclusive, endExclusive)
+                .getDays());
+        int[] eachStandard = null;
+        int[] eachExtra = null;
+        for (ICalendar each : calendars) {
+            if (eachStandard == null) {
+                each.fillCapacitiesBetween(startInclusive, endExclusive,
+                        standardSeconds, extraSeconds);
+                eachStandard = new int[size];
+                eachExtra = extraSeconds != null ? new int[size] : null;
+                continue;
+            }
+            each.fillCapacitiesBetween(startInclusive, endExclusive,
+                    eachStandard, eachExtra);
+            for (int i = 0; i < size; i++) {
+                standardSeconds[i] = updateCapacity(standardSeconds[i],
+                        eachStandard[i]);
+            }
+            if (extraSeconds != null) {
+                for (int i = 0; i < size; i++) {
+                    extraSeconds[i] = updateExtraEffort(extraSeconds[i],
+                            eachExtra[i]);
+                }
+            }
+        }
+    }
+
     @Override
     public AvailabilityTimeLine getAvailability() {
         AvailabilityTimeLine result = AvailabilityTimeLine.allValid();
@@ -123,6 +154,15 @@ public abstract class CombinedWorkHours implements ICalendar {
 
     protected abstract Capacity updateCapacity(Capacity a, Capacity current);
 
+    protected abstract int updateCapacity(int currentSeconds, int eachSeconds);
+
+    /**
+     * Same as {@link #updateCapacity(int, int)} but for the allowed extra
+     * effort, that can be {@link ICalendar#UNLIMITED_EXTRA_EFFORT}
+     */
+    protected abstract int updateExtraEffort(int currentSeconds,
+            int eachSeconds);
+
     @Override
     public boolean thereAreCapacityFor(AvailabilityTimeLine availability,
             ResourcesPerDay resourcesPerDay, EffortDuration durationToAllocate) {
@@ -161,6 +201,22 @@ class Min extends CombinedWorkHours {
         return Capacity.min(accumulated, current);
     }
 
+    @Override
+    protected int updateCapacity(int currentSeconds, int eachSeconds) {
+        return Math.min(currentSeconds, eachSeconds);
+    }
+
+    @Override
+    protected int updateExtraEffort(int currentSeconds, int eachSeconds) {
+        if (currentSeconds == UNLIMITED_EXTRA_EFFORT) {
+            return eachSeconds;
+        }
+        if (eachSeconds == UNLIMITED_EXTRA_EFFORT) {
+            return currentSeconds;
+        }
+        return Math.min(currentSeconds, eachSeconds);
+    }
+
 }
 
 class Max extends CombinedWorkHours {
@@ -191,4 +247,18 @@ class Max extends CombinedWorkHours {
     protected Capacity updateCapacity(Capacity accumulated, Capacity current) {
         return Capacity.max(accumulated, current);
     }
+
+    @Override
+    protected int updateCapacity(int currentSeconds, int eachSeconds) {
+        return Math.max(currentSeconds, eachSeconds);
+    }
+
+    @Override
+    protected int updateExtraEffort(int currentSeconds, int eachSeconds) {
+        if (currentSeconds == UNLIMITED_EXTRA_EFFORT
+                || eachSeconds == UNLIMITED_EXTRA_EFFORT) {
+            return UNLIMITED_EXTRA_EFFORT;
+        }
+        return Math.max(currentSeconds, eachSeconds);
+    }
 }
@@ -28,6 +28,13 @@ import org.libreplan.business.workingday.ResourcesPerDay;
 
 public interface ICalendar {
 
+    /**
+     * Value stored by
+     * {@link #fillCapacitiesBetween(LocalDate, LocalDate, int[], int[])} for
+     * the days in which the allowed extra effort has no limit
+     */
+    public static final int UNLIMITED_EXTRA_EFFORT = -1;
+
     /**
      * Translates the received amount into the corresponding duration at the
      * given date. It takes into account the partial capacity of the day.
@@ -60,6 +67,25 @@ public interface ICalendar {
      */
     public Capacity getCapacityWithOvertime(LocalDate date);
 
+    /**
+     * Calculates in one pass the capacities for all the days in the interval
+     * from <code>startInclusive</code> to <code>endExclusive</code>. The
+     * position <code>i</code> of the arrays corresponds to
+     * <code>startInclusive.plusDays(i)</code>. It's equivalent to calling
+     * {@link #getCapacityWithOvertime(LocalDate)} for each day, but no
+     * {@link Capacity} or {@link EffortDuration} is created per day.
+     *
+     * @param standardSeconds
+     *            it receives the seconds of standard effort of each day. It
+     *            must have at least a position for each day of the interval
+     * @param extraSeconds
+     *            it receives the seconds of allowed extra effort of each day or
+     *            {@link #UNLIMITED_EXTRA_EFFORT}. It can be <code>null</code>
+     *            if the overtime information is not needed
+     */
+    public void fillCapacitiesBetween(LocalDate startInclusive,
+            LocalDate endExclusive, int[] standardSeconds, int[] extraSeconds);
+
     public AvailabilityTimeLine getAvailability();
 
     public boolean thereAreCapacityFor(AvailabilityTimeLine availability,
@@ -21,7 +21,10 @@
 
 package org.libreplan.business.calendars.entities;
 
+import java.util.Arrays;
+
 import org.apache.commons.lang.Validate;
+import org.joda.time.Days;
 import org.joda.time.LocalDate;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.IntraDayDate.PartialDay;
@@ -71,4 +74,16 @@ public class SameWorkHoursEveryDay implements ICalendar {
                 .overAssignableWithoutLimit();
     }
 
+    @Override
+    public void fillCapacitiesBetween(LocalDate startInclusive,
+            LocalDate endExclusive, int[] standardSeconds, int[] extraSeconds) {
+        int size = Math.max(0, Days.daysBetween(startInclusive, endExclusive)
+                .getDays());
+        Arrays.fill(standardSeconds, 0, size, EffortDuration.hours(hours)
+                .getSeconds());
+        if (extraSeconds != null) {
+            Arrays.fill(extraSeconds, 0, size, UNLIMITED_EXTRA_EFFORT);
+        }
+    }
+
 }
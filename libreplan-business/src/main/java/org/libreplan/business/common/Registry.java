@@ -55,6 +55,7 @@ import org.libreplan.business.resources.daos.ICriterionTypeDAO;
 import org.libreplan.business.resources.daos.IMachineDAO;
 import org.libreplan.business.resources.daos.IResourceDAO;
 import org.libreplan.business.resources.daos.IWorkerDAO;
+import org.libreplan.business.resources.entities.AssignedEffortPerDayCache;
 import org.libreplan.business.scenarios.IScenarioManager;
 import org.libreplan.business.scenarios.daos.IScenarioDAO;
 import org.libreplan.business.templates.daos.IOrderElementTemplateDAO;
@@ -218,6 +219,9 @@ public class Registry {
     @Autowired
     private IAdHocTransactionService transactionServiceDAO;
 
+    @Autowired
+    private AssignedEffortPerDayCache assignedEffortPerDayCache;
+
     private Registry() {
     }
 
@@ -379,6 +383,10 @@ public class Registry {
         return getInstance().transactionServiceDAO;
     }
 
+    public static AssignedEffortPerDayCache getAssignedEffortPerDayCache() {
+        return getInstance().assignedEffortPerDayCache;
+    }
+
     public static IExpenseSheetDAO getExpenseSheetDAO() {
         return getInstance().expenseSheetDAO;
     }
@@ -21,6 +21,7 @@
 
 package org.libreplan.business.common.daos;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.libreplan.business.common.IntegrationEntity;
@@ -63,9 +64,34 @@ public interface IIntegrationEntityDAO<E extends IntegrationEntity>
 
     public E findExistingEntityByCode(String code);
 
+    /**
+     * It returns the entities whose code is one of <code>codes</code>,
+     * ignoring the case like {@link #findByCode(String)}. Blank codes are
+     * ignored.
+     */
+    public List<E> findByCodes(Collection<String> codes);
+
     /**
      * It returns all entities ordered by ascending code.
      */
     public List<E> findAll();
 
+    /**
+     * It visits, ordered by ascending code, the entities exposed to
+     * integration without loading all of them in memory. They are scrolled
+     * from the database and the session is cleared periodically, so it must
+     * not be used when the session holds modified entities.
+     *
+     * @param afterCode
+     *            if not <code>null</code>, only the entities with a code
+     *            greater than it are visited
+     * @param firstResult
+     *            the number of entities to skip
+     * @param maxResults
+     *            the maximum number of entities to visit. If it's zero or
+     *            negative there is no limit.
+     */
+    public void scrollAll(String afterCode, int firstResult, int maxResults,
+            IIntegrationEntityVisitor<E> visitor);
+
 }
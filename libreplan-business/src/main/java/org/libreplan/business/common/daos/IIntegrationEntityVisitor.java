@@ -0,0 +1,34 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.common.daos;
+
+import org.libreplan.business.common.IntegrationEntity;
+
+/**
+ * Receives the entities scrolled from the database by
+ * {@link IIntegrationEntityDAO#scrollAll(String, int, int, IIntegrationEntityVisitor)}
+ * one by one. The session can be cleared after an entity is visited, so
+ * references to it must not be kept.
+ */
+public interface IIntegrationEntityVisitor<E extends IntegrationEntity> {
+
+    public void visit(E entity);
+
+}
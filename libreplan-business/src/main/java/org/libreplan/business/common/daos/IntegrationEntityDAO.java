@@ -21,9 +21,14 @@
 
 package org.libreplan.business.common.daos;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.libreplan.business.common.IntegrationEntity;
@@ -40,6 +45,10 @@ import org.springframework.transaction.annotation.Transactional;
 public class IntegrationEntityDAO<E extends IntegrationEntity>
     extends GenericDAOHibernate<E, Long> implements IIntegrationEntityDAO<E> {
 
+    private static final int SCROLL_BATCH_SIZE = 100;
+
+    private static final int MAX_CODES_PER_QUERY = 1000;
+
     @Override
     public boolean existsByCode(String code) {
 
@@ -100,6 +109,30 @@ public class IntegrationEntityDAO<E extends IntegrationEntity>
 
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<E> findByCodes(Collection<String> codes) {
+        List<String> lowerCaseCodes = new ArrayList<String>();
+        for (String each : codes) {
+            if (!StringUtils.isBlank(each)) {
+                lowerCaseCodes.add(each.trim().toLowerCase());
+            }
+        }
+        List<E> result = new ArrayList<E>();
+        String hql = "FROM " + getEntityClass().getName() + " e WHERE lower(e."
+                + getCodeProperty() + ") IN (:codes)";
+        for (int i = 0; i < lowerCaseCodes.size(); i += MAX_CODES_PER_QUERY) {
+            result.addAll(getSession()
+                    .createQuery(hql)
+                    .setParameterList(
+                            "codes",
+                            lowerCaseCodes.subList(i, Math.min(
+                                    lowerCaseCodes.size(), i
+                                            + MAX_CODES_PER_QUERY))).list());
+        }
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public List<E> findAll() {
@@ -107,4 +140,49 @@ public class IntegrationEntityDAO<E extends IntegrationEntity>
             addOrder(Order.asc("code")).list();
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public void scrollAll(String afterCode, int firstResult, int maxResults,
+            IIntegrationEntityVisitor<E> visitor) {
+        Criteria criteria = createCriteriaForAll();
+        if (afterCode != null) {
+            criteria.add(Restrictions.gt(getCodeProperty(), afterCode));
+        }
+        criteria.addOrder(Order.asc(getCodeProperty()));
+        criteria.setFirstResult(firstResult);
+        if (maxResults > 0) {
+            criteria.setMaxResults(maxResults);
+        }
+        criteria.setReadOnly(true).setFetchSize(SCROLL_BATCH_SIZE);
+
+        ScrollableResults results = criteria.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            int visited = 0;
+            while (results.next()) {
+                visitor.visit((E) results.get(0));
+                visited++;
+                if (visited % SCROLL_BATCH_SIZE == 0) {
+                    getSession().clear();
+                }
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * It creates the criteria for the entities exposed to integration. It can
+     * be overridden to exclude some of them.
+     */
+    protected Criteria createCriteriaForAll() {
+        return getSession().createCriteria(getEntityClass());
+    }
+
+    /**
+     * It returns the property holding the code of the entity.
+     */
+    protected String getCodeProperty() {
+        return "code";
+    }
+
 }
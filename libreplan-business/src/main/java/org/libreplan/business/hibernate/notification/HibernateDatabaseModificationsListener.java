@@ -20,20 +20,24 @@
  */
 package org.libreplan.business.hibernate.notification;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.transaction.Status;
 import javax.transaction.Synchronization;
 
@@ -53,6 +57,8 @@ import org.hibernate.event.spi.PostUpdateEventListener;
 import org.hibernate.internal.SessionFactoryImpl;
 import org.hibernate.persister.entity.EntityPersister;
 import org.hibernate.proxy.HibernateProxy;
+import org.libreplan.business.planner.entities.DayAssignment;
+import org.libreplan.business.resources.entities.Resource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -68,7 +74,10 @@ public class HibernateDatabaseModificationsListener implements
     private static final Log LOG = LogFactory
             .getLog(HibernateDatabaseModificationsListener.class);
 
-    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+    private final SnapshotRefreshScheduler scheduler = new SnapshotRefreshScheduler(
+            3);
+
+    private final List<NotBlockingAutoUpdatedSnapshot<?>> snapshots = new CopyOnWriteArrayList<NotBlockingAutoUpdatedSnapshot<?>>();
 
     private final ConcurrentMap<Class<?>, BlockingQueue<NotBlockingAutoUpdatedSnapshot<?>>> interested;
 
@@ -96,16 +105,46 @@ public class HibernateDatabaseModificationsListener implements
 
     private final class Dispatcher implements Synchronization {
 
-        private BlockingQueue<Class<?>> classes = new LinkedBlockingQueue<Class<?>>();
+        private final ModifiedEntities modified = new ModifiedEntities();
         private final Transaction transaction;
+        private final Map<ICacheInvalidationListener, Set<Object>> invalidated = new HashMap<ICacheInvalidationListener, Set<Object>>();
 
-        public Dispatcher(Transaction transaction, Class<?> entityClass) {
-            classes.offer(entityClass);
+        public Dispatcher(Transaction transaction, Class<?> entityClass,
+                Serializable id) {
+            modified.add(entityClass, id);
             this.transaction = transaction;
         }
 
-        public void add(Class<?> entityClass) {
-            classes.offer(entityClass);
+        public synchronized void add(Class<?> entityClass, Serializable id) {
+            modified.add(entityClass, id);
+        }
+
+        public synchronized void addModifiedResource(Long resourceId) {
+            modified.addResourceWithModifiedAssignments(resourceId);
+        }
+
+        /**
+         * @return <code>true</code> if it's the first time in the transaction
+         */
+        public synchronized boolean markInvalidated(
+                ICacheInvalidationListener cache, Object key) {
+            Set<Object> keys = invalidated.get(cache);
+            if (keys == null) {
+                keys = new HashSet<Object>();
+                invalidated.put(cache, keys);
+            }
+            return keys.add(key);
+        }
+
+        private synchronized Map<ICacheInvalidationListener, Set<Object>> getInvalidated() {
+            return new HashMap<ICacheInvalidationListener, Set<Object>>(
+                    invalidated);
+        }
+
+        private synchronized ModifiedEntities getModified() {
+            ModifiedEntities result = new ModifiedEntities();
+            result.addAll(modified);
+            return result;
         }
 
         @Override
@@ -116,15 +155,21 @@ public class HibernateDatabaseModificationsListener implements
         public void afterCompletion(int status) {
             LOG.debug("transaction completed with status: " + status);
             pending.remove(transaction);
+            ModifiedEntities modified = getModified();
+            for (Entry<ICacheInvalidationListener, Set<Object>> each : getInvalidated()
+                    .entrySet()) {
+                for (Object key : each.getValue()) {
+                    each.getKey().invalidate(key);
+                }
+            }
             if (isProbablySucessful(status)) {
-                List<Class<?>> list = new ArrayList<Class<?>>();
-                classes.drainTo(list);
-                LOG.debug(list.size() + " modification events recorded");
-                Set<NotBlockingAutoUpdatedSnapshot<?>> toDispatch = snapshotsInterestedOn(list);
+                LOG.debug(modified + " modified");
+                Set<NotBlockingAutoUpdatedSnapshot<?>> toDispatch = snapshotsInterestedOn(modified
+                        .getModifiedClasses());
                 LOG.debug("dispatching "
                         + toDispatch
                         + " snapshots to reload due to transaction successful completion");
-                dispatch(toDispatch);
+                dispatch(toDispatch, modified);
             }
         }
 
@@ -138,6 +183,9 @@ public class HibernateDatabaseModificationsListener implements
     @Autowired
     private SessionFactory sessionFactory;
 
+    @Autowired(required = false)
+    private List<ICacheInvalidationListener> caches = new ArrayList<ICacheInvalidationListener>();
+
     private volatile boolean hibernateListenersRegistered = false;
 
     public HibernateDatabaseModificationsListener() {
@@ -154,6 +202,13 @@ public class HibernateDatabaseModificationsListener implements
         registry.appendListeners(EventType.POST_DELETE, this);
 
         hibernateListenersRegistered = true;
+        SnapshotsStatistics.register(this);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        SnapshotsStatistics.unregister();
+        scheduler.shutdown();
     }
 
     @Override
@@ -164,19 +219,28 @@ public class HibernateDatabaseModificationsListener implements
     @Override
     public void onPostDelete(PostDeleteEvent event) {
         modificationOn(inferTransaction(event),
-                inferEntityClass(getEntityObject(event)));
+                inferEntityClass(getEntityObject(event)), event.getId());
+        recordModifiedAssignmentsOf(inferTransaction(event),
+                getEntityObject(event));
+        invalidateCaches(inferTransaction(event), getEntityObject(event));
     }
 
     @Override
     public void onPostUpdate(PostUpdateEvent event) {
         modificationOn(inferTransaction(event),
-                inferEntityClass(getEntityObject(event)));
+                inferEntityClass(getEntityObject(event)), event.getId());
+        recordModifiedAssignmentsOf(inferTransaction(event),
+                getEntityObject(event));
+        invalidateCaches(inferTransaction(event), getEntityObject(event));
     }
 
     @Override
     public void onPostInsert(PostInsertEvent event) {
         modificationOn(inferTransaction(event),
-                inferEntityClass(getEntityObject(event)));
+                inferEntityClass(getEntityObject(event)), event.getId());
+        recordModifiedAssignmentsOf(inferTransaction(event),
+                getEntityObject(event));
+        invalidateCaches(inferTransaction(event), getEntityObject(event));
     }
 
 
@@ -204,43 +268,91 @@ public class HibernateDatabaseModificationsListener implements
         return entity.getClass();
     }
 
-    void modificationOn(Transaction transaction, Class<?> entityClass) {
+    /**
+     * The resource of a modified {@link DayAssignment} is kept in the
+     * {@link ModifiedEntities} provided to the snapshots
+     */
+    private void recordModifiedAssignmentsOf(Transaction transaction,
+            Object entity) {
+        if (!(entity instanceof DayAssignment)) {
+            return;
+        }
+        Resource resource = ((DayAssignment) entity).getResource();
+        if (resource == null || resource.getId() == null) {
+            return;
+        }
+        Dispatcher dispatcher = transaction != null ? pending.get(transaction)
+                : null;
+        if (dispatcher != null) {
+            dispatcher.addModifiedResource(resource.getId());
+        }
+    }
+
+    /**
+     * The {@link ICacheInvalidationListener caches} affected by the entity
+     * are invalidated the first time in the transaction, and again when it
+     * completes
+     */
+    private void invalidateCaches(Transaction transaction, Object entity) {
+        Dispatcher dispatcher = transaction != null ? pending.get(transaction)
+                : null;
+        for (ICacheInvalidationListener each : caches) {
+            Object key = each.getKeyAffectedBy(entity);
+            if (key == null) {
+                continue;
+            }
+            if (dispatcher == null || dispatcher.markInvalidated(each, key)) {
+                each.invalidate(key);
+            }
+        }
+    }
+
+    void modificationOn(Transaction transaction, Class<?> entityClass,
+            Serializable id) {
         if (transaction == null) {
-            dispatch(snapshotsInterestedOn(entityClass));
+            ModifiedEntities modified = new ModifiedEntities();
+            modified.add(entityClass, id);
+            dispatch(snapshotsInterestedOn(entityClass), modified);
             return;
         }
-        Dispatcher newDispatcher = new Dispatcher(transaction, entityClass);
+        Dispatcher newDispatcher = new Dispatcher(transaction, entityClass, id);
         Dispatcher previous = null;
         previous = pending.putIfAbsent(transaction, newDispatcher);
 
         boolean dispatcherAlreadyExisted = previous != null;
         if (dispatcherAlreadyExisted) {
-            previous.add(entityClass);
+            previous.add(entityClass, id);
         } else {
             transaction.registerSynchronization(newDispatcher);
         }
     }
 
-    private void dispatch(Set<NotBlockingAutoUpdatedSnapshot<?>> toBeDispatched) {
+    private void dispatch(
+            Set<NotBlockingAutoUpdatedSnapshot<?>> toBeDispatched,
+            ModifiedEntities modified) {
         for (NotBlockingAutoUpdatedSnapshot<?> each : toBeDispatched) {
-            dispatch(each);
+            each.reloadNeeded(scheduler, modified);
         }
     }
 
-    private void dispatch(NotBlockingAutoUpdatedSnapshot<?> each) {
-        each.reloadNeeded(executor);
+    @Override
+    public <T> IAutoUpdatedSnapshot<T> takeSnapshot(String name,
+            Callable<T> callable, ReloadOn reloadOn) {
+        return takeSnapshot(name, callable, null, reloadOn);
     }
 
     @Override
     public <T> IAutoUpdatedSnapshot<T> takeSnapshot(String name,
-            Callable<T> callable, ReloadOn reloadOn) {
+            Callable<T> callable, IDeltaApplier<T> deltaApplier,
+            ReloadOn reloadOn) {
         if (!hibernateListenersRegistered) {
             throw new IllegalStateException(
                     "The hibernate listeners has not been registered. There is some configuration problem.");
         }
 
         final NotBlockingAutoUpdatedSnapshot<T> result;
-        result = new NotBlockingAutoUpdatedSnapshot<T>(name, callable);
+        result = new NotBlockingAutoUpdatedSnapshot<T>(name, callable,
+                deltaApplier, reloadOn);
         for (Class<?> each : reloadOn.getClassesOnWhichToReload()) {
             interested.putIfAbsent(each, emptyQueue());
             BlockingQueue<NotBlockingAutoUpdatedSnapshot<?>> queue = interested
@@ -248,10 +360,24 @@ public class HibernateDatabaseModificationsListener implements
             boolean success = queue.add(result);
             assert success : "the type of queue used must not have restricted capacity";
         }
-        result.ensureFirstLoad(executor);
+        snapshots.add(result);
+        result.ensureFirstLoad(scheduler.getExecutor());
         return result;
     }
 
+    @Override
+    public List<SnapshotStatistics> getStatistics() {
+        List<SnapshotStatistics> result = new ArrayList<SnapshotStatistics>();
+        for (NotBlockingAutoUpdatedSnapshot<?> each : snapshots) {
+            result.add(each.getStatistics());
+        }
+        return result;
+    }
+
+    int getQueuedCalculations() {
+        return scheduler.getQueuedCalculations();
+    }
+
     private BlockingQueue<NotBlockingAutoUpdatedSnapshot<?>> emptyQueue() {
         return new LinkedBlockingQueue<NotBlockingAutoUpdatedSnapshot<?>>();
     }
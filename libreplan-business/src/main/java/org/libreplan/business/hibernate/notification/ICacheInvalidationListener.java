@@ -0,0 +1,47 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+/**
+ * A cache shared by all the sessions that is notified by
+ * {@link HibernateDatabaseModificationsListener} of the entities modified in
+ * the database.<br />
+ *
+ * The first time an entry is affected in a transaction it's invalidated
+ * right away. It's invalidated again when the transaction completes, so an
+ * entry calculated in the meantime by other session from the old data
+ * doesn't remain.
+ */
+public interface ICacheInvalidationListener {
+
+    /**
+     * @return the key of the entries affected by the inserted, updated or
+     *         deleted entity, or <code>null</code> if the cache doesn't
+     *         depend on it
+     */
+    Object getKeyAffectedBy(Object entity);
+
+    /**
+     * Invalidates the entries of a key returned by
+     * {@link #getKeyAffectedBy(Object)}
+     */
+    void invalidate(Object key);
+
+}
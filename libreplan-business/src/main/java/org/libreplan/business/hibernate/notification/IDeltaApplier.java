@@ -0,0 +1,42 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+/**
+ * Calculates the new value of a snapshot from its previous value and the
+ * entities modified since it was calculated, so it's not needed to calculate
+ * it again from scratch.
+ *
+ * @see ISnapshotRefresherService#takeSnapshot(String,
+ *      java.util.concurrent.Callable, IDeltaApplier, ReloadOn)
+ */
+public interface IDeltaApplier<T> {
+
+    /**
+     * The previous value must not be modified, since it can be being used by
+     * other threads. A new value must be returned instead.
+     *
+     * @return the new value or <code>null</code> if it can't be calculated
+     *         from the previous one. In that case it's calculated again from
+     *         scratch.
+     */
+    public T apply(T previousValue, ModifiedEntities modified);
+
+}
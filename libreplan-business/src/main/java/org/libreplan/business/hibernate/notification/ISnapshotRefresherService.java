@@ -20,6 +20,7 @@
  */
 package org.libreplan.business.hibernate.notification;
 
+import java.util.List;
 import java.util.concurrent.Callable;
 
 /**
@@ -30,4 +31,20 @@ public interface ISnapshotRefresherService {
 
     public <T> IAutoUpdatedSnapshot<T> takeSnapshot(String name, Callable<T> callable, ReloadOn reloadOn);
 
+    /**
+     * Like {@link #takeSnapshot(String, Callable, ReloadOn)} but when the
+     * entities change the new value is calculated by the
+     * <code>deltaApplier</code> from the previous one. The
+     * <code>callable</code> is used for the first value and when the
+     * <code>deltaApplier</code> can't calculate it.
+     */
+    public <T> IAutoUpdatedSnapshot<T> takeSnapshot(String name,
+            Callable<T> callable, IDeltaApplier<T> deltaApplier,
+            ReloadOn reloadOn);
+
+    /**
+     * @return the statistics of the calculations done by each snapshot taken
+     */
+    public List<SnapshotStatistics> getStatistics();
+
 }
@@ -0,0 +1,168 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.libreplan.business.planner.entities.DayAssignment;
+
+/**
+ * <p>
+ * The ids of the entities modified by one or several transactions, grouped by
+ * the class of the entity. They are provided to the {@link IDeltaApplier} of a
+ * snapshot so it can update only the affected part of its previous value.
+ * </p>
+ * <p>
+ * The resources whose {@link DayAssignment day assignments} have been modified
+ * are also kept, since the day assignments of a resource can be modified
+ * without modifying the resource itself.
+ * </p>
+ * It's not thread safe.
+ */
+public class ModifiedEntities {
+
+    private final Map<Class<?>, Set<Long>> idsByClass = new HashMap<Class<?>, Set<Long>>();
+
+    private final Set<Long> resourcesWithModifiedAssignments = new HashSet<Long>();
+
+    private boolean someIdUnknown = false;
+
+    public void add(Class<?> entityClass, Serializable id) {
+        Set<Long> ids = idsOf(entityClass);
+        if (id instanceof Long) {
+            ids.add((Long) id);
+        } else {
+            someIdUnknown = true;
+        }
+    }
+
+    private Set<Long> idsOf(Class<?> entityClass) {
+        Set<Long> result = idsByClass.get(entityClass);
+        if (result == null) {
+            result = new HashSet<Long>();
+            idsByClass.put(entityClass, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the resource was not already registered
+     */
+    public boolean addResourceWithModifiedAssignments(Long resourceId) {
+        return resourcesWithModifiedAssignments.add(resourceId);
+    }
+
+    public void addAll(ModifiedEntities other) {
+        for (Entry<Class<?>, Set<Long>> each : other.idsByClass.entrySet()) {
+            idsOf(each.getKey()).addAll(each.getValue());
+        }
+        resourcesWithModifiedAssignments
+                .addAll(other.resourcesWithModifiedAssignments);
+        someIdUnknown = someIdUnknown || other.someIdUnknown;
+    }
+
+    /**
+     * @return a copy with only the entities of the provided classes. The
+     *         resources with modified assignments are always kept.
+     */
+    public ModifiedEntities restrictedTo(Collection<? extends Class<?>> classes) {
+        ModifiedEntities result = new ModifiedEntities();
+        for (Class<?> each : classes) {
+            Set<Long> ids = idsByClass.get(each);
+            if (ids != null) {
+                result.idsOf(each).addAll(ids);
+            }
+        }
+        result.resourcesWithModifiedAssignments
+                .addAll(resourcesWithModifiedAssignments);
+        result.someIdUnknown = someIdUnknown;
+        return result;
+    }
+
+    public Set<Class<?>> getModifiedClasses() {
+        return Collections.unmodifiableSet(idsByClass.keySet());
+    }
+
+    /**
+     * @return the ids of the modified entities of the provided class or any of
+     *         its subclasses
+     */
+    public Set<Long> getIds(Class<?> entityClass) {
+        Set<Long> result = new HashSet<Long>();
+        for (Entry<Class<?>, Set<Long>> each : idsByClass.entrySet()) {
+            if (entityClass.isAssignableFrom(each.getKey())) {
+                result.addAll(each.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if all the modified entities are of the
+     *         provided classes or their subclasses
+     */
+    public boolean onlyOf(Class<?>... classes) {
+        for (Class<?> modified : idsByClass.keySet()) {
+            if (!isSubclassOfAny(modified, classes)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSubclassOfAny(Class<?> klass, Class<?>[] classes) {
+        for (Class<?> each : classes) {
+            if (each.isAssignableFrom(klass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<Long> getResourcesWithModifiedAssignments() {
+        return Collections.unmodifiableSet(resourcesWithModifiedAssignments);
+    }
+
+    /**
+     * If some id is not known the modifications can't be applied
+     * incrementally
+     */
+    public boolean isSomeIdUnknown() {
+        return someIdUnknown;
+    }
+
+    public boolean isEmpty() {
+        return idsByClass.isEmpty() && resourcesWithModifiedAssignments.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return idsByClass + " resources with modified assignments: "
+                + resourcesWithModifiedAssignments;
+    }
+
+}
@@ -20,14 +20,19 @@
  */
 package org.libreplan.business.hibernate.notification;
 
+import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.lang.Validate;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.libreplan.business.hibernate.notification.ReloadOn.Priority;
 
 /**
  * @author Óscar González Fernández
@@ -46,6 +51,31 @@ class NotBlockingAutoUpdatedSnapshot<T> implements IAutoUpdatedSnapshot<T> {
 
     private final ExecutionsReport executionsReport;
 
+    private final IDeltaApplier<T> deltaApplier;
+
+    private final ReloadOn reloadOn;
+
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean(false);
+
+    /**
+     * The time of the first change not included yet in a calculation, 0 if
+     * there is none
+     */
+    private final AtomicLong dirtySince = new AtomicLong(0);
+
+    private final AtomicInteger coalescedReloads = new AtomicInteger(0);
+
+    /**
+     * Guards {@link #pendingModifications} and {@link #lastCalculated}. The
+     * calculations are done holding it, so the deltas are applied one after
+     * another.
+     */
+    private final Object deltaLock = new Object();
+
+    private ModifiedEntities pendingModifications = null;
+
+    private T lastCalculated = null;
+
     private abstract class State {
         abstract T getValue();
 
@@ -168,10 +198,27 @@ class NotBlockingAutoUpdatedSnapshot<T> implements IAutoUpdatedSnapshot<T> {
     }
 
     public NotBlockingAutoUpdatedSnapshot(String name, Callable<T> callable) {
+        this(name, callable, null, ReloadOn.onChangeOf());
+    }
+
+    /**
+     * @param deltaApplier
+     *            it can be <code>null</code>. In that case the value is always
+     *            calculated from scratch.
+     * @param reloadOn
+     *            only the modifications of its classes are provided to the
+     *            <code>deltaApplier</code>. It also specifies how the reloads
+     *            are scheduled.
+     */
+    public NotBlockingAutoUpdatedSnapshot(String name, Callable<T> callable,
+            IDeltaApplier<T> deltaApplier, ReloadOn reloadOn) {
         Validate.notNull(callable);
         Validate.notNull(name);
+        Validate.notNull(reloadOn);
         this.name = "*" + name + "*";
         this.callable = callable;
+        this.deltaApplier = deltaApplier;
+        this.reloadOn = reloadOn;
         this.currentState = new AtomicReference<State>(new NotLaunchState());
         this.executionsReport = new ExecutionsReport();
     }
@@ -181,6 +228,41 @@ class NotBlockingAutoUpdatedSnapshot<T> implements IAutoUpdatedSnapshot<T> {
         return currentState.get().getValue();
     }
 
+    /**
+     * The reload is done after the debounce time of the {@link ReloadOn}. If
+     * there is already a reload waiting to be launched, it's merged with it.
+     */
+    public void reloadNeeded(final SnapshotRefreshScheduler scheduler,
+            ModifiedEntities modified) {
+        if (deltaApplier != null) {
+            synchronized (deltaLock) {
+                if (pendingModifications == null) {
+                    pendingModifications = new ModifiedEntities();
+                }
+                pendingModifications.addAll(modified.restrictedTo(reloadOn
+                        .getClassesOnWhichToReload()));
+            }
+        }
+        dirtySince.compareAndSet(0, System.currentTimeMillis());
+        if (!reloadScheduled.compareAndSet(false, true)) {
+            coalescedReloads.incrementAndGet();
+            LOG.debug(name + " reload merged with the one already scheduled");
+            return;
+        }
+        scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                reloadScheduled.set(false);
+                try {
+                    reloadNeeded(scheduler.getExecutor());
+                } catch (RuntimeException e) {
+                    LOG.error("error launching reload of " + name, e);
+                }
+            }
+        }, reloadOn.getDebounceMillis());
+    }
+
     public void reloadNeeded(ExecutorService executorService) {
         Future<T> future = executorService
                 .submit(callableDecoratedWithStatistics());
@@ -220,26 +302,94 @@ class NotBlockingAutoUpdatedSnapshot<T> implements IAutoUpdatedSnapshot<T> {
     }
 
     private Callable<T> callableDecoratedWithStatistics() {
-        final long requestTime = System.currentTimeMillis();
-        return new Callable<T>() {
+        return new DecoratedCallable(System.currentTimeMillis());
+    }
 
-            @Override
-            public T call() throws Exception {
-                long start = System.currentTimeMillis();
-                long timeWaiting = start - requestTime;
-                Exception error = null;
-                try {
-                    return callable.call();
-                } catch (Exception e) {
-                    error = e;
-                    LOG.error("error executing snapshot " + name);
-                    throw e;
-                } finally {
-                    long timeExecuting = System.currentTimeMillis() - start;
-                    executionsReport.newData(timeWaiting, timeExecuting, error);
+    private class DecoratedCallable implements Callable<T>,
+            SnapshotRefreshScheduler.IPrioritized {
+
+        private final long requestTime;
+
+        DecoratedCallable(long requestTime) {
+            this.requestTime = requestTime;
+        }
+
+        @Override
+        public Priority getPriority() {
+            return reloadOn.getPriority();
+        }
+
+        @Override
+        public T call() throws Exception {
+            long start = System.currentTimeMillis();
+            long timeWaiting = start - requestTime;
+            long changesSince = dirtySince.getAndSet(0);
+            Exception error = null;
+            try {
+                return calculate();
+            } catch (Exception e) {
+                error = e;
+                if (changesSince != 0) {
+                    dirtySince.compareAndSet(0, changesSince);
                 }
+                LOG.error("error executing snapshot " + name);
+                throw e;
+            } finally {
+                long timeExecuting = System.currentTimeMillis() - start;
+                executionsReport.newData(timeWaiting, timeExecuting, error);
+            }
+        }
+    }
+
+    public SnapshotStatistics getStatistics() {
+        return executionsReport.getStatistics();
+    }
+
+    /**
+     * If there is a previous value and a {@link IDeltaApplier}, the pending
+     * modifications are applied on it. The modifications drained by a
+     * calculation that has been cancelled are already contained in
+     * {@link #lastCalculated}, so they are not lost. If the delta can't be
+     * applied, the value is calculated from scratch.
+     */
+    private T calculate() throws Exception {
+        if (deltaApplier == null) {
+            return callable.call();
+        }
+        synchronized (deltaLock) {
+            ModifiedEntities modified = pendingModifications;
+            pendingModifications = null;
+            T previous = lastCalculated;
+            lastCalculated = null;
+            T result = null;
+            if (previous != null && modified == null) {
+                result = previous;
+            } else if (previous != null && !modified.isSomeIdUnknown()) {
+                result = applyDelta(previous, modified);
+            }
+            if (result == null) {
+                LOG.debug(name + " calculating from scratch");
+                result = callable.call();
+            }
+            lastCalculated = result;
+            return result;
+        }
+    }
+
+    private T applyDelta(T previous, ModifiedEntities modified) {
+        try {
+            long start = System.currentTimeMillis();
+            T result = deltaApplier.apply(previous, modified);
+            if (result != null) {
+                LOG.debug(name + " applied " + modified + " in "
+                        + (System.currentTimeMillis() - start) + " ms");
             }
-        };
+            return result;
+        } catch (RuntimeException e) {
+            LOG.warn(name + " error applying " + modified
+                    + ", calculating from scratch", e);
+            return null;
+        }
     }
 
     private static class Data {
@@ -247,27 +397,66 @@ class NotBlockingAutoUpdatedSnapshot<T> implements IAutoUpdatedSnapshot<T> {
         final int errors;
         long totalMsWaiting;
         long totalMsExecuting;
+        final long lastExecution;
 
         private Data(int executionTimes, int errors, long totalMsWaiting,
-                long totalMsExecuting) {
+                long totalMsExecuting, long lastExecution) {
             this.executionTimes = executionTimes;
             this.totalMsWaiting = totalMsWaiting;
             this.totalMsExecuting = totalMsExecuting;
             this.errors = errors;
+            this.lastExecution = lastExecution;
         }
 
         public Data newData(long timeWaiting, long timeExcuting, Exception e) {
             return new Data(executionTimes + 1, errors + (e != null ? 1 : 0),
                     totalMsWaiting + timeWaiting,
-                    totalMsExecuting + timeExcuting);
+                    totalMsExecuting + timeExcuting,
+                    System.currentTimeMillis());
         }
 
     }
 
+    /**
+     * The last times, used to calculate percentiles
+     */
+    static class RecentTimes {
+
+        private static final int SIZE = 100;
+
+        private final long[] times = new long[SIZE];
+
+        private int count = 0;
+
+        synchronized void add(long time) {
+            times[count % SIZE] = time;
+            count++;
+        }
+
+        synchronized long[] percentiles(int... percentiles) {
+            long[] result = new long[percentiles.length];
+            int size = Math.min(count, SIZE);
+            if (size == 0) {
+                return result;
+            }
+            long[] sorted = Arrays.copyOf(times, size);
+            Arrays.sort(sorted);
+            for (int i = 0; i < percentiles.length; i++) {
+                int position = (int) Math.ceil(percentiles[i] / 100.0 * size) - 1;
+                result[i] = sorted[Math.max(0, position)];
+            }
+            return result;
+        }
+    }
+
     private class ExecutionsReport {
 
         private AtomicReference<Data> data = new AtomicReference<Data>(
-                new Data(0, 0, 0, 0));
+                new Data(0, 0, 0, 0, 0));
+
+        private final RecentTimes waiting = new RecentTimes();
+
+        private final RecentTimes executing = new RecentTimes();
 
         public void newData(long timeWaiting, long timeExecuting,
                 Exception possibleError) {
@@ -278,9 +467,26 @@ class NotBlockingAutoUpdatedSnapshot<T> implements IAutoUpdatedSnapshot<T> {
                 newData = previousData.newData(timeWaiting, timeExecuting,
                         possibleError);
             } while (!data.compareAndSet(previousData, newData));
+            waiting.add(timeWaiting);
+            executing.add(timeExecuting);
             report(timeWaiting, timeExecuting, newData, possibleError);
         }
 
+        public SnapshotStatistics getStatistics() {
+            Data current = data.get();
+            long now = System.currentTimeMillis();
+            long changesSince = dirtySince.get();
+            int executions = current.executionTimes;
+            return new SnapshotStatistics(name, executions, current.errors,
+                    coalescedReloads.get(),
+                    executions == 0 ? 0 : current.totalMsWaiting / executions,
+                    executions == 0 ? 0 : current.totalMsExecuting
+                            / executions, waiting.percentiles(50, 90, 99),
+                    executing.percentiles(50, 90, 99),
+                    executions == 0 ? -1 : now - current.lastExecution,
+                    changesSince == 0 ? 0 : now - changesSince);
+        }
+
         private void report(long timeWaiting, long timeExecuting, Data data,
                 Exception possibleError) {
             LOG.debug(name + " took " + timeExecuting + " ms executing");
@@ -26,6 +26,8 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
@@ -39,9 +41,11 @@ import org.libreplan.business.calendars.entities.CalendarData;
 import org.libreplan.business.calendars.entities.CalendarException;
 import org.libreplan.business.common.AdHocTransactionService;
 import org.libreplan.business.common.IAdHocTransactionService;
+import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.costcategories.daos.ICostCategoryDAO;
 import org.libreplan.business.costcategories.entities.CostCategory;
 import org.libreplan.business.externalcompanies.daos.IExternalCompanyDAO;
+import org.libreplan.business.hibernate.notification.ReloadOn.Priority;
 import org.libreplan.business.externalcompanies.entities.ExternalCompany;
 import org.libreplan.business.labels.daos.ILabelDAO;
 import org.libreplan.business.labels.daos.ILabelTypeDAO;
@@ -50,12 +54,16 @@ import org.libreplan.business.labels.entities.LabelType;
 import org.libreplan.business.orders.daos.IOrderDAO;
 import org.libreplan.business.orders.entities.Order;
 import org.libreplan.business.planner.chart.ResourceLoadChartData;
+import org.libreplan.business.planner.chart.ResourcesLoadAggregator;
 import org.libreplan.business.planner.daos.IDayAssignmentDAO;
 import org.libreplan.business.planner.daos.ITaskElementDAO;
 import org.libreplan.business.planner.entities.DayAssignment;
+import org.libreplan.business.planner.entities.DerivedDayAssignment;
+import org.libreplan.business.planner.entities.GenericDayAssignment;
 import org.libreplan.business.planner.entities.GenericResourceAllocation;
 import org.libreplan.business.planner.entities.ICostCalculator;
 import org.libreplan.business.planner.entities.ResourceAllocation;
+import org.libreplan.business.planner.entities.SpecificDayAssignment;
 import org.libreplan.business.planner.entities.SpecificResourceAllocation;
 import org.libreplan.business.planner.entities.Task;
 import org.libreplan.business.planner.entities.TaskElement;
@@ -206,26 +214,67 @@ public class PredefinedDatabaseSnapshots {
                 Order.class);
         resourceLoadChartData = snapshot("resource load grouped by date",
                 calculateResourceLoadChartData(),
+                new ResourceLoadChartDataDeltaApplier(resourceDAO,
+                        dayAssignmentDAO, scenarioManager),
                 CalendarAvailability.class, CalendarException.class,
                 CalendarData.class, TaskElement.class, SpecificResourceAllocation.class,
-                GenericResourceAllocation.class, ResourceAllocation.class);
+                GenericResourceAllocation.class, ResourceAllocation.class,
+                SpecificDayAssignment.class, GenericDayAssignment.class,
+                DerivedDayAssignment.class);
         workReportLines = snapshot("work report lines", calculateWorkReportLines(),
+                new WorkReportLinesDeltaApplier(workReportLineDAO),
                 WorkReportLine.class);
         estimatedCostPerTask = snapshot("estimated cost per task",
                 calculateEstimatedCostPerTask(),
-                TaskElement.class, Task.class, TaskGroup.class, DayAssignment.class);
+                new CostPerTaskDeltaApplier(taskElementDAO) {
+                    @Override
+                    SortedMap<LocalDate, BigDecimal> costOf(Task task) {
+                        return hoursCostCalculator.getEstimatedCost(task);
+                    }
+                },
+                TaskElement.class, Task.class, TaskGroup.class,
+                SpecificDayAssignment.class, GenericDayAssignment.class,
+                DerivedDayAssignment.class);
         advanceCostPerTask = snapshot("advance cost per task",
                 calculateAdvanceCostPerTask(),
+                new CostPerTaskDeltaApplier(taskElementDAO) {
+                    @Override
+                    SortedMap<LocalDate, BigDecimal> costOf(Task task) {
+                        return hoursCostCalculator.getAdvanceCost(task);
+                    }
+                },
                 TaskElement.class, Task.class, TaskGroup.class,
                 DirectAdvanceAssignment.class);
     }
 
+    /**
+     * The lookup snapshots are cheap, so they are reloaded soon and before the
+     * heavy ones. The heavy ones wait more so bursts of changes, like the ones
+     * produced by imports, are applied at once.
+     */
+    private static final long LOOKUP_DEBOUNCE_MILLIS = 200;
+
+    private static final long HEAVY_DEBOUNCE_MILLIS = 2000;
+
     private <T> IAutoUpdatedSnapshot<T> snapshot(String name,
             Callable<T> callable,
             Class<?>... reloadOnChangesOf) {
         return snapshotRefresherService.takeSnapshot(name,
                 callableOnReadOnlyTransaction(callable),
-                ReloadOn.onChangeOf(reloadOnChangesOf));
+                ReloadOn.onChangeOf(reloadOnChangesOf)
+                        .debouncedFor(LOOKUP_DEBOUNCE_MILLIS)
+                        .withPriority(Priority.HIGH));
+    }
+
+    private <T> IAutoUpdatedSnapshot<T> snapshot(String name,
+            Callable<T> callable, IDeltaApplier<T> deltaApplier,
+            Class<?>... reloadOnChangesOf) {
+        return snapshotRefresherService.takeSnapshot(name,
+                callableOnReadOnlyTransaction(callable),
+                deltaApplierOnReadOnlyTransaction(deltaApplier),
+                ReloadOn.onChangeOf(reloadOnChangesOf)
+                        .debouncedFor(HEAVY_DEBOUNCE_MILLIS)
+                        .withPriority(Priority.LOW));
     }
 
     @SuppressWarnings("unchecked")
@@ -234,6 +283,13 @@ public class PredefinedDatabaseSnapshots {
                 Callable.class, callable);
     }
 
+    @SuppressWarnings("unchecked")
+    private <T> IDeltaApplier<T> deltaApplierOnReadOnlyTransaction(
+            IDeltaApplier<T> deltaApplier) {
+        return AdHocTransactionService.readOnlyProxy(transactionService,
+                IDeltaApplier.class, deltaApplier);
+    }
+
     @Autowired
     private ICriterionTypeDAO criterionTypeDAO;
 
@@ -403,15 +459,80 @@ public class PredefinedDatabaseSnapshots {
             @Override
             public ResourceLoadChartData call() {
 
-                List<DayAssignment> dayAssignments = dayAssignmentDAO.getAllFor(
-                        scenarioManager.getCurrent(), null, null);
+                ResourcesLoadAggregator aggregated = new ResourcesLoadAggregator();
+                dayAssignmentDAO.aggregateFor(scenarioManager.getCurrent(),
+                        null, null, null, aggregated);
                 List<Resource> resources = resourceDAO.list(Resource.class);
-                return new ResourceLoadChartData(dayAssignments, resources);
+                return new ResourceLoadChartData(aggregated, resources);
 
             }
         };
     }
 
+    /**
+     * Only the load of the resources whose day assignments have been modified
+     * is retrieved again. The changes on calendars need a full rebuild.
+     */
+    static class ResourceLoadChartDataDeltaApplier implements
+            IDeltaApplier<ResourceLoadChartData> {
+
+        private final IResourceDAO resourceDAO;
+
+        private final IDayAssignmentDAO dayAssignmentDAO;
+
+        private final IScenarioManager scenarioManager;
+
+        ResourceLoadChartDataDeltaApplier(IResourceDAO resourceDAO,
+                IDayAssignmentDAO dayAssignmentDAO,
+                IScenarioManager scenarioManager) {
+            this.resourceDAO = resourceDAO;
+            this.dayAssignmentDAO = dayAssignmentDAO;
+            this.scenarioManager = scenarioManager;
+        }
+
+        @Override
+        public ResourceLoadChartData apply(ResourceLoadChartData previousValue,
+                ModifiedEntities modified) {
+            if (previousValue.getAggregated() == null
+                    || !modified.onlyOf(TaskElement.class,
+                            ResourceAllocation.class, DayAssignment.class)) {
+                return null;
+            }
+            Set<Long> resourceIds = modified
+                    .getResourcesWithModifiedAssignments();
+            if (resourceIds.isEmpty()) {
+                return previousValue;
+            }
+            List<Resource> affected = resourceDAO.findByIds(resourceIds);
+            if (affected.size() != resourceIds.size()) {
+                // some resource has been removed
+                return null;
+            }
+            ResourcesLoadAggregator newLoads = new ResourcesLoadAggregator();
+            dayAssignmentDAO.aggregateFor(scenarioManager.getCurrent(), null,
+                    null, affected, newLoads);
+            return new ResourceLoadChartData(previousValue.getAggregated()
+                    .replacingLoadOf(resourceIds, newLoads), replacing(
+                    previousValue.getResources(), affected, resourceIds));
+        }
+
+        /**
+         * The resources of the previous value that are not affected are kept,
+         * so only the affected ones are retrieved
+         */
+        private static List<Resource> replacing(List<Resource> previous,
+                List<Resource> affected, Set<Long> affectedIds) {
+            List<Resource> result = new ArrayList<Resource>();
+            for (Resource each : previous) {
+                if (!affectedIds.contains(each.getId())) {
+                    result.add(each);
+                }
+            }
+            result.addAll(affected);
+            return result;
+        }
+    }
+
     @Autowired
     private IWorkReportLineDAO workReportLineDAO;
 
@@ -424,6 +545,34 @@ public class PredefinedDatabaseSnapshots {
         };
     }
 
+    /**
+     * The modified lines are retrieved again and the removed ones are
+     * discarded.
+     */
+    static class WorkReportLinesDeltaApplier implements
+            IDeltaApplier<List<WorkReportLine>> {
+
+        private final IWorkReportLineDAO workReportLineDAO;
+
+        WorkReportLinesDeltaApplier(IWorkReportLineDAO workReportLineDAO) {
+            this.workReportLineDAO = workReportLineDAO;
+        }
+
+        @Override
+        public List<WorkReportLine> apply(List<WorkReportLine> previousValue,
+                ModifiedEntities modified) {
+            Set<Long> ids = modified.getIds(WorkReportLine.class);
+            List<WorkReportLine> result = new ArrayList<WorkReportLine>();
+            for (WorkReportLine each : previousValue) {
+                if (!ids.contains(each.getId())) {
+                    result.add(each);
+                }
+            }
+            result.addAll(workReportLineDAO.findByIds(ids));
+            return result;
+        }
+    }
+
     @Autowired
     private ICostCalculator hoursCostCalculator;
 
@@ -446,6 +595,50 @@ public class PredefinedDatabaseSnapshots {
         };
     }
 
+    /**
+     * The cost of the modified tasks is calculated again and the removed ones
+     * are discarded. Other modifications need a full rebuild.
+     */
+    abstract static class CostPerTaskDeltaApplier implements
+            IDeltaApplier<Map<TaskElement, SortedMap<LocalDate, BigDecimal>>> {
+
+        private final ITaskElementDAO taskElementDAO;
+
+        CostPerTaskDeltaApplier(ITaskElementDAO taskElementDAO) {
+            this.taskElementDAO = taskElementDAO;
+        }
+
+        abstract SortedMap<LocalDate, BigDecimal> costOf(Task task);
+
+        @Override
+        public Map<TaskElement, SortedMap<LocalDate, BigDecimal>> apply(
+                Map<TaskElement, SortedMap<LocalDate, BigDecimal>> previousValue,
+                ModifiedEntities modified) {
+            if (!modified.onlyOf(TaskElement.class)) {
+                return null;
+            }
+            Set<Long> ids = modified.getIds(TaskElement.class);
+            Map<TaskElement, SortedMap<LocalDate, BigDecimal>> result = new HashMap<TaskElement, SortedMap<LocalDate, BigDecimal>>();
+            for (Entry<TaskElement, SortedMap<LocalDate, BigDecimal>> each : previousValue
+                    .entrySet()) {
+                if (!ids.contains(each.getKey().getId())) {
+                    result.put(each.getKey(), each.getValue());
+                }
+            }
+            for (Long each : ids) {
+                try {
+                    TaskElement task = taskElementDAO.find(each);
+                    if (task instanceof Task) {
+                        result.put(task, costOf((Task) task));
+                    }
+                } catch (InstanceNotFoundException e) {
+                    // the task has been removed
+                }
+            }
+            return result;
+        }
+    }
+
     private Callable<Map<TaskElement, SortedMap<LocalDate, BigDecimal>>> calculateAdvanceCostPerTask() {
         return new Callable<Map<TaskElement, SortedMap<LocalDate, BigDecimal>>>() {
             @Override
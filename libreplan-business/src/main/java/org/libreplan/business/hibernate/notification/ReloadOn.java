@@ -25,6 +25,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import org.apache.commons.lang.Validate;
+
 /**
  * @author Óscar González Fernández
  *
@@ -39,13 +41,54 @@ public class ReloadOn {
         return new ReloadOn(klasses);
     }
 
+    /**
+     * The order in which the pending reloads are executed when there are no
+     * free threads
+     */
+    public enum Priority {
+        HIGH, NORMAL, LOW;
+    }
+
     private final List<Class<?>> classes;
 
+    private final long debounceMillis;
+
+    private final Priority priority;
+
     private ReloadOn(Collection<? extends Class<?>> classes) {
+        this(classes, 0, Priority.NORMAL);
+    }
+
+    private ReloadOn(Collection<? extends Class<?>> classes,
+            long debounceMillis, Priority priority) {
+        Validate.isTrue(debounceMillis >= 0);
+        Validate.notNull(priority);
         this.classes = new ArrayList<Class<?>>(classes);
+        this.debounceMillis = debounceMillis;
+        this.priority = priority;
+    }
+
+    /**
+     * The reload is delayed the specified time after the first change, so all
+     * the changes done meanwhile are reloaded at once.
+     */
+    public ReloadOn debouncedFor(long millis) {
+        return new ReloadOn(classes, millis, priority);
+    }
+
+    public ReloadOn withPriority(Priority priority) {
+        return new ReloadOn(classes, debounceMillis, priority);
     }
 
     public List<Class<?>> getClassesOnWhichToReload() {
         return classes;
     }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
 }
@@ -0,0 +1,135 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.libreplan.business.hibernate.notification.ReloadOn.Priority;
+
+/**
+ * It executes the calculations of the snapshots. The reloads can be delayed so
+ * several changes are reloaded at once, and the pending calculations are
+ * executed according to their {@link Priority}, so the cheap snapshots don't
+ * wait for the heavy ones.
+ */
+class SnapshotRefreshScheduler {
+
+    /**
+     * Implemented by the calculations submitted to the executor to specify
+     * their priority
+     */
+    interface IPrioritized {
+
+        Priority getPriority();
+    }
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private static class PrioritizedTask<T> extends FutureTask<T> implements
+            Comparable<PrioritizedTask<?>> {
+
+        private final Priority priority;
+
+        private final long order = sequence.getAndIncrement();
+
+        PrioritizedTask(Callable<T> callable, Priority priority) {
+            super(callable);
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask<?> other) {
+            int result = priority.compareTo(other.priority);
+            if (result != 0) {
+                return result;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService timer = Executors
+            .newSingleThreadScheduledExecutor();
+
+    SnapshotRefreshScheduler(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 0L,
+                TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>()) {
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+                Priority priority = callable instanceof IPrioritized ? ((IPrioritized) callable)
+                        .getPriority() : Priority.NORMAL;
+                return new PrioritizedTask<T>(callable, priority);
+            }
+
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(Runnable runnable,
+                    T value) {
+                return newTaskFor(Executors.callable(runnable, value));
+            }
+
+            /**
+             * The queue can only contain {@link PrioritizedTask}, so the
+             * runnables executed directly are wrapped too
+             */
+            @Override
+            public void execute(Runnable command) {
+                super.execute(command instanceof PrioritizedTask<?> ? command
+                        : newTaskFor(command, null));
+            }
+        };
+    }
+
+    /**
+     * Both <code>submit</code> and <code>execute</code> can be used. The
+     * pending tasks are ordered by the priority of the {@link IPrioritized}
+     * callables, the rest of tasks have {@link Priority#NORMAL} priority.
+     */
+    ThreadPoolExecutor getExecutor() {
+        return executor;
+    }
+
+    void schedule(Runnable runnable, long delayMillis) {
+        if (delayMillis <= 0) {
+            runnable.run();
+            return;
+        }
+        timer.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    int getQueuedCalculations() {
+        return executor.getQueue().size();
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+/**
+ * The statistics of the calculations done by a snapshot. The times are in
+ * milliseconds. The percentiles are calculated from the last calculations.
+ */
+public class SnapshotStatistics {
+
+    private final String name;
+
+    private final int executions;
+
+    private final int errors;
+
+    private final int coalescedReloads;
+
+    private final long meanWaiting;
+
+    private final long meanExecuting;
+
+    private final long[] waitingPercentiles;
+
+    private final long[] executingPercentiles;
+
+    private final long sinceLastExecution;
+
+    private final long staleness;
+
+    SnapshotStatistics(String name, int executions, int errors,
+            int coalescedReloads, long meanWaiting, long meanExecuting,
+            long[] waitingPercentiles, long[] executingPercentiles,
+            long sinceLastExecution, long staleness) {
+        this.name = name;
+        this.executions = executions;
+        this.errors = errors;
+        this.coalescedReloads = coalescedReloads;
+        this.meanWaiting = meanWaiting;
+        this.meanExecuting = meanExecuting;
+        this.waitingPercentiles = waitingPercentiles;
+        this.executingPercentiles = executingPercentiles;
+        this.sinceLastExecution = sinceLastExecution;
+        this.staleness = staleness;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getExecutions() {
+        return executions;
+    }
+
+    public int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the number of reloads that have been merged with a reload
+     *         already pending
+     */
+    public int getCoalescedReloads() {
+        return coalescedReloads;
+    }
+
+    public long getMeanWaiting() {
+        return meanWaiting;
+    }
+
+    public long getMeanExecuting() {
+        return meanExecuting;
+    }
+
+    /**
+     * @return the 50th, 90th and 99th percentiles of the time waiting for a
+     *         free thread
+     */
+    public long[] getWaitingPercentiles() {
+        return waitingPercentiles.clone();
+    }
+
+    /**
+     * @return the 50th, 90th and 99th percentiles of the time executing
+     */
+    public long[] getExecutingPercentiles() {
+        return executingPercentiles.clone();
+    }
+
+    /**
+     * @return the time since the last calculation finished or -1 if there
+     *         hasn't been any
+     */
+    public long getSinceLastExecution() {
+        return sinceLastExecution;
+    }
+
+    /**
+     * @return the time since the first change not included yet in the value,
+     *         0 if the value is up to date
+     */
+    public long getStaleness() {
+        return staleness;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": executions=" + executions + ", errors=" + errors
+                + ", coalesced=" + coalescedReloads + ", meanWaiting="
+                + meanWaiting + ", meanExecuting=" + meanExecuting
+                + ", waiting p50/p90/p99=" + asString(waitingPercentiles)
+                + ", executing p50/p90/p99="
+                + asString(executingPercentiles) + ", sinceLastExecution="
+                + sinceLastExecution + ", staleness=" + staleness;
+    }
+
+    private static String asString(long[] values) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                result.append("/");
+            }
+            result.append(values[i]);
+        }
+        return result.toString();
+    }
+
+}
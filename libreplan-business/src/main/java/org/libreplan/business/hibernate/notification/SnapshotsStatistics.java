@@ -0,0 +1,89 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Exposes the {@link SnapshotStatistics} of the snapshots taken by
+ * {@link HibernateDatabaseModificationsListener} in the platform MBean server,
+ * so they can be read with any JMX console.
+ */
+public class SnapshotsStatistics implements SnapshotsStatisticsMBean {
+
+    private static final Log LOG = LogFactory
+            .getLog(SnapshotsStatistics.class);
+
+    private static final String OBJECT_NAME = "org.libreplan:type=SnapshotsStatistics";
+
+    static void register(HibernateDatabaseModificationsListener listener) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new SnapshotsStatistics(listener), name);
+        } catch (Exception e) {
+            LOG.warn("the statistics of the snapshots can't be exposed", e);
+        }
+    }
+
+    static void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOG.warn("error unregistering the statistics of the snapshots", e);
+        }
+    }
+
+    private final HibernateDatabaseModificationsListener listener;
+
+    private SnapshotsStatistics(HibernateDatabaseModificationsListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public String[] getSnapshots() {
+        List<SnapshotStatistics> statistics = listener.getStatistics();
+        String[] result = new String[statistics.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = statistics.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public int getQueuedCalculations() {
+        return listener.getQueuedCalculations();
+    }
+
+}
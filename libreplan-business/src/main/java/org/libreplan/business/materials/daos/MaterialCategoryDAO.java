@@ -24,6 +24,7 @@ package org.libreplan.business.materials.daos;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
+import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.libreplan.business.common.daos.IntegrationEntityDAO;
@@ -104,4 +105,10 @@ public class MaterialCategoryDAO extends IntegrationEntityDAO<MaterialCategory>
                 Restrictions.isNull("parent")).addOrder(Order.asc("code"))
                 .list();
     }
+
+    @Override
+    protected Criteria createCriteriaForAll() {
+        return super.createCriteriaForAll().add(Restrictions.isNull("parent"));
+    }
+
 }
@@ -50,9 +50,7 @@ import org.libreplan.business.reports.dtos.CostExpenseSheetDTO;
 import org.libreplan.business.reports.dtos.OrderCostsPerResourceDTO;
 import org.libreplan.business.resources.entities.Criterion;
 import org.libreplan.business.scenarios.entities.Scenario;
-import org.libreplan.business.users.daos.IOrderAuthorizationDAO;
 import org.libreplan.business.users.daos.IUserDAO;
-import org.libreplan.business.users.entities.OrderAuthorization;
 import org.libreplan.business.users.entities.OrderAuthorizationType;
 import org.libreplan.business.users.entities.User;
 import org.libreplan.business.users.entities.UserRole;
@@ -81,9 +79,6 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
     @Autowired
     private ITypeOfWorkHoursDAO typeOfWorkHoursDAO;
 
-    @Autowired
-    private IOrderAuthorizationDAO orderAuthorizationDAO;
-
     @Autowired
     private IUserDAO userDAO;
 
@@ -192,31 +187,64 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
         return filteredList;
     }
 
+    private boolean canReadAllOrders(User user) {
+        return user.isInRole(UserRole.ROLE_SUPERUSER)
+                || user.isInRole(UserRole.ROLE_READ_ALL_PROJECTS)
+                || user.isInRole(UserRole.ROLE_EDIT_ALL_PROJECTS);
+    }
+
     @Override
     public List<Order> getOrdersByReadAuthorization(User user) {
-        if (user.isInRole(UserRole.ROLE_SUPERUSER)
-                || user.isInRole(UserRole.ROLE_READ_ALL_PROJECTS)
-                || user.isInRole(UserRole.ROLE_EDIT_ALL_PROJECTS)) {
+        if (canReadAllOrders(user)) {
             return getOrders();
         }
         else {
-            List<Order> orders = new ArrayList<Order>();
-            List<OrderAuthorization> authorizations = orderAuthorizationDAO.listByUserAndItsProfiles(user);
-            for(OrderAuthorization authorization : authorizations) {
-                if (authorization.getAuthorizationType() == OrderAuthorizationType.READ_AUTHORIZATION ||
-                    authorization.getAuthorizationType() == OrderAuthorizationType.WRITE_AUTHORIZATION) {
-
-                    Order order = authorization.getOrder();
-                    if(!orders.contains(order)) {
-                        order.getName(); //this lines forces the load of the basic attributes of the order
-                        orders.add(order);
-                    }
-                }
-            }
-            return orders;
+            return getOrdersByAuthorization(user, false, null);
         }
     }
 
+    /**
+     * It retrieves with a single query the orders for which the user or its
+     * profiles have any authorization or, if <code>onlyWrite</code> is
+     * <code>true</code>, a write authorization. If <code>scenario</code> is
+     * not <code>null</code>, only the orders of that scenario are retrieved.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Order> getOrdersByAuthorization(User user, boolean onlyWrite,
+            Scenario scenario) {
+        String strQuery = "SELECT o FROM Order o";
+        if (scenario != null) {
+            strQuery += ", Scenario s WHERE s = :scenario "
+                    + "AND o IN indices(s.orders) AND ";
+        } else {
+            strQuery += " WHERE ";
+        }
+        strQuery += "o IN (SELECT oa.order FROM OrderAuthorization oa "
+                + "WHERE (oa.user = :user";
+        if (!user.getProfiles().isEmpty()) {
+            strQuery += " OR oa.profile IN (:profiles)";
+        }
+        strQuery += ")";
+        if (onlyWrite) {
+            strQuery += " AND oa.authorizationType = :write";
+        }
+        strQuery += ")";
+
+        Query query = getSession().createQuery(strQuery);
+        query.setParameter("user", user);
+        if (!user.getProfiles().isEmpty()) {
+            query.setParameterList("profiles", user.getProfiles());
+        }
+        if (onlyWrite) {
+            query.setParameter("write",
+                    OrderAuthorizationType.WRITE_AUTHORIZATION);
+        }
+        if (scenario != null) {
+            query.setParameter("scenario", scenario);
+        }
+        return query.list();
+    }
+
     private List<Order> getOrdersByReadAuthorizationBetweenDatesByLabelsCriteriaCustomerAndState(
             User user, Date startDate, Date endDate, List<Label> labels,
             List<Criterion> criteria, ExternalCompany customer,
@@ -435,9 +463,7 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
      * has read permissions.
      */
     private List<Long> getOrdersIdsByReadAuthorization(User user) {
-        if (user.isInRole(UserRole.ROLE_SUPERUSER)
-                || user.isInRole(UserRole.ROLE_READ_ALL_PROJECTS)
-                || user.isInRole(UserRole.ROLE_EDIT_ALL_PROJECTS)) {
+        if (canReadAllOrders(user)) {
             return null;
         } else {
             String strQuery = "SELECT oa.order.id "
@@ -464,18 +490,7 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
             return getOrders();
         }
         else {
-            List<Order> orders = new ArrayList<Order>();
-            List<OrderAuthorization> authorizations = orderAuthorizationDAO.listByUserAndItsProfiles(user);
-            for(OrderAuthorization authorization : authorizations) {
-                if (authorization.getAuthorizationType() == OrderAuthorizationType.WRITE_AUTHORIZATION) {
-                    Order order = authorization.getOrder();
-                    if(!orders.contains(order)) {
-                        order.getName(); //this lines forces the load of the basic attributes of the order
-                        orders.add(order);
-                    }
-                }
-            }
-            return orders;
+            return getOrdersByAuthorization(user, true, null);
         }
     }
 
@@ -485,6 +500,11 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
                 org.hibernate.criterion.Order.asc("infoComponent.code")).list();
     }
 
+    @Override
+    protected String getCodeProperty() {
+        return "infoComponent.code";
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     @Transactional(readOnly = true)
@@ -518,7 +538,14 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
         } catch (InstanceNotFoundException e) {
             throw new RuntimeException(e);
         }
-        return existsInScenario(getOrdersByReadAuthorization(user), scenario);
+        if (scenario.isNewObject()) {
+            return existsInScenario(getOrdersByReadAuthorization(user),
+                    scenario);
+        }
+        if (canReadAllOrders(user)) {
+            return getOrdersByScenario(scenario);
+        }
+        return getOrdersByAuthorization(user, false, scenario);
     }
 
     @Override
@@ -577,9 +604,18 @@ public class OrderDAO extends IntegrationEntityDAO<Order> implements
 
     }
 
+    @SuppressWarnings("unchecked")
     @Override
     public List<Order> getOrdersByScenario(Scenario scenario) {
-        return existsInScenario(getOrders(), scenario);
+        if (scenario.isNewObject()) {
+            return existsInScenario(getOrders(), scenario);
+        }
+        return getSession()
+                .createQuery(
+                        "SELECT o FROM Order o, Scenario s "
+                                + "WHERE s = :scenario "
+                                + "AND o IN indices(s.orders)")
+                .setParameter("scenario", scenario).list();
     }
 
     @Override
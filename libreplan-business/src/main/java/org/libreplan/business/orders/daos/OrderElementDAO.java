@@ -205,6 +205,11 @@ public class OrderElementDAO extends IntegrationEntityDAO<OrderElement>
                 org.hibernate.criterion.Order.asc("infoComponent.code")).list();
     }
 
+    @Override
+    protected String getCodeProperty() {
+        return "infoComponent.code";
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     @Transactional(readOnly = true)
@@ -19,11 +19,14 @@
 
 package org.libreplan.business.orders.daos;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,6 +42,7 @@ import org.libreplan.business.orders.entities.OrderLineGroup;
 import org.libreplan.business.orders.entities.SumChargedEffort;
 import org.libreplan.business.util.Pair;
 import org.libreplan.business.workingday.EffortDuration;
+import org.libreplan.business.workreports.daos.ChargedEffortSummary;
 import org.libreplan.business.workreports.daos.IWorkReportLineDAO;
 import org.libreplan.business.workreports.entities.WorkReportLine;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -73,15 +77,25 @@ public class SumChargedEffortDAO extends
     @Autowired
     private IOrderElementDAO orderElementDAO;
 
-    private Map<OrderElement, SumChargedEffort> mapSumChargedEfforts;
+    /**
+     * Cache of the {@link SumChargedEffort} objects modified in the current
+     * operation. It's confined to the current thread as this DAO is a
+     * singleton and several orders can be recalculated at the same time. It's
+     * removed when the operation finishes, so the pooled threads don't keep
+     * the entities.
+     */
+    private final ThreadLocal<Map<OrderElement, SumChargedEffort>> mapSumChargedEfforts = new ThreadLocal<Map<OrderElement, SumChargedEffort>>();
 
     @Override
     public void updateRelatedSumChargedEffortWithWorkReportLineSet(
             Set<WorkReportLine> workReportLineSet) {
         resetMapSumChargedEfforts();
-
-        for (WorkReportLine workReportLine : workReportLineSet) {
-            updateRelatedSumChargedEffortWithAddedOrModifiedWorkReportLine(workReportLine);
+        try {
+            for (WorkReportLine workReportLine : workReportLineSet) {
+                updateRelatedSumChargedEffortWithAddedOrModifiedWorkReportLine(workReportLine);
+            }
+        } finally {
+            mapSumChargedEfforts.remove();
         }
     }
 
@@ -180,14 +194,18 @@ public class SumChargedEffortDAO extends
     public void updateRelatedSumChargedEffortWithDeletedWorkReportLineSet(
             Set<WorkReportLine> workReportLineSet) {
         resetMapSumChargedEfforts();
-
-        for (WorkReportLine workReportLine : workReportLineSet) {
-            updateRelatedSumChargedEffortWithDeletedWorkReportLine(workReportLine);
+        try {
+            for (WorkReportLine workReportLine : workReportLineSet) {
+                updateRelatedSumChargedEffortWithDeletedWorkReportLine(workReportLine);
+            }
+        } finally {
+            mapSumChargedEfforts.remove();
         }
     }
 
     private void resetMapSumChargedEfforts() {
-        mapSumChargedEfforts = new HashMap<OrderElement, SumChargedEffort>();
+        mapSumChargedEfforts
+                .set(new HashMap<OrderElement, SumChargedEffort>());
     }
 
     private void updateRelatedSumChargedEffortWithDeletedWorkReportLine(
@@ -229,18 +247,51 @@ public class SumChargedEffortDAO extends
     }
 
     private SumChargedEffort getByOrderElement(OrderElement orderElement) {
-        SumChargedEffort sumChargedEffort = mapSumChargedEfforts
-                .get(orderElement);
+        SumChargedEffort sumChargedEffort = mapSumChargedEfforts.get().get(
+                orderElement);
         if (sumChargedEffort == null) {
             sumChargedEffort = findByOrderElement(orderElement);
             if (sumChargedEffort == null) {
                 sumChargedEffort = SumChargedEffort.create(orderElement);
             }
-            mapSumChargedEfforts.put(orderElement, sumChargedEffort);
+            mapSumChargedEfforts.get().put(orderElement, sumChargedEffort);
         }
         return sumChargedEffort;
     }
 
+    /**
+     * Loads in the cache the {@link SumChargedEffort} objects of all the
+     * elements at once instead of one query per element
+     */
+    @SuppressWarnings("unchecked")
+    private void loadSumChargedEfforts(
+            Collection<? extends OrderElement> orderElements) {
+        List<OrderElement> saved = new ArrayList<OrderElement>();
+        for (OrderElement each : orderElements) {
+            if (!each.isNewObject()) {
+                saved.add(each);
+            }
+        }
+        Map<OrderElement, SumChargedEffort> cache = mapSumChargedEfforts
+                .get();
+        for (int i = 0; i < saved.size(); i += IWorkReportLineDAO.MAX_ELEMENTS_PER_QUERY) {
+            List<SumChargedEffort> found = getSession()
+                    .createCriteria(getEntityClass())
+                    .add(Restrictions.in("orderElement", saved.subList(i,
+                            Math.min(saved.size(), i
+                                    + IWorkReportLineDAO.MAX_ELEMENTS_PER_QUERY))))
+                    .list();
+            for (SumChargedEffort each : found) {
+                cache.put(each.getOrderElement(), each);
+            }
+        }
+        for (OrderElement each : orderElements) {
+            if (!cache.containsKey(each)) {
+                cache.put(each, SumChargedEffort.create(each));
+            }
+        }
+    }
+
     @Override
     public SumChargedEffort findByOrderElement(OrderElement orderElement) {
         return (SumChargedEffort) getSession().createCriteria(getEntityClass())
@@ -253,69 +304,54 @@ public class SumChargedEffortDAO extends
     public void recalculateSumChargedEfforts(Long orderId) {
         try {
             Order order = orderDAO.find(orderId);
+            List<OrderElement> orderElements = order.getAllChildren();
+            orderElements.add(order);
+
             resetMapSumChargedEfforts();
-            resetSumChargedEffort(order);
-            calculateDirectChargedEffort(order);
-            calculateTimesheetData(order);
+            loadSumChargedEfforts(orderElements);
+            recalculate(order,
+                    workReportLineDAO.findChargedEffortSummaries(orderElements));
         } catch (InstanceNotFoundException e) {
             throw new RuntimeException(e);
+        } finally {
+            mapSumChargedEfforts.remove();
         }
     }
 
-    private void resetSumChargedEffort(OrderElement orderElement) {
+    /**
+     * Recalculates the {@link SumChargedEffort} of the element and its
+     * children from the summaries of the lines charged directly to each
+     * element.
+     */
+    private SumChargedEffort recalculate(OrderElement orderElement,
+            Map<Long, ChargedEffortSummary> summaries) {
         SumChargedEffort sumChargedEffort = getByOrderElement(orderElement);
         sumChargedEffort.reset();
 
-        for (OrderElement each : orderElement.getChildren()) {
-            resetSumChargedEffort(each);
-        }
-    }
-
-    private void calculateDirectChargedEffort(OrderElement orderElement) {
-        for (OrderElement each : orderElement.getChildren()) {
-            calculateDirectChargedEffort(each);
-        }
-
-        EffortDuration effort = EffortDuration.zero();
-        for (WorkReportLine line : workReportLineDAO
-                .findByOrderElement(orderElement)) {
-            effort = effort.plus(line.getEffort());
-        }
-        addDirectChargedEffort(orderElement, effort);
-    }
-
-    private void calculateTimesheetData(OrderElement orderElement) {
-        calculateTimesheetDatesAndChildren(orderElement);
-        calculateFinishedTimesheetsAndChildren(orderElement);
-    }
-
-    private Pair<Date, Date> calculateTimesheetDatesAndChildren(
-            OrderElement orderElement) {
-        Pair<Date, Date> minMax = workReportLineDAO
-                .findMinAndMaxDatesByOrderElement(orderElement);
-
         Set<Date> minDates = new HashSet<Date>();
         Set<Date> maxDates = new HashSet<Date>();
-
-        addIfNotNull(minDates, minMax.getFirst());
-        addIfNotNull(maxDates, minMax.getSecond());
-
-        for (OrderElement child : orderElement.getChildren()) {
-            Pair<Date, Date> minMaxChild = calculateTimesheetDatesAndChildren(child);
-            addIfNotNull(minDates, minMaxChild.getFirst());
-            addIfNotNull(maxDates, minMaxChild.getSecond());
+        for (OrderElement each : orderElement.getChildren()) {
+            SumChargedEffort child = recalculate(each, summaries);
+            sumChargedEffort.addIndirectChargedEffort(child
+                    .getTotalChargedEffort());
+            addIfNotNull(minDates, child.getFirstTimesheetDate());
+            addIfNotNull(maxDates, child.getLastTimesheetDate());
         }
 
-        Pair<Date, Date> result = Pair.create(
+        ChargedEffortSummary summary = summaries.get(orderElement.getId());
+        if (summary != null) {
+            sumChargedEffort.addDirectChargedEffort(summary.getEffort());
+            addIfNotNull(minDates, summary.getFirstDate());
+            addIfNotNull(maxDates, summary.getLastDate());
+        }
+        sumChargedEffort.setTimesheetDates(
                 minDates.isEmpty() ? null : Collections.min(minDates),
                 maxDates.isEmpty() ? null : Collections.max(maxDates));
-
-        SumChargedEffort sumChargedEffort = getByOrderElement(orderElement);
-        sumChargedEffort.setTimesheetDates(result.getFirst(),
-                result.getSecond());
+        sumChargedEffort.setFinishedTimesheets(summary != null
+                && summary.isFinished());
         save(sumChargedEffort);
 
-        return result;
+        return sumChargedEffort;
     }
 
     private void addIfNotNull(Collection<Date> list, Date date) {
@@ -324,22 +360,6 @@ public class SumChargedEffortDAO extends
         }
     }
 
-    private void calculateFinishedTimesheetsAndChildren(
-            OrderElement orderElement) {
-        calculateFinishedTimesheets(orderElement);
-
-        for (OrderElement child : orderElement.getChildren()) {
-            calculateFinishedTimesheetsAndChildren(child);
-        }
-    }
-
-    private void calculateFinishedTimesheets(OrderElement orderElement) {
-        SumChargedEffort sumChargedEffort = getByOrderElement(orderElement);
-        sumChargedEffort.setFinishedTimesheets(workReportLineDAO
-                .isFinished(orderElement));
-        save(sumChargedEffort);
-    }
-
     @Override
     @Transactional(readOnly = true)
     public Set<OrderElement> getOrderElementsToRecalculateTimsheetDates(
@@ -394,33 +414,83 @@ public class SumChargedEffortDAO extends
     @Transactional
     public void recalculateTimesheetData(Set<OrderElement> orderElements) {
         try {
+            Set<OrderElement> touched = new HashSet<OrderElement>();
             for (OrderElement orderElement : orderElements) {
-                saveTimesheetDatesRecursively(orderElementDAO.find(orderElement
-                        .getId()));
-                calculateFinishedTimesheets(orderElementDAO.find(orderElement
-                        .getId()));
+                touched.add(orderElementDAO.find(orderElement.getId()));
+            }
+            List<OrderElement> ancestors = withAncestorsDeepestFirst(touched);
+            Set<OrderElement> children = new HashSet<OrderElement>();
+            for (OrderElement each : ancestors) {
+                children.addAll(each.getChildren());
+            }
+            children.addAll(ancestors);
+
+            resetMapSumChargedEfforts();
+            loadSumChargedEfforts(children);
+            Map<Long, ChargedEffortSummary> summaries = workReportLineDAO
+                    .findChargedEffortSummaries(ancestors);
+
+            for (OrderElement each : ancestors) {
+                saveTimesheetDates(each, summaries.get(each.getId()));
+            }
+            for (OrderElement each : touched) {
+                ChargedEffortSummary summary = summaries.get(each.getId());
+                SumChargedEffort sumChargedEffort = getByOrderElement(each);
+                sumChargedEffort.setFinishedTimesheets(summary != null
+                        && summary.isFinished());
+                save(sumChargedEffort);
             }
         } catch (InstanceNotFoundException e) {
             throw new RuntimeException(e);
+        } finally {
+            mapSumChargedEfforts.remove();
         }
     }
 
-    private void saveTimesheetDatesRecursively(OrderElement orderElement) {
-        if (orderElement != null) {
-            saveTimesheetDates(orderElement);
-            saveTimesheetDatesRecursively(orderElement.getParent());
+    /**
+     * Returns the elements and all their ancestors without repetitions. The
+     * deepest elements are first, so the children are always before their
+     * parents.
+     */
+    private static List<OrderElement> withAncestorsDeepestFirst(
+            Collection<OrderElement> orderElements) {
+        final Map<OrderElement, Integer> depths = new HashMap<OrderElement, Integer>();
+        for (OrderElement each : orderElements) {
+            OrderElement current = each;
+            while (current != null && !depths.containsKey(current)) {
+                depths.put(current, depthOf(current));
+                current = current.getParent();
+            }
         }
+        List<OrderElement> result = new ArrayList<OrderElement>(
+                depths.keySet());
+        Collections.sort(result, new Comparator<OrderElement>() {
+            @Override
+            public int compare(OrderElement o1, OrderElement o2) {
+                return depths.get(o2) - depths.get(o1);
+            }
+        });
+        return result;
     }
 
-    private void saveTimesheetDates(OrderElement orderElement) {
-        Pair<Date, Date> minMax = workReportLineDAO
-                .findMinAndMaxDatesByOrderElement(orderElement);
+    private static int depthOf(OrderElement orderElement) {
+        int result = 0;
+        for (OrderElement current = orderElement.getParent(); current != null; current = current
+                .getParent()) {
+            result++;
+        }
+        return result;
+    }
 
+    private void saveTimesheetDates(OrderElement orderElement,
+            ChargedEffortSummary summary) {
         Set<Date> minDates = new HashSet<Date>();
         Set<Date> maxDates = new HashSet<Date>();
 
-        addIfNotNull(minDates, minMax.getFirst());
-        addIfNotNull(maxDates, minMax.getSecond());
+        if (summary != null) {
+            addIfNotNull(minDates, summary.getFirstDate());
+            addIfNotNull(maxDates, summary.getLastDate());
+        }
 
         for (OrderElement child : orderElement.getChildren()) {
             SumChargedEffort childSumChargedEffort = getByOrderElement(child);
@@ -19,6 +19,8 @@
 
 package org.libreplan.business.orders.entities;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -38,9 +40,12 @@ import org.springframework.stereotype.Component;
  * This is needed to be called when some elements are moved in the {@link Order}
  * .<br />
  *
- * This class uses a thread, in order to call one by one all the requests
- * received. Moreover, if there's any concurrency issue (because of some reports
- * were saving in the meanwhile) the recalculation is repeated again (with
+ * This class uses a pool of threads, in order to recalculate different orders
+ * at the same time. The requests for the same order are never run at the same
+ * time and, if the order is already waiting to be recalculated, the new
+ * request is discarded as it's already covered by the pending one. Moreover, if
+ * there's any concurrency issue (because of some reports were saving in the
+ * meanwhile) the recalculation is repeated again (with
  * <code>MAX_ATTEMPS_BECAUSE_CONCURRENCY</code> as maximum) till it's performed
  * without concurrency problems.
  *
@@ -64,29 +69,72 @@ public class SumChargedEffortRecalculator implements
      */
     protected static final int MAX_ATTEMPS_BECAUSE_CONCURRENCY = 100;
 
+    /**
+     * Maximum number of orders recalculated at the same time
+     */
+    protected static final int MAX_CONCURRENT_RECALCULATIONS = Math.max(2,
+            Runtime.getRuntime().availableProcessors() / 2);
+
     @Autowired
     private ISumChargedEffortDAO sumChargedEffortDAO;
 
+    private ExecutorService executor = Executors
+            .newFixedThreadPool(MAX_CONCURRENT_RECALCULATIONS);
+
     /**
-     * Single thread executor in order to perform the recalculations one by one.
+     * Orders waiting to be recalculated
      */
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Set<Long> pending = new HashSet<Long>();
+
+    /**
+     * Orders being recalculated right now
+     */
+    private final Set<Long> running = new HashSet<Long>();
 
     @Override
     public void recalculate(Long orderId) {
-        LOG.info("Mark order (id=" + orderId + ") to be recalculated");
+        synchronized (this) {
+            if (!pending.add(orderId)) {
+                LOG.info("Order (id=" + orderId
+                        + ") is already marked to be recalculated");
+                return;
+            }
+            LOG.info("Mark order (id=" + orderId + ") to be recalculated");
+            if (running.contains(orderId)) {
+                // it will be submitted when the current recalculation finishes
+                return;
+            }
+        }
         executor.execute(getRecalculationThread(orderId));
     }
 
+    private synchronized void markAsRunning(Long orderId) {
+        pending.remove(orderId);
+        running.add(orderId);
+    }
+
+    /**
+     * @return if the order was marked again while it was being recalculated
+     */
+    private synchronized boolean markAsFinished(Long orderId) {
+        running.remove(orderId);
+        return pending.contains(orderId);
+    }
+
     private Runnable getRecalculationThread(final Long orderId) {
         return new Runnable() {
 
             @Override
             public void run() {
+                markAsRunning(orderId);
                 try {
                     recalculateSumChargedEfforts(orderId);
                 } catch (InterruptedException e) {
                     throw new RuntimeException(e);
+                } finally {
+                    if (markAsFinished(orderId)) {
+                        executor.execute(getRecalculationThread(orderId));
+                    }
                 }
             }
 
@@ -0,0 +1,353 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.planner.chart;
+
+import static org.libreplan.business.calendars.entities.CalendarCapacityIndex.toDayNumber;
+
+import java.util.Collection;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.Validate;
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.CalendarCapacityIndex;
+import org.libreplan.business.planner.entities.DayAssignment;
+import org.libreplan.business.workingday.EffortDuration;
+
+/**
+ * <p>
+ * Specialization of {@link ContiguousDaysLine} for {@link EffortDuration}
+ * values. The efforts are stored as seconds in an <code>int</code> array, so
+ * the operations between lines are simple loops over arrays and no object is
+ * created per day.
+ * </p>
+ * <p>
+ * {@link #subInterval(LocalDate, LocalDate)} returns a view sharing the same
+ * array, so it's cheap. The lines are not modified once created, except
+ * through {@link #add(EffortDaysLine)} that is intended to be used on newly
+ * created lines.
+ * </p>
+ */
+public class EffortDaysLine {
+
+    private static final int DAYS_PER_WEEK = 7;
+
+    private static final int DAYS_FROM_MONDAY_TO_THURSDAY = 3;
+
+    public static EffortDaysLine invalid() {
+        return new EffortDaysLine(null, new int[0], 0, 0);
+    }
+
+    public static EffortDaysLine create(LocalDate startInclusive,
+            LocalDate endExclusive) {
+        if (startInclusive.isAfter(endExclusive)) {
+            throw new IllegalArgumentException("startInclusive ("
+                    + startInclusive + ") is after endExclusive ("
+                    + endExclusive + ")");
+        }
+        int size = toDayNumber(endExclusive) - toDayNumber(startInclusive);
+        return new EffortDaysLine(startInclusive, new int[size], 0, size);
+    }
+
+    /**
+     * Creates a line wrapping the provided array. The position <code>i</code>
+     * corresponds to <code>startInclusive.plusDays(i)</code>. The array is not
+     * copied.
+     */
+    public static EffortDaysLine wrap(LocalDate startInclusive, int[] seconds) {
+        Validate.notNull(startInclusive);
+        return new EffortDaysLine(startInclusive, seconds, 0, seconds.length);
+    }
+
+    /**
+     * Sums the durations of the assignments for each day. The line spans from
+     * the first to the last day of the assignments.
+     */
+    public static EffortDaysLine loadOf(
+            Collection<? extends DayAssignment> assignments) {
+        if (assignments.isEmpty()) {
+            return invalid();
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (DayAssignment each : assignments) {
+            int day = toDayNumber(each.getDay());
+            min = Math.min(min, day);
+            max = Math.max(max, day);
+        }
+        LocalDate start = CalendarCapacityIndex.fromDayNumber(min);
+        return loadOf(assignments, start, start.plusDays(max - min + 1));
+    }
+
+    /**
+     * Sums the durations of the assignments for each day between the provided
+     * dates. The assignments outside of the interval are ignored.
+     */
+    public static EffortDaysLine loadOf(
+            Collection<? extends DayAssignment> assignments,
+            LocalDate startInclusive, LocalDate endExclusive) {
+        EffortDaysLine result = create(startInclusive, endExclusive);
+        result.addLoadOf(assignments);
+        return result;
+    }
+
+    public static EffortDaysLine sum(EffortDaysLine a, EffortDaysLine b) {
+        if (a.isNotValid()) {
+            return invalid();
+        }
+        checkSameInterval(a, b);
+        int[] result = new int[a.size];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = a.values[a.offset + i] + b.values[b.offset + i];
+        }
+        return wrap(a.start, result);
+    }
+
+    public static EffortDaysLine min(EffortDaysLine a, EffortDaysLine b) {
+        if (a.isNotValid()) {
+            return invalid();
+        }
+        checkSameInterval(a, b);
+        int[] result = new int[a.size];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Math.min(a.values[a.offset + i], b.values[b.offset
+                    + i]);
+        }
+        return wrap(a.start, result);
+    }
+
+    /**
+     * Substracts the subtrahend from the minuend. An effort can't be negative
+     * so, if the subtrahend is bigger than the minuend at some day, zero is
+     * returned for that day.
+     */
+    public static EffortDaysLine substract(EffortDaysLine minuend,
+            EffortDaysLine subtrahend) {
+        if (minuend.isNotValid()) {
+            return invalid();
+        }
+        checkSameInterval(minuend, subtrahend);
+        int[] result = new int[minuend.size];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Math.max(0, minuend.values[minuend.offset + i]
+                    - subtrahend.values[subtrahend.offset + i]);
+        }
+        return wrap(minuend.start, result);
+    }
+
+    /**
+     * Calculates the effort assigned beyond the capacity for each day. It's
+     * the same as {@link #substract(EffortDaysLine, EffortDaysLine)} with the
+     * capacity as subtrahend.
+     */
+    public static EffortDaysLine overload(EffortDaysLine assigned,
+            EffortDaysLine capacity) {
+        return substract(assigned, capacity);
+    }
+
+    /**
+     * Adds to <code>accumulated</code> the effort assigned beyond the capacity
+     * for each position. All arrays must have at least
+     * <code>accumulated.length</code> positions.
+     */
+    public static void accumulateOverload(int[] accumulated, int[] assigned,
+            int[] capacity) {
+        for (int i = 0; i < accumulated.length; i++) {
+            accumulated[i] += Math.max(0, assigned[i] - capacity[i]);
+        }
+    }
+
+    private static void checkSameInterval(EffortDaysLine a, EffortDaysLine b) {
+        Validate.isTrue(a.start.equals(b.start),
+                "the start of all lines must be same date");
+        Validate.isTrue(a.size == b.size,
+                "the end of all lines must be same date");
+    }
+
+    private final LocalDate start;
+
+    private final int[] values;
+
+    private final int offset;
+
+    private final int size;
+
+    private EffortDaysLine(LocalDate start, int[] values, int offset, int size) {
+        this.start = start;
+        this.values = values;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public boolean isNotValid() {
+        return start == null;
+    }
+
+    private void mustBeValid() {
+        if (isNotValid()) {
+            throw new IllegalStateException("this line is invalid");
+        }
+    }
+
+    public LocalDate getStart() {
+        mustBeValid();
+        return start;
+    }
+
+    public LocalDate getEndExclusive() {
+        return getStart().plusDays(size);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getSecondsAt(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position: " + position
+                    + ", size: " + size);
+        }
+        return values[offset + position];
+    }
+
+    public EffortDuration get(LocalDate day) throws IndexOutOfBoundsException {
+        Validate.notNull(day);
+        mustBeValid();
+        return EffortDuration.seconds(getSecondsAt(positionOf(day)));
+    }
+
+    private int positionOf(LocalDate day) {
+        return toDayNumber(day) - toDayNumber(start);
+    }
+
+    /**
+     * Returns a view of this line for the intersection with the provided
+     * interval. The returned line shares the values with this one.
+     */
+    public EffortDaysLine subInterval(LocalDate startInclusive,
+            LocalDate endExclusive) {
+        if (isNotValid()) {
+            return invalid();
+        }
+        int from = startInclusive == null ? 0 : Math.max(0,
+                positionOf(startInclusive));
+        int to = endExclusive == null ? size : Math.min(size,
+                positionOf(endExclusive));
+        if (from >= to) {
+            return invalid();
+        }
+        return new EffortDaysLine(start.plusDays(from), values, offset + from,
+                to - from);
+    }
+
+    /**
+     * Adds the values of other line with the same interval to this one
+     */
+    public void add(EffortDaysLine other) {
+        mustBeValid();
+        checkSameInterval(this, other);
+        for (int i = 0; i < size; i++) {
+            values[offset + i] += other.values[other.offset + i];
+        }
+    }
+
+    /**
+     * Adds the durations of the assignments to the values of their days. The
+     * assignments outside of this line are ignored.
+     */
+    public void addLoadOf(Collection<? extends DayAssignment> assignments) {
+        mustBeValid();
+        int first = toDayNumber(start);
+        for (DayAssignment each : assignments) {
+            int position = toDayNumber(each.getDay()) - first;
+            if (position >= 0 && position < size) {
+                values[offset + position] += each.getDuration().getSeconds();
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the values of this line as seconds
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        System.arraycopy(values, offset, result, 0, size);
+        return result;
+    }
+
+    public SortedMap<LocalDate, EffortDuration> toSortedMap() {
+        SortedMap<LocalDate, EffortDuration> result = new TreeMap<LocalDate, EffortDuration>();
+        if (isNotValid()) {
+            return result;
+        }
+        LocalDate current = start;
+        for (int i = 0; i < size; i++) {
+            result.put(current, EffortDuration.seconds(values[offset + i]));
+            current = current.plusDays(1);
+        }
+        return result;
+    }
+
+    /**
+     * Groups the values by week. Each week is represented by its thursday and
+     * its value is the sum of the values of the days of the week inside this
+     * line divided by seven.
+     */
+    public SortedMap<LocalDate, EffortDuration> averagePerWeek() {
+        SortedMap<LocalDate, EffortDuration> result = new TreeMap<LocalDate, EffortDuration>();
+        if (isNotValid() || isEmpty()) {
+            return result;
+        }
+        LocalDate thursday = start.dayOfWeek().withMinimumValue()
+                .plusDays(DAYS_FROM_MONDAY_TO_THURSDAY);
+        int dayOfWeek = start.getDayOfWeek() - 1;
+        int accumulated = 0;
+        for (int i = 0; i < size; i++) {
+            accumulated += values[offset + i];
+            dayOfWeek++;
+            if (dayOfWeek == DAYS_PER_WEEK || i == size - 1) {
+                result.put(thursday,
+                        EffortDuration.seconds(accumulated / DAYS_PER_WEEK));
+                thursday = thursday.plusDays(DAYS_PER_WEEK);
+                accumulated = 0;
+                dayOfWeek = 0;
+            }
+        }
+        return result;
+    }
+
+    public ContiguousDaysLine<EffortDuration> toContiguousDaysLine() {
+        if (isNotValid()) {
+            return ContiguousDaysLine.invalid();
+        }
+        ContiguousDaysLine<EffortDuration> result = ContiguousDaysLine.create(
+                start, getEndExclusive());
+        for (int i = 0; i < size; i++) {
+            result.set(start.plusDays(i),
+                    EffortDuration.seconds(values[offset + i]));
+        }
+        return result;
+    }
+
+}
@@ -22,10 +22,9 @@
 package org.libreplan.business.planner.chart;
 
 import static org.libreplan.business.planner.chart.ContiguousDaysLine.compound;
-import static org.libreplan.business.planner.chart.ContiguousDaysLine.sum;
-import static org.libreplan.business.planner.chart.ContiguousDaysLine.toSortedMap;
 import static org.libreplan.business.workingday.EffortDuration.min;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -33,16 +32,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.SortedMap;
 
+import org.joda.time.Days;
 import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.ICalendar;
 import org.libreplan.business.hibernate.notification.PredefinedDatabaseSnapshots;
+import org.libreplan.business.planner.daos.IDayAssignmentAggregator;
+import org.libreplan.business.planner.daos.IDayAssignmentDAO;
 import org.libreplan.business.planner.chart.ContiguousDaysLine.IValueTransformer;
 import org.libreplan.business.planner.entities.DayAssignment;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.EffortDuration.IEffortFrom;
-import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 
 /**
  * This class groups the calculation of the three values needed for the
@@ -55,11 +56,15 @@ import org.libreplan.business.workingday.IntraDayDate.PartialDay;
  */
 public class ResourceLoadChartData implements ILoadChartData {
 
-    private SortedMap<LocalDate, EffortDuration> load;
+    private EffortDaysLine load;
 
-    private SortedMap<LocalDate, EffortDuration> overload;
+    private EffortDaysLine overload;
 
-    private SortedMap<LocalDate, EffortDuration> availability;
+    private EffortDaysLine availability;
+
+    private ResourcesLoadAggregator aggregated;
+
+    private List<Resource> resources;
 
     public ResourceLoadChartData(List<DayAssignment> dayAssignments, List<Resource> resources) {
         this(dayAssignments, resources, null, null);
@@ -68,29 +73,142 @@ public class ResourceLoadChartData implements ILoadChartData {
     public ResourceLoadChartData(List<DayAssignment> dayAssignments,
             List<Resource> resources, LocalDate startInclusive,
             LocalDate endExclusive) {
+        this.resources = resources;
 
-        ContiguousDaysLine<List<DayAssignment>> assignments = ContiguousDaysLine
-                .byDay(dayAssignments);
+        EffortDaysLine load = EffortDaysLine.loadOf(dayAssignments);
         if (startInclusive != null && endExclusive != null) {
-            assignments = assignments.subInterval(startInclusive, endExclusive);
+            load = load.subInterval(startInclusive, endExclusive);
+        }
+        if (load.isNotValid()) {
+            this.load = this.overload = this.availability = EffortDaysLine
+                    .invalid();
+            return;
+        }
+        initialize(load,
+                overloadOf(dayAssignments, load.getStart(),
+                        load.getEndExclusive()), resources);
+    }
+
+    /**
+     * Creates the chart data from the loads streamed from the database, so no
+     * {@link DayAssignment} needs to be loaded.
+     *
+     * @see IDayAssignmentDAO#aggregateFor(org.libreplan.business.scenarios.entities.Scenario,
+     *      LocalDate, LocalDate, Collection, IDayAssignmentAggregator)
+     */
+    public ResourceLoadChartData(ResourcesLoadAggregator aggregated,
+            List<Resource> resources) {
+        this.aggregated = aggregated;
+        this.resources = resources;
+        EffortDaysLine load = aggregated.getLoad();
+        if (load.isNotValid()) {
+            this.load = this.overload = this.availability = EffortDaysLine
+                    .invalid();
+            return;
+        }
+        initialize(load,
+                overloadOf(aggregated, resources, load.getStart(),
+                        load.getEndExclusive()), resources);
+    }
+
+    private void initialize(EffortDaysLine load, EffortDaysLine overload,
+            List<Resource> resources) {
+        LocalDate start = load.getStart();
+        LocalDate end = load.getEndExclusive();
+
+        EffortDaysLine availabilityOnAllResources = EffortDaysLine.wrap(start,
+                sumCalendarCapacities(resources, start, end));
+
+        this.load = EffortDaysLine.min(load, availabilityOnAllResources);
+        this.overload = EffortDaysLine.sum(overload,
+                availabilityOnAllResources);
+        this.availability = availabilityOnAllResources;
+    }
+
+    /**
+     * Calculates the effort assigned beyond the capacity of each resource.
+     * The same scratch arrays are reused for all the resources.
+     */
+    private static EffortDaysLine overloadOf(List<DayAssignment> dayAssignments,
+            LocalDate startInclusive, LocalDate endExclusive) {
+        int size = Days.daysBetween(startInclusive, endExclusive).getDays();
+        int[] result = new int[size];
+        int[] assigned = new int[size];
+        int[] capacities = new int[size];
+        EffortDaysLine assignedLine = EffortDaysLine.wrap(startInclusive,
+                assigned);
+        for (Entry<Resource, List<DayAssignment>> each : DayAssignment
+                .byResource(dayAssignments).entrySet()) {
+            Arrays.fill(assigned, 0);
+            assignedLine.addLoadOf(each.getValue());
+            each.getKey().getCalendarOrDefault().fillCapacitiesBetween(
+                    startInclusive, endExclusive, capacities, null);
+            EffortDaysLine.accumulateOverload(result, assigned, capacities);
+        }
+        return EffortDaysLine.wrap(startInclusive, result);
+    }
+
+    private static EffortDaysLine overloadOf(
+            ResourcesLoadAggregator aggregated, List<Resource> resources,
+            LocalDate startInclusive, LocalDate endExclusive) {
+        int size = Days.daysBetween(startInclusive, endExclusive).getDays();
+        int[] result = new int[size];
+        int[] assigned = new int[size];
+        int[] capacities = new int[size];
+        for (Resource each : resources) {
+            if (!aggregated.hasLoad(each.getId())) {
+                continue;
+            }
+            aggregated.fillLoadOf(each.getId(), startInclusive, assigned);
+            each.getCalendarOrDefault().fillCapacitiesBetween(startInclusive,
+                    endExclusive, capacities, null);
+            EffortDaysLine.accumulateOverload(result, assigned, capacities);
+        }
+        return EffortDaysLine.wrap(startInclusive, result);
+    }
+
+    /**
+     * The capacities of the calendars of the resources for the days of a
+     * line. Each calendar is asked once for all the days with
+     * {@link ICalendar#fillCapacitiesBetween(LocalDate, LocalDate, int[], int[])}
+     * instead of day by day.
+     */
+    public static class CalendarCapacities {
+
+        /**
+         * @param line
+         *            the capacities can only be asked for its days, so it
+         *            mustn't be invalid when they are asked
+         */
+        public static CalendarCapacities on(ContiguousDaysLine<?> line) {
+            return new CalendarCapacities(line);
         }
-        ContiguousDaysLine<EffortDuration> load = assignments
-                .transform(extractLoad());
 
-        ContiguousDaysLine<EffortDuration> overload = assignments
-                .transform(extractOverload());
+        private final ContiguousDaysLine<?> line;
 
-        ContiguousDaysLine<EffortDuration> availabilityOnAllResources = assignments
-                .transform(extractAvailabilityOnAllResources(resources));
+        private final Map<Resource, int[]> byResource = new HashMap<Resource, int[]>();
 
-        this.load = toSortedMap(ContiguousDaysLine.min(load,
-                availabilityOnAllResources));
-        this.overload = toSortedMap(sum(overload, availabilityOnAllResources));
-        this.availability = toSortedMap(availabilityOnAllResources);
+        private CalendarCapacities(ContiguousDaysLine<?> line) {
+            this.line = line;
+        }
+
+        public EffortDuration capacityOn(Resource resource, LocalDate day) {
+            int[] capacities = byResource.get(resource);
+            if (capacities == null) {
+                capacities = new int[line.size()];
+                resource.getCalendarOrDefault().fillCapacitiesBetween(
+                        line.getStart(), line.getEndExclusive(), capacities,
+                        null);
+                byResource.put(resource, capacities);
+            }
+            return EffortDuration.seconds(capacities[Days.daysBetween(
+                    line.getStart(), day).getDays()]);
+        }
     }
 
-    public static IValueTransformer<List<DayAssignment>, EffortDuration> extractOverload() {
-        return compound(effortByResource(), calculateOverload());
+    public static IValueTransformer<List<DayAssignment>, EffortDuration> extractOverload(
+            CalendarCapacities capacities) {
+        return compound(effortByResource(), calculateOverload(capacities));
     }
 
     private static IValueTransformer<List<DayAssignment>, Map<Resource, EffortDuration>> effortByResource() {
@@ -112,22 +230,22 @@ public class ResourceLoadChartData implements ILoadChartData {
         };
     }
 
-    public static IValueTransformer<Map<Resource, EffortDuration>, EffortDuration> calculateOverload() {
+    public static IValueTransformer<Map<Resource, EffortDuration>, EffortDuration> calculateOverload(
+            final CalendarCapacities capacities) {
         return new IValueTransformer<Map<Resource, EffortDuration>, EffortDuration>() {
 
             @Override
-            public EffortDuration transform(LocalDate day,
+            public EffortDuration transform(final LocalDate day,
                     Map<Resource, EffortDuration> previousValue) {
 
-                final PartialDay wholeDay = PartialDay.wholeDay(day);
                 return EffortDuration.sum(previousValue.entrySet(),
                         new IEffortFrom<Entry<Resource, EffortDuration>>() {
 
                             @Override
                             public EffortDuration from(
                                     Entry<Resource, EffortDuration> each) {
-                                EffortDuration capacity = calendarCapacityFor(
-                                        each.getKey(), wholeDay);
+                                EffortDuration capacity = capacities
+                                        .capacityOn(each.getKey(), day);
                                 EffortDuration assigned = each.getValue();
                                 return assigned.minus(min(capacity, assigned));
                             }
@@ -147,14 +265,22 @@ public class ResourceLoadChartData implements ILoadChartData {
         };
     }
 
-    public static IValueTransformer<List<DayAssignment>, EffortDuration> extractAvailabilityOnAssignedResources() {
+    public static IValueTransformer<List<DayAssignment>, EffortDuration> extractAvailabilityOnAssignedResources(
+            final CalendarCapacities capacities) {
         return new IValueTransformer<List<DayAssignment>, EffortDuration>() {
 
             @Override
-            public EffortDuration transform(LocalDate day,
+            public EffortDuration transform(final LocalDate day,
                     List<DayAssignment> previousValue) {
                 Set<Resource> resources = getResources(previousValue);
-                return sumCalendarCapacitiesForDay(resources, day);
+                return EffortDuration.sum(resources,
+                        new IEffortFrom<Resource>() {
+
+                            @Override
+                            public EffortDuration from(Resource each) {
+                                return capacities.capacityOn(each, day);
+                            }
+                        });
             }
 
             private Set<Resource> getResources(List<DayAssignment> assignments) {
@@ -167,27 +293,53 @@ public class ResourceLoadChartData implements ILoadChartData {
         };
     }
 
-    private IValueTransformer<List<DayAssignment>, EffortDuration> extractAvailabilityOnAllResources(
-            final List<Resource> resources) {
-        return new IValueTransformer<List<DayAssignment>, EffortDuration>() {
-
-            @Override
-            public EffortDuration transform(LocalDate day,
-                    List<DayAssignment> previousValue) {
-                return sumCalendarCapacitiesForDay(resources, day);
+    /**
+     * Sums the capacities of the calendars of the resources for each day of
+     * the interval. The position <code>i</code> of the returned array contains
+     * the seconds for <code>startInclusive.plusDays(i)</code>.
+     */
+    public static int[] sumCalendarCapacities(
+            Collection<? extends Resource> resources, LocalDate startInclusive,
+            LocalDate endExclusive) {
+        int size = Math.max(0, Days.daysBetween(startInclusive, endExclusive)
+                .getDays());
+        int[] result = new int[size];
+        int[] each = new int[size];
+        for (Resource resource : resources) {
+            resource.getCalendarOrDefault().fillCapacitiesBetween(
+                    startInclusive, endExclusive, each, null);
+            for (int i = 0; i < size; i++) {
+                result[i] += each[i];
             }
-        };
+        }
+        return result;
     }
 
-    public SortedMap<LocalDate, EffortDuration> getLoad() {
+    public EffortDaysLine getLoad() {
         return load;
     }
 
-    public SortedMap<LocalDate, EffortDuration> getOverload() {
+    /**
+     * @return the loads from which this has been created or <code>null</code>
+     *         if it has been created from {@link DayAssignment day
+     *         assignments}
+     */
+    public ResourcesLoadAggregator getAggregated() {
+        return aggregated;
+    }
+
+    public EffortDaysLine getOverload() {
         return overload;
     }
 
-    public SortedMap<LocalDate, EffortDuration> getAvailability() {
+    /**
+     * @return the resources whose capacities have been used
+     */
+    public List<Resource> getResources() {
+        return resources;
+    }
+
+    public EffortDaysLine getAvailability() {
         return availability;
     }
 
@@ -201,49 +353,24 @@ public class ResourceLoadChartData implements ILoadChartData {
         return new ILoadChartData() {
 
             @Override
-            public SortedMap<LocalDate, EffortDuration> getOverload() {
+            public EffortDaysLine getOverload() {
                 return filter(original.getOverload());
             }
 
             @Override
-            public SortedMap<LocalDate, EffortDuration> getLoad() {
+            public EffortDaysLine getLoad() {
                 return filter(original.getLoad());
             }
 
             @Override
-            public SortedMap<LocalDate, EffortDuration> getAvailability() {
+            public EffortDaysLine getAvailability() {
                 return filter(original.getAvailability());
             }
 
-            private SortedMap<LocalDate, EffortDuration> filter(
-                    SortedMap<LocalDate, EffortDuration> map) {
-                if (startInclusive != null) {
-                    return map.tailMap(startInclusive);
-                }
-                if (endExclusive != null) {
-                    return map.headMap(endExclusive);
-                }
-                return map.subMap(startInclusive, endExclusive);
+            private EffortDaysLine filter(EffortDaysLine line) {
+                return line.subInterval(startInclusive, endExclusive);
             }
         };
     }
 
-    private static EffortDuration sumCalendarCapacitiesForDay(
-            Collection<? extends Resource> resources, LocalDate day) {
-
-        final PartialDay wholeDay = PartialDay.wholeDay(day);
-
-        return EffortDuration.sum(resources, new IEffortFrom<Resource>() {
-            @Override
-            public EffortDuration from(Resource each) {
-                return calendarCapacityFor(each, wholeDay);
-            }
-        });
-    }
-
-    protected static EffortDuration calendarCapacityFor(Resource resource,
-            PartialDay day) {
-        return resource.getCalendarOrDefault().getCapacityOn(day);
-    }
-
 }
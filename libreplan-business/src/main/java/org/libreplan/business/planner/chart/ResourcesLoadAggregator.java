@@ -0,0 +1,195 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.planner.chart;
+
+import static org.libreplan.business.calendars.entities.CalendarCapacityIndex.toDayNumber;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.CalendarCapacityIndex;
+import org.libreplan.business.planner.daos.IDayAssignmentAggregator;
+import org.libreplan.business.planner.daos.IDayAssignmentDAO;
+
+/**
+ * Accumulates the load per day of each resource from the values streamed by
+ * {@link IDayAssignmentDAO}. The loads are kept as arrays of seconds that grow
+ * as needed, so the day assignments can be received in any order.
+ */
+public class ResourcesLoadAggregator implements IDayAssignmentAggregator {
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    /**
+     * Sum of seconds per day for a contiguous interval of days
+     */
+    private static class DaysBuffer {
+
+        private int firstDay;
+
+        private int lastDay;
+
+        private int[] values;
+
+        void add(int day, int seconds) {
+            if (values == null) {
+                values = new int[INITIAL_CAPACITY];
+                firstDay = lastDay = day;
+            } else if (day < firstDay) {
+                growBefore(day);
+            } else if (day - firstDay >= values.length) {
+                growAfter(day);
+            }
+            values[day - firstDay] += seconds;
+            lastDay = Math.max(lastDay, day);
+        }
+
+        private void growBefore(int day) {
+            int used = lastDay - firstDay + 1;
+            int newFirstDay = Math.min(day, lastDay - 2 * values.length + 1);
+            int[] newValues = new int[lastDay - newFirstDay + 1];
+            System.arraycopy(values, 0, newValues, firstDay - newFirstDay,
+                    used);
+            values = newValues;
+            firstDay = newFirstDay;
+        }
+
+        private void growAfter(int day) {
+            values = Arrays.copyOf(values,
+                    Math.max(day - firstDay + 1, 2 * values.length));
+        }
+
+        boolean isEmpty() {
+            return values == null;
+        }
+
+        int get(int day) {
+            if (isEmpty() || day < firstDay || day > lastDay) {
+                return 0;
+            }
+            return values[day - firstDay];
+        }
+
+        void addAll(DaysBuffer other) {
+            if (other.isEmpty()) {
+                return;
+            }
+            add(other.firstDay, 0);
+            add(other.lastDay, 0);
+            for (int day = other.firstDay; day <= other.lastDay; day++) {
+                values[day - firstDay] += other.values[day - other.firstDay];
+            }
+        }
+
+        EffortDaysLine toLine() {
+            if (isEmpty()) {
+                return EffortDaysLine.invalid();
+            }
+            return EffortDaysLine.wrap(
+                    CalendarCapacityIndex.fromDayNumber(firstDay),
+                    Arrays.copyOf(values, lastDay - firstDay + 1));
+        }
+    }
+
+    private final DaysBuffer total = new DaysBuffer();
+
+    private final Map<Long, DaysBuffer> byResource = new HashMap<Long, DaysBuffer>();
+
+    @Override
+    public void add(long resourceId, LocalDate day, int seconds,
+            long allocationId, boolean consolidated) {
+        int dayNumber = toDayNumber(day);
+        total.add(dayNumber, seconds);
+        bufferFor(resourceId).add(dayNumber, seconds);
+    }
+
+    private DaysBuffer bufferFor(long resourceId) {
+        DaysBuffer result = byResource.get(resourceId);
+        if (result == null) {
+            result = new DaysBuffer();
+            byResource.put(resourceId, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the load of all the resources. The line spans from the first to
+     *         the last day with load, or it's invalid if nothing has been
+     *         received.
+     */
+    public EffortDaysLine getLoad() {
+        return total.toLine();
+    }
+
+    public Set<Long> getResourceIds() {
+        return Collections.unmodifiableSet(byResource.keySet());
+    }
+
+    public boolean hasLoad(long resourceId) {
+        return byResource.containsKey(resourceId);
+    }
+
+    /**
+     * Copies the load of the resource into <code>seconds</code>. The position
+     * <code>i</code> receives the load of <code>startInclusive.plusDays(i)</code>.
+     */
+    public void fillLoadOf(long resourceId, LocalDate startInclusive,
+            int[] seconds) {
+        DaysBuffer buffer = byResource.get(resourceId);
+        int first = toDayNumber(startInclusive);
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = buffer == null ? 0 : buffer.get(first + i);
+        }
+    }
+
+    /**
+     * Creates a new aggregator with the loads of this one except the ones of
+     * the provided resources, that are taken from <code>newLoads</code>. This
+     * aggregator is not modified, and the loads of the resources not replaced
+     * are shared with the new one, so neither must receive more values.
+     */
+    public ResourcesLoadAggregator replacingLoadOf(
+            Collection<Long> resourceIds, ResourcesLoadAggregator newLoads) {
+        ResourcesLoadAggregator result = new ResourcesLoadAggregator();
+        for (Entry<Long, DaysBuffer> each : byResource.entrySet()) {
+            if (!resourceIds.contains(each.getKey())) {
+                result.byResource.put(each.getKey(), each.getValue());
+            }
+        }
+        for (Long each : resourceIds) {
+            DaysBuffer buffer = newLoads.byResource.get(each);
+            if (buffer != null) {
+                result.byResource.put(each, buffer);
+            }
+        }
+        for (DaysBuffer each : result.byResource.values()) {
+            result.total.addAll(each);
+        }
+        return result;
+    }
+
+}
@@ -22,19 +22,32 @@
 package org.libreplan.business.planner.daos;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
 import org.joda.time.LocalDate;
 import org.libreplan.business.common.daos.GenericDAOHibernate;
+import org.libreplan.business.planner.entities.CompactDayAssignments;
 import org.libreplan.business.planner.entities.DayAssignment;
 import org.libreplan.business.planner.entities.DerivedDayAssignment;
+import org.libreplan.business.planner.entities.DerivedDayAssignmentsContainer;
 import org.libreplan.business.planner.entities.GenericDayAssignment;
+import org.libreplan.business.planner.entities.GenericDayAssignmentsContainer;
+import org.libreplan.business.planner.entities.ResourceAllocation;
 import org.libreplan.business.planner.entities.SpecificDayAssignment;
+import org.libreplan.business.planner.entities.SpecificDayAssignmentsContainer;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.scenarios.entities.Scenario;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -53,6 +66,40 @@ import org.springframework.stereotype.Repository;
 public class DayAssignmentDAO extends GenericDAOHibernate<DayAssignment, Long>
         implements IDayAssignmentDAO {
 
+    /**
+     * Number of allocations migrated by {@link #compactAllFor(Scenario)}
+     * before flushing and clearing the session
+     */
+    private static final int ALLOCATIONS_PER_FLUSH = 50;
+
+    private static final List<String> COMPACTED_CONTAINERS = Arrays.asList(
+            "SpecificDayAssignmentsContainer",
+            "GenericDayAssignmentsContainer");
+
+    /**
+     * The scenario of a day assignment is the one of its container. The three
+     * kinds of containers are joined so all the day assignments are retrieved
+     * in just one query.
+     */
+    private static final String FROM_DAY_ASSIGNMENTS_OF_SCENARIO = " FROM day_assignment d"
+            + " LEFT OUTER JOIN specific_day_assignments_container sc"
+            + " ON d.specific_container_id = sc.id"
+            + " LEFT OUTER JOIN generic_day_assignments_container gc"
+            + " ON d.generic_container_id = gc.id"
+            + " LEFT OUTER JOIN derived_day_assignments_container dc"
+            + " ON d.derived_container_id = dc.id"
+            + " WHERE (sc.scenario = :scenario OR gc.scenario = :scenario"
+            + " OR dc.scenario = :scenario)";
+
+    private static final String SELECT_AGGREGATED_VALUES = "SELECT"
+            + " d.resource_id AS resource_id, d.day AS day,"
+            + " d.duration AS duration,"
+            + " COALESCE(sc.resource_allocation_id, gc.resource_allocation_id,"
+            + " dc.derived_allocation_id) AS allocation_id,"
+            + " d.consolidated AS consolidated";
+
+    private static final int FETCH_SIZE = 1000;
+
     @Override
     public void removeDerived(
             Collection<? extends DerivedDayAssignment> assignments) {
@@ -180,10 +227,19 @@ public class DayAssignmentDAO extends GenericDAOHibernate<DayAssignment, Long>
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public List<DayAssignment> findByResources(Scenario scenario, List<Resource> resources) {
-        // TODO incorporate scenario filtering to the query instead of doing it
-        // in memory
-        return DayAssignment.withScenario(scenario, findByResources(resources));
+        if (resources.isEmpty()) {
+            return Collections.emptyList();
+        }
+        SQLQuery query = getSession().createSQLQuery(
+                "SELECT {d.*}" + FROM_DAY_ASSIGNMENTS_OF_SCENARIO
+                        + " AND d.resource_id IN (:resources)");
+        query.addEntity("d", DayAssignment.class);
+        synchronizeWithContainers(query);
+        query.setParameter("scenario", scenario.getId());
+        query.setParameterList("resources", idsOf(resources));
+        return query.list();
     }
 
     @Override
@@ -196,4 +252,189 @@ public class DayAssignmentDAO extends GenericDAOHibernate<DayAssignment, Long>
         return criteria.list();
     }
 
+    @Override
+    public void aggregateFor(Scenario scenario, LocalDate initInclusive,
+            LocalDate endInclusive, Collection<? extends Resource> resources,
+            IDayAssignmentAggregator aggregator) {
+        if (resources != null && resources.isEmpty()) {
+            return;
+        }
+        SQLQuery query = getSession().createSQLQuery(
+                SELECT_AGGREGATED_VALUES + FROM_DAY_ASSIGNMENTS_OF_SCENARIO
+                        + (initInclusive != null ? " AND d.day >= :init" : "")
+                        + (endInclusive != null ? " AND d.day <= :end" : "")
+                        + (resources != null ? " AND d.resource_id IN (:resources)"
+                                : ""));
+        query.addScalar("resource_id", StandardBasicTypes.LONG)
+                .addScalar("day", StandardBasicTypes.DATE)
+                .addScalar("duration", StandardBasicTypes.INTEGER)
+                .addScalar("allocation_id", StandardBasicTypes.LONG)
+                .addScalar("consolidated", StandardBasicTypes.BOOLEAN);
+        query.addSynchronizedEntityClass(DayAssignment.class);
+        synchronizeWithContainers(query);
+        query.setParameter("scenario", scenario.getId());
+        if (initInclusive != null) {
+            query.setDate("init", initInclusive.toDateTimeAtStartOfDay()
+                    .toDate());
+        }
+        if (endInclusive != null) {
+            query.setDate("end", endInclusive.toDateTimeAtStartOfDay()
+                    .toDate());
+        }
+        if (resources != null) {
+            query.setParameterList("resources", idsOf(resources));
+        }
+        query.setReadOnly(true);
+        query.setFetchSize(FETCH_SIZE);
+
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                Boolean consolidated = results.getBoolean(4);
+                aggregator.add(results.getLong(0),
+                        LocalDate.fromDateFields(results.getDate(1)),
+                        results.getInteger(2), results.getLong(3),
+                        consolidated != null && consolidated);
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    @Override
+    public void saveCompacted(ResourceAllocation<?> allocation,
+            Scenario scenario) {
+        saveCompacted(allocation.getId(), scenario.getId());
+    }
+
+    @Override
+    public void saveCompacted(Long allocationId, Long scenarioId) {
+        removeCompacted(allocationId, scenarioId);
+        ResourceAllocation<?> allocation = (ResourceAllocation<?>) getSession()
+                .get(ResourceAllocation.class, allocationId);
+        Scenario scenario = (Scenario) getSession().get(Scenario.class,
+                scenarioId);
+        if (allocation == null || scenario == null) {
+            return;
+        }
+        saveCompacted(allocation, scenario, false, getAssignmentsOf(
+                "SpecificDayAssignmentsContainer", allocationId, scenarioId));
+        saveCompacted(allocation, scenario, true, getAssignmentsOf(
+                "GenericDayAssignmentsContainer", allocationId, scenarioId));
+    }
+
+    /**
+     * The assignments are decoded as generic or specific depending on the
+     * container they come from, since the allocation could be a proxy
+     */
+    private void saveCompacted(ResourceAllocation<?> allocation,
+            Scenario scenario, boolean generic,
+            List<DayAssignment> dayAssignments) {
+        for (Entry<Resource, List<DayAssignment>> each : DayAssignment
+                .byResource(dayAssignments).entrySet()) {
+            getSession().save(
+                    CompactDayAssignments.create(allocation, scenario,
+                            each.getKey(), generic, each.getValue()));
+        }
+    }
+
+    private void removeCompacted(Long allocationId, Long scenarioId) {
+        getSession()
+                .createQuery(
+                        "delete from CompactDayAssignments c"
+                                + " where c.resourceAllocation.id = :allocation"
+                                + " and c.scenario.id = :scenario")
+                .setParameter("allocation", allocationId)
+                .setParameter("scenario", scenarioId).executeUpdate();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<DayAssignment> getAssignmentsOf(String container,
+            Long allocationId, Long scenarioId) {
+        return getSession()
+                .createQuery(
+                        "select d from " + container
+                                + " c JOIN c.dayAssignments d"
+                                + " where c.scenario.id = :scenario"
+                                + " and c.resourceAllocation.id = :allocation")
+                .setParameter("scenario", scenarioId)
+                .setParameter("allocation", allocationId).list();
+    }
+
+    @Override
+    public int compactAllFor(Scenario scenario) {
+        Long scenarioId = scenario.getId();
+        Set<Long> allocationIds = new LinkedHashSet<Long>();
+        for (String container : COMPACTED_CONTAINERS) {
+            allocationIds.addAll(findAllocationIdsOf(container, scenarioId));
+        }
+        int compacted = 0;
+        for (Long each : allocationIds) {
+            saveCompacted(each, scenarioId);
+            compacted++;
+            if (compacted % ALLOCATIONS_PER_FLUSH == 0) {
+                getSession().flush();
+                getSession().clear();
+            }
+        }
+        getSession().flush();
+        getSession().clear();
+        return compacted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> findAllocationIdsOf(String container, Long scenarioId) {
+        return getSession()
+                .createQuery(
+                        "select distinct c.resourceAllocation.id from "
+                                + container + " c where c.scenario.id = :scenario")
+                .setParameter("scenario", scenarioId).list();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<CompactDayAssignments> findCompacted(Scenario scenario,
+            Collection<? extends Resource> resources) {
+        if (resources.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return getSession()
+                .createQuery(
+                        "from CompactDayAssignments c"
+                                + " where c.scenario = :scenario"
+                                + " and c.resource in (:resources)")
+                .setParameter("scenario", scenario)
+                .setParameterList("resources", resources).list();
+    }
+
+    @Override
+    public List<DayAssignment> findCompactedByResources(Scenario scenario,
+            Collection<? extends Resource> resources) {
+        List<DayAssignment> result = new ArrayList<DayAssignment>();
+        for (CompactDayAssignments each : findCompacted(scenario, resources)) {
+            result.addAll(each.getDayAssignments());
+        }
+        return result;
+    }
+
+    /**
+     * Ensures the pending changes on the containers are flushed before running
+     * the native query
+     */
+    private static void synchronizeWithContainers(SQLQuery query) {
+        query.addSynchronizedEntityClass(SpecificDayAssignmentsContainer.class)
+                .addSynchronizedEntityClass(
+                        GenericDayAssignmentsContainer.class)
+                .addSynchronizedEntityClass(
+                        DerivedDayAssignmentsContainer.class);
+    }
+
+    private static List<Long> idsOf(Collection<? extends Resource> resources) {
+        List<Long> result = new ArrayList<Long>();
+        for (Resource each : resources) {
+            result.add(each.getId());
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,50 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.planner.daos;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.planner.entities.DayAssignment;
+
+/**
+ * Receives the relevant values of {@link DayAssignment day assignments}
+ * streamed from the database by
+ * {@link IDayAssignmentDAO#aggregateFor(org.libreplan.business.scenarios.entities.Scenario, LocalDate, LocalDate, java.util.Collection, IDayAssignmentAggregator)}
+ * . No entity is loaded, so the values are received as plain values.
+ */
+public interface IDayAssignmentAggregator {
+
+    /**
+     * @param resourceId
+     *            the id of the resource of the day assignment
+     * @param day
+     *            the day of the day assignment
+     * @param seconds
+     *            the duration of the day assignment in seconds
+     * @param allocationId
+     *            the id of the resource allocation or, for derived day
+     *            assignments, of the derived allocation
+     * @param consolidated
+     *            if the day assignment is consolidated
+     */
+    public void add(long resourceId, LocalDate day, int seconds,
+            long allocationId, boolean consolidated);
+
+}
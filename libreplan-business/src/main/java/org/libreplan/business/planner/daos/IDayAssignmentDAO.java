@@ -26,8 +26,10 @@ import java.util.List;
 
 import org.joda.time.LocalDate;
 import org.libreplan.business.common.daos.IGenericDAO;
+import org.libreplan.business.planner.entities.CompactDayAssignments;
 import org.libreplan.business.planner.entities.DayAssignment;
 import org.libreplan.business.planner.entities.DerivedDayAssignment;
+import org.libreplan.business.planner.entities.ResourceAllocation;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.scenarios.entities.Scenario;
 
@@ -58,4 +60,60 @@ public interface IDayAssignmentDAO extends IGenericDAO<DayAssignment, Long> {
 
     public List<DayAssignment> findByResources(List<Resource> resources);
 
+    /**
+     * Streams the day assignments of the scenario to the aggregator with a
+     * single query. Only the values needed by the aggregator are retrieved so
+     * no {@link DayAssignment} is loaded in the session.
+     *
+     * @param initInclusive
+     *            if <code>null</code> there is no lower limit
+     * @param endInclusive
+     *            if <code>null</code> there is no upper limit
+     * @param resources
+     *            if <code>null</code> the day assignments of all the
+     *            resources are retrieved
+     */
+    public void aggregateFor(Scenario scenario, LocalDate initInclusive,
+            LocalDate endInclusive, Collection<? extends Resource> resources,
+            IDayAssignmentAggregator aggregator);
+
+    /**
+     * Stores the day assignments of the allocation on the scenario as
+     * {@link CompactDayAssignments}, one for each resource, replacing the ones
+     * stored previously
+     */
+    public void saveCompacted(ResourceAllocation<?> allocation,
+            Scenario scenario);
+
+    /**
+     * Like {@link #saveCompacted(ResourceAllocation, Scenario)}. If the
+     * allocation or the scenario don't exist anymore the stored
+     * {@link CompactDayAssignments} are just removed.
+     */
+    public void saveCompacted(Long allocationId, Long scenarioId);
+
+    /**
+     * Stores as {@link CompactDayAssignments} the day assignments of all the
+     * resource allocations of the scenario. It's intended to migrate the
+     * existing data, so it should be run in its own transaction: the session
+     * is flushed and cleared every few allocations to keep it small.
+     *
+     * @return the number of resource allocations stored
+     */
+    public int compactAllFor(Scenario scenario);
+
+    /**
+     * @return the {@link CompactDayAssignments} of the resources on the
+     *         scenario. The day assignments are not decoded until requested.
+     */
+    public List<CompactDayAssignments> findCompacted(Scenario scenario,
+            Collection<? extends Resource> resources);
+
+    /**
+     * @return the day assignments decoded from the
+     *         {@link CompactDayAssignments} of the resources on the scenario
+     */
+    public List<DayAssignment> findCompactedByResources(Scenario scenario,
+            Collection<? extends Resource> resources);
+
 }
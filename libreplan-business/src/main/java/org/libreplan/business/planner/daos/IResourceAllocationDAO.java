@@ -59,6 +59,20 @@ public interface IResourceAllocationDAO extends
             Resource resource,
             LocalDate intervalFilterStartDate, LocalDate intervalFilterEndDate);
 
+    /**
+     * The same as {@link #findAllocationsRelatedTo(Scenario, Resource,
+     * LocalDate, LocalDate)} for several resources at once. The allocations of
+     * all the resources are retrieved with one query for the specific
+     * allocations and another one for the generic ones.
+     *
+     * @return the allocations related to each resource. All the provided
+     *         resources are keys, in the same order, even if they have no
+     *         allocations.
+     */
+    Map<Resource, List<ResourceAllocation<?>>> findAllocationsRelatedToByResource(
+            Scenario onScenario, List<Resource> resources,
+            LocalDate intervalFilterStartDate, LocalDate intervalFilterEndDate);
+
     Map<Criterion, List<GenericResourceAllocation>> findGenericAllocationsByCriterion(
             Scenario onScenario,
             Date intervalFilterStartDate, Date intervalFilterEndDate);
@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -91,11 +92,43 @@ public class ResourceAllocationDAO extends
         if (resources.isEmpty()) {
             return new ArrayList<GenericResourceAllocation>();
         }
-        QueryBuilder queryBuilder = new QueryBuilder() {
+        Query query = genericAllocationsForQuery("generic", onScenario,
+                resources, intervalFilterStartDate, intervalFilterEndDate)
+                .build(getSession());
+        return query.list();
+    }
+
+    /**
+     * @return pairs of generic allocation and resource of the provided ones
+     *         with some day assignment on it
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object[]> findGenericAllocationsWithResourceFor(
+            final Scenario onScenario,
+            final List<Resource> resources,
+            final LocalDate intervalFilterStartDate,
+            final LocalDate intervalFilterEndDate) {
+
+        if (resources.isEmpty()) {
+            return new ArrayList<Object[]>();
+        }
+        Query query = genericAllocationsForQuery(
+                "generic, dayAssignment.resource.id", onScenario, resources,
+                intervalFilterStartDate, intervalFilterEndDate).build(
+                getSession());
+        return query.list();
+    }
+
+    private QueryBuilder genericAllocationsForQuery(final String selection,
+            final Scenario onScenario, final List<Resource> resources,
+            final LocalDate intervalFilterStartDate,
+            final LocalDate intervalFilterEndDate) {
+        return new QueryBuilder() {
 
             @Override
             protected String getBaseQuery() {
-                return "select distinct generic from GenericResourceAllocation generic "
+                return "select distinct " + selection
+                        + " from GenericResourceAllocation generic "
                         + "join generic.task task "
                         + "join generic.genericDayAssignmentsContainers container "
                         + "join container.dayAssignments dayAssignment";
@@ -120,8 +153,6 @@ public class ResourceAllocationDAO extends
             }
 
         };
-        Query query = queryBuilder.build(getSession());
-        return query.list();
     }
 
     @Override
@@ -176,6 +207,33 @@ public class ResourceAllocationDAO extends
                 intervalFilterEndDate));
     }
 
+    @Override
+    public Map<Resource, List<ResourceAllocation<?>>> findAllocationsRelatedToByResource(
+            Scenario onScenario, List<Resource> resources,
+            LocalDate intervalFilterStartDate, LocalDate intervalFilterEndDate) {
+        Map<Resource, List<ResourceAllocation<?>>> result = new LinkedHashMap<Resource, List<ResourceAllocation<?>>>();
+        Map<Long, List<ResourceAllocation<?>>> byId = new HashMap<Long, List<ResourceAllocation<?>>>();
+        for (Resource each : resources) {
+            List<ResourceAllocation<?>> allocations = new ArrayList<ResourceAllocation<?>>();
+            result.put(each, allocations);
+            byId.put(each.getId(), allocations);
+        }
+        List<SpecificResourceAllocation> specific = findSpecificAllocationsRelatedTo(
+                onScenario, resources, intervalFilterStartDate,
+                intervalFilterEndDate);
+        for (SpecificResourceAllocation each : stripAllocationsWithoutAssignations(specific)) {
+            byId.get(each.getResource().getId()).add(each);
+        }
+        for (Object[] each : findGenericAllocationsWithResourceFor(onScenario,
+                resources, intervalFilterStartDate, intervalFilterEndDate)) {
+            GenericResourceAllocation generic = (GenericResourceAllocation) each[0];
+            if (generic.hasAssignments()) {
+                byId.get((Long) each[1]).add(generic);
+            }
+        }
+        return result;
+    }
+
     private <R extends ResourceAllocation<?>> List<R> stripAllocationsWithoutAssignations(
             List<R> allocations) {
         List<R> result = new ArrayList<R>();
@@ -0,0 +1,143 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.planner.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.calendars.entities.CalendarAvailability;
+import org.libreplan.business.calendars.entities.CalendarData;
+import org.libreplan.business.calendars.entities.CalendarException;
+import org.libreplan.business.common.BaseEntity;
+import org.libreplan.business.resources.entities.CriterionSatisfaction;
+import org.libreplan.business.resources.entities.Resource;
+
+/**
+ * Copy of the data of a {@link BaseCalendar} or a {@link Resource} that the
+ * {@link ResourceAllocation allocations} depend on: the calendar versions,
+ * exceptions and availabilities, and the criterion satisfactions.<br />
+ *
+ * It's taken when an entity starts to be edited and compared with the one
+ * taken when it's saved, so the {@link IAllocationsRecalculator} is only
+ * asked to recalculate the allocations if anything relevant has changed.
+ */
+public class AllocationsAffectingState {
+
+    public static AllocationsAffectingState of(BaseCalendar calendar) {
+        AllocationsAffectingState result = new AllocationsAffectingState();
+        result.addCalendar(calendar);
+        return result;
+    }
+
+    public static AllocationsAffectingState of(Resource resource) {
+        AllocationsAffectingState result = new AllocationsAffectingState();
+        result.addCalendar(resource.getCalendar());
+        result.addSatisfactions(resource.getAllSatisfactions());
+        return result;
+    }
+
+    /**
+     * @return if there are changes between both states. A <code>null</code>
+     *         previous state means that the entity is new, so no allocation
+     *         can be affected yet
+     */
+    public static boolean hasChanged(AllocationsAffectingState previous,
+            AllocationsAffectingState current) {
+        return previous != null && !previous.equals(current);
+    }
+
+    private final List<Object> calendarVersions = new ArrayList<Object>();
+
+    private final SortedMap<LocalDate, Object> exceptions = new TreeMap<LocalDate, Object>();
+
+    private final List<Object> availabilities = new ArrayList<Object>();
+
+    private final Set<Object> satisfactions = new HashSet<Object>();
+
+    private AllocationsAffectingState() {
+    }
+
+    private void addCalendar(BaseCalendar calendar) {
+        if (calendar == null) {
+            return;
+        }
+        for (CalendarData each : calendar.getCalendarDataVersions()) {
+            calendarVersions.add(Arrays.asList(each.getExpiringDate(),
+                    idOf(each.getParent()),
+                    new HashMap<Integer, Object>(each.getCapacityPerDay())));
+        }
+        for (CalendarException each : calendar.getOwnExceptions()) {
+            exceptions.put(each.getDate(),
+                    Arrays.asList(each.getCapacity(), idOf(each.getType())));
+        }
+        for (CalendarAvailability each : calendar
+                .getCalendarAvailabilities()) {
+            availabilities.add(Arrays.asList(each.getStartDate(),
+                    each.getEndDate()));
+        }
+    }
+
+    private void addSatisfactions(Set<CriterionSatisfaction> all) {
+        for (CriterionSatisfaction each : all) {
+            satisfactions.add(Arrays.asList(idOf(each.getCriterion()),
+                    each.getStartDate(), each.getEndDate(),
+                    each.isIsDeleted()));
+        }
+    }
+
+    private static Object idOf(BaseEntity entity) {
+        if (entity == null) {
+            return null;
+        }
+        return entity.getId() != null ? entity.getId() : entity;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AllocationsAffectingState)) {
+            return false;
+        }
+        AllocationsAffectingState other = (AllocationsAffectingState) obj;
+        return calendarVersions.equals(other.calendarVersions)
+                && exceptions.equals(other.exceptions)
+                && availabilities.equals(other.availabilities)
+                && satisfactions.equals(other.satisfactions);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.asList(calendarVersions, exceptions, availabilities,
+                satisfactions).hashCode();
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.planner.entities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Progress of a recalculation requested to {@link IAllocationsRecalculator}.
+ * It's updated from the threads doing the recalculation, so it can be polled
+ * from any thread.<br />
+ *
+ * The errors are kept, so they can be shown to the user who requested the
+ * recalculation.
+ */
+public class AllocationsRecalculationProgress {
+
+    private static final int UNKNOWN = -1;
+
+    private final AtomicInteger ordersToRecalculate = new AtomicInteger(
+            UNKNOWN);
+
+    private final AtomicInteger recalculatedOrders = new AtomicInteger();
+
+    private final AtomicInteger failedOrders = new AtomicInteger();
+
+    private final AtomicReference<String> searchError = new AtomicReference<String>();
+
+    /**
+     * Errors of the failed orders, indexed by order id
+     */
+    private final Map<Long, String> errors = new ConcurrentHashMap<Long, String>();
+
+    void affectedOrdersFound(int orders) {
+        ordersToRecalculate.set(orders);
+    }
+
+    void searchFailed(Exception cause) {
+        searchError.set(describe(cause));
+        ordersToRecalculate.set(0);
+    }
+
+    void orderRecalculated() {
+        recalculatedOrders.incrementAndGet();
+    }
+
+    void orderFailed(Long orderId, String error) {
+        errors.put(orderId, error);
+        failedOrders.incrementAndGet();
+    }
+
+    static String describe(Exception exception) {
+        String message = exception.getMessage();
+        return exception.getClass().getSimpleName()
+                + (message != null ? ": " + message : "");
+    }
+
+    /**
+     * @return if the affected orders have been already found. Until then the
+     *         number of orders to recalculate is not known.
+     */
+    public boolean isSearchFinished() {
+        return ordersToRecalculate.get() != UNKNOWN;
+    }
+
+    public int getOrdersToRecalculate() {
+        return Math.max(0, ordersToRecalculate.get());
+    }
+
+    public int getRecalculatedOrders() {
+        return recalculatedOrders.get();
+    }
+
+    public int getFailedOrders() {
+        return failedOrders.get();
+    }
+
+    /**
+     * @return the error searching the affected orders or <code>null</code> if
+     *         there was no error
+     */
+    public String getSearchError() {
+        return searchError.get();
+    }
+
+    /**
+     * @return the errors of the orders that couldn't be recalculated, indexed
+     *         by order id
+     */
+    public Map<Long, String> getErrors() {
+        return Collections.unmodifiableMap(new HashMap<Long, String>(errors));
+    }
+
+    public boolean hasErrors() {
+        return getSearchError() != null || getFailedOrders() > 0;
+    }
+
+    public boolean isFinished() {
+        return isSearchFinished()
+                && getRecalculatedOrders() + getFailedOrders() >= getOrdersToRecalculate();
+    }
+
+    @Override
+    public String toString() {
+        if (!isSearchFinished()) {
+            return "searching affected orders";
+        }
+        if (getSearchError() != null) {
+            return "error searching affected orders: " + getSearchError();
+        }
+        return getRecalculatedOrders() + " of " + getOrdersToRecalculate()
+                + " orders recalculated, " + getFailedOrders() + " failed";
+    }
+
+}
@@ -0,0 +1,503 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.planner.entities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.libreplan.business.calendars.daos.IBaseCalendarDAO;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.common.IAdHocTransactionService;
+import org.libreplan.business.common.IOnTransaction;
+import org.libreplan.business.orders.daos.IOrderDAO;
+import org.libreplan.business.orders.entities.Order;
+import org.libreplan.business.orders.entities.TaskSource;
+import org.libreplan.business.planner.daos.IResourceAllocationDAO;
+import org.libreplan.business.planner.daos.ITaskSourceDAO;
+import org.libreplan.business.planner.entities.Dependency.Type;
+import org.libreplan.business.planner.entities.TaskElement.IDatesHandler;
+import org.libreplan.business.resources.daos.IResourceDAO;
+import org.libreplan.business.resources.daos.IResourcesSearcher;
+import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.scenarios.daos.IScenarioDAO;
+import org.libreplan.business.scenarios.entities.Scenario;
+import org.libreplan.business.util.Pair;
+import org.libreplan.business.workingday.IntraDayDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recalculates the {@link ResourceAllocation allocations} affected by changes
+ * in calendars or resources.<br />
+ *
+ * First the affected tasks are searched and grouped by {@link Order}. Then
+ * each order is recalculated in its own transaction, using a pool of threads
+ * so different orders are recalculated at the same time. As in
+ * {@link org.libreplan.business.orders.entities.SumChargedEffortRecalculator},
+ * the requests for the same order are never run at the same time: if the
+ * order is already waiting to be recalculated the affected tasks are added to
+ * the pending request, and if there's any concurrency issue the recalculation
+ * is repeated later (with <code>MAX_ATTEMPS_BECAUSE_CONCURRENCY</code> as
+ * maximum). The successors of the reassigned tasks are moved forward when
+ * their dependencies aren't satisfied anymore.<br />
+ *
+ * The errors aren't swallowed: they're kept in the returned
+ * {@link AllocationsRecalculationProgress}. The session is flushed every
+ * <code>TASKS_PER_FLUSH</code> reassigned tasks.
+ */
+@Component
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class AllocationsRecalculator implements IAllocationsRecalculator {
+
+    private static final Log LOG = LogFactory
+            .getLog(AllocationsRecalculator.class);
+
+    /**
+     * Number of times that an order is tried to be recalculated if there is any
+     * concurrency issue
+     */
+    protected static final int MAX_ATTEMPS_BECAUSE_CONCURRENCY = 100;
+
+    /**
+     * Maximum number of orders recalculated at the same time
+     */
+    protected static final int MAX_CONCURRENT_RECALCULATIONS = Math.max(2,
+            Runtime.getRuntime().availableProcessors() / 2);
+
+    protected static final int TASKS_PER_FLUSH = 20;
+
+    /**
+     * Milliseconds to wait before trying again an order that had a
+     * concurrency issue
+     */
+    protected static final long RETRY_DELAY = 1000;
+
+    @Autowired
+    private IAdHocTransactionService transactionService;
+
+    @Autowired
+    private IBaseCalendarDAO baseCalendarDAO;
+
+    @Autowired
+    private IResourceDAO resourceDAO;
+
+    @Autowired
+    private IResourceAllocationDAO resourceAllocationDAO;
+
+    @Autowired
+    private IScenarioDAO scenarioDAO;
+
+    @Autowired
+    private IOrderDAO orderDAO;
+
+    @Autowired
+    private ITaskSourceDAO taskSourceDAO;
+
+    @Autowired
+    private IResourcesSearcher resourcesSearcher;
+
+    private final ScheduledExecutorService executor = Executors
+            .newScheduledThreadPool(MAX_CONCURRENT_RECALCULATIONS);
+
+    /**
+     * Orders, identified by order and scenario ids, waiting to be recalculated
+     */
+    private final Map<Pair<Long, Long>, PendingRecalculation> pending = new HashMap<Pair<Long, Long>, PendingRecalculation>();
+
+    /**
+     * Orders being recalculated right now
+     */
+    private final Set<Pair<Long, Long>> running = new HashSet<Pair<Long, Long>>();
+
+    private static class PendingRecalculation {
+
+        private final Set<Long> taskIds = new HashSet<Long>();
+
+        private final List<AllocationsRecalculationProgress> progresses = new ArrayList<AllocationsRecalculationProgress>();
+
+        void add(Set<Long> taskIds, AllocationsRecalculationProgress progress) {
+            this.taskIds.addAll(taskIds);
+            this.progresses.add(progress);
+        }
+
+        void finished(Long orderId, String error) {
+            for (AllocationsRecalculationProgress each : progresses) {
+                if (error == null) {
+                    each.orderRecalculated();
+                } else {
+                    each.orderFailed(orderId, error);
+                }
+            }
+        }
+
+    }
+
+    protected interface IAffectedResources {
+
+        List<Resource> find();
+
+    }
+
+    @Override
+    public AllocationsRecalculationProgress recalculateAllocationsAffectedBy(
+            final Long calendarId, Long scenarioId) {
+        LOG.info("Recalculate allocations affected by calendar (id="
+                + calendarId + ")");
+        return recalculateAllocationsOf(new IAffectedResources() {
+
+            @Override
+            public List<Resource> find() {
+                BaseCalendar calendar = baseCalendarDAO
+                        .findExistingEntity(calendarId);
+                return resourceDAO.findUsingAnyOf(withDerived(calendar));
+            }
+        }, scenarioId);
+    }
+
+    private List<BaseCalendar> withDerived(BaseCalendar calendar) {
+        Set<BaseCalendar> result = new HashSet<BaseCalendar>();
+        LinkedList<BaseCalendar> pending = new LinkedList<BaseCalendar>();
+        result.add(calendar);
+        pending.add(calendar);
+        while (!pending.isEmpty()) {
+            for (BaseCalendar each : baseCalendarDAO.findByParent(pending
+                    .removeFirst())) {
+                if (result.add(each)) {
+                    pending.add(each);
+                }
+            }
+        }
+        return new ArrayList<BaseCalendar>(result);
+    }
+
+    @Override
+    public AllocationsRecalculationProgress recalculateAllocationsOf(
+            final Collection<Long> resourceIds, Long scenarioId) {
+        LOG.info("Recalculate allocations of resources (ids=" + resourceIds
+                + ")");
+        return recalculateAllocationsOf(new IAffectedResources() {
+
+            @Override
+            public List<Resource> find() {
+                List<Resource> result = new ArrayList<Resource>();
+                for (Long each : resourceIds) {
+                    result.add(resourceDAO.findExistingEntity(each));
+                }
+                return result;
+            }
+        }, scenarioId);
+    }
+
+    private AllocationsRecalculationProgress recalculateAllocationsOf(
+            final IAffectedResources affectedResources, final Long scenarioId) {
+        final AllocationsRecalculationProgress progress = new AllocationsRecalculationProgress();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                Map<Long, Set<Long>> tasksByOrder;
+                try {
+                    tasksByOrder = findAffectedTasksByOrder(affectedResources,
+                            scenarioId);
+                } catch (RuntimeException e) {
+                    LOG.error("Error searching the affected allocations", e);
+                    progress.searchFailed(e);
+                    return;
+                }
+                LOG.info(tasksByOrder.size()
+                        + " orders are affected and will be recalculated");
+                for (Entry<Long, Set<Long>> each : tasksByOrder.entrySet()) {
+                    recalculate(Pair.create(each.getKey(), scenarioId),
+                            each.getValue(), progress);
+                }
+                // once all of them are queued, so a finished search means
+                // that the requests have already been merged
+                progress.affectedOrdersFound(tasksByOrder.size());
+            }
+        });
+        return progress;
+    }
+
+    protected Map<Long, Set<Long>> findAffectedTasksByOrder(
+            final IAffectedResources affectedResources, final Long scenarioId) {
+        return transactionService
+                .runOnReadOnlyTransaction(new IOnTransaction<Map<Long, Set<Long>>>() {
+
+                    @Override
+                    public Map<Long, Set<Long>> execute() {
+                        Scenario scenario = scenarioDAO
+                                .findExistingEntity(scenarioId);
+                        Map<Long, Set<Long>> result = new HashMap<Long, Set<Long>>();
+                        for (ResourceAllocation<?> each : resourceAllocationDAO
+                                .findAllocationsRelatedToAnyOf(scenario,
+                                        affectedResources.find())) {
+                            Task task = each.getTask();
+                            if (task == null) {
+                                continue;
+                            }
+                            Long orderId = task.getOrderElement().getOrder()
+                                    .getId();
+                            Set<Long> taskIds = result.get(orderId);
+                            if (taskIds == null) {
+                                taskIds = new HashSet<Long>();
+                                result.put(orderId, taskIds);
+                            }
+                            taskIds.add(task.getId());
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    private void recalculate(Pair<Long, Long> orderOnScenario,
+            Set<Long> taskIds, AllocationsRecalculationProgress progress) {
+        synchronized (this) {
+            PendingRecalculation existent = pending.get(orderOnScenario);
+            if (existent != null) {
+                LOG.info("Order (id=" + orderOnScenario.getFirst()
+                        + ") is already marked to be recalculated");
+                existent.add(taskIds, progress);
+                return;
+            }
+            PendingRecalculation recalculation = new PendingRecalculation();
+            recalculation.add(taskIds, progress);
+            pending.put(orderOnScenario, recalculation);
+            if (running.contains(orderOnScenario)) {
+                // it will be submitted when the current recalculation finishes
+                return;
+            }
+        }
+        executor.execute(getRecalculationThread(orderOnScenario));
+    }
+
+    private synchronized PendingRecalculation markAsRunning(
+            Pair<Long, Long> orderOnScenario) {
+        running.add(orderOnScenario);
+        return pending.remove(orderOnScenario);
+    }
+
+    /**
+     * @return if the order was marked again while it was being recalculated
+     */
+    private synchronized boolean markAsFinished(
+            Pair<Long, Long> orderOnScenario) {
+        running.remove(orderOnScenario);
+        return pending.containsKey(orderOnScenario);
+    }
+
+    private Runnable getRecalculationThread(
+            final Pair<Long, Long> orderOnScenario) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                PendingRecalculation recalculation = markAsRunning(orderOnScenario);
+                getAttempt(orderOnScenario, recalculation, 0).run();
+            }
+        };
+    }
+
+    /**
+     * Tries to recalculate the order. If there is any concurrency issue the
+     * next attempt is scheduled after {@link #getRetryDelay()}, so the thread
+     * is released meanwhile. The order is kept as running until the last
+     * attempt finishes.
+     */
+    private Runnable getAttempt(final Pair<Long, Long> orderOnScenario,
+            final PendingRecalculation recalculation, final int counter) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                String error = "unknown error";
+                boolean retried = false;
+                try {
+                    LOG.info("Recalculate allocations of order (id="
+                            + orderOnScenario.getFirst() + ")");
+                    reassignAllocations(orderOnScenario.getFirst(),
+                            orderOnScenario.getSecond(),
+                            recalculation.taskIds);
+                    error = null;
+                } catch (OptimisticLockingFailureException e) {
+                    if (counter < MAX_ATTEMPS_BECAUSE_CONCURRENCY) {
+                        LOG.info("Concurrency problem recalculating allocations of order (id="
+                                + orderOnScenario.getFirst()
+                                + ") trying again (attempt " + counter + ")");
+                        retried = retry();
+                        error = "recalculation interrupted";
+                    } else {
+                        LOG.error("Impossible to recalculate allocations of order (id="
+                                + orderOnScenario.getFirst()
+                                + ") due to concurrency problems");
+                        error = "concurrency problems";
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Error recalculating allocations of order (id="
+                            + orderOnScenario.getFirst() + ")", e);
+                    error = AllocationsRecalculationProgress.describe(e);
+                } finally {
+                    if (!retried) {
+                        finished(orderOnScenario, recalculation, error);
+                    }
+                }
+            }
+
+            private boolean retry() {
+                try {
+                    executor.schedule(
+                            getAttempt(orderOnScenario, recalculation,
+                                    counter + 1), getRetryDelay(),
+                            TimeUnit.MILLISECONDS);
+                    return true;
+                } catch (RejectedExecutionException e) {
+                    // the recalculator is being shut down
+                    return false;
+                }
+            }
+        };
+    }
+
+    private void finished(Pair<Long, Long> orderOnScenario,
+            PendingRecalculation recalculation, String error) {
+        recalculation.finished(orderOnScenario.getFirst(), error);
+        LOG.info("Allocations recalculation progress: "
+                + recalculation.progresses);
+        if (markAsFinished(orderOnScenario)) {
+            executor.execute(getRecalculationThread(orderOnScenario));
+        }
+    }
+
+    protected long getRetryDelay() {
+        return RETRY_DELAY;
+    }
+
+    /**
+     * Reassigns the allocations of the provided tasks of the order in a new
+     * transaction. Any error reassigning a task is propagated, so the
+     * transaction is rolled back and the order is reported as failed.
+     */
+    protected void reassignAllocations(final Long orderId,
+            final Long scenarioId, final Set<Long> taskIds) {
+        transactionService.runOnTransaction(new IOnTransaction<Void>() {
+
+            @Override
+            public Void execute() {
+                Scenario scenario = scenarioDAO.findExistingEntity(scenarioId);
+                Order order = orderDAO.findExistingEntity(orderId);
+                order.useSchedulingDataFor(scenario);
+                List<TaskElement> reassigned = new ArrayList<TaskElement>();
+                for (TaskSource each : order.getTaskSourcesFromBottomToTop()) {
+                    TaskElement taskElement = each.getTask();
+                    if (taskElement instanceof Task
+                            && taskIds.contains(taskElement.getId())) {
+                        ((Task) taskElement)
+                                .reassignAllocationsWithNewResourcesOrFail(
+                                        scenario, resourcesSearcher);
+                        taskSourceDAO.save(each);
+                        reassigned.add(taskElement);
+                        if (reassigned.size() % TASKS_PER_FLUSH == 0) {
+                            taskSourceDAO.flush();
+                        }
+                    }
+                }
+                moveSuccessorsOf(reassigned, scenario);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * The reassigned tasks can end later than before, so the successors whose
+     * dependencies aren't satisfied anymore are moved forward, and then their
+     * successors and so on. The tasks are never moved backward, and the
+     * successors that are task groups are left to the planner, as moving them
+     * implies moving their children.
+     */
+    private void moveSuccessorsOf(List<TaskElement> reassigned,
+            Scenario scenario) {
+        LinkedList<TaskElement> pending = new LinkedList<TaskElement>(
+                reassigned);
+        while (!pending.isEmpty()) {
+            TaskElement origin = pending.removeFirst();
+            for (Dependency each : origin.getDependenciesWithThisOrigin()) {
+                TaskElement destination = each.getDestination();
+                if (!(destination instanceof TaskGroup)
+                        && moveIfNotSatisfied(each, scenario)) {
+                    if (destination.getTaskSource() != null) {
+                        taskSourceDAO.save(destination.getTaskSource());
+                    }
+                    pending.add(destination);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return if the destination of the dependency has been moved
+     */
+    private boolean moveIfNotSatisfied(Dependency dependency,
+            Scenario scenario) {
+        TaskElement origin = dependency.getOrigin();
+        TaskElement destination = dependency.getDestination();
+        Type type = dependency.getType();
+        IntraDayDate fromOrigin = type == Type.END_START
+                || type == Type.END_END ? origin.getIntraDayEndDate() : origin
+                .getIntraDayStartDate();
+        IDatesHandler datesHandler = destination.getDatesHandler(scenario,
+                resourcesSearcher);
+        if (type.modifiesDestinationStart()) {
+            if (destination.getIntraDayStartDate().compareTo(fromOrigin) >= 0) {
+                return false;
+            }
+            datesHandler.moveTo(fromOrigin);
+        } else {
+            if (destination.getIntraDayEndDate().compareTo(fromOrigin) >= 0) {
+                return false;
+            }
+            datesHandler.moveEndTo(fromOrigin);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
@@ -166,6 +166,9 @@ public class AssignedEffortForResource {
 
         public EffortDuration getAssignedDurationAt(Resource resource,
                 LocalDate day) {
+            if (allocations.isEmpty()) {
+                return resource.getAssignedEffort(day);
+            }
             return resource.getAssignedDurationDiscounting(allocations, day);
         }
     }
@@ -0,0 +1,262 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.planner.entities;
+
+import static org.libreplan.business.calendars.entities.CalendarCapacityIndex.fromDayNumber;
+import static org.libreplan.business.calendars.entities.CalendarCapacityIndex.toDayNumber;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+import org.joda.time.LocalDate;
+import org.libreplan.business.common.BaseEntity;
+import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.scenarios.entities.Scenario;
+import org.libreplan.business.workingday.EffortDuration;
+
+/**
+ * <p>
+ * Compact storage of the {@link DayAssignment day assignments} of a
+ * {@link ResourceAllocation} for a {@link Resource} on a {@link Scenario}. All
+ * of them are kept in just one row instead of one row per day.
+ * </p>
+ * <p>
+ * The assignments are sorted by day and grouped in runs of consecutive days
+ * with the same duration and consolidated value. Each run is encoded as three
+ * variable length integers: the days from the last day of the previous run
+ * (or from the first day for the first run), the number of days and the
+ * duration in seconds shifted one bit to the left with the consolidated value
+ * in the lowest bit. A working week of eight hours per day takes a few bytes.
+ * </p>
+ * <p>
+ * The {@link DayAssignment} returned by {@link #getDayAssignments()} are
+ * decoded the first time they are requested. They aren't attached to any
+ * container, so they are intended for reading.
+ * </p>
+ * <p>
+ * They're only stored when requested through
+ * {@link org.libreplan.business.planner.daos.IDayAssignmentDAO}, they aren't
+ * updated when the day assignments are modified. So they mustn't be read in
+ * place of the day assignments until something keeps them in sync.
+ * </p>
+ */
+public class CompactDayAssignments extends BaseEntity {
+
+    /**
+     * @param generic
+     *            if the day assignments come from a
+     *            {@link GenericDayAssignmentsContainer}. It isn't inferred
+     *            from the allocation, since it can be a proxy.
+     */
+    public static CompactDayAssignments create(
+            ResourceAllocation<?> resourceAllocation, Scenario scenario,
+            Resource resource, boolean generic,
+            Collection<? extends DayAssignment> dayAssignments) {
+        Validate.notNull(resourceAllocation);
+        CompactDayAssignments result = create(new CompactDayAssignments(
+                resourceAllocation, scenario, resource, generic));
+        result.resetTo(dayAssignments);
+        return result;
+    }
+
+    private ResourceAllocation<?> resourceAllocation;
+
+    private Scenario scenario;
+
+    private Resource resource;
+
+    private boolean generic;
+
+    private LocalDate firstDay;
+
+    private LocalDate lastDay;
+
+    private EffortDuration totalDuration;
+
+    private byte[] data;
+
+    private List<DayAssignment> decoded;
+
+    /**
+     * Constructor for Hibernate. DO NOT USE!
+     */
+    public CompactDayAssignments() {
+    }
+
+    private CompactDayAssignments(ResourceAllocation<?> resourceAllocation,
+            Scenario scenario, Resource resource, boolean generic) {
+        Validate.notNull(scenario);
+        Validate.notNull(resource);
+        this.resourceAllocation = resourceAllocation;
+        this.scenario = scenario;
+        this.resource = resource;
+        this.generic = generic;
+    }
+
+    public ResourceAllocation<?> getResourceAllocation() {
+        return resourceAllocation;
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public boolean isGeneric() {
+        return generic;
+    }
+
+    public LocalDate getFirstDay() {
+        return firstDay;
+    }
+
+    public LocalDate getLastDay() {
+        return lastDay;
+    }
+
+    public EffortDuration getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * @return the size in bytes of the encoded assignments
+     */
+    public int getEncodedSize() {
+        return data.length;
+    }
+
+    /**
+     * Replaces the stored day assignments with the provided ones. All of them
+     * must belong to the resource of this object.
+     */
+    public void resetTo(Collection<? extends DayAssignment> dayAssignments) {
+        Validate.notEmpty(dayAssignments);
+        List<DayAssignment> sorted = new ArrayList<DayAssignment>(
+                dayAssignments);
+        Collections.sort(sorted, DayAssignment.byDayComparator());
+        EffortDuration total = EffortDuration.zero();
+        for (DayAssignment each : sorted) {
+            Validate.isTrue(resource.equals(each.getResource()),
+                    "all the day assignments must be for the same resource");
+            total = total.plus(each.getDuration());
+        }
+        this.firstDay = sorted.get(0).getDay();
+        this.lastDay = sorted.get(sorted.size() - 1).getDay();
+        this.totalDuration = total;
+        this.data = encode(sorted);
+        this.decoded = null;
+    }
+
+    /**
+     * @return the day assignments sorted by day. They're decoded the first
+     *         time this method is called.
+     */
+    public List<DayAssignment> getDayAssignments() {
+        if (decoded == null) {
+            decoded = Collections.unmodifiableList(decode());
+        }
+        return decoded;
+    }
+
+    private static int valueOf(DayAssignment dayAssignment) {
+        return dayAssignment.getDuration().getSeconds() << 1
+                | (dayAssignment.isConsolidated() ? 1 : 0);
+    }
+
+    private static byte[] encode(List<DayAssignment> sortedByDay) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int previousLastDay = toDayNumber(sortedByDay.get(0).getDay());
+        int i = 0;
+        while (i < sortedByDay.size()) {
+            int startDay = toDayNumber(sortedByDay.get(i).getDay());
+            int value = valueOf(sortedByDay.get(i));
+            int length = 1;
+            while (i + length < sortedByDay.size()
+                    && toDayNumber(sortedByDay.get(i + length).getDay()) == startDay
+                            + length
+                    && valueOf(sortedByDay.get(i + length)) == value) {
+                length++;
+            }
+            writeVarInt(result, startDay - previousLastDay);
+            writeVarInt(result, length);
+            writeVarInt(result, value);
+            previousLastDay = startDay + length - 1;
+            i += length;
+        }
+        return result.toByteArray();
+    }
+
+    private List<DayAssignment> decode() {
+        List<DayAssignment> result = new ArrayList<DayAssignment>();
+        int[] position = { 0 };
+        int previousLastDay = toDayNumber(firstDay);
+        while (position[0] < data.length) {
+            int startDay = previousLastDay + readVarInt(data, position);
+            int length = readVarInt(data, position);
+            int value = readVarInt(data, position);
+            EffortDuration duration = EffortDuration.seconds(value >>> 1);
+            boolean consolidated = (value & 1) == 1;
+            for (int day = startDay; day < startDay + length; day++) {
+                result.add(createView(fromDayNumber(day), duration,
+                        consolidated));
+            }
+            previousLastDay = startDay + length - 1;
+        }
+        return result;
+    }
+
+    private DayAssignment createView(LocalDate day, EffortDuration duration,
+            boolean consolidated) {
+        DayAssignment result = generic ? GenericDayAssignment.create(day,
+                duration, resource) : SpecificDayAssignment.create(day,
+                duration, resource);
+        result.setConsolidated(consolidated);
+        return result;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        int result = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[position[0]++];
+            result |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return result;
+    }
+
+}
@@ -20,14 +20,11 @@
  */
 package org.libreplan.business.planner.entities;
 
-import static org.libreplan.business.workingday.EffortDuration.min;
 import static org.libreplan.business.workingday.EffortDuration.seconds;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -35,7 +32,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import org.apache.commons.collections.ComparatorUtils;
 import org.apache.commons.lang.Validate;
 import org.joda.time.LocalDate;
 import org.libreplan.business.calendars.entities.Capacity;
@@ -49,6 +45,11 @@ import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 import org.libreplan.business.workingday.ResourcesPerDay;
 
 /**
+ * Distributes the effort of each day among several resources. The efforts are
+ * handled as seconds in arrays allocated once, when the distributor is
+ * created, and reused for every day, so it isn't thread safe. The resources
+ * are expected to be different.
+ *
  * @author Óscar González Fernández <ogonzalez@igalia.com>
  */
 public class EffortDistributor {
@@ -109,15 +110,6 @@ public class EffortDistributor {
             return result;
         }
 
-        static List<Resource> resources(
-                Collection<? extends ResourceWithAssignedDuration> collection) {
-            List<Resource> result = new ArrayList<Resource>();
-            for (ResourceWithAssignedDuration each : collection) {
-                result.add(each.resource);
-            }
-            return result;
-        }
-
         static Map<Resource, ResourceWithAssignedDuration> byResource(
                 Collection<? extends ResourceWithAssignedDuration> durations) {
             Map<Resource, ResourceWithAssignedDuration> result = new HashMap<Resource, ResourceWithAssignedDuration>();
@@ -188,129 +180,47 @@ public class EffortDistributor {
         }
     }
 
-    private static class ResourceWithDerivedData {
-
-        public static List<ResourceWithDerivedData> from(
-                List<Resource> resources) {
-            List<ResourceWithDerivedData> result = new ArrayList<ResourceWithDerivedData>();
-            for (Resource each : resources) {
-                result.add(new ResourceWithDerivedData(each));
-            }
-            return result;
-        }
-
-        public static List<Resource> resources(
-                List<ResourceWithDerivedData> resources) {
-            List<Resource> result = new ArrayList<Resource>();
-            for (ResourceWithDerivedData each : resources) {
-                result.add(each.resource);
-            }
-            return result;
-        }
-
-        public final Resource resource;
-
-        public final int capacityUnits;
+    private static final ResourcesPerDay ONE = ResourcesPerDay.amount(1);
 
-        public final ICalendar calendar;
+    private static final int POSITION_BITS = 31;
 
-        public ResourceWithDerivedData(Resource resource) {
-            this.resource = resource;
-            this.capacityUnits = getCapacityFor(resource);
-            this.calendar = generateCalendarFor(resource);
-        }
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
 
-        ResourceWithAvailableCapacity withAvailableCapacityOn(PartialDay day,
-                IAssignedEffortForResource assignedEffort) {
-            EffortDuration allCapacityForDay = calendar
-                    .getCapacityOn(PartialDay.wholeDay(day.getDate()));
-            EffortDuration capacity = calendar.getCapacityOn(day);
+    private final Resource[] resources;
 
-            EffortDuration capacityForAlreadyAssigned = allCapacityForDay
-                    .minus(capacity);
+    private final ICalendar[] calendars;
 
-            EffortDuration assigned = assignedEffort.getAssignedDurationAt(
-                    resource, day.getDate());
-            EffortDuration assignedInterfering = assigned.minus(min(assigned,
-                    capacityForAlreadyAssigned));
+    private final int[] capacityUnits;
 
-            EffortDuration available = capacity.minus(min(assignedInterfering,
-                    capacity));
-            return new ResourceWithAvailableCapacity(resource, available);
-        }
+    private final IAssignedEffortForResource assignedEffortForResource;
 
-        Capacity getAvailableCapacityOn(PartialDay day,
-                IAssignedEffortForResource assignedEffort) {
-            Capacity originalCapacity = day.limitCapacity(calendar
-                    .getCapacityWithOvertime(day.getDate()));
-            EffortDuration alreadyAssigned = assignedEffort
-                    .getAssignedDurationAt(resource, day.getDate());
-            return originalCapacity.minus(alreadyAssigned);
-        }
+    private final IResourceSelector resourceSelector;
 
-    }
+    private Set<Resource> resourcesAlreadyPicked = new HashSet<Resource>();
 
-    /**
-     * Note: this class has a natural ordering that is inconsistent with equals.
+    /*
+     * Scratch buffers reused for each day. The ones indexed by resource have
+     * the same length as resources, the shares ones have a position for each
+     * capacity unit of each resource.
      */
-    private static class ResourceWithAvailableCapacity implements
-            Comparable<ResourceWithAvailableCapacity> {
 
-        private final Resource resource;
+    private final int[] assignable;
 
-        private final EffortDuration available;
+    private final int[] candidates;
 
-        public ResourceWithAvailableCapacity(Resource resource,
-                EffortDuration available) {
-            Validate.notNull(resource);
-            Validate.notNull(available);
-            this.resource = resource;
-            this.available = available;
-        }
+    private final int[] picked;
 
-        public ResourceWithAssignedDuration doBiggestAssignationPossible(
-                EffortDuration remaining) {
-            return new ResourceWithAssignedDuration(EffortDuration.min(
-                    remaining, available), resource);
-        }
+    private final int[] assignedSeconds;
 
-        @Override
-        public int compareTo(ResourceWithAvailableCapacity o) {
-            return available.compareTo(o.available);
-        }
+    private final int[] addedSeconds;
 
-        @SuppressWarnings("unchecked")
-        static Comparator<ResourceWithAvailableCapacity> getComparatorConsidering(
-                final Set<Resource> lastResourcesUsed) {
-            return ComparatorUtils.chainedComparator(
-                    new Comparator<ResourceWithAvailableCapacity>() {
-
-                        @Override
-                        public int compare(ResourceWithAvailableCapacity o1,
-                                ResourceWithAvailableCapacity o2) {
-                            boolean resource1Used = lastResourcesUsed
-                                    .contains(o1.resource);
-                            boolean resource2Used = lastResourcesUsed
-                                    .contains(o2.resource);
-                            return asInt(resource1Used) - asInt(resource2Used);
-                        }
-
-                        int asInt(boolean b) {
-                            return b ? 1 : 0;
-                        }
-
-                    }, ComparatorUtils.naturalComparator());
-        }
+    private final long[] sortKeys;
 
-    }
+    private final int[] shares;
 
-    private final List<ResourceWithDerivedData> resources;
+    private final int[] sortedShares;
 
-    private final IAssignedEffortForResource assignedEffortForResource;
-
-    private final IResourceSelector resourceSelector;
-
-    private Set<Resource> resourcesAlreadyPicked = new HashSet<Resource>();
+    private final int[] shareIncrements;
 
     public EffortDistributor(List<Resource> resources,
             IAssignedEffortForResource assignedHoursForResource) {
@@ -320,276 +230,298 @@ public class EffortDistributor {
     public EffortDistributor(List<Resource> resources,
             IAssignedEffortForResource assignedEffortForResource,
             IResourceSelector selector) {
-        this.resources = ResourceWithDerivedData.from(resources);
+        int size = resources.size();
+        this.resources = resources.toArray(new Resource[size]);
+        this.calendars = new ICalendar[size];
+        this.capacityUnits = new int[size];
+        int totalUnits = 0;
+        for (int i = 0; i < size; i++) {
+            calendars[i] = generateCalendarFor(this.resources[i]);
+            capacityUnits[i] = getCapacityFor(this.resources[i]);
+            assert capacityUnits[i] >= 1;
+            totalUnits += capacityUnits[i];
+        }
         this.assignedEffortForResource = assignedEffortForResource;
         this.resourceSelector = selector != null ? new CompoundSelector(
                 new OnlyCanWork(), selector) : new OnlyCanWork();
+        this.assignable = new int[size];
+        this.candidates = new int[size];
+        this.picked = new int[size];
+        this.assignedSeconds = new int[size];
+        this.addedSeconds = new int[size];
+        this.sortKeys = new long[size];
+        this.shares = new int[totalUnits];
+        this.sortedShares = new int[totalUnits];
+        this.shareIncrements = new int[totalUnits];
     }
 
     public Capacity getCapacityAt(PartialDay day) {
+        LocalDate date = day.getDate();
+        int assignableCount = collectAssignableAt(date);
         List<Capacity> capacities = new ArrayList<Capacity>();
-        for (ResourceWithDerivedData each : resourcesAssignableAt(day.getDate())) {
-            capacities.add(each.getAvailableCapacityOn(day,
-                    assignedEffortForResource));
+        for (int k = 0; k < assignableCount; k++) {
+            int i = assignable[k];
+            Capacity originalCapacity = day.limitCapacity(calendars[i]
+                    .getCapacityWithOvertime(date));
+            capacities.add(originalCapacity.minus(assignedEffortForResource
+                    .getAssignedDurationAt(resources[i], date)));
         }
         return Capacity.sum(capacities);
     }
 
-
+    /**
+     * Distributes the effort among the resources that can work on the day.
+     * First it's assigned without overtime, giving priority to the resources
+     * already picked on previous days and then to the ones with more available
+     * capacity. The effort that doesn't fit is distributed as overtime trying
+     * to leave all the resources with the same load.
+     */
     public List<ResourceWithAssignedDuration> distributeForDay(PartialDay day,
             EffortDuration totalDuration) {
-        return withCaptureOfResourcesPicked(distributeForDay_(day,
-                totalDuration));
-    }
-
-    private List<ResourceWithAssignedDuration> withCaptureOfResourcesPicked(
-            List<ResourceWithAssignedDuration> result) {
-        resourcesAlreadyPicked.addAll(ResourceWithAssignedDuration
-                .resources(result));
-        return result;
-    }
-
-    private List<ResourceWithAssignedDuration> distributeForDay_(
-            PartialDay day, EffortDuration totalDuration) {
-        List<ResourceWithDerivedData> resourcesAssignable = resourcesAssignableAt(day
-                .getDate());
-        List<ResourceWithAssignedDuration> withoutOvertime = assignAllPossibleWithoutOvertime(
-                day, totalDuration, resourcesAssignable);
-        EffortDuration remaining = totalDuration
-                .minus(ResourceWithAssignedDuration
-                        .sumDurations(withoutOvertime));
-        if (remaining.isZero()) {
-            return withoutOvertime;
-        }
-        List<ResourceWithAssignedDuration> withOvertime = distributeInOvertimeForDayRemainingEffort(
-                day.getDate(), remaining,
-                ResourceWithAssignedDuration.sumAssignedEffort(withoutOvertime,
-                        assignedEffortForResource),
-                resourcesAssignable);
-        return ResourceWithAssignedDuration
-                .join(withoutOvertime, withOvertime);
-    }
-
-    private List<ResourceWithDerivedData> resourcesAssignableAt(LocalDate day) {
-        List<ResourceWithDerivedData> result = new ArrayList<ResourceWithDerivedData>();
-        for (ResourceWithDerivedData each : resources) {
-            if (resourceSelector.isSelectable(each.resource, day)) {
-                result.add(each);
-            }
+        LocalDate date = day.getDate();
+        PartialDay wholeDay = PartialDay.wholeDay(date);
+        int assignableCount = collectAssignableAt(date);
+        for (int k = 0; k < assignableCount; k++) {
+            int i = assignable[k];
+            assignedSeconds[i] = assignedEffortForResource
+                    .getAssignedDurationAt(resources[i], date).getSeconds();
+            addedSeconds[i] = 0;
+        }
+        int pickedCount = assignWithoutOvertime(day, wholeDay,
+                assignableCount, totalDuration.getSeconds());
+        int remaining = totalDuration.getSeconds()
+                - sumAdded(picked, pickedCount);
+        if (remaining > 0) {
+            pickedCount = distributeInOvertime(date, wholeDay,
+                    assignableCount, remaining, pickedCount);
+        }
+        List<ResourceWithAssignedDuration> result = new ArrayList<ResourceWithAssignedDuration>(
+                pickedCount);
+        for (int k = 0; k < pickedCount; k++) {
+            int i = picked[k];
+            result.add(new ResourceWithAssignedDuration(
+                    seconds(addedSeconds[i]), resources[i]));
+            resourcesAlreadyPicked.add(resources[i]);
         }
         return result;
     }
 
-    private List<ResourceWithAssignedDuration> assignAllPossibleWithoutOvertime(
-            PartialDay day, EffortDuration totalDuration,
-            List<ResourceWithDerivedData> resourcesAssignable) {
-
-        List<ResourceWithAvailableCapacity> fromMoreToLessCapacity = resourcesFromMoreDesirableToLess(
-                resourcesAssignable, day);
-        EffortDuration remaining = totalDuration;
-        List<ResourceWithAssignedDuration> result = new ArrayList<ResourceWithAssignedDuration>();
-        for (ResourceWithAvailableCapacity each : fromMoreToLessCapacity) {
-            if (!each.available.isZero()) {
-                ResourceWithAssignedDuration r = each
-                        .doBiggestAssignationPossible(remaining);
-                remaining = remaining.minus(r.duration);
-                if (!r.duration.isZero()) {
-                    result.add(r);
-                }
+    private int collectAssignableAt(LocalDate day) {
+        int count = 0;
+        for (int i = 0; i < resources.length; i++) {
+            if (resourceSelector.isSelectable(resources[i], day)) {
+                assignable[count++] = i;
             }
         }
-        return result;
+        return count;
     }
 
-    private List<ResourceWithAvailableCapacity> resourcesFromMoreDesirableToLess(
-            List<ResourceWithDerivedData> resourcesAssignable, PartialDay day) {
-        List<ResourceWithAvailableCapacity> result = new ArrayList<ResourceWithAvailableCapacity>();
-        for (ResourceWithDerivedData each : resourcesAssignable) {
-            result.add(each.withAvailableCapacityOn(day,
-                    assignedEffortForResource));
+    private int sumAdded(int[] indexes, int count) {
+        int result = 0;
+        for (int k = 0; k < count; k++) {
+            result += addedSeconds[indexes[k]];
         }
-        Collections.sort(result, Collections
-                .reverseOrder(ResourceWithAvailableCapacity
-                        .getComparatorConsidering(resourcesAlreadyPicked)));
         return result;
     }
 
-    private List<ResourceWithAssignedDuration> distributeInOvertimeForDayRemainingEffort(
-            LocalDate day, EffortDuration remainingDuration,
-            IAssignedEffortForResource assignedEffortForEachResource,
-            List<ResourceWithDerivedData> assignableResources) {
-        List<ResourceWithAssignedDuration> remainingDistribution = suppressOverAssignedBeyondAvailableCapacity(
-                day,
-                assignedEffortForEachResource,
-                distributeRemaining(day, remainingDuration,
-                        assignedEffortForEachResource, assignableResources));
-
-        EffortDuration durationDistributed = ResourceWithAssignedDuration
-                .sumDurations(remainingDistribution);
-        EffortDuration newRemaining = remainingDuration
-                .minus(durationDistributed);
-        assert newRemaining.compareTo(EffortDuration.zero()) >= 0;
-        if (newRemaining.isZero()) {
-            return remainingDistribution;
+    /**
+     * The resources are visited from more desirable to less: first the ones
+     * already picked, then the ones with more available capacity and finally
+     * in the order they were provided. Each one receives as much as it can
+     * until there is nothing left to assign.
+     *
+     * @return the number of resources picked
+     */
+    private int assignWithoutOvertime(PartialDay day, PartialDay wholeDay,
+            int assignableCount, int totalSeconds) {
+        for (int k = 0; k < assignableCount; k++) {
+            int i = assignable[k];
+            int available = availableSecondsOn(i, day, wholeDay);
+            long notPicked = resourcesAlreadyPicked.contains(resources[i]) ? 0
+                    : 1;
+            sortKeys[k] = notPicked << (2 * POSITION_BITS)
+                    | ((long) (Integer.MAX_VALUE - available) << POSITION_BITS)
+                    | i;
+        }
+        Arrays.sort(sortKeys, 0, assignableCount);
+        int remaining = totalSeconds;
+        int pickedCount = 0;
+        for (int k = 0; k < assignableCount; k++) {
+            long key = sortKeys[k];
+            int i = (int) (key & POSITION_MASK);
+            int available = Integer.MAX_VALUE
+                    - (int) ((key >>> POSITION_BITS) & POSITION_MASK);
+            int assigned = Math.min(remaining, available);
+            if (assigned > 0) {
+                addedSeconds[i] = assigned;
+                remaining -= assigned;
+                picked[pickedCount++] = i;
+            }
         }
-        IAssignedEffortForResource newEffortForEachResource = ResourceWithAssignedDuration.sumAssignedEffort(
-                remainingDistribution, assignedEffortForEachResource);
+        return pickedCount;
+    }
 
-        List<ResourceWithDerivedData> resourcesWithAvailableOvertime = withAvailableCapacity(day, newEffortForEachResource, assignableResources);
-        if (resourcesWithAvailableOvertime.isEmpty()) {
-            return remainingDistribution;
-        }
-        return ResourceWithAssignedDuration.join(
-                remainingDistribution,
-                distributeInOvertimeForDayRemainingEffort(day, newRemaining,
-                        newEffortForEachResource,
-                        resourcesWithAvailableOvertime));
+    private int availableSecondsOn(int i, PartialDay day, PartialDay wholeDay) {
+        int allCapacityForDay = calendars[i].getCapacityOn(wholeDay)
+                .getSeconds();
+        int capacity = calendars[i].getCapacityOn(day).getSeconds();
+        int capacityForAlreadyAssigned = allCapacityForDay - capacity;
+        int assigned = assignedSeconds[i];
+        int assignedInterfering = assigned
+                - Math.min(assigned, capacityForAlreadyAssigned);
+        return capacity - Math.min(assignedInterfering, capacity);
     }
 
-    private List<ResourceWithAssignedDuration> suppressOverAssignedBeyondAvailableCapacity(
-            LocalDate date,
-            IAssignedEffortForResource assignedEffortForEachResource,
-            List<ResourceWithAssignedDuration> resources) {
-        List<ResourceWithAssignedDuration> result = new ArrayList<ResourceWithAssignedDuration>();
-        for (ResourceWithAssignedDuration each : resources) {
-            Resource resource = each.resource;
-            ICalendar calendar = generateCalendarFor(resource);
-            Capacity capacityWithOvertime = calendar
-                    .getCapacityWithOvertime(date);
-            if (capacityWithOvertime.isOverAssignableWithoutLimit()) {
-                result.add(each);
-            } else {
-                EffortDuration durationCanBeAdded = calculateDurationCanBeAdded(
-                        assignedEffortForEachResource.getAssignedDurationAt(
-                                resource, date), capacityWithOvertime,
-                        each.duration);
-                if (!durationCanBeAdded.isZero()) {
-                    result.add(new ResourceWithAssignedDuration(
-                            durationCanBeAdded, resource));
+    /**
+     * Distributes the remaining effort as overtime among all the assignable
+     * resources, discarding what goes beyond the allowed extra effort of each
+     * one. The discarded effort is distributed again among the resources that
+     * still have room for it, until everything is assigned or there are no
+     * more such resources.
+     *
+     * @return the number of resources picked
+     */
+    private int distributeInOvertime(LocalDate date, PartialDay wholeDay,
+            int assignableCount, int remaining, int pickedCount) {
+        System.arraycopy(assignable, 0, candidates, 0, assignableCount);
+        int candidatesCount = assignableCount;
+        while (true) {
+            int sharesCount = fillShares(wholeDay, candidatesCount);
+            distributeAmongShares(sharesCount, remaining);
+            int shareIndex = 0;
+            for (int k = 0; k < candidatesCount; k++) {
+                int i = candidates[k];
+                int increment = 0;
+                for (int j = 0; j < capacityUnits[i]; j++) {
+                    increment += shareIncrements[shareIndex++];
+                }
+                int added = limitToAllowedExtraEffort(i, date, increment);
+                if (added > 0) {
+                    if (addedSeconds[i] == 0) {
+                        picked[pickedCount++] = i;
+                    }
+                    addedSeconds[i] += added;
+                    remaining -= added;
                 }
             }
+            assert remaining >= 0;
+            if (remaining == 0) {
+                return pickedCount;
+            }
+            candidatesCount = retainWithSpareSpace(date, candidatesCount);
+            if (candidatesCount == 0) {
+                return pickedCount;
+            }
         }
-        return result;
     }
 
-    private EffortDuration calculateDurationCanBeAdded(
-            EffortDuration alreadyAssigned, Capacity capacityWithOvertime,
-            EffortDuration newAddition) {
-        EffortDuration maximum = capacityWithOvertime.getStandardEffort().plus(
-                capacityWithOvertime.getAllowedExtraEffort());
-        if (alreadyAssigned.compareTo(maximum) >= 0) {
-            return EffortDuration.zero();
-        } else {
-            return EffortDuration.min(newAddition,
-                    maximum.minus(alreadyAssigned));
+    /**
+     * Each resource has a share for each capacity unit. The value of a share
+     * is the load of the unit minus the capacity of one unit, so the less
+     * loaded units have the lower values.
+     *
+     * @return the number of shares
+     */
+    private int fillShares(PartialDay wholeDay, int candidatesCount) {
+        int sharesCount = 0;
+        for (int k = 0; k < candidatesCount; k++) {
+            int i = candidates[k];
+            int alreadyAssigned = assignedSeconds[i] + addedSeconds[i];
+            int capacityEachOne = calendars[i].asDurationOn(wholeDay, ONE)
+                    .getSeconds();
+            int units = capacityUnits[i];
+            int assignedForEach = alreadyAssigned / units;
+            int remainder = alreadyAssigned % units;
+            for (int j = 0; j < units; j++) {
+                shares[sharesCount++] = assignedForEach + (j < remainder ? 1 : 0)
+                        - capacityEachOne;
+            }
         }
+        return sharesCount;
     }
 
-    private List<ResourceWithDerivedData> withAvailableCapacity(LocalDate date,
-            IAssignedEffortForResource assignedEffortForEachResource,
-            List<ResourceWithDerivedData> assignableResources) {
-        List<ResourceWithDerivedData> result = new ArrayList<ResourceWithDerivedData>();
-        for (ResourceWithDerivedData each : assignableResources) {
-            Capacity capacity = each.calendar.getCapacityWithOvertime(date);
-            EffortDuration assignedEffort = assignedEffortForEachResource
-                    .getAssignedDurationAt(each.resource, date);
-            if (capacity.hasSpareSpaceForMoreAllocations(assignedEffort)) {
-                result.add(each);
+    /**
+     * Fills {@link #shareIncrements} raising the lowest shares to the level of
+     * the next ones until the increase is consumed. If the last level can't be
+     * completely reached, the remainder goes to the first shares. It gives
+     * the same result as {@link ShareDivision#plus(int)}.
+     */
+    private void distributeAmongShares(int sharesCount, int increase) {
+        if (sharesCount == 0) {
+            return;
+        }
+        System.arraycopy(shares, 0, sortedShares, 0, sharesCount);
+        Arrays.sort(sortedShares, 0, sharesCount);
+        long remaining = increase;
+        long level = sortedShares[0];
+        int end = nextBigger(sortedShares, 0, sharesCount);
+        while (end < sharesCount) {
+            long neededToReachNext = end * (sortedShares[end] - level);
+            if (neededToReachNext >= remaining) {
+                break;
+            }
+            remaining -= neededToReachNext;
+            level = sortedShares[end];
+            end = nextBigger(sortedShares, end, sharesCount);
+        }
+        int highestRaised = sortedShares[end - 1];
+        long incrementEach = remaining / end;
+        long withOneMore = remaining % end;
+        for (int j = 0; j < sharesCount; j++) {
+            if (shares[j] > highestRaised) {
+                shareIncrements[j] = 0;
+                continue;
+            }
+            long increment = level - shares[j] + incrementEach;
+            if (withOneMore > 0) {
+                increment++;
+                withOneMore--;
             }
+            shareIncrements[j] = (int) increment;
         }
-        return result;
-    }
-
-    private List<ResourceWithAssignedDuration> distributeRemaining(
-            LocalDate date, EffortDuration remainingDuration,
-            IAssignedEffortForResource assignedEffortForEachResource,
-            List<ResourceWithDerivedData> resourcesWithAvailableOvertime) {
-        List<ShareSource> shares = divisionAt(resourcesWithAvailableOvertime,
-                assignedEffortForEachResource, date);
-        ShareDivision currentDivision = ShareSource.all(shares);
-        ShareDivision newDivison = currentDivision.plus(remainingDuration
-                .getSeconds());
-        int[] differences = currentDivision.to(newDivison);
-        return ShareSource.durationsForEachResource(shares, differences,
-                ResourceWithDerivedData
-                        .resources(resourcesWithAvailableOvertime));
     }
 
-    private List<ShareSource> divisionAt(
-            List<ResourceWithDerivedData> resources,
-            IAssignedEffortForResource assignedEffortForEachResource,
-            LocalDate date) {
-        List<ShareSource> result = new ArrayList<ShareSource>();
-        for (int i = 0; i < resources.size(); i++) {
-            List<Share> shares = new ArrayList<Share>();
-            Resource resource = resources.get(i).resource;
-            ICalendar calendarForResource = resources.get(i).calendar;
-            EffortDuration alreadyAssigned = assignedEffortForEachResource
-                    .getAssignedDurationAt(resource, date);
-            final int alreadyAssignedSeconds = alreadyAssigned.getSeconds();
-            Integer capacityEachOneSeconds = calendarForResource.asDurationOn(
-                    PartialDay.wholeDay(date), ONE).getSeconds();
-            final int capacityUnits = resources.get(i).capacityUnits;
-            assert capacityUnits >= 1;
-            final int assignedForEach = alreadyAssignedSeconds / capacityUnits;
-            final int remainder = alreadyAssignedSeconds % capacityUnits;
-            for (int j = 0; j < capacityUnits; j++) {
-                int assignedSeconds = assignedForEach + (j < remainder ? 1 : 0);
-                shares.add(new Share(assignedSeconds - capacityEachOneSeconds));
-            }
-            result.add(new ShareSource(shares));
+    private static int nextBigger(int[] sorted, int start, int size) {
+        int i = start + 1;
+        while (i < size && sorted[i] == sorted[start]) {
+            i++;
         }
-        return result;
+        return i;
     }
 
-    private static final ResourcesPerDay ONE = ResourcesPerDay.amount(1);
-
-    private static class ShareSource {
-
-        public static ShareDivision all(Collection<ShareSource> sources) {
-            List<Share> shares = new ArrayList<Share>();
-            for (ShareSource shareSource : sources) {
-                shares.addAll(shareSource.shares);
-            }
-            return ShareDivision.create(shares);
+    private int limitToAllowedExtraEffort(int i, LocalDate date, int increment) {
+        if (increment == 0) {
+            return 0;
         }
-
-        public static List<ResourceWithAssignedDuration> durationsForEachResource(
-                List<ShareSource> sources, int[] differencesInSeconds,
-                List<Resource> resources) {
-            List<ResourceWithAssignedDuration> result = new ArrayList<ResourceWithAssignedDuration>();
-            int differencesIndex = 0;
-            for (int i = 0; i < resources.size(); i++) {
-                Resource resource = resources.get(i);
-                ShareSource shareSource = sources.get(i);
-                final int differencesToTake = shareSource.shares.size();
-                int sum = sumDifferences(differencesInSeconds, differencesIndex,
-                        differencesToTake);
-                differencesIndex += differencesToTake;
-                ResourceWithAssignedDuration withAssignedDuration = new ResourceWithAssignedDuration(
-                        seconds(sum), resource);
-                if (!withAssignedDuration.duration.isZero()) {
-                    result.add(withAssignedDuration);
-                }
-            }
-            return result;
+        Capacity capacityWithOvertime = calendars[i]
+                .getCapacityWithOvertime(date);
+        if (capacityWithOvertime.isOverAssignableWithoutLimit()) {
+            return increment;
         }
-
-        private static int sumDifferences(int[] differences, int start,
-                final int toTake) {
-            int sum = 0;
-            for (int i = 0; i < toTake; i++) {
-                sum += differences[start + i];
-            }
-            return sum;
+        int maximum = maximumSeconds(capacityWithOvertime);
+        int alreadyAssigned = assignedSeconds[i] + addedSeconds[i];
+        if (alreadyAssigned >= maximum) {
+            return 0;
         }
+        return Math.min(increment, maximum - alreadyAssigned);
+    }
 
-        private final List<Share> shares;
+    private static int maximumSeconds(Capacity capacity) {
+        return capacity.getStandardEffort().getSeconds()
+                + capacity.getAllowedExtraEffort().getSeconds();
+    }
 
-        private ShareSource(List<Share> shares) {
-            this.shares = shares;
+    private int retainWithSpareSpace(LocalDate date, int candidatesCount) {
+        int result = 0;
+        for (int k = 0; k < candidatesCount; k++) {
+            int i = candidates[k];
+            Capacity capacity = calendars[i].getCapacityWithOvertime(date);
+            if (capacity.isOverAssignableWithoutLimit()
+                    || assignedSeconds[i] + addedSeconds[i] < maximumSeconds(capacity)) {
+                candidates[result++] = i;
+            }
         }
-
+        return result;
     }
 
 }
@@ -42,8 +42,6 @@ import org.libreplan.business.planner.entities.EffortDistributor.ResourceWithAss
 import org.libreplan.business.planner.entities.allocationalgorithms.ResourcesPerDayModification;
 import org.libreplan.business.resources.daos.IResourcesSearcher;
 import org.libreplan.business.resources.entities.Criterion;
-import org.libreplan.business.resources.entities.CriterionCompounder;
-import org.libreplan.business.resources.entities.ICriterion;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.resources.entities.ResourceEnum;
 import org.libreplan.business.scenarios.entities.Scenario;
@@ -195,9 +193,7 @@ public class GenericResourceAllocation extends
 
         @Override
         public boolean isSelectable(Resource resource, LocalDate day) {
-            ICriterion compoundCriterion = CriterionCompounder.buildAnd(
-                    criterions).getResult();
-            return compoundCriterion.isSatisfiedBy(resource, day);
+            return resource.satisfiesCriterionsAt(criterions, day);
         }
     }
 
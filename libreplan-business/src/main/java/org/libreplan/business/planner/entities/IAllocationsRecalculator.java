@@ -0,0 +1,55 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.planner.entities;
+
+import java.util.Collection;
+
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.scenarios.entities.Scenario;
+
+/**
+ * Recalculates in background the {@link ResourceAllocation allocations}
+ * affected by changes in {@link BaseCalendar calendars} or {@link Resource
+ * resources}.<br />
+ *
+ * The changes must be already committed when the recalculation is requested.
+ */
+public interface IAllocationsRecalculator {
+
+    /**
+     * Reassigns the allocations, on the {@link Scenario}, of the resources
+     * whose calendar derives directly or indirectly from the provided one
+     *
+     * @return the progress of the recalculation
+     */
+    AllocationsRecalculationProgress recalculateAllocationsAffectedBy(
+            Long calendarId, Long scenarioId);
+
+    /**
+     * Reassigns the allocations, on the {@link Scenario}, related to any of
+     * the provided resources
+     *
+     * @return the progress of the recalculation
+     */
+    AllocationsRecalculationProgress recalculateAllocationsOf(
+            Collection<Long> resourceIds, Long scenarioId);
+
+}
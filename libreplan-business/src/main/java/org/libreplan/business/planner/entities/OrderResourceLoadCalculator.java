@@ -31,6 +31,7 @@ import org.libreplan.business.orders.entities.Order;
 import org.libreplan.business.planner.chart.ContiguousDaysLine;
 import org.libreplan.business.planner.chart.ContiguousDaysLine.OnDay;
 import org.libreplan.business.planner.chart.ResourceLoadChartData;
+import org.libreplan.business.planner.chart.ResourceLoadChartData.CalendarCapacities;
 import org.libreplan.business.planner.entities.DayAssignment.FilterType;
 import org.libreplan.business.resources.entities.IAssignmentsOnResourceCalculator;
 import org.libreplan.business.resources.entities.Resource;
@@ -55,6 +56,8 @@ public class OrderResourceLoadCalculator implements IOrderResourceLoadCalculator
 
     private ContiguousDaysLine<List<DayAssignment>> filteredAssignments;
 
+    private CalendarCapacities capacities;
+
     private ContiguousDaysLine<EffortDuration> maxCapacityOnResources;
 
     private ContiguousDaysLine<EffortDuration> orderLoad;
@@ -76,6 +79,7 @@ public class OrderResourceLoadCalculator implements IOrderResourceLoadCalculator
     private void initializeValues() {
         orderAssignments = null;
         filteredAssignments = null;
+        capacities = null;
         maxCapacityOnResources = null;
         orderLoad = null;
         allLoad = null;
@@ -88,11 +92,24 @@ public class OrderResourceLoadCalculator implements IOrderResourceLoadCalculator
         if (maxCapacityOnResources == null) {
             maxCapacityOnResources = getOrderAssignments()
                      .transform(ResourceLoadChartData
-                             .extractAvailabilityOnAssignedResources());
+                             .extractAvailabilityOnAssignedResources(
+                                     getCapacities()));
         }
         return maxCapacityOnResources;
     }
 
+    /**
+     * The filtered assignments are inside the interval of the order
+     * assignments, so the capacities for that interval are used for all the
+     * lines
+     */
+    private CalendarCapacities getCapacities() {
+        if (capacities == null) {
+            capacities = CalendarCapacities.on(getOrderAssignments());
+        }
+        return capacities;
+    }
+
     private ContiguousDaysLine<List<DayAssignment>> getOrderAssignments() {
         if (orderAssignments == null) {
             List<DayAssignment> orderDayAssignments = order
@@ -201,7 +218,8 @@ public class OrderResourceLoadCalculator implements IOrderResourceLoadCalculator
     public ContiguousDaysLine<EffortDuration> getOrderOverload() {
         if (orderOverload == null) {
             orderOverload = getOrderAssignments()
-                     .transform(ResourceLoadChartData.extractOverload());
+                     .transform(ResourceLoadChartData
+                             .extractOverload(getCapacities()));
         }
         return orderOverload;
     }
@@ -210,7 +228,8 @@ public class OrderResourceLoadCalculator implements IOrderResourceLoadCalculator
     public ContiguousDaysLine<EffortDuration> getAllOverload() {
         if (allOverload == null) {
             allOverload = getFilteredAssignments()
-                     .transform(ResourceLoadChartData.extractOverload());
+                     .transform(ResourceLoadChartData
+                             .extractOverload(getCapacities()));
         }
         return allOverload;
     }
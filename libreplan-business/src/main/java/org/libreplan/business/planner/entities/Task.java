@@ -795,34 +795,50 @@ public class Task extends TaskElement implements ITaskPositionConstrained {
                 new WithPotentiallyNewResources(searcher));
     }
 
+    /**
+     * Like {@link #reassignAllocationsWithNewResources(Scenario,
+     * IResourcesSearcher)}, but if the reassignment can't be completed the
+     * exception is thrown instead of just being logged
+     */
+    public void reassignAllocationsWithNewResourcesOrFail(Scenario scenario,
+            IResourcesSearcher searcher) {
+        doReassign(scenario, getAllocationDirection(),
+                new WithPotentiallyNewResources(searcher));
+    }
+
     private void reassign(Scenario onScenario, Direction direction,
             WithPotentiallyNewResources strategy) {
         try {
-            this.lastAllocationDirection = direction;
-            if (isLimiting()) {
-                return;
-            }
-            List<ModifiedAllocation> copied = ModifiedAllocation.copy(onScenario,
-                    getResourceAlloations());
-            List<ResourceAllocation<?>> toBeModified = ModifiedAllocation
-                    .modified(copied);
-            if (toBeModified.isEmpty()) {
-                return;
-            }
-            setCustomAssignedEffortForResource(copied);
-            doAllocation(strategy, direction, toBeModified);
-            updateDerived(copied);
-
-            List<ResourceAllocation<?>> newAllocations = emptyList(), removedAllocations = emptyList();
-            mergeAllocation(onScenario, getIntraDayStartDate(),
-                    getIntraDayEndDate(), workableDays, calculatedValue,
-                    newAllocations, copied, removedAllocations);
+            doReassign(onScenario, direction, strategy);
         } catch (Exception e) {
             LOG.error("reassignment for task: " + this
                     + " couldn't be completed", e);
         }
     }
 
+    private void doReassign(Scenario onScenario, Direction direction,
+            WithPotentiallyNewResources strategy) {
+        this.lastAllocationDirection = direction;
+        if (isLimiting()) {
+            return;
+        }
+        List<ModifiedAllocation> copied = ModifiedAllocation.copy(onScenario,
+                getResourceAlloations());
+        List<ResourceAllocation<?>> toBeModified = ModifiedAllocation
+                .modified(copied);
+        if (toBeModified.isEmpty()) {
+            return;
+        }
+        setCustomAssignedEffortForResource(copied);
+        doAllocation(strategy, direction, toBeModified);
+        updateDerived(copied);
+
+        List<ResourceAllocation<?>> newAllocations = emptyList(), removedAllocations = emptyList();
+        mergeAllocation(onScenario, getIntraDayStartDate(),
+                getIntraDayEndDate(), workableDays, calculatedValue,
+                newAllocations, copied, removedAllocations);
+    }
+
     private void setCustomAssignedEffortForResource(
             List<ModifiedAllocation> modifiedAllocations) {
         List<ResourceAllocation<?>> originals = ModifiedAllocation
@@ -286,8 +286,15 @@ public abstract class ResourcesPerDayModification extends
             public List<? extends DayAssignment> createAssignmentsAtDay(
                     PartialDay day, EffortDuration limit,
                     ResourcesPerDay resourcesPerDay) {
-                EffortDuration toDistribute = getResourceAllocation()
-                        .calculateTotalToDistribute(day, getGoal());
+                return createAssignmentsAtDay(day, getResourceAllocation()
+                        .calculateTotalToDistribute(day, getGoal()), limit,
+                        resourcesPerDay);
+            }
+
+            @Override
+            public List<? extends DayAssignment> createAssignmentsAtDay(
+                    PartialDay day, EffortDuration toDistribute,
+                    EffortDuration limit, ResourcesPerDay resourcesPerDay) {
                 EffortDuration effortLimited = min(limit, toDistribute);
                 PartialDay distributeOn = day;
                 if (effortLimited.equals(limit)) {
@@ -25,6 +25,7 @@ import static org.libreplan.business.workingday.EffortDuration.zero;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -113,9 +114,24 @@ public abstract class UntilFillingHoursAllocator {
 
         List<? extends DayAssignment> createAssignmentsAtDay(PartialDay day,
                 EffortDuration limit, ResourcesPerDay resourcesPerDay);
+
+        /**
+         * The same as
+         * {@link #createAssignmentsAtDay(PartialDay, EffortDuration, ResourcesPerDay)}
+         * but with the effort to distribute at the day already calculated
+         */
+        List<? extends DayAssignment> createAssignmentsAtDay(PartialDay day,
+                EffortDuration toDistribute, EffortDuration limit,
+                ResourcesPerDay resourcesPerDay);
     }
 
     /**
+     * The days from which to allocate are visited in order until the effort is
+     * assigned. The efforts that can be distributed at each day are
+     * accumulated in {@link CapacitySums}, so the last day is found with a
+     * binary search and the assignments are created in one pass until it. If
+     * less effort than the one available is assigned at some day, the search
+     * is repeated for the remaining effort from the next day.
      *
      * @param dateFromWhichToAllocate
      * @param resourcesPerDayModification
@@ -127,22 +143,27 @@ public abstract class UntilFillingHoursAllocator {
             EffortDuration effortRemaining) {
         EffortDuration taken = zero();
         EffortDuration biggestLastAssignment = zero();
-        IntraDayDate current = dateFromWhichToAllocate;
+        CapacitySums sums = new CapacitySums(resourcesPerDayModification,
+                dateFromWhichToAllocate);
         IAssignmentsCreator assignmentsCreator = resourcesPerDayModification
                 .createAssignmentsCreator();
+        int position = 0;
         while (effortRemaining.compareTo(zero()) > 0) {
-            PartialDay day = calculateDay(current);
-            Pair<EffortDuration, EffortDuration> pair = assignForDay(
-                    resourcesPerDayModification, assignmentsCreator, day,
-                    effortRemaining);
-            taken = pair.getFirst();
-            biggestLastAssignment = pair.getSecond();
-            effortRemaining = effortRemaining.minus(taken);
-
-            if (effortRemaining.compareTo(zero()) > 0) {
-                current = nextDay(current);
+            int last = sums.positionReaching(sums.getAccumulatedBefore(position)
+                    + effortRemaining.getSeconds());
+            for (; position <= last
+                    && effortRemaining.compareTo(zero()) > 0; position++) {
+                Pair<EffortDuration, EffortDuration> pair = assignForDay(
+                        resourcesPerDayModification, assignmentsCreator,
+                        calculateDay(sums.getStart(position)),
+                        sums.getToDistribute(position), effortRemaining);
+                taken = pair.getFirst();
+                biggestLastAssignment = pair.getSecond();
+                effortRemaining = effortRemaining.minus(taken);
             }
         }
+        IntraDayDate current = position == 0 ? dateFromWhichToAllocate : sums
+                .getStart(position - 1);
         IntraDayDate finish = adjustFinish(resourcesPerDayModification, taken,
                 biggestLastAssignment, current);
         // We have to do it now, so the other allocations take it into account.
@@ -278,10 +299,10 @@ public abstract class UntilFillingHoursAllocator {
      */
     private Pair<EffortDuration, EffortDuration> assignForDay(
             ResourcesPerDayModification resourcesPerDayModification,
-            IAssignmentsCreator assignmentsCreator,
-            PartialDay day, EffortDuration remaining) {
+            IAssignmentsCreator assignmentsCreator, PartialDay day,
+            EffortDuration toDistribute, EffortDuration remaining) {
         List<? extends DayAssignment> newAssignments = assignmentsCreator
-                .createAssignmentsAtDay(day, remaining,
+                .createAssignmentsAtDay(day, toDistribute, remaining,
                         resourcesPerDayModification.getGoal());
         resultAssignments.get(resourcesPerDayModification).addAll(
                 newAssignments);
@@ -299,6 +320,93 @@ public abstract class UntilFillingHoursAllocator {
         return max.getDuration();
     }
 
+    /**
+     * Efforts that can be distributed at the days visited from a date, in the
+     * order they are visited. They are calculated in blocks of growing size
+     * when needed. Besides the effort of each day, the effort accumulated until
+     * it is kept, so the day at which some effort is reached is found with a
+     * binary search.
+     */
+    private class CapacitySums {
+
+        private static final int INITIAL_BLOCK_SIZE = 16;
+
+        private static final int MAX_BLOCK_SIZE = 1024;
+
+        private final ResourceAllocation<?> allocation;
+
+        private final ResourcesPerDay goal;
+
+        private final List<IntraDayDate> starts = new ArrayList<IntraDayDate>();
+
+        private int[] toDistribute = new int[INITIAL_BLOCK_SIZE];
+
+        private long[] accumulated = new long[INITIAL_BLOCK_SIZE];
+
+        private IntraDayDate next;
+
+        CapacitySums(ResourcesPerDayModification modification,
+                IntraDayDate from) {
+            this.allocation = modification.getBeingModified();
+            this.goal = modification.getGoal();
+            this.next = from;
+        }
+
+        private int size() {
+            return starts.size();
+        }
+
+        private void calculateNextBlock() {
+            int size = size();
+            int blockSize = Math.max(INITIAL_BLOCK_SIZE,
+                    Math.min(size, MAX_BLOCK_SIZE));
+            if (size + blockSize > toDistribute.length) {
+                toDistribute = Arrays.copyOf(toDistribute, size + blockSize);
+                accumulated = Arrays.copyOf(accumulated, size + blockSize);
+            }
+            long sum = getAccumulatedBefore(size);
+            for (int i = size; i < size + blockSize; i++) {
+                toDistribute[i] = allocation.calculateTotalToDistribute(
+                        calculateDay(next), goal).getSeconds();
+                sum += toDistribute[i];
+                accumulated[i] = sum;
+                starts.add(next);
+                next = nextDay(next);
+            }
+        }
+
+        IntraDayDate getStart(int position) {
+            return starts.get(position);
+        }
+
+        EffortDuration getToDistribute(int position) {
+            return EffortDuration.seconds(toDistribute[position]);
+        }
+
+        long getAccumulatedBefore(int position) {
+            return position == 0 ? 0 : accumulated[position - 1];
+        }
+
+        /**
+         * @return the first position at which the accumulated effort reaches
+         *         the provided one
+         */
+        int positionReaching(long effort) {
+            while (size() == 0 || accumulated[size() - 1] < effort) {
+                calculateNextBlock();
+            }
+            int position = Arrays.binarySearch(accumulated, 0, size(), effort);
+            if (position < 0) {
+                return -(position + 1);
+            }
+            while (position > 0 && accumulated[position - 1] == effort) {
+                position--;
+            }
+            return position;
+        }
+
+    }
+
     private static class EffortPerAllocation {
         final EffortDuration duration;
 
@@ -102,6 +102,18 @@ public class Gap implements Comparable<Gap> {
                             criteria));
         }
 
+        /**
+         * @param criteriaAvailability
+         *            the availability of the criteria for the resource of the
+         *            queue. It isn't modified.
+         */
+        public List<GapOnQueue> splitIntoGapsSatisfyingCriteria(
+                AvailabilityTimeLine criteriaAvailability) {
+            return GapOnQueue.onQueue(originQueue, gap
+                    .splitIntoGapsSatisfyingCriteria(originQueue.getResource(),
+                            criteriaAvailability));
+        }
+
         public String toString() {
             return "queue: " + originQueue + "; gap: " + gap;
         }
@@ -338,7 +350,20 @@ public class Gap implements Comparable<Gap> {
 
     public List<Gap> splitIntoGapsSatisfyingCriteria(Resource resource,
             Set<Criterion> criteria) {
-        return splitIntoGapsSatisfyingCriteria(resource, criteria,
+        return splitIntoGapsSatisfyingCriteria(resource,
+                AvailabilityCalculator.getCriterionsAvailabilityFor(criteria,
+                        resource), getStartTime(), getEndTime());
+    }
+
+    /**
+     * The same as {@link #splitIntoGapsSatisfyingCriteria(Resource, Set)} but
+     * using an already calculated availability of the criteria, so it can be
+     * reused for several gaps. The provided availability isn't modified.
+     */
+    public List<Gap> splitIntoGapsSatisfyingCriteria(Resource resource,
+            AvailabilityTimeLine criteriaAvailability) {
+        return splitIntoGapsSatisfyingCriteria(resource,
+                AvailabilityTimeLine.allValid().and(criteriaAvailability),
                 getStartTime(), getEndTime());
     }
 
@@ -347,8 +372,9 @@ public class Gap implements Comparable<Gap> {
      * <em>criteria</em> within the period: <em>gapStartTime</em> till
      * <em>gapEndTime</em>
      * @param resource
-     * @param criteria
-     *            criteria to be satisfied by resource
+     * @param criterionsAvailability
+     *            availability of the criteria to be satisfied by resource. It
+     *            is modified.
      * @param gapStartTime
      *            start time of gap
      * @param gapEndTime
@@ -356,10 +382,8 @@ public class Gap implements Comparable<Gap> {
      * @return
      */
     private static List<Gap> splitIntoGapsSatisfyingCriteria(Resource resource,
-            Set<Criterion> criteria, DateAndHour gapStartTime,
-            DateAndHour gapEndTime) {
-        AvailabilityTimeLine criterionsAvailability = AvailabilityCalculator
-                .getCriterionsAvailabilityFor(criteria, resource);
+            AvailabilityTimeLine criterionsAvailability,
+            DateAndHour gapStartTime, DateAndHour gapEndTime) {
         if (gapStartTime != null) {
             criterionsAvailability.invalidUntil(gapStartTime.getDate());
         }
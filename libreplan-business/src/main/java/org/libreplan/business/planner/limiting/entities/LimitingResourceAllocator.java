@@ -107,17 +107,15 @@ public class LimitingResourceAllocator {
             LimitingResourceQueue queue, LimitingResourceQueueElement element) {
 
         final Resource resource = queue.getResource();
-        final List<LimitingResourceQueueElement> elements = new LinkedList<LimitingResourceQueueElement>(
-                queue.getLimitingResourceQueueElements());
-        final int size = elements.size();
+        final QueueGapIndex gaps = queue.getGapIndex();
         final DateAndHour startTime = getStartTimeBecauseOfGantt(element);
+        final int hours = minimumHoursInGap(element);
 
-        int pos = 0;
-
-        // Iterate through queue elements
-        while (pos <= size) {
-            Gap gap = getGapInQueueAtPosition(
-                    resource, elements, startTime, pos++);
+        // Only the gaps with enough hours are checked
+        int pos = gaps.nextPositionWithHours(
+                gaps.firstPositionSince(startTime), hours);
+        while (pos != -1) {
+            Gap gap = gaps.getGapAt(pos, startTime);
 
             if (gap != null) {
                 List<Gap> subgaps = getFittingSubgaps(
@@ -126,6 +124,7 @@ public class LimitingResourceAllocator {
                     return subgaps.get(0);
                 }
             }
+            pos = gaps.nextPositionWithHours(pos + 1, hours);
         }
 
         // The queue cannot hold this element (queue.resource
@@ -133,6 +132,11 @@ public class LimitingResourceAllocator {
         return null;
     }
 
+    private static int minimumHoursInGap(LimitingResourceQueueElement element) {
+        Integer hours = element.getIntentedTotalHours();
+        return hours != null ? hours : 0;
+    }
+
     private static List<Gap> getFittingSubgaps(
             LimitingResourceQueueElement element,
             final Gap gap, final Resource resource) {
@@ -167,16 +171,14 @@ public class LimitingResourceAllocator {
         List<Gap> result = new ArrayList<Gap>();
 
         final Resource resource = queue.getResource();
-        final List<LimitingResourceQueueElement> elements = new LinkedList<LimitingResourceQueueElement>(
-                queue.getLimitingResourceQueueElements());
-        final int size = elements.size();
-
-        int pos = moveUntil(elements, since);
+        final QueueGapIndex gaps = queue.getGapIndex();
+        final int hours = minimumHoursInGap(element);
 
-        // Iterate through queue elements
-        while (pos <= size) {
-            Gap gap = getGapInQueueAtPosition(
-                    resource, elements, since, pos++);
+        // Iterate through the gaps with enough hours
+        int pos = gaps.nextPositionWithHours(gaps.firstPositionSince(since),
+                hours);
+        while (pos != -1) {
+            Gap gap = gaps.getGapAt(pos, since);
 
             // The queue cannot hold this element (queue.resource
             // doesn't meet element.criteria)
@@ -185,32 +187,12 @@ public class LimitingResourceAllocator {
                         element, gap, resource);
                 result.addAll(subgaps);
             }
+            pos = gaps.nextPositionWithHours(pos + 1, hours);
         }
 
         return result;
     }
 
-    private static int moveUntil(List<LimitingResourceQueueElement> elements, DateAndHour until) {
-        int pos = 0;
-
-        if (elements.size() > 0) {
-            // Space between until and first element start time
-            LimitingResourceQueueElement first = elements.get(0);
-            if (until.isBefore(first.getStartTime())) {
-                return 0;
-            }
-
-            for (pos = 1; pos < elements.size(); pos++) {
-                final LimitingResourceQueueElement each = elements.get(pos);
-                final DateAndHour startTime = each.getStartTime();
-                if (until.isBefore(startTime) || until.isEquals(startTime)) {
-                    return pos;
-                }
-            }
-        }
-        return pos;
-    }
-
     private static boolean isGeneric(LimitingResourceQueueElement element) {
         return element.getResourceAllocation() instanceof GenericResourceAllocation;
     }
@@ -229,58 +211,10 @@ public class LimitingResourceAllocator {
         return new DateAndHour(end.getDay(), end.getHours());
     }
 
-    private static Gap getGapInQueueAtPosition(
-            Resource resource, List<LimitingResourceQueueElement> elements,
-            DateAndHour startTimeBecauseOfGantt, int pos) {
-
-        final int size = elements.size();
-
-        // No elements in queue
-        if (size == 0) {
-            return createLastGap(startTimeBecauseOfGantt, null, resource);
-        }
-
-        // Last element
-        if (pos == size) {
-            return createLastGap(startTimeBecauseOfGantt, elements.get(size - 1), resource);
-        }
-
-        LimitingResourceQueueElement next = elements.get(pos);
-
-        // First element
-        if (pos == 0
-                && startTimeBecauseOfGantt.getDate().isBefore(
-                        next.getStartDate())) {
-            return Gap.create(resource,
-                    startTimeBecauseOfGantt, next.getStartTime());
-        }
-
-        // In the middle of two elements
-        if (pos > 0) {
-            LimitingResourceQueueElement previous = elements.get(pos - 1);
-            return Gap.create(resource, DateAndHour
-                    .max(previous.getEndTime(), startTimeBecauseOfGantt), next
-                    .getStartTime());
-        }
-
-        return null;
-    }
-
     private static DateAndHour getStartTimeBecauseOfGantt(LimitingResourceQueueElement element) {
         return new DateAndHour(new LocalDate(element.getEarliestStartDateBecauseOfGantt()), 0);
     }
 
-    private static Gap createLastGap(
-            DateAndHour _startTime, LimitingResourceQueueElement lastElement,
-            Resource resource) {
-
-        final DateAndHour queueEndTime = (lastElement != null) ? lastElement
-                .getEndTime() : null;
-        DateAndHour startTime = DateAndHour.max(_startTime, queueEndTime);
-        return Gap
-                .create(resource, startTime, null);
-    }
-
     /**
      * Generates a list of {@link DayAssignment} for {@link Resource} starting
      * from startTime
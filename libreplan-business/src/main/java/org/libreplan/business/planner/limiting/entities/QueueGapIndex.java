@@ -0,0 +1,244 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.planner.limiting.entities;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.libreplan.business.resources.entities.LimitingResourceQueue;
+import org.libreplan.business.resources.entities.Resource;
+
+/**
+ * <p>
+ * Index of the gaps between the elements of a {@link LimitingResourceQueue}.
+ * The position <code>i</code> is the gap before the element <code>i</code>
+ * and the position {@link #size()} is the gap after the last element.
+ * </p>
+ * <p>
+ * The elements are kept in an array so they can be accessed by position, the
+ * position for a time is found with a binary search and the gaps with enough
+ * hours are found with a tree keeping the maximum of the hours of the gaps. So
+ * each lookup is logarithmic instead of computing all the gaps from the start
+ * of the queue.
+ * </p>
+ * <p>
+ * An index is not modified. When the queue changes a new one is created from
+ * the previous one, reusing the gaps whose ends have not changed, so the hours
+ * of the resource calendar are only calculated for the new gaps.
+ * </p>
+ */
+public class QueueGapIndex {
+
+    public static QueueGapIndex create(Resource resource,
+            Collection<LimitingResourceQueueElement> sortedElements,
+            QueueGapIndex previous) {
+        return new QueueGapIndex(resource, sortedElements,
+                previous != null ? previous.gapsByEnds
+                        : new HashMap<GapEnds, Gap>());
+    }
+
+    private static class GapEnds {
+
+        private final DateAndHour start;
+
+        private final DateAndHour end;
+
+        GapEnds(DateAndHour start, DateAndHour end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof GapEnds) {
+                GapEnds other = (GapEnds) obj;
+                return new EqualsBuilder().append(start, other.start)
+                        .append(end, other.end).isEquals();
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder().append(start).append(end)
+                    .toHashCode();
+        }
+    }
+
+    private final Resource resource;
+
+    private final List<LimitingResourceQueueElement> elements;
+
+    private final Gap[] gaps;
+
+    private final Map<GapEnds, Gap> gapsByEnds = new HashMap<GapEnds, Gap>();
+
+    /**
+     * Maximum of the hours of the gaps below each node. The leaves start at
+     * <code>leavesStart</code>.
+     */
+    private final int[] maxHours;
+
+    private final int leavesStart;
+
+    private QueueGapIndex(Resource resource,
+            Collection<LimitingResourceQueueElement> sortedElements,
+            Map<GapEnds, Gap> previousGaps) {
+        this.resource = resource;
+        this.elements = new ArrayList<LimitingResourceQueueElement>(
+                sortedElements);
+        int positions = elements.size() + 1;
+        this.gaps = new Gap[positions];
+        for (int i = 0; i < positions; i++) {
+            gaps[i] = reuseOrCreate(previousGaps, gapStart(i), gapEnd(i));
+        }
+        int leaves = 1;
+        while (leaves < positions) {
+            leaves *= 2;
+        }
+        this.leavesStart = leaves;
+        this.maxHours = new int[2 * leaves];
+        for (int i = 0; i < positions; i++) {
+            maxHours[leaves + i] = gaps[i] != null ? gaps[i].getHoursInGap()
+                    : 0;
+        }
+        for (int i = leaves - 1; i > 0; i--) {
+            maxHours[i] = Math.max(maxHours[2 * i], maxHours[2 * i + 1]);
+        }
+    }
+
+    private DateAndHour gapStart(int position) {
+        return position == 0 ? null : elements.get(position - 1).getEndTime();
+    }
+
+    private DateAndHour gapEnd(int position) {
+        return position == elements.size() ? null : elements.get(position)
+                .getStartTime();
+    }
+
+    /**
+     * @return <code>null</code> if the elements overlap, so there is no gap
+     */
+    private Gap reuseOrCreate(Map<GapEnds, Gap> previousGaps,
+            DateAndHour start, DateAndHour end) {
+        if (start != null && end != null && start.isAfter(end)) {
+            return null;
+        }
+        GapEnds ends = new GapEnds(start, end);
+        Gap result = previousGaps.get(ends);
+        if (result == null) {
+            result = Gap.create(resource, start, end);
+        }
+        gapsByEnds.put(ends, result);
+        return result;
+    }
+
+    /**
+     * @return the number of elements of the queue
+     */
+    public int size() {
+        return elements.size();
+    }
+
+    public List<LimitingResourceQueueElement> getElements() {
+        return elements;
+    }
+
+    /**
+     * @return the position of the first gap that can contain
+     *         <code>time</code> or something after it. The gaps before that
+     *         position end before <code>time</code>.
+     */
+    public int firstPositionSince(DateAndHour time) {
+        if (elements.isEmpty()
+                || time.isBefore(elements.get(0).getStartTime())) {
+            return 0;
+        }
+        // first position after the first one whose element starts at or after
+        // time
+        int low = 1;
+        int high = elements.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (elements.get(middle).getStartTime().isBefore(time)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the first position from <code>from</code>, inclusive, whose gap
+     *         has at least <code>hours</code>, or <code>-1</code> if there is
+     *         none. The gap at {@link #size()} is unbounded so it's always
+     *         found if <code>from</code> is not after it.
+     */
+    public int nextPositionWithHours(int from, int hours) {
+        if (from > elements.size()) {
+            return -1;
+        }
+        return nextPositionWithHours(1, 0, leavesStart, from, hours);
+    }
+
+    private int nextPositionWithHours(int node, int nodeStart, int nodeEnd,
+            int from, int hours) {
+        if (nodeEnd <= from || maxHours[node] < hours) {
+            return -1;
+        }
+        if (node >= leavesStart) {
+            return nodeStart;
+        }
+        int middle = (nodeStart + nodeEnd) >>> 1;
+        int result = nextPositionWithHours(2 * node, nodeStart, middle, from,
+                hours);
+        if (result != -1) {
+            return result;
+        }
+        return nextPositionWithHours(2 * node + 1, middle, nodeEnd, from, hours);
+    }
+
+    /**
+     * @return the gap at <code>position</code> not starting before
+     *         <code>since</code>. <code>null</code> if the position is the
+     *         first one and <code>since</code> is not before the day of the
+     *         first element.
+     */
+    public Gap getGapAt(int position, DateAndHour since) {
+        if (position == 0 && !elements.isEmpty()
+                && !since.getDate().isBefore(elements.get(0).getStartDate())) {
+            return null;
+        }
+        DateAndHour start = DateAndHour.max(gapStart(position), since);
+        Gap gap = gaps[position];
+        if (gap != null && start.equals(gap.getStartTime())) {
+            return gap;
+        }
+        return Gap.create(resource, start, gapEnd(position));
+    }
+
+}
@@ -21,9 +21,12 @@
 
 package org.libreplan.business.resources.daos;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.BaseCalendar;
 import org.libreplan.business.common.daos.IIntegrationEntityDAO;
 import org.libreplan.business.labels.entities.Label;
 import org.libreplan.business.reports.dtos.HoursWorkedPerResourceDTO;
@@ -70,6 +73,17 @@ public interface IResourceDAO extends IIntegrationEntityDAO<Resource> {
      */
     List<Resource> getResources();
 
+    /**
+     * Returns the {@link Resource resources} active at some point between the
+     * specified dates, sorted by name. Any of the dates can be
+     * <code>null</code>, meaning there is no limit at that side.
+     *
+     * @see Resource#isActiveBetween(LocalDate, LocalDate)
+     * @see Resource#sortByName(List)
+     */
+    List<Resource> getResourcesActiveBetweenSortedByName(LocalDate startDate,
+            LocalDate endDate);
+
     /**
      * Returns all {@link Worker} which are virtual
      *
@@ -100,6 +114,18 @@ public interface IResourceDAO extends IIntegrationEntityDAO<Resource> {
      */
     List<Resource> getAllNonLimitingResources();
 
+    /**
+     * Returns the {@link Resource resources} whose calendar derives from any
+     * of the provided {@link BaseCalendar calendars} in some of its versions
+     */
+    List<Resource> findUsingAnyOf(Collection<? extends BaseCalendar> calendars);
+
+    /**
+     * Returns the {@link Resource resources} with the provided ids. The ones
+     * that don't exist anymore are not included.
+     */
+    List<Resource> findByIds(Collection<Long> ids);
+
     /**
      * Returns all {@link HoursWorkedPerResourceDTO} per {@link Resource} between
      * the specified dates.
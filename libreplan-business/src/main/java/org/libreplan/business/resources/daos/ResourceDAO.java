@@ -22,12 +22,20 @@
 package org.libreplan.business.resources.daos;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
+import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.calendars.entities.CalendarAvailability;
 import org.libreplan.business.common.daos.IntegrationEntityDAO;
 import org.libreplan.business.labels.entities.Label;
 import org.libreplan.business.reports.dtos.HoursWorkedPerResourceDTO;
@@ -37,6 +45,7 @@ import org.libreplan.business.resources.entities.Criterion;
 import org.libreplan.business.resources.entities.LimitingResourceQueue;
 import org.libreplan.business.resources.entities.Machine;
 import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.resources.entities.VirtualWorker;
 import org.libreplan.business.resources.entities.Worker;
 import org.libreplan.business.scenarios.IScenarioManager;
 import org.libreplan.business.workingday.EffortDuration;
@@ -57,6 +66,8 @@ import org.springframework.transaction.annotation.Transactional;
 public class ResourceDAO extends IntegrationEntityDAO<Resource> implements
     IResourceDAO {
 
+    private static final int MAX_ELEMENTS_PER_QUERY = 1000;
+
     @Autowired
     private IScenarioManager scenarioManager;
 
@@ -93,6 +104,78 @@ public class ResourceDAO extends IntegrationEntityDAO<Resource> implements
         return list(Resource.class);
     }
 
+    /**
+     * Virtual workers are not exposed to integration
+     */
+    @Override
+    protected Criteria createCriteriaForAll() {
+        DetachedCriteria virtualWorkers = DetachedCriteria.forClass(
+                VirtualWorker.class).setProjection(Projections.id());
+        return super.createCriteriaForAll().add(
+                Subqueries.propertyNotIn("id", virtualWorkers));
+    }
+
+    @Override
+    public List<Resource> getResourcesActiveBetweenSortedByName(
+            LocalDate startDate, LocalDate endDate) {
+        List<Resource> result = new ArrayList<Resource>();
+        result.addAll(findActiveBetween("Worker",
+                "lower(resource.surname), lower(resource.firstName)",
+                startDate, endDate));
+        result.addAll(findActiveBetween("Machine", "lower(resource.name)",
+                startDate, endDate));
+        // the database already sorts each type, so this is almost a merge. It
+        // ensures the same order as Resource#sortByName regardless of the
+        // collation of the database
+        return Resource.sortByName(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Resource> findActiveBetween(String entity, String orderBy,
+            LocalDate startDate, LocalDate endDate) {
+        String strQuery = "FROM " + entity + " resource ";
+        if (startDate != null || endDate != null) {
+            strQuery += "WHERE resource.calendar.id IN ("
+                    + "SELECT calendar.id FROM ResourceCalendar calendar "
+                    + "LEFT OUTER JOIN calendar.calendarAvailabilities availability "
+                    + "WHERE availability.id IS NULL OR "
+                    + availabilityActiveBetween(startDate, endDate) + ") ";
+        }
+        strQuery += "ORDER BY " + orderBy;
+
+        Query query = getSession().createQuery(strQuery);
+        if (startDate != null) {
+            query.setParameter("startDate", startDate);
+        }
+        if (endDate != null) {
+            query.setParameter("endDate", endDate);
+        }
+        return query.list();
+    }
+
+    /**
+     * The same conditions that
+     * {@link CalendarAvailability#isActiveBetween(LocalDate, LocalDate)}
+     * checks
+     */
+    private static String availabilityActiveBetween(LocalDate startDate,
+            LocalDate endDate) {
+        if (startDate == null) {
+            return "(availability.startDate <= :endDate "
+                    + "OR availability.endDate <= :endDate)";
+        }
+        if (endDate == null) {
+            return "(availability.endDate IS NULL "
+                    + "OR availability.startDate >= :startDate "
+                    + "OR availability.endDate >= :startDate)";
+        }
+        return "((availability.endDate IS NULL "
+                + "AND (availability.startDate <= :startDate "
+                + "OR availability.startDate <= :endDate)) "
+                + "OR (availability.startDate <= :endDate "
+                + "AND availability.endDate >= :startDate))";
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public List<Resource> getAllLimitingResources() {
@@ -107,6 +190,37 @@ public class ResourceDAO extends IntegrationEntityDAO<Resource> implements
                 Restrictions.eq("limitingResource", false)).list();
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public List<Resource> findUsingAnyOf(
+            Collection<? extends BaseCalendar> calendars) {
+        if (calendars.isEmpty()) {
+            return new ArrayList<Resource>();
+        }
+        String strQuery = "SELECT DISTINCT resource FROM Resource resource "
+                + "JOIN resource.calendar calendar "
+                + "JOIN calendar.calendarDataVersions version "
+                + "WHERE version.parent IN (:calendars)";
+        Query query = getSession().createQuery(strQuery);
+        query.setParameterList("calendars", calendars);
+        return query.list();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Resource> findByIds(Collection<Long> ids) {
+        List<Long> list = new ArrayList<Long>(ids);
+        List<Resource> result = new ArrayList<Resource>();
+        for (int i = 0; i < list.size(); i += MAX_ELEMENTS_PER_QUERY) {
+            result.addAll(getSession()
+                    .createCriteria(Resource.class)
+                    .add(Restrictions.in("id", list.subList(i,
+                            Math.min(list.size(), i + MAX_ELEMENTS_PER_QUERY))))
+                    .list());
+        }
+        return result;
+    }
+
     @Override
     public List<Machine> getMachines() {
         return list(Machine.class);
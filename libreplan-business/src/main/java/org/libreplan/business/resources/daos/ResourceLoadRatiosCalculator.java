@@ -20,14 +20,16 @@
 package org.libreplan.business.resources.daos;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.joda.time.Days;
 import org.joda.time.LocalDate;
+import org.libreplan.business.calendars.entities.ICalendar;
 import org.libreplan.business.common.IAdHocTransactionService;
+import org.libreplan.business.planner.daos.IDayAssignmentAggregator;
 import org.libreplan.business.planner.daos.IDayAssignmentDAO;
-import org.libreplan.business.planner.entities.DayAssignment;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.scenarios.entities.Scenario;
 import org.libreplan.business.workingday.EffortDuration;
@@ -129,57 +131,95 @@ public class ResourceLoadRatiosCalculator implements
         EffortDuration totalLoad = EffortDuration.zero(), totalOverload = EffortDuration
                 .zero(), totalCapacity = EffortDuration.zero();
 
+        CapacitiesBetween capacities = new CapacitiesBetween(resource,
+                startDate, endDate);
         for (Map.Entry<LocalDate, EffortDuration> each : getAllEffortPerDateFor(
                 scenario, startDate, endDate, resource).entrySet()) {
             totalLoad = totalLoad.plus(each.getValue());
-            totalOverload = addOverload(totalOverload, resource,
+            totalOverload = addOverload(totalOverload, capacities,
                     each.getValue(), each.getKey());
         }
 
-        totalCapacity = calculateTotalCapacity(resource, startDate, endDate);
+        totalCapacity = capacities.getTotal();
         return new LoadRatiosDataType(totalLoad, totalOverload, totalCapacity);
     }
 
-    private Map<LocalDate, EffortDuration> getAllEffortPerDateFor(
-            Scenario scenario, LocalDate startDate, LocalDate endDate,
-            Resource resource) {
-
-        HashMap<LocalDate, EffortDuration> result = new HashMap<LocalDate, EffortDuration>();
-
-        List<DayAssignment> l = dayAssigmentDAO.getAllFor(scenario, startDate,
-                endDate, resource);
+    /**
+     * Capacities of the calendar of a resource for all the days between two
+     * dates, both inclusive. They are retrieved at once from the calendar
+     * instead of asking day by day.
+     */
+    private static class CapacitiesBetween {
+
+        private final ICalendar calendar;
+
+        private final LocalDate startDate;
+
+        private final int[] standardSeconds;
+
+        CapacitiesBetween(Resource resource, LocalDate startDate,
+                LocalDate endDate) {
+            this.calendar = resource.getCalendar();
+            this.startDate = startDate;
+            int size = Math.max(0,
+                    Days.daysBetween(startDate, endDate.plusDays(1)).getDays());
+            this.standardSeconds = new int[size];
+            if (size > 0) {
+                calendar.fillCapacitiesBetween(startDate, endDate.plusDays(1),
+                        standardSeconds, null);
+            }
+        }
 
-        EffortDuration newValue = EffortDuration.zero();
-        for (DayAssignment each : l) {
-            if (result.containsKey(each.getDay())) {
-                newValue = result.get(each.getDay()).plus(each.getDuration());
-            } else {
-                newValue = each.getDuration();
+        EffortDuration getTotal() {
+            int result = 0;
+            for (int each : standardSeconds) {
+                result += each;
             }
-            result.put(each.getDay(), newValue);
+            return EffortDuration.seconds(result);
         }
-        return result;
-    }
 
-    private EffortDuration calculateTotalCapacity(Resource resource,
-            LocalDate startDate, LocalDate endDate) {
-        return resource.getCalendar().getWorkableDuration(startDate, endDate);
+        int getSecondsAt(LocalDate date) {
+            int position = Days.daysBetween(startDate, date).getDays();
+            if (position >= 0 && position < standardSeconds.length) {
+                return standardSeconds[position];
+            }
+            return calendar.getCapacityOn(PartialDay.wholeDay(date))
+                    .getSeconds();
+        }
     }
 
-    private EffortDuration addOverload(EffortDuration currentOverload,
-            Resource resource, EffortDuration loadAtDate, LocalDate date) {
-        EffortDuration result;
-        EffortDuration capacityAtDay = getCapacityAtDate(resource, date);
-        if (capacityAtDay.compareTo(loadAtDate) < 0) {
-            result = currentOverload.plus(loadAtDate.minus(capacityAtDay));
-        } else {
-            result = currentOverload;
-        }
+    private Map<LocalDate, EffortDuration> getAllEffortPerDateFor(
+            Scenario scenario, LocalDate startDate, LocalDate endDate,
+            Resource resource) {
 
+        final Map<LocalDate, EffortDuration> result = new HashMap<LocalDate, EffortDuration>();
+
+        dayAssigmentDAO.aggregateFor(scenario, startDate, endDate,
+                Collections.singletonList(resource),
+                new IDayAssignmentAggregator() {
+
+                    @Override
+                    public void add(long resourceId, LocalDate day,
+                            int seconds, long allocationId,
+                            boolean consolidated) {
+                        EffortDuration previous = result.get(day);
+                        EffortDuration duration = EffortDuration
+                                .seconds(seconds);
+                        result.put(day, previous == null ? duration
+                                : previous.plus(duration));
+                    }
+                });
         return result;
     }
 
-    private EffortDuration getCapacityAtDate(Resource resource, LocalDate date) {
-        return resource.getCalendar().getCapacityOn(PartialDay.wholeDay(date));
+    private EffortDuration addOverload(EffortDuration currentOverload,
+            CapacitiesBetween capacities, EffortDuration loadAtDate,
+            LocalDate date) {
+        int capacityAtDay = capacities.getSecondsAt(date);
+        if (capacityAtDay < loadAtDate.getSeconds()) {
+            return currentOverload.plus(EffortDuration.seconds(loadAtDate
+                    .getSeconds() - capacityAtDay));
+        }
+        return currentOverload;
     }
-}
\ No newline at end of file
+}
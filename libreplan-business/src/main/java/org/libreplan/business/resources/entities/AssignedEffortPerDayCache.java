@@ -0,0 +1,263 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.resources.entities;
+
+import static org.libreplan.business.calendars.entities.CalendarCapacityIndex.toDayNumber;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.joda.time.LocalDate;
+import org.libreplan.business.hibernate.notification.ICacheInvalidationListener;
+import org.libreplan.business.planner.entities.DayAssignment;
+import org.libreplan.business.workingday.EffortDuration;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * Cache shared by all the sessions keeping the effort assigned per day to a
+ * {@link Resource} on a scenario. Each entry is a pair of sorted arrays, the
+ * days and the seconds assigned on them, so looking up a day doesn't need to
+ * load and group the {@link DayAssignment day assignments} again.
+ * </p>
+ * <p>
+ * The number of entries is bounded and the least recently used ones are
+ * evicted. The entries of a resource are invalidated when any of its day
+ * assignments is modified in the database, as notified by
+ * {@link org.libreplan.business.hibernate.notification.HibernateDatabaseModificationsListener}. An entry calculated while an
+ * invalidation happened is discarded.
+ * </p>
+ */
+@Component
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class AssignedEffortPerDayCache implements ICacheInvalidationListener {
+
+    private static final int MAX_ENTRIES = 2000;
+
+    /**
+     * The assigned effort per day of a resource on a scenario. It's immutable.
+     */
+    public static class AssignedEffortPerDay {
+
+        private static final AssignedEffortPerDay EMPTY = new AssignedEffortPerDay(
+                new int[0], new int[0]);
+
+        public static AssignedEffortPerDay from(
+                Collection<? extends DayAssignment> assignments) {
+            if (assignments.isEmpty()) {
+                return EMPTY;
+            }
+            int[] days = new int[assignments.size()];
+            int[] seconds = new int[assignments.size()];
+            int i = 0;
+            for (DayAssignment each : DayAssignment.orderedByDay(assignments)) {
+                int day = toDayNumber(each.getDay());
+                int duration = each.getDuration().getSeconds();
+                if (i > 0 && days[i - 1] == day) {
+                    seconds[i - 1] += duration;
+                } else {
+                    days[i] = day;
+                    seconds[i] = duration;
+                    i++;
+                }
+            }
+            return new AssignedEffortPerDay(Arrays.copyOf(days, i),
+                    Arrays.copyOf(seconds, i));
+        }
+
+        private final int[] days;
+
+        private final int[] seconds;
+
+        private AssignedEffortPerDay(int[] days, int[] seconds) {
+            this.days = days;
+            this.seconds = seconds;
+        }
+
+        public EffortDuration getAssignedEffortAt(LocalDate day) {
+            int position = Arrays.binarySearch(days, toDayNumber(day));
+            if (position < 0) {
+                return EffortDuration.zero();
+            }
+            return EffortDuration.seconds(seconds[position]);
+        }
+
+        public int getNumberOfDays() {
+            return days.length;
+        }
+
+    }
+
+    private static class Key {
+
+        private final Long resourceId;
+
+        private final Long scenarioId;
+
+        Key(Long resourceId, Long scenarioId) {
+            this.resourceId = resourceId;
+            this.scenarioId = scenarioId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return resourceId.equals(other.resourceId)
+                    && scenarioId.equals(other.scenarioId);
+        }
+
+        @Override
+        public int hashCode() {
+            return resourceId.hashCode() * 31 + scenarioId.hashCode();
+        }
+
+    }
+
+    private final int maxEntries;
+
+    private final Map<Key, AssignedEffortPerDay> entries;
+
+    private final ConcurrentMap<Long, AtomicLong> versions = new ConcurrentHashMap<Long, AtomicLong>();
+
+    private final AtomicLong globalVersion = new AtomicLong();
+
+    public AssignedEffortPerDayCache() {
+        this(MAX_ENTRIES);
+    }
+
+    public AssignedEffortPerDayCache(final int maxEntries) {
+        Validate.isTrue(maxEntries > 0);
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, AssignedEffortPerDay>(16, 0.75f,
+                true) {
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Entry<Key, AssignedEffortPerDay> eldest) {
+                return size() > AssignedEffortPerDayCache.this.maxEntries;
+            }
+        };
+    }
+
+    public synchronized AssignedEffortPerDay get(Long resourceId,
+            Long scenarioId) {
+        if (resourceId == null || scenarioId == null) {
+            return null;
+        }
+        return entries.get(new Key(resourceId, scenarioId));
+    }
+
+    /**
+     * The returned value must be retrieved before reading the day assignments
+     * from which an entry is calculated and provided later to
+     * {@link #put(Long, Long, long, AssignedEffortPerDay)}
+     */
+    public long getVersion(Long resourceId) {
+        return globalVersion.get() + versionOf(resourceId).get();
+    }
+
+    private AtomicLong versionOf(Long resourceId) {
+        AtomicLong result = versions.get(resourceId);
+        if (result != null) {
+            return result;
+        }
+        versions.putIfAbsent(resourceId, new AtomicLong());
+        return versions.get(resourceId);
+    }
+
+    /**
+     * @return <code>false</code> if the entry is not stored because the
+     *         resource has been invalidated since the version was retrieved
+     */
+    public synchronized boolean put(Long resourceId, Long scenarioId,
+            long version, AssignedEffortPerDay value) {
+        Validate.notNull(resourceId);
+        Validate.notNull(scenarioId);
+        Validate.notNull(value);
+        if (getVersion(resourceId) != version) {
+            return false;
+        }
+        entries.put(new Key(resourceId, scenarioId), value);
+        return true;
+    }
+
+    /**
+     * @return the id of the resource of a {@link DayAssignment}
+     */
+    @Override
+    public Object getKeyAffectedBy(Object entity) {
+        if (!(entity instanceof DayAssignment)) {
+            return null;
+        }
+        Resource resource = ((DayAssignment) entity).getResource();
+        return resource != null ? resource.getId() : null;
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        invalidate((Long) key);
+    }
+
+    public void invalidate(Long resourceId) {
+        if (resourceId == null) {
+            return;
+        }
+        versionOf(resourceId).incrementAndGet();
+        synchronized (this) {
+            Iterator<Key> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().resourceId.equals(resourceId)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidate(Collection<Long> resourceIds) {
+        for (Long each : resourceIds) {
+            invalidate(each);
+        }
+    }
+
+    public void invalidateAll() {
+        globalVersion.incrementAndGet();
+        synchronized (this) {
+            entries.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+}
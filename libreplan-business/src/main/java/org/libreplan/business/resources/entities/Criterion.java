@@ -296,8 +296,7 @@ public class Criterion extends IntegrationEntity implements ICriterion,
 
     @Override
     public boolean isSatisfiedBy(Resource resource, LocalDate atThisDate) {
-        return !resource.query().from(this).enforcedInAll(
-                Interval.point(atThisDate)).result().isEmpty();
+        return resource.getSatisfactionTimeline(this).isSatisfiedAt(atThisDate);
     }
 
     @NotEmpty(message="criterion name not specified")
@@ -139,6 +139,8 @@ public class CriterionSatisfaction extends IntegrationEntity {
             this.finishDate = finishDate;
         }
 
+        modified();
+
     }
 
     /**
@@ -210,6 +212,7 @@ public class CriterionSatisfaction extends IntegrationEntity {
 
     public void setCriterion(Criterion criterion) {
         this.criterion = criterion;
+        modified();
     }
 
 
@@ -219,7 +222,19 @@ public class CriterionSatisfaction extends IntegrationEntity {
     }
 
     public void setResource(Resource resource) {
+        modified();
         this.resource = resource;
+        modified();
+    }
+
+    /**
+     * The resource keeps a compiled timeline of its satisfactions that must be
+     * discarded when any of them changes
+     */
+    private void modified() {
+        if (resource != null) {
+            resource.invalidateSatisfactionTimelines();
+        }
     }
 
     public boolean isCurrent() {
@@ -242,10 +257,12 @@ public class CriterionSatisfaction extends IntegrationEntity {
         Validate.isTrue(finishDate == null || isNewObject()
                 || getEndDate().equals(finish) || getEndDate().isBefore(finish));
         this.finishDate = finish;
+        modified();
     }
 
     public void noFinish() {
         this.finishDate = null;
+        modified();
     }
 
     public boolean isFinished() {
@@ -257,6 +274,7 @@ public class CriterionSatisfaction extends IntegrationEntity {
             finish(date);
         }
         this.finishDate = date;
+        modified();
     }
 
     public void setStartDate(LocalDate date) {
@@ -266,10 +284,12 @@ public class CriterionSatisfaction extends IntegrationEntity {
                     || getStartDate().isAfter(date));
         }
         startDate = date;
+        modified();
     }
 
     public void setIsDeleted(boolean isDeleted) {
         this.isDeleted = isDeleted;
+        modified();
     }
 
     public boolean isIsDeleted() {
@@ -0,0 +1,212 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.resources.entities;
+
+import static org.libreplan.business.calendars.entities.CalendarCapacityIndex.toDayNumber;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/**
+ * <p>
+ * Days in which a {@link Resource} satisfies a {@link Criterion}, compiled
+ * from its {@link CriterionSatisfaction satisfactions} into sorted arrays of
+ * disjoint intervals. Checking a day is a binary search, instead of filtering
+ * all the satisfactions of the resource.
+ * </p>
+ * <p>
+ * Days are represented as the number of days since 1970-01-01, as in
+ * {@link org.libreplan.business.calendars.entities.CalendarCapacityIndex}. The
+ * start of each interval is inclusive and the end is exclusive. The timelines
+ * are immutable, {@link Resource} discards the compiled ones when its
+ * satisfactions change.
+ * </p>
+ */
+public class CriterionSatisfactionTimeline {
+
+    private static final int UNBOUNDED_END = Integer.MAX_VALUE;
+
+    private static final CriterionSatisfactionTimeline NEVER = new CriterionSatisfactionTimeline(
+            new int[0], new int[0]);
+
+    private static final CriterionSatisfactionTimeline ALWAYS = new CriterionSatisfactionTimeline(
+            new int[] { Integer.MIN_VALUE }, new int[] { UNBOUNDED_END });
+
+    private static final Comparator<int[]> BY_START = new Comparator<int[]>() {
+
+        @Override
+        public int compare(int[] o1, int[] o2) {
+            return o1[0] < o2[0] ? -1 : (o1[0] == o2[0] ? 0 : 1);
+        }
+    };
+
+    public static CriterionSatisfactionTimeline never() {
+        return NEVER;
+    }
+
+    public static CriterionSatisfactionTimeline always() {
+        return ALWAYS;
+    }
+
+    /**
+     * Compiles the days in which the satisfactions enforce the criterion. The
+     * satisfactions of the children of the criterion are taken into account
+     * and the deleted ones are ignored, as {@link Resource.Query} does.
+     */
+    public static CriterionSatisfactionTimeline compile(Criterion criterion,
+            Collection<? extends CriterionSatisfaction> satisfactions) {
+        List<int[]> intervals = new ArrayList<int[]>();
+        for (CriterionSatisfaction each : satisfactions) {
+            if (each.isIsDeleted()
+                    || !criterion.includes(each.getCriterion())) {
+                continue;
+            }
+            int[] interval = daysEnforcedBy(each);
+            if (interval[0] < interval[1]) {
+                intervals.add(interval);
+            }
+        }
+        return merge(intervals);
+    }
+
+    /**
+     * The days in which
+     * {@link CriterionSatisfaction#isAlwaysEnforcedIn(Interval)} is true for a
+     * {@link Interval#point(LocalDate) point}. A point is only included in a
+     * finished satisfaction spanning several days if it's after its start.
+     */
+    private static int[] daysEnforcedBy(CriterionSatisfaction satisfaction) {
+        int start = toDayNumber(satisfaction.getStartDate());
+        LocalDate end = satisfaction.getEndDate();
+        if (end == null) {
+            return new int[] { start, UNBOUNDED_END };
+        }
+        if (end.equals(satisfaction.getStartDate())) {
+            return new int[] { start, start + 1 };
+        }
+        return new int[] { start + 1, toDayNumber(end) };
+    }
+
+    private static CriterionSatisfactionTimeline merge(List<int[]> intervals) {
+        if (intervals.isEmpty()) {
+            return NEVER;
+        }
+        Collections.sort(intervals, BY_START);
+        List<int[]> merged = new ArrayList<int[]>();
+        for (int[] each : intervals) {
+            int[] last = merged.isEmpty() ? null : merged
+                    .get(merged.size() - 1);
+            if (last != null && each[0] <= last[1]) {
+                last[1] = Math.max(last[1], each[1]);
+            } else {
+                merged.add(new int[] { each[0], each[1] });
+            }
+        }
+        int[] starts = new int[merged.size()];
+        int[] ends = new int[merged.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = merged.get(i)[0];
+            ends[i] = merged.get(i)[1];
+        }
+        return new CriterionSatisfactionTimeline(starts, ends);
+    }
+
+    /**
+     * @return the days in which all the timelines are satisfied. If there are
+     *         no timelines it's always satisfied, like an empty conjunction.
+     */
+    public static CriterionSatisfactionTimeline and(
+            Collection<? extends CriterionSatisfactionTimeline> timelines) {
+        Iterator<? extends CriterionSatisfactionTimeline> iterator = timelines
+                .iterator();
+        if (!iterator.hasNext()) {
+            return ALWAYS;
+        }
+        CriterionSatisfactionTimeline result = iterator.next();
+        while (iterator.hasNext() && !result.isNeverSatisfied()) {
+            result = result.intersect(iterator.next());
+        }
+        return result;
+    }
+
+    private final int[] starts;
+
+    private final int[] ends;
+
+    private CriterionSatisfactionTimeline(int[] starts, int[] ends) {
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    public boolean isNeverSatisfied() {
+        return starts.length == 0;
+    }
+
+    public boolean isSatisfiedAt(LocalDate day) {
+        return isSatisfiedAt(toDayNumber(day));
+    }
+
+    public boolean isSatisfiedAt(int dayNumber) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (dayNumber < starts[middle]) {
+                high = middle - 1;
+            } else if (dayNumber >= ends[middle]) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public CriterionSatisfactionTimeline intersect(
+            CriterionSatisfactionTimeline other) {
+        if (this == other) {
+            return this;
+        }
+        List<int[]> result = new ArrayList<int[]>();
+        int i = 0;
+        int j = 0;
+        while (i < starts.length && j < other.starts.length) {
+            int start = Math.max(starts[i], other.starts[j]);
+            int end = Math.min(ends[i], other.ends[j]);
+            if (start < end) {
+                result.add(new int[] { start, end });
+            }
+            if (ends[i] < other.ends[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return merge(result);
+    }
+
+}
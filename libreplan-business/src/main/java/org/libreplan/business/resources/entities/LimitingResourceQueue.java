@@ -42,6 +42,8 @@ import org.libreplan.business.planner.limiting.entities.Gap.GapOnQueue;
 import org.libreplan.business.planner.limiting.entities.GapInterval;
 import org.libreplan.business.planner.limiting.entities.InsertionRequirements;
 import org.libreplan.business.planner.limiting.entities.LimitingResourceQueueElement;
+import org.libreplan.business.planner.limiting.entities.QueueGapIndex;
+
 /**
  *
  * @author Diego Pino Garcia <dpino@igalia.com>
@@ -56,6 +58,10 @@ public class LimitingResourceQueue extends BaseEntity {
 
     private List<GapOnQueue> cachedGaps;
 
+    private QueueGapIndex gapIndex;
+
+    private boolean gapIndexOutdated = false;
+
     public static Collection<LimitingResourceQueue> queuesOf(
             Collection<LimitingResourceQueueElement> queueElements) {
         Set<LimitingResourceQueue> result = new HashSet<LimitingResourceQueue>();
@@ -95,6 +101,21 @@ public class LimitingResourceQueue extends BaseEntity {
 
     private void invalidCachedGaps() {
         cachedGaps = null;
+        gapIndexOutdated = true;
+    }
+
+    /**
+     * @return an index of the gaps between the current elements of the queue.
+     *         It's rebuilt after the queue is modified, reusing the gaps that
+     *         haven't changed.
+     */
+    public QueueGapIndex getGapIndex() {
+        if (gapIndex == null || gapIndexOutdated) {
+            gapIndex = QueueGapIndex.create(resource,
+                    limitingResourceQueueElements, gapIndex);
+            gapIndexOutdated = false;
+        }
+        return gapIndex;
     }
 
     public List<GapOnQueue> getGaps() {
@@ -29,6 +29,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -42,6 +43,7 @@ import javax.validation.constraints.AssertTrue;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
+import org.hibernate.Hibernate;
 import org.joda.time.LocalDate;
 import org.libreplan.business.calendars.entities.AvailabilityTimeLine;
 import org.libreplan.business.calendars.entities.BaseCalendar;
@@ -63,6 +65,7 @@ import org.libreplan.business.planner.entities.AvailabilityCalculator;
 import org.libreplan.business.planner.entities.DayAssignment;
 import org.libreplan.business.planner.entities.ResourceAllocation;
 import org.libreplan.business.resources.daos.IResourceDAO;
+import org.libreplan.business.resources.entities.AssignedEffortPerDayCache.AssignedEffortPerDay;
 import org.libreplan.business.scenarios.entities.Scenario;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.EffortDuration.IEffortFrom;
@@ -137,6 +140,8 @@ public abstract class Resource extends IntegrationEntity implements
 
     private Map<LocalDate, List<DayAssignment>> assignmentsByDayCached = null;
 
+    private Map<Set<Criterion>, CriterionSatisfactionTimeline> satisfactionTimelinesCached = null;
+
     private Set<ResourcesCostCategoryAssignment> resourcesCostCategoryAssignments =
         new HashSet<ResourcesCostCategoryAssignment>();
 
@@ -144,11 +149,84 @@ public abstract class Resource extends IntegrationEntity implements
 
     private LimitingResourceQueue limitingResourceQueue;
 
+    private boolean assignmentsModified = false;
+
+    private AssignedEffortPerDay assignedEffortPerDayCached = null;
+
+    private Scenario assignedEffortPerDayScenario = null;
+
     private void clearCachedData() {
         assignmentsByDayCached = null;
+        assignedEffortPerDayCached = null;
         dayAssignmentsState.clearCachedData();
     }
 
+    /**
+     * Version of the shared {@link AssignedEffortPerDayCache} when
+     * {@link #dayAssignments} was loaded from the database. It's only valid
+     * while {@link #dayAssignments} is {@link #assignmentsLoadedWithVersion}.
+     */
+    private long versionWhenAssignmentsLoaded;
+
+    private Set<DayAssignment> assignmentsLoadedWithVersion = null;
+
+    /**
+     * The shared {@link AssignedEffortPerDayCache} can only be used when the
+     * assignments of this resource are the ones stored in the database for a
+     * stored scenario.
+     *
+     * @return <code>null</code> if the shared cache can't be used
+     */
+    private AssignedEffortPerDay getAssignedEffortPerDay() {
+        if (assignmentsModified || getId() == null) {
+            return null;
+        }
+        Scenario scenario = dayAssignmentsState.getScenario();
+        if (scenario == null || scenario.getId() == null) {
+            return null;
+        }
+        if (assignedEffortPerDayCached != null
+                && scenario.equals(assignedEffortPerDayScenario)) {
+            return assignedEffortPerDayCached;
+        }
+        AssignedEffortPerDayCache cache = Registry
+                .getAssignedEffortPerDayCache();
+        if (cache == null) {
+            return null;
+        }
+        AssignedEffortPerDay result = cache.get(getId(), scenario.getId());
+        if (result == null) {
+            List<DayAssignment> assignments = dayAssignmentsState
+                    .getAssignments();
+            result = AssignedEffortPerDay.from(assignments);
+            if (dayAssignments == assignmentsLoadedWithVersion) {
+                cache.put(getId(), scenario.getId(),
+                        versionWhenAssignmentsLoaded, result);
+            }
+        }
+        assignedEffortPerDayScenario = scenario;
+        return assignedEffortPerDayCached = result;
+    }
+
+    /**
+     * If {@link #dayAssignments} hasn't been loaded yet, it's loaded now and
+     * the version of the shared cache is recorded before. If it was loaded in
+     * any other way it's unknown which changes it includes, so the shared
+     * cache is not filled from it.
+     */
+    private Set<DayAssignment> getDayAssignments() {
+        AssignedEffortPerDayCache cache = Registry
+                .getAssignedEffortPerDayCache();
+        if (cache != null && getId() != null
+                && !Hibernate.isInitialized(dayAssignments)) {
+            long version = cache.getVersion(getId());
+            Hibernate.initialize(dayAssignments);
+            versionWhenAssignmentsLoaded = version;
+            assignmentsLoadedWithVersion = dayAssignments;
+        }
+        return dayAssignments;
+    }
+
     private List<DayAssignment> getAssignmentsForDay(LocalDate date) {
         if (assignmentsByDayCached == null) {
             assignmentsByDayCached = DayAssignment.byDay(getAssignments());
@@ -166,6 +244,8 @@ public abstract class Resource extends IntegrationEntity implements
 
         abstract List<DayAssignment> calculateAssignments();
 
+        abstract Scenario getScenario();
+
         List<DayAssignment> getAssignments() {
             if (cachedAssignments != null) {
                 return cachedAssignments;
@@ -180,11 +260,32 @@ public abstract class Resource extends IntegrationEntity implements
 
     private class UsingScenarioManager extends DayAssignmentsState {
 
+        /**
+         * The current scenario is retrieved from the scenario manager only
+         * once, since it can be expensive, and kept until the cached data is
+         * cleared
+         */
+        private Scenario scenario;
+
+        @Override
+        Scenario getScenario() {
+            if (scenario == null) {
+                scenario = Registry.getScenarioManager().getCurrent();
+            }
+            return scenario;
+        }
+
+        @Override
+        void clearCachedData() {
+            super.clearCachedData();
+            scenario = null;
+        }
+
         @Override
         List<DayAssignment> calculateAssignments() {
             List<DayAssignment> result = new ArrayList<DayAssignment>();
-            Scenario current = Registry.getScenarioManager().getCurrent();
-            for (DayAssignment each : dayAssignments) {
+            Scenario current = getScenario();
+            for (DayAssignment each : getDayAssignments()) {
                 if (each.getScenario() != null
                         && each.getScenario().equals(current)) {
                     result.add(each);
@@ -202,10 +303,15 @@ public abstract class Resource extends IntegrationEntity implements
             this.currentScenario = currentScenario;
         }
 
+        @Override
+        Scenario getScenario() {
+            return currentScenario;
+        }
+
         @Override
         List<DayAssignment> calculateAssignments() {
             List<DayAssignment> result = new ArrayList<DayAssignment>();
-            for (DayAssignment each : dayAssignments) {
+            for (DayAssignment each : getDayAssignments()) {
                 if (isTransient(each)
                         || each.getScenario().equals(currentScenario)) {
                     result.add(each);
@@ -411,6 +517,60 @@ public abstract class Resource extends IntegrationEntity implements
         return new Query();
     }
 
+    /**
+     * @return the days in which this resource satisfies the criterion. It's
+     *         compiled the first time it's requested and kept until the
+     *         satisfactions of this resource change.
+     */
+    public CriterionSatisfactionTimeline getSatisfactionTimeline(
+            Criterion criterion) {
+        return getSatisfactionTimeline(Collections.singleton(criterion));
+    }
+
+    /**
+     * @return the days in which this resource satisfies all the criterions
+     */
+    public CriterionSatisfactionTimeline getSatisfactionTimeline(
+            Set<Criterion> criterions) {
+        if (satisfactionTimelinesCached == null) {
+            satisfactionTimelinesCached = new HashMap<Set<Criterion>, CriterionSatisfactionTimeline>();
+        }
+        CriterionSatisfactionTimeline result = satisfactionTimelinesCached
+                .get(criterions);
+        if (result == null) {
+            result = compileSatisfactionTimeline(criterions);
+            satisfactionTimelinesCached.put(
+                    new HashSet<Criterion>(criterions), result);
+        }
+        return result;
+    }
+
+    private CriterionSatisfactionTimeline compileSatisfactionTimeline(
+            Set<Criterion> criterions) {
+        if (criterions.size() == 1) {
+            return CriterionSatisfactionTimeline.compile(criterions.iterator()
+                    .next(), criterionSatisfactions);
+        }
+        List<CriterionSatisfactionTimeline> timelines = new ArrayList<CriterionSatisfactionTimeline>();
+        for (Criterion each : criterions) {
+            timelines.add(getSatisfactionTimeline(each));
+        }
+        return CriterionSatisfactionTimeline.and(timelines);
+    }
+
+    /**
+     * Discards the compiled satisfaction timelines. It must be called when
+     * the satisfactions of this resource are modified.
+     */
+    void invalidateSatisfactionTimelines() {
+        satisfactionTimelinesCached = null;
+    }
+
+    public boolean satisfiesCriterionsAt(Set<Criterion> criterions,
+            LocalDate day) {
+        return getSatisfactionTimeline(criterions).isSatisfiedAt(day);
+    }
+
     public Set<CriterionSatisfaction> getAllSatisfactions() {
         return new HashSet<CriterionSatisfaction>(criterionSatisfactions);
     }
@@ -492,6 +652,7 @@ public abstract class Resource extends IntegrationEntity implements
         if (canAddSatisfaction(criterionWithItsType, interval)) {
             newSatisfaction.validate();
             criterionSatisfactions.add(newSatisfaction);
+            invalidateSatisfactionTimelines();
             return newSatisfaction;
         }
         final String message = getReasonForNotAddingSatisfaction(type);
@@ -577,6 +738,7 @@ public abstract class Resource extends IntegrationEntity implements
                 }
                 original.validate();
                 criterionSatisfactions.add(original);
+                invalidateSatisfactionTimelines();
                 if(!canAdd){
                     throw new IllegalStateException(
                         "This interval "+original.getCriterion().getName()+" not is valid because exists overlap with other criterion satisfaction");
@@ -711,6 +873,7 @@ public abstract class Resource extends IntegrationEntity implements
 
     public void removeCriterionSatisfaction(CriterionSatisfaction satisfaction) {
         criterionSatisfactions.remove(satisfaction);
+        invalidateSatisfactionTimelines();
     }
 
     public boolean contains(CriterionSatisfaction satisfaction) {
@@ -852,6 +1015,10 @@ public abstract class Resource extends IntegrationEntity implements
     }
 
     public EffortDuration getAssignedEffort(LocalDate localDate) {
+        AssignedEffortPerDay assignedEffortPerDay = getAssignedEffortPerDay();
+        if (assignedEffortPerDay != null) {
+            return assignedEffortPerDay.getAssignedEffortAt(localDate);
+        }
         return DayAssignment.sum(getAssignmentsForDay(localDate));
     }
 
@@ -872,6 +1039,7 @@ public abstract class Resource extends IntegrationEntity implements
     public void addNewAssignments(Collection<? extends DayAssignment> assignments) {
         Validate.notNull(assignments);
         Validate.noNullElements(assignments);
+        assignmentsModified = true;
         clearCachedData();
         this.dayAssignments.addAll(assignments);
     }
@@ -879,6 +1047,7 @@ public abstract class Resource extends IntegrationEntity implements
     public void removeAssignments(
             Collection<? extends DayAssignment> assignments) {
         Validate.noNullElements(assignments);
+        assignmentsModified = true;
         clearCachedData();
         this.dayAssignments.removeAll(assignments);
     }
@@ -889,6 +1058,7 @@ public abstract class Resource extends IntegrationEntity implements
 
     public void useScenario(Scenario scenario) {
         dayAssignmentsState = new OnSpecifiedScenario(scenario);
+        clearCachedData();
     }
 
     public int getTotalWorkHours(LocalDate start, LocalDate end) {
@@ -950,6 +1120,7 @@ public abstract class Resource extends IntegrationEntity implements
         criterionSatisfaction) {
 
         criterionSatisfactions.add(criterionSatisfaction);
+        invalidateSatisfactionTimelines();
 
     }
 
@@ -971,6 +1142,7 @@ public abstract class Resource extends IntegrationEntity implements
         validateSatisfactions(activeList);
         criterionSatisfactions.clear();
         criterionSatisfactions.addAll(newList);
+        invalidateSatisfactionTimelines();
     }
 
     private void validateSatisfactions(Set<CriterionSatisfaction> satisfactions)
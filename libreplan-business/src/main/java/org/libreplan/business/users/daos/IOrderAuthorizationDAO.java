@@ -26,6 +26,8 @@ import java.util.List;
 import org.libreplan.business.common.daos.IGenericDAO;
 import org.libreplan.business.orders.entities.Order;
 import org.libreplan.business.users.entities.OrderAuthorization;
+import org.libreplan.business.users.entities.OrderPermissionsCache;
+import org.libreplan.business.users.entities.OrderPermissionsCache.OrderPermissions;
 import org.libreplan.business.users.entities.Profile;
 import org.libreplan.business.users.entities.User;
 
@@ -110,4 +112,16 @@ public interface IOrderAuthorizationDAO extends IGenericDAO<OrderAuthorization,
     List<OrderAuthorization> listByOrderUserAndItsProfiles(Order order,
             User user);
 
+    /**
+     * Retrieves the {@link Order} objects that the {@link User} with the
+     * specified login name can read and write due to the
+     * {@link OrderAuthorization} objects related with the user or with its
+     * {@link Profile} objects. The roles of the user are not taken into
+     * account. The result is kept in {@link OrderPermissionsCache}.
+     * @param loginName login name of the {@link User}
+     * @return the permissions of the user. If there isn't any user with that
+     *         login name they are empty.
+     */
+    OrderPermissions getOrderPermissionsOf(String loginName);
+
 }
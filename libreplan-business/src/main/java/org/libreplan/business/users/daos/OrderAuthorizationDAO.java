@@ -22,15 +22,21 @@
 package org.libreplan.business.users.daos;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
 import org.libreplan.business.common.daos.GenericDAOHibernate;
 import org.libreplan.business.orders.entities.Order;
 import org.libreplan.business.users.entities.OrderAuthorization;
+import org.libreplan.business.users.entities.OrderAuthorizationType;
+import org.libreplan.business.users.entities.OrderPermissionsCache;
+import org.libreplan.business.users.entities.OrderPermissionsCache.OrderPermissions;
 import org.libreplan.business.users.entities.Profile;
 import org.libreplan.business.users.entities.User;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -43,6 +49,9 @@ import org.springframework.transaction.annotation.Transactional;
 public class OrderAuthorizationDAO extends GenericDAOHibernate<OrderAuthorization, Long>
     implements IOrderAuthorizationDAO {
 
+    @Autowired
+    private OrderPermissionsCache cache;
+
     @Override
     public List<OrderAuthorization> listByOrder(Order order) {
         Criteria c = getSession().createCriteria(OrderAuthorization.class);
@@ -113,4 +122,41 @@ public class OrderAuthorizationDAO extends GenericDAOHibernate<OrderAuthorizatio
         }
         return list;
     }
+
+    @Override
+    @Transactional(readOnly = true)
+    public OrderPermissions getOrderPermissionsOf(String loginName) {
+        OrderPermissions result = cache.get(loginName);
+        if (result != null) {
+            return result;
+        }
+        long version = cache.getVersion();
+        result = calculateOrderPermissionsOf(loginName);
+        cache.put(loginName, version, result);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private OrderPermissions calculateOrderPermissionsOf(String loginName) {
+        String strQuery = "SELECT oa.order.id, oa.authorizationType "
+                + "FROM OrderAuthorization oa "
+                + "WHERE oa.user IN "
+                + "(FROM User u WHERE u.loginName = :loginName) "
+                + "OR oa.profile IN "
+                + "(SELECT p FROM User u JOIN u.profiles p "
+                + "WHERE u.loginName = :loginName)";
+        List<Object[]> rows = getSession().createQuery(strQuery)
+                .setParameter("loginName", loginName).list();
+
+        Set<Long> readable = new HashSet<Long>();
+        Set<Long> writable = new HashSet<Long>();
+        for (Object[] each : rows) {
+            Long orderId = (Long) each[0];
+            readable.add(orderId);
+            if (each[1] == OrderAuthorizationType.WRITE_AUTHORIZATION) {
+                writable.add(orderId);
+            }
+        }
+        return new OrderPermissions(readable, writable);
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.users.entities;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.Validate;
+import org.libreplan.business.hibernate.notification.ICacheInvalidationListener;
+import org.libreplan.business.orders.entities.Order;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Component;
+
+/**
+ * <p>
+ * Cache shared by all the sessions keeping, for each login name, the ids of
+ * the {@link Order orders} the user can read and write due to the
+ * {@link OrderAuthorization order authorizations} of the user and its
+ * {@link Profile profiles}. The roles of the user are not taken into account.
+ * </p>
+ * <p>
+ * All the entries are invalidated when any {@link OrderAuthorization},
+ * {@link User} or {@link Profile} is modified in the database, as notified by
+ * {@link org.libreplan.business.hibernate.notification.HibernateDatabaseModificationsListener}. An entry
+ * calculated while an invalidation happened is discarded.
+ * </p>
+ */
+@Component
+@Scope(BeanDefinition.SCOPE_SINGLETON)
+public class OrderPermissionsCache implements ICacheInvalidationListener {
+
+    /**
+     * The key of all the entries, as any modification can affect any user
+     */
+    private static final String ALL_ENTRIES = "all";
+
+    /**
+     * The orders a user can read and write. It's immutable.
+     */
+    public static class OrderPermissions {
+
+        private final Set<Long> readable;
+
+        private final Set<Long> writable;
+
+        public OrderPermissions(Set<Long> readable, Set<Long> writable) {
+            Validate.notNull(readable);
+            Validate.notNull(writable);
+            this.readable = Collections
+                    .unmodifiableSet(new HashSet<Long>(readable));
+            this.writable = Collections
+                    .unmodifiableSet(new HashSet<Long>(writable));
+        }
+
+        public boolean canRead(Order order) {
+            return order.getId() != null && readable.contains(order.getId());
+        }
+
+        public boolean canWrite(Order order) {
+            return order.getId() != null && writable.contains(order.getId());
+        }
+
+        public Set<Long> getReadableOrderIds() {
+            return readable;
+        }
+
+    }
+
+    private final ConcurrentMap<String, OrderPermissions> entries = new ConcurrentHashMap<String, OrderPermissions>();
+
+    private final AtomicLong version = new AtomicLong();
+
+    public OrderPermissions get(String loginName) {
+        if (loginName == null) {
+            return null;
+        }
+        return entries.get(loginName);
+    }
+
+    /**
+     * The returned value must be retrieved before reading the authorizations
+     * from which an entry is calculated and provided later to
+     * {@link #put(String, long, OrderPermissions)}
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return <code>false</code> if the entry is not stored because the cache
+     *         has been invalidated since the version was retrieved
+     */
+    public synchronized boolean put(String loginName, long version,
+            OrderPermissions value) {
+        Validate.notNull(loginName);
+        Validate.notNull(value);
+        if (getVersion() != version) {
+            return false;
+        }
+        entries.put(loginName, value);
+        return true;
+    }
+
+    @Override
+    public Object getKeyAffectedBy(Object entity) {
+        if (entity instanceof OrderAuthorization || entity instanceof User
+                || entity instanceof Profile) {
+            return ALL_ENTRIES;
+        }
+        return null;
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        invalidateAll();
+    }
+
+    public synchronized void invalidateAll() {
+        version.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.workreports.daos;
+
+import java.util.Date;
+
+import org.libreplan.business.orders.entities.OrderElement;
+import org.libreplan.business.workingday.EffortDuration;
+import org.libreplan.business.workreports.entities.WorkReportLine;
+
+/**
+ * Aggregated values of the {@link WorkReportLine WorkReportLines} charged
+ * directly to an {@link OrderElement}. It's retrieved grouping the lines in the
+ * database.
+ *
+ * @see IWorkReportLineDAO#findChargedEffortSummaries(java.util.Collection)
+ */
+public class ChargedEffortSummary {
+
+    private final Long orderElementId;
+
+    private final EffortDuration effort;
+
+    private final Date firstDate;
+
+    private final Date lastDate;
+
+    private final boolean finished;
+
+    public ChargedEffortSummary(Long orderElementId, Long effortDB,
+            Date firstDate, Date lastDate, Long finishedLines) {
+        this.orderElementId = orderElementId;
+        this.effort = EffortDuration.seconds(effortDB == null ? 0 : effortDB
+                .intValue());
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        this.finished = finishedLines != null && finishedLines > 0;
+    }
+
+    public Long getOrderElementId() {
+        return orderElementId;
+    }
+
+    public EffortDuration getEffort() {
+        return effort;
+    }
+
+    public Date getFirstDate() {
+        return firstDate;
+    }
+
+    public Date getLastDate() {
+        return lastDate;
+    }
+
+    /**
+     * @return <code>true</code> if any of the lines marks the
+     *         {@link OrderElement} as finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+}
@@ -21,8 +21,10 @@
 
 package org.libreplan.business.workreports.daos;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.libreplan.business.common.daos.IIntegrationEntityDAO;
 import org.libreplan.business.orders.entities.OrderElement;
@@ -41,6 +43,8 @@ import org.libreplan.business.workreports.entities.WorkReportLine;
 public interface IWorkReportLineDAO extends
         IIntegrationEntityDAO<WorkReportLine> {
 
+    int MAX_ELEMENTS_PER_QUERY = 1000;
+
     List<WorkReportLine> findByOrderElement(OrderElement orderElement);
 
     List<WorkReportLine> findByOrderElementAndChildren(OrderElement orderElement);
@@ -51,9 +55,28 @@ public interface IWorkReportLineDAO extends
 
     List<WorkReportLine> findByResources(List<Resource> resourcesList);
 
+    /**
+     * The ids not found are ignored. Just one query is done per
+     * {@link #MAX_ELEMENTS_PER_QUERY} ids.
+     */
+    List<WorkReportLine> findByIds(Collection<Long> ids);
+
     List<WorkReportLineDTO> findByOrderElementGroupByResourceAndHourTypeAndDate(
             OrderElement orderElement);
 
+    /**
+     * Returns the effort, the first and last dates and if it's finished
+     * according to the {@link WorkReportLine WorkReportLines} charged directly
+     * to each of the {@link OrderElement OrderElements} specified. The values
+     * are grouped by the database, so just one query is done per
+     * {@link #MAX_ELEMENTS_PER_QUERY} elements.<br />
+     *
+     * The {@link OrderElement OrderElements} without lines are not present in
+     * the returned map.
+     */
+    Map<Long, ChargedEffortSummary> findChargedEffortSummaries(
+            Collection<? extends OrderElement> orderElements);
+
     /**
      * Returns the {@link List} of {@link WorkReportLine WorkReportLines} of the
      * given <code>resource</code> between 2 dates that not belong to the
@@ -25,7 +25,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
@@ -82,6 +84,42 @@ public class WorkReportLineDAO extends IntegrationEntityDAO<WorkReportLine>
         return (List<WorkReportLineDTO>) query.list();
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<Long, ChargedEffortSummary> findChargedEffortSummaries(
+            Collection<? extends OrderElement> orderElements) {
+        String strQuery = "SELECT new org.libreplan.business.workreports.daos.ChargedEffortSummary("
+                + "wrl.orderElement.id, SUM(wrl.effort), MIN(wrl.date), MAX(wrl.date), "
+                + "SUM(CASE WHEN wrl.finished = true THEN 1 ELSE 0 END)) "
+                + "FROM WorkReportLine wrl "
+                + "WHERE wrl.orderElement.id IN (:orderElementIds) "
+                + "GROUP BY wrl.orderElement.id";
+
+        Map<Long, ChargedEffortSummary> result = new HashMap<Long, ChargedEffortSummary>();
+        List<Long> ids = getIdsOfSavedElements(orderElements);
+        for (int i = 0; i < ids.size(); i += MAX_ELEMENTS_PER_QUERY) {
+            Query query = getSession().createQuery(strQuery);
+            query.setParameterList("orderElementIds",
+                    ids.subList(i, Math.min(ids.size(), i + MAX_ELEMENTS_PER_QUERY)));
+            for (ChargedEffortSummary each : (List<ChargedEffortSummary>) query
+                    .list()) {
+                result.put(each.getOrderElementId(), each);
+            }
+        }
+        return result;
+    }
+
+    private static List<Long> getIdsOfSavedElements(
+            Collection<? extends OrderElement> orderElements) {
+        List<Long> result = new ArrayList<Long>();
+        for (OrderElement each : orderElements) {
+            if (!each.isNewObject()) {
+                result.add(each.getId());
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<WorkReportLine> findByOrderElementAndChildren(
             OrderElement orderElement) {
@@ -131,6 +169,21 @@ public class WorkReportLineDAO extends IntegrationEntityDAO<WorkReportLine>
                 Restrictions.in("resource", resourcesList)).list();
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<WorkReportLine> findByIds(Collection<Long> ids) {
+        List<Long> list = new ArrayList<Long>(ids);
+        List<WorkReportLine> result = new ArrayList<WorkReportLine>();
+        for (int i = 0; i < list.size(); i += MAX_ELEMENTS_PER_QUERY) {
+            result.addAll(getSession()
+                    .createCriteria(WorkReportLine.class)
+                    .add(Restrictions.in("id", list.subList(i,
+                            Math.min(list.size(), i + MAX_ELEMENTS_PER_QUERY))))
+                    .list());
+        }
+        return result;
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public List<WorkReportLine> findByResourceFilteredByDateNotInWorkReport(
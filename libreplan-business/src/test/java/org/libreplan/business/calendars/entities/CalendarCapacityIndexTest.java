@@ -0,0 +1,144 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.calendars.entities;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.test.calendars.entities.BaseCalendarTest.CHRISTMAS_DAY_LOCAL_DATE;
+import static org.libreplan.business.test.calendars.entities.BaseCalendarTest.MONDAY_LOCAL_DATE;
+import static org.libreplan.business.test.calendars.entities.BaseCalendarTest.addChristmasAsExceptionDay;
+import static org.libreplan.business.test.calendars.entities.BaseCalendarTest.createBasicCalendar;
+import static org.libreplan.business.test.calendars.entities.BaseCalendarTest.createCalendarExceptionType;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import org.junit.Test;
+import org.libreplan.business.calendars.entities.CalendarData.Days;
+import org.libreplan.business.workingday.EffortDuration;
+
+/**
+ * Checks which {@link CalendarCapacityIndex indexes} are discarded when a
+ * calendar or one of its parts is modified
+ */
+public class CalendarCapacityIndexTest {
+
+    @Test
+    public void modifyingACalendarKeepsTheIndexesOfUnrelatedCalendars() {
+        BaseCalendar calendar = createBasicCalendar();
+        BaseCalendar unrelated = createBasicCalendar();
+        CalendarCapacityIndex index = calendar.getCapacityIndex();
+        CalendarCapacityIndex unrelatedIndex = unrelated.getCapacityIndex();
+
+        addChristmasAsExceptionDay(calendar);
+
+        assertFalse(index.isUpToDate());
+        assertTrue(unrelatedIndex.isUpToDate());
+        assertThat(unrelated.getCapacityIndex(), equalTo(unrelatedIndex));
+    }
+
+    @Test
+    public void modifyingAParentDiscardsTheIndexesOfTheDerivedCalendars() {
+        BaseCalendar parent = createBasicCalendar();
+        BaseCalendar derived = parent.newDerivedCalendar();
+        BaseCalendar derivedFromDerived = derived.newDerivedCalendar();
+        CalendarCapacityIndex derivedIndex = derived.getCapacityIndex();
+        CalendarCapacityIndex lastIndex = derivedFromDerived
+                .getCapacityIndex();
+
+        addChristmasAsExceptionDay(parent);
+
+        assertFalse(derivedIndex.isUpToDate());
+        assertFalse(lastIndex.isUpToDate());
+    }
+
+    @Test
+    public void modifyingADerivedCalendarKeepsTheIndexOfItsParent() {
+        BaseCalendar parent = createBasicCalendar();
+        BaseCalendar derived = parent.newDerivedCalendar();
+        CalendarCapacityIndex parentIndex = parent.getCapacityIndex();
+        derived.getCapacityIndex();
+
+        addChristmasAsExceptionDay(derived);
+
+        assertTrue(parentIndex.isUpToDate());
+    }
+
+    @Test
+    public void modifyingAVersionOfTheParentDiscardsTheIndexOfTheDerived() {
+        BaseCalendar parent = createBasicCalendar();
+        BaseCalendar derived = parent.newDerivedCalendar();
+        CalendarCapacityIndex derivedIndex = derived.getCapacityIndex();
+
+        parent.getLastCalendarData().setCapacityAt(Days.MONDAY,
+                Capacity.create(hours(4)));
+
+        assertFalse(derivedIndex.isUpToDate());
+        assertThat(derived.getCapacityIndex().getCapacityAt(MONDAY_LOCAL_DATE)
+                .getStandardEffort(), equalTo(hours(4)));
+    }
+
+    @Test
+    public void modifyingAnAvailabilityDiscardsTheIndexOfItsCalendar() {
+        BaseCalendar calendar = createBasicCalendar();
+        CalendarAvailability availability = CalendarAvailability.create(
+                MONDAY_LOCAL_DATE, null);
+        calendar.addNewCalendarAvailability(availability);
+        CalendarCapacityIndex index = calendar.getCapacityIndex();
+        assertFalse(index.isActive(CalendarCapacityIndex
+                .toDayNumber(MONDAY_LOCAL_DATE.minusDays(1))));
+
+        availability.setStartDate(MONDAY_LOCAL_DATE.minusDays(7));
+
+        assertFalse(index.isUpToDate());
+        assertTrue(calendar.getCapacityIndex().isActive(
+                CalendarCapacityIndex.toDayNumber(MONDAY_LOCAL_DATE
+                        .minusDays(1))));
+    }
+
+    @Test
+    public void modifyingAnExceptionSharedByCopiesDiscardsTheirIndexes() {
+        BaseCalendar calendar = createBasicCalendar();
+        CalendarException christmas = CalendarException.create(
+                CHRISTMAS_DAY_LOCAL_DATE, EffortDuration.zero(),
+                createCalendarExceptionType());
+        calendar.addExceptionDay(christmas);
+        BaseCalendar copy = calendar.newCopy();
+        CalendarCapacityIndex index = calendar.getCapacityIndex();
+        CalendarCapacityIndex copyIndex = copy.getCapacityIndex();
+
+        christmas.updateUnvalidated(CHRISTMAS_DAY_LOCAL_DATE.plusDays(1),
+                null, null);
+
+        assertFalse(index.isUpToDate());
+        assertFalse(copyIndex.isUpToDate());
+    }
+
+    @Test
+    public void modifyingAPartNotIncludedInAnyIndexDiscardsNothing() {
+        BaseCalendar calendar = createBasicCalendar();
+        CalendarCapacityIndex index = calendar.getCapacityIndex();
+
+        CalendarData.create().setExpiringDate(MONDAY_LOCAL_DATE);
+
+        assertTrue(index.isUpToDate());
+    }
+
+}
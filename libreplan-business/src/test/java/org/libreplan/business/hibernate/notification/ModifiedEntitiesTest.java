@@ -0,0 +1,162 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.planner.entities.TaskElement;
+import org.libreplan.business.planner.entities.TaskGroup;
+import org.libreplan.business.workreports.entities.WorkReportLine;
+
+public class ModifiedEntitiesTest {
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void aNewOneIsEmpty() {
+        ModifiedEntities modified = new ModifiedEntities();
+        assertTrue(modified.isEmpty());
+        assertFalse(modified.isSomeIdUnknown());
+    }
+
+    @Test
+    public void theIdsAreGroupedByClass() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+        modified.add(Task.class, 2L);
+        modified.add(WorkReportLine.class, 3L);
+
+        assertFalse(modified.isEmpty());
+        assertThat(modified.getIds(Task.class), equalTo(ids(1L, 2L)));
+        assertThat(modified.getIds(WorkReportLine.class), equalTo(ids(3L)));
+    }
+
+    @Test
+    public void anIdThatIsNotALongIsUnknown() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(WorkReportLine.class, "code");
+        assertTrue(modified.isSomeIdUnknown());
+    }
+
+    @Test
+    public void getIdsIncludesTheSubclasses() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+        modified.add(TaskGroup.class, 2L);
+        modified.add(WorkReportLine.class, 3L);
+
+        assertThat(modified.getIds(TaskElement.class), equalTo(ids(1L, 2L)));
+    }
+
+    @Test
+    public void onlyOfAcceptsTheSubclasses() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+        modified.add(TaskGroup.class, 2L);
+        assertTrue(modified.onlyOf(TaskElement.class));
+
+        modified.add(WorkReportLine.class, 3L);
+        assertFalse(modified.onlyOf(TaskElement.class));
+        assertTrue(modified.onlyOf(TaskElement.class, WorkReportLine.class));
+    }
+
+    @Test
+    public void addAllMergesTheIdsTheResourcesAndTheUnknownIds() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+        modified.addResourceWithModifiedAssignments(10L);
+
+        ModifiedEntities other = new ModifiedEntities();
+        other.add(Task.class, 2L);
+        other.add(WorkReportLine.class, "code");
+        other.addResourceWithModifiedAssignments(11L);
+
+        modified.addAll(other);
+
+        assertThat(modified.getIds(Task.class), equalTo(ids(1L, 2L)));
+        assertThat(modified.getResourcesWithModifiedAssignments(),
+                equalTo(ids(10L, 11L)));
+        assertTrue(modified.isSomeIdUnknown());
+    }
+
+    @Test
+    public void addResourceWithModifiedAssignmentsTellsIfItWasNew() {
+        ModifiedEntities modified = new ModifiedEntities();
+        assertTrue(modified.addResourceWithModifiedAssignments(10L));
+        assertFalse(modified.addResourceWithModifiedAssignments(10L));
+        assertFalse(modified.isEmpty());
+    }
+
+    @Test
+    public void restrictedToMatchesTheClassesExactly() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+        modified.add(TaskElement.class, 2L);
+        modified.add(WorkReportLine.class, 3L);
+
+        ModifiedEntities restricted = modified.restrictedTo(Collections
+                .<Class<?>> singletonList(TaskElement.class));
+
+        Set<Class<?>> onlyTaskElement = new HashSet<Class<?>>();
+        onlyTaskElement.add(TaskElement.class);
+        assertThat(restricted.getModifiedClasses(), equalTo(onlyTaskElement));
+        assertThat(restricted.getIds(TaskElement.class), equalTo(ids(2L)));
+    }
+
+    @Test
+    public void restrictedToKeepsTheResourcesAndTheUnknownIds() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(WorkReportLine.class, "code");
+        modified.addResourceWithModifiedAssignments(10L);
+
+        ModifiedEntities restricted = modified.restrictedTo(Collections
+                .<Class<?>> singletonList(Task.class));
+
+        assertTrue(restricted.getModifiedClasses().isEmpty());
+        assertThat(restricted.getResourcesWithModifiedAssignments(),
+                equalTo(ids(10L)));
+        assertTrue(restricted.isSomeIdUnknown());
+    }
+
+    @Test
+    public void restrictedToReturnsACopy() {
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+
+        ModifiedEntities restricted = modified.restrictedTo(Collections
+                .<Class<?>> singletonList(Task.class));
+        restricted.add(Task.class, 2L);
+
+        assertThat(modified.getIds(Task.class), equalTo(ids(1L)));
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.planner.entities.TaskElement;
+import org.libreplan.business.workreports.entities.WorkReportLine;
+
+/**
+ * The calculations are done in a scheduler with only one thread, so they are
+ * executed in the order they are submitted.
+ */
+public class NotBlockingAutoUpdatedSnapshotTest {
+
+    private SnapshotRefreshScheduler scheduler;
+
+    private AtomicInteger fullCalculations;
+
+    private List<ModifiedEntities> appliedDeltas;
+
+    @Before
+    public void setUp() {
+        scheduler = new SnapshotRefreshScheduler(1);
+        fullCalculations = new AtomicInteger(0);
+        appliedDeltas = Collections
+                .synchronizedList(new ArrayList<ModifiedEntities>());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private Callable<String> countingFullCalculations() {
+        return new Callable<String>() {
+
+            @Override
+            public String call() {
+                return "full" + fullCalculations.incrementAndGet();
+            }
+        };
+    }
+
+    private IDeltaApplier<String> recordingDeltas() {
+        return recordingDeltas(new CountDownLatch(0));
+    }
+
+    /**
+     * @param applied
+     *            it's counted down every time a delta is applied
+     */
+    private IDeltaApplier<String> recordingDeltas(final CountDownLatch applied) {
+        return new IDeltaApplier<String>() {
+
+            @Override
+            public String apply(String previousValue,
+                    ModifiedEntities modified) {
+                appliedDeltas.add(modified);
+                applied.countDown();
+                return previousValue + "+delta";
+            }
+        };
+    }
+
+    private NotBlockingAutoUpdatedSnapshot<String> loadedSnapshot(
+            IDeltaApplier<String> deltaApplier, Class<?>... reloadOn) {
+        return loadedSnapshot(deltaApplier, ReloadOn.onChangeOf(reloadOn));
+    }
+
+    private NotBlockingAutoUpdatedSnapshot<String> loadedSnapshot(
+            IDeltaApplier<String> deltaApplier, ReloadOn reloadOn) {
+        NotBlockingAutoUpdatedSnapshot<String> result;
+        result = new NotBlockingAutoUpdatedSnapshot<String>("test",
+                countingFullCalculations(), deltaApplier, reloadOn);
+        result.ensureFirstLoad(scheduler.getExecutor());
+        assertThat(result.getValue(), equalTo("full1"));
+        return result;
+    }
+
+    private static ModifiedEntities modified(Class<?> entityClass,
+            Serializable... ids) {
+        ModifiedEntities result = new ModifiedEntities();
+        for (Serializable each : ids) {
+            result.add(entityClass, each);
+        }
+        return result;
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+
+    private void waitForCalculations() throws Exception {
+        scheduler.getExecutor().submit(new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    /**
+     * @return the latch that must be released so the calculations submitted
+     *         afterwards are done
+     */
+    private CountDownLatch blockCalculations() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.getExecutor().submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                latch.await();
+                return null;
+            }
+        });
+        return latch;
+    }
+
+    @Test
+    public void theModificationsAreAppliedOnThePreviousValue()
+            throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                recordingDeltas(), WorkReportLine.class);
+
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 1L));
+        waitForCalculations();
+
+        assertThat(snapshot.getValue(), equalTo("full1+delta"));
+        assertThat(fullCalculations.get(), equalTo(1));
+        assertThat(appliedDeltas.size(), equalTo(1));
+        assertThat(appliedDeltas.get(0).getIds(WorkReportLine.class),
+                equalTo(ids(1L)));
+    }
+
+    @Test
+    public void thePendingModificationsAreMergedAndDrained() throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                recordingDeltas(), WorkReportLine.class);
+
+        CountDownLatch latch = blockCalculations();
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 1L));
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 2L));
+        latch.countDown();
+        waitForCalculations();
+
+        assertThat(appliedDeltas.size(), equalTo(1));
+        assertThat(appliedDeltas.get(0).getIds(WorkReportLine.class),
+                equalTo(ids(1L, 2L)));
+        assertThat(snapshot.getValue(), equalTo("full1+delta"));
+
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 3L));
+        waitForCalculations();
+
+        assertThat(appliedDeltas.size(), equalTo(2));
+        assertThat(appliedDeltas.get(1).getIds(WorkReportLine.class),
+                equalTo(ids(3L)));
+        assertThat(snapshot.getValue(), equalTo("full1+delta+delta"));
+        assertThat(fullCalculations.get(), equalTo(1));
+    }
+
+    @Test
+    public void anUnknownIdForcesAFullRebuild() throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                recordingDeltas(), WorkReportLine.class);
+
+        snapshot.reloadNeeded(scheduler,
+                modified(WorkReportLine.class, 1L, "code"));
+        waitForCalculations();
+
+        assertThat(snapshot.getValue(), equalTo("full2"));
+        assertTrue(appliedDeltas.isEmpty());
+    }
+
+    @Test
+    public void anExceptionInTheDeltaFallsBackToAFullRebuild()
+            throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                new IDeltaApplier<String>() {
+
+                    @Override
+                    public String apply(String previousValue,
+                            ModifiedEntities modified) {
+                        throw new RuntimeException("delta failed");
+                    }
+                }, WorkReportLine.class);
+
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 1L));
+        waitForCalculations();
+
+        assertThat(snapshot.getValue(), equalTo("full2"));
+    }
+
+    @Test
+    public void aDeltaThatCantBeAppliedFallsBackToAFullRebuild()
+            throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                new IDeltaApplier<String>() {
+
+                    @Override
+                    public String apply(String previousValue,
+                            ModifiedEntities modified) {
+                        return null;
+                    }
+                }, WorkReportLine.class);
+
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 1L));
+        waitForCalculations();
+
+        assertThat(snapshot.getValue(), equalTo("full2"));
+    }
+
+    @Test
+    public void withoutDeltaApplierItIsAlwaysRebuilt() throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                null, WorkReportLine.class);
+
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 1L));
+        waitForCalculations();
+
+        assertThat(snapshot.getValue(), equalTo("full2"));
+    }
+
+    @Test
+    public void onlyTheModificationsOfTheExactClassesAreProvided()
+            throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                recordingDeltas(), TaskElement.class);
+
+        ModifiedEntities modified = modified(TaskElement.class, 1L);
+        modified.add(Task.class, 2L);
+        modified.add(WorkReportLine.class, 3L);
+        snapshot.reloadNeeded(scheduler, modified);
+        waitForCalculations();
+
+        assertThat(appliedDeltas.size(), equalTo(1));
+        Set<Class<?>> onlyTaskElement = new HashSet<Class<?>>();
+        onlyTaskElement.add(TaskElement.class);
+        assertThat(appliedDeltas.get(0).getModifiedClasses(),
+                equalTo(onlyTaskElement));
+        assertThat(appliedDeltas.get(0).getIds(TaskElement.class),
+                equalTo(ids(1L)));
+    }
+
+    @Test
+    public void theReloadsDuringTheDebounceTimeAreCoalesced()
+            throws Exception {
+        CountDownLatch applied = new CountDownLatch(1);
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(
+                recordingDeltas(applied),
+                ReloadOn.onChangeOf(WorkReportLine.class).debouncedFor(500));
+
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 1L));
+        snapshot.reloadNeeded(scheduler, modified(WorkReportLine.class, 2L));
+        waitForCalculations();
+        assertTrue(appliedDeltas.isEmpty());
+
+        assertTrue(applied.await(5, TimeUnit.SECONDS));
+        waitForCalculations();
+
+        assertThat(appliedDeltas.size(), equalTo(1));
+        assertThat(appliedDeltas.get(0).getIds(WorkReportLine.class),
+                equalTo(ids(1L, 2L)));
+        assertThat(snapshot.getValue(), equalTo("full1+delta"));
+        SnapshotStatistics statistics = snapshot.getStatistics();
+        assertThat(statistics.getCoalescedReloads(), equalTo(1));
+        assertThat(statistics.getExecutions(), equalTo(2));
+        assertThat(statistics.getStaleness(), equalTo(0L));
+    }
+
+    @Test
+    public void aCalculationSupersededBeforeStartingIsCancelled()
+            throws Exception {
+        NotBlockingAutoUpdatedSnapshot<String> snapshot = loadedSnapshot(null,
+                WorkReportLine.class);
+
+        CountDownLatch latch = blockCalculations();
+        snapshot.reloadNeeded(scheduler.getExecutor());
+        snapshot.reloadNeeded(scheduler.getExecutor());
+        latch.countDown();
+        waitForCalculations();
+
+        assertThat(fullCalculations.get(), equalTo(2));
+        assertThat(snapshot.getValue(), equalTo("full2"));
+        assertThat(snapshot.getStatistics().getExecutions(), equalTo(2));
+    }
+
+    private static List<Long> percentilesOf(
+            NotBlockingAutoUpdatedSnapshot.RecentTimes times) {
+        List<Long> result = new ArrayList<Long>();
+        for (long each : times.percentiles(50, 90, 99)) {
+            result.add(each);
+        }
+        return result;
+    }
+
+    @Test
+    public void thePercentilesAreCalculatedFromTheLastTimes() {
+        NotBlockingAutoUpdatedSnapshot.RecentTimes times = new NotBlockingAutoUpdatedSnapshot.RecentTimes();
+        assertThat(percentilesOf(times), equalTo(Arrays.asList(0L, 0L, 0L)));
+
+        for (long i = 1; i <= 100; i++) {
+            times.add(i);
+        }
+        assertThat(percentilesOf(times),
+                equalTo(Arrays.asList(50L, 90L, 99L)));
+
+        for (long i = 101; i <= 200; i++) {
+            times.add(i);
+        }
+        assertThat(percentilesOf(times),
+                equalTo(Arrays.asList(150L, 190L, 199L)));
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.easymock.IAnswer;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.libreplan.business.calendars.entities.CalendarData;
+import org.libreplan.business.common.exceptions.InstanceNotFoundException;
+import org.libreplan.business.hibernate.notification.PredefinedDatabaseSnapshots.CostPerTaskDeltaApplier;
+import org.libreplan.business.hibernate.notification.PredefinedDatabaseSnapshots.ResourceLoadChartDataDeltaApplier;
+import org.libreplan.business.hibernate.notification.PredefinedDatabaseSnapshots.WorkReportLinesDeltaApplier;
+import org.libreplan.business.planner.chart.ResourceLoadChartData;
+import org.libreplan.business.planner.chart.ResourcesLoadAggregator;
+import org.libreplan.business.planner.daos.IDayAssignmentDAO;
+import org.libreplan.business.planner.daos.ITaskElementDAO;
+import org.libreplan.business.planner.entities.SpecificDayAssignment;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.planner.entities.TaskElement;
+import org.libreplan.business.resources.daos.IResourceDAO;
+import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.scenarios.IScenarioManager;
+import org.libreplan.business.workreports.daos.IWorkReportLineDAO;
+import org.libreplan.business.workreports.entities.WorkReportLine;
+
+/**
+ * Tests the {@link IDeltaApplier delta appliers} of
+ * {@link PredefinedDatabaseSnapshots}
+ */
+public class PredefinedDatabaseSnapshotsTest {
+
+    private static WorkReportLine line(Long id) {
+        WorkReportLine result = createNiceMock(WorkReportLine.class);
+        expect(result.getId()).andReturn(id).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    private static Task task(Long id) {
+        Task result = createNiceMock(Task.class);
+        expect(result.getId()).andReturn(id).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    private static Worker worker(Long id) {
+        Worker result = createNiceMock(Worker.class);
+        expect(result.getId()).andReturn(id).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+
+    private static SortedMap<LocalDate, BigDecimal> cost(int amount) {
+        SortedMap<LocalDate, BigDecimal> result = new TreeMap<LocalDate, BigDecimal>();
+        result.put(new LocalDate(2013, 1, 7), new BigDecimal(amount));
+        return result;
+    }
+
+    @Test
+    public void theModifiedWorkReportLinesAreRetrievedAgain() {
+        WorkReportLine first = line(1L);
+        WorkReportLine second = line(2L);
+        WorkReportLine secondModified = line(2L);
+        WorkReportLine third = line(3L);
+
+        IWorkReportLineDAO workReportLineDAO = createNiceMock(
+                IWorkReportLineDAO.class);
+        expect(workReportLineDAO.findByIds(ids(2L, 3L))).andReturn(
+                Arrays.asList(secondModified, third));
+        replay(workReportLineDAO);
+
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(WorkReportLine.class, 2L);
+        modified.add(WorkReportLine.class, 3L);
+
+        List<WorkReportLine> previous = Arrays.asList(first, second);
+        List<WorkReportLine> result = new WorkReportLinesDeltaApplier(
+                workReportLineDAO).apply(previous, modified);
+
+        assertThat(result,
+                equalTo(Arrays.asList(first, secondModified, third)));
+        assertThat(previous, equalTo(Arrays.asList(first, second)));
+    }
+
+    @Test
+    public void theRemovedWorkReportLinesAreDropped() {
+        WorkReportLine first = line(1L);
+        WorkReportLine removed = line(2L);
+
+        IWorkReportLineDAO workReportLineDAO = createNiceMock(
+                IWorkReportLineDAO.class);
+        expect(workReportLineDAO.findByIds(ids(2L))).andReturn(
+                new ArrayList<WorkReportLine>());
+        replay(workReportLineDAO);
+
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(WorkReportLine.class, 2L);
+
+        List<WorkReportLine> result = new WorkReportLinesDeltaApplier(
+                workReportLineDAO).apply(Arrays.asList(first, removed),
+                modified);
+
+        assertThat(result, equalTo(Arrays.asList(first)));
+    }
+
+    private static CostPerTaskDeltaApplier costApplier(
+            ITaskElementDAO taskElementDAO,
+            final Map<Task, SortedMap<LocalDate, BigDecimal>> costs) {
+        return new CostPerTaskDeltaApplier(taskElementDAO) {
+
+            @Override
+            SortedMap<LocalDate, BigDecimal> costOf(Task task) {
+                return costs.get(task);
+            }
+        };
+    }
+
+    @Test
+    public void theCostOfTheModifiedTasksIsCalculatedAgain()
+            throws InstanceNotFoundException {
+        Task kept = task(1L);
+        Task removed = task(2L);
+        Task modifiedTask = task(3L);
+
+        ITaskElementDAO taskElementDAO = createNiceMock(ITaskElementDAO.class);
+        expect(taskElementDAO.find(2L)).andThrow(
+                new InstanceNotFoundException(2L, Task.class.getName()));
+        expect(taskElementDAO.find(3L)).andReturn(modifiedTask);
+        replay(taskElementDAO);
+
+        Map<Task, SortedMap<LocalDate, BigDecimal>> costs = new HashMap<Task, SortedMap<LocalDate, BigDecimal>>();
+        costs.put(modifiedTask, cost(30));
+
+        Map<TaskElement, SortedMap<LocalDate, BigDecimal>> previous = new HashMap<TaskElement, SortedMap<LocalDate, BigDecimal>>();
+        previous.put(kept, cost(10));
+        previous.put(removed, cost(20));
+        previous.put(modifiedTask, cost(0));
+
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 2L);
+        modified.add(Task.class, 3L);
+
+        Map<TaskElement, SortedMap<LocalDate, BigDecimal>> expected = new HashMap<TaskElement, SortedMap<LocalDate, BigDecimal>>();
+        expected.put(kept, cost(10));
+        expected.put(modifiedTask, cost(30));
+
+        assertThat(costApplier(taskElementDAO, costs)
+                .apply(previous, modified), equalTo(expected));
+        assertThat(previous.size(), equalTo(3));
+    }
+
+    @Test
+    public void theModificationsOfOtherEntitiesRebuildTheCostPerTask() {
+        ITaskElementDAO taskElementDAO = createNiceMock(ITaskElementDAO.class);
+        replay(taskElementDAO);
+
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+        modified.add(SpecificDayAssignment.class, 2L);
+
+        Map<TaskElement, SortedMap<LocalDate, BigDecimal>> previous = new HashMap<TaskElement, SortedMap<LocalDate, BigDecimal>>();
+        assertThat(
+                costApplier(taskElementDAO,
+                        new HashMap<Task, SortedMap<LocalDate, BigDecimal>>())
+                        .apply(previous, modified), nullValue());
+    }
+
+    /**
+     * @param existing
+     *            the resources that can be found by their ids
+     */
+    @SuppressWarnings("unchecked")
+    private static ResourceLoadChartDataDeltaApplier resourceLoadApplier(
+            final List<Resource> existing) {
+        IResourceDAO resourceDAO = createNiceMock(IResourceDAO.class);
+        expect(resourceDAO.findByIds(isA(Collection.class))).andAnswer(
+                new IAnswer<List<Resource>>() {
+
+                    @Override
+                    public List<Resource> answer() {
+                        Collection<?> ids = (Collection<?>) getCurrentArguments()[0];
+                        List<Resource> result = new ArrayList<Resource>();
+                        for (Resource each : existing) {
+                            if (ids.contains(each.getId())) {
+                                result.add(each);
+                            }
+                        }
+                        return result;
+                    }
+                }).anyTimes();
+        replay(resourceDAO);
+        IDayAssignmentDAO dayAssignmentDAO = createNiceMock(IDayAssignmentDAO.class);
+        replay(dayAssignmentDAO);
+        IScenarioManager scenarioManager = createNiceMock(IScenarioManager.class);
+        replay(scenarioManager);
+        return new ResourceLoadChartDataDeltaApplier(resourceDAO,
+                dayAssignmentDAO, scenarioManager);
+    }
+
+    private static ResourceLoadChartData loadOf(List<Resource> resources) {
+        return new ResourceLoadChartData(new ResourcesLoadAggregator(),
+                resources);
+    }
+
+    private static ModifiedEntities modifiedAssignmentsOf(
+            Collection<Long> resourceIds) {
+        ModifiedEntities result = new ModifiedEntities();
+        for (Long each : resourceIds) {
+            result.add(SpecificDayAssignment.class, each * 100);
+            result.addResourceWithModifiedAssignments(each);
+        }
+        return result;
+    }
+
+    @Test
+    public void theLoadOfTheResourcesWithModifiedAssignmentsIsRetrievedAgain() {
+        Worker notModified = worker(2L);
+        Worker retrievedAgain = worker(1L);
+        ResourceLoadChartData previous = loadOf(Arrays.<Resource> asList(
+                worker(1L), notModified));
+
+        ResourceLoadChartData result = resourceLoadApplier(
+                Arrays.<Resource> asList(retrievedAgain, notModified)).apply(
+                previous, modifiedAssignmentsOf(Arrays.asList(1L)));
+
+        assertThat(result, notNullValue());
+        assertThat(result.getAggregated(), notNullValue());
+        assertThat(result.getResources(), equalTo(Arrays.<Resource> asList(
+                notModified, retrievedAgain)));
+    }
+
+    @Test
+    public void aNewResourceWithAssignmentsIsAdded() {
+        Worker existing = worker(1L);
+        Worker added = worker(2L);
+        ResourceLoadChartData previous = loadOf(Arrays
+                .<Resource> asList(existing));
+
+        ResourceLoadChartData result = resourceLoadApplier(
+                Arrays.<Resource> asList(existing, added)).apply(previous,
+                modifiedAssignmentsOf(Arrays.asList(2L)));
+
+        assertThat(result.getResources(),
+                equalTo(Arrays.<Resource> asList(existing, added)));
+    }
+
+    @Test
+    public void withoutResourcesWithModifiedAssignmentsTheLoadIsKept() {
+        List<Resource> resources = Arrays.<Resource> asList(worker(1L));
+        ResourceLoadChartData previous = loadOf(resources);
+
+        ModifiedEntities modified = new ModifiedEntities();
+        modified.add(Task.class, 1L);
+
+        assertThat(resourceLoadApplier(resources).apply(previous, modified),
+                sameInstance(previous));
+    }
+
+    @Test
+    public void aRemovedResourceRebuildsTheLoad() {
+        List<Resource> resources = Arrays.<Resource> asList(worker(1L));
+        ResourceLoadChartData previous = loadOf(resources);
+
+        assertThat(
+                resourceLoadApplier(resources).apply(previous,
+                        modifiedAssignmentsOf(Arrays.asList(1L, 2L))),
+                nullValue());
+    }
+
+    @Test
+    public void theModificationsOfCalendarsRebuildTheLoad() {
+        List<Resource> resources = Arrays.<Resource> asList(worker(1L));
+        ResourceLoadChartData previous = loadOf(resources);
+
+        ModifiedEntities modified = modifiedAssignmentsOf(Arrays.asList(1L));
+        modified.add(CalendarData.class, 1L);
+
+        assertThat(resourceLoadApplier(resources).apply(previous, modified),
+                nullValue());
+    }
+
+}
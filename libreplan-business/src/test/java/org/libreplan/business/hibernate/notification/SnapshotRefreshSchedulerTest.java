@@ -0,0 +1,165 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.hibernate.notification;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.hibernate.notification.ReloadOn.Priority;
+import org.libreplan.business.hibernate.notification.SnapshotRefreshScheduler.IPrioritized;
+
+/**
+ * The scheduler has only one thread, so while it's blocked the calculations
+ * are queued.
+ */
+public class SnapshotRefreshSchedulerTest {
+
+    private SnapshotRefreshScheduler scheduler;
+
+    private List<String> executed;
+
+    @Before
+    public void setUp() {
+        scheduler = new SnapshotRefreshScheduler(1);
+        executed = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    private interface IPrioritizedCallable extends Callable<Void>,
+            IPrioritized {
+    }
+
+    private Callable<Void> recording(final String name,
+            final Priority priority) {
+        return new IPrioritizedCallable() {
+
+            @Override
+            public Priority getPriority() {
+                return priority;
+            }
+
+            @Override
+            public Void call() {
+                executed.add(name);
+                return null;
+            }
+        };
+    }
+
+    private Runnable recording(final String name) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                executed.add(name);
+            }
+        };
+    }
+
+    private CountDownLatch blockCalculations() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        scheduler.getExecutor().submit(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                started.countDown();
+                latch.await();
+                return null;
+            }
+        });
+        started.await();
+        return latch;
+    }
+
+    private void waitForCalculations() throws Exception {
+        scheduler.getExecutor().submit(recording("last", Priority.LOW)).get();
+    }
+
+    @Test
+    public void thePendingCalculationsAreExecutedByPriority()
+            throws Exception {
+        CountDownLatch latch = blockCalculations();
+        scheduler.getExecutor().submit(recording("low", Priority.LOW));
+        scheduler.getExecutor().submit(recording("normal", Priority.NORMAL));
+        scheduler.getExecutor().submit(recording("high", Priority.HIGH));
+        scheduler.getExecutor().submit(recording("otherHigh", Priority.HIGH));
+        assertThat(scheduler.getQueuedCalculations(), equalTo(4));
+        latch.countDown();
+        waitForCalculations();
+
+        assertThat(executed, equalTo(Arrays.asList("high", "otherHigh",
+                "normal", "low", "last")));
+    }
+
+    @Test
+    public void theTasksWithoutPriorityAreExecutedAsNormalOnes()
+            throws Exception {
+        CountDownLatch latch = blockCalculations();
+        scheduler.getExecutor().submit(recording("low", Priority.LOW));
+        scheduler.getExecutor().execute(recording("executed"));
+        scheduler.getExecutor().submit(recording("submitted"));
+        scheduler.getExecutor().submit(recording("high", Priority.HIGH));
+        latch.countDown();
+        waitForCalculations();
+
+        assertThat(executed, equalTo(Arrays.asList("high", "executed",
+                "submitted", "low", "last")));
+    }
+
+    @Test
+    public void theScheduledRunnablesAreDelayed() throws Exception {
+        final CountDownLatch done = new CountDownLatch(1);
+        scheduler.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        }, 500);
+
+        assertThat(done.getCount(), equalTo(1L));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void withoutDelayTheRunnableIsRunRightAway() {
+        scheduler.schedule(recording("now"), 0);
+
+        assertThat(executed, equalTo(Arrays.asList("now")));
+    }
+
+}
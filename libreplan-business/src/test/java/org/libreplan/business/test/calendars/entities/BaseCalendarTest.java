@@ -43,6 +43,7 @@ import org.libreplan.business.calendars.entities.CalendarException;
 import org.libreplan.business.calendars.entities.CalendarExceptionType;
 import org.libreplan.business.calendars.entities.CalendarExceptionTypeColor;
 import org.libreplan.business.calendars.entities.Capacity;
+import org.libreplan.business.calendars.entities.ICalendar;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 import org.libreplan.business.workingday.ResourcesPerDay;
@@ -912,4 +913,70 @@ public class BaseCalendarTest {
         AvailabilityTimeLine availability = calendar.getAvailability();
         assertFalse(availability.isValid(MONDAY_LOCAL_DATE));
     }
+
+    @Test
+    public void aDerivedCalendarSeesTheChangesOnItsParentAfterBeingQueried() {
+        BaseCalendar parent = createBasicCalendar();
+        BaseCalendar derived = parent.newDerivedCalendar();
+        assertThat(derived.getCapacityOn(wholeDay(MONDAY_LOCAL_DATE)),
+                equalTo(hours(8)));
+
+        parent.setCapacityAt(Days.MONDAY, withNormalDuration(hours(4)));
+        assertThat(derived.getCapacityOn(wholeDay(MONDAY_LOCAL_DATE)),
+                equalTo(hours(4)));
+
+        addChristmasAsExceptionDay(parent);
+        assertThat(derived.getCapacityOn(wholeDay(CHRISTMAS_DAY_LOCAL_DATE)),
+                equalTo(zero()));
+    }
+
+    @Test
+    public void theCapacityChangesWhenAnExceptionIsRemovedAfterBeingQueried() {
+        BaseCalendar calendar = createChristmasCalendar();
+        assertThat(calendar.getCapacityOn(wholeDay(CHRISTMAS_DAY_LOCAL_DATE)),
+                equalTo(zero()));
+
+        calendar.removeExceptionDay(CHRISTMAS_DAY_LOCAL_DATE);
+        assertThat(calendar.getCapacityOn(wholeDay(CHRISTMAS_DAY_LOCAL_DATE)),
+                equalTo(calendar.getCapacityConsideringCalendarDatasOn(
+                        CHRISTMAS_DAY_LOCAL_DATE,
+                        Days.values()[CHRISTMAS_DAY_LOCAL_DATE.getDayOfWeek() - 1])
+                        .getStandardEffort()));
+    }
+
+    @Test
+    public void theParentExceptionsOnlyApplyWhileTheVersionHasThatParent() {
+        BaseCalendar parent = createChristmasCalendar();
+        BaseCalendar derived = createBasicCalendar();
+        derived.newVersion(CHRISTMAS_DAY_LOCAL_DATE.minusDays(10));
+        derived.setParent(parent);
+        assertThat(derived.getCapacityOn(wholeDay(CHRISTMAS_DAY_LOCAL_DATE)),
+                equalTo(zero()));
+        assertThat(derived.getExceptionDay(CHRISTMAS_DAY_LOCAL_DATE),
+                notNullValue());
+        assertThat(
+                derived.getExceptionDay(CHRISTMAS_DAY_LOCAL_DATE.minusYears(1)),
+                nullValue());
+    }
+
+    @Test
+    public void fillCapacitiesBetweenIsEquivalentToAskingDayByDay() {
+        BaseCalendar calendar = createChristmasCalendar();
+        calendar.setCapacityAt(Days.SATURDAY, Capacity.create(hours(2))
+                .withAllowedExtraEffort(hours(1)));
+        LocalDate start = CHRISTMAS_DAY_LOCAL_DATE.minusDays(10);
+        int[] standard = new int[20];
+        int[] extra = new int[20];
+        calendar.fillCapacitiesBetween(start, start.plusDays(20), standard,
+                extra);
+        for (int i = 0; i < 20; i++) {
+            Capacity capacity = calendar.getCapacityWithOvertime(start
+                    .plusDays(i));
+            assertThat(standard[i], equalTo(capacity.getStandardEffort()
+                    .getSeconds()));
+            int expectedExtra = capacity.isOverAssignableWithoutLimit() ? ICalendar.UNLIMITED_EXTRA_EFFORT
+                    : capacity.getAllowedExtraEffort().getSeconds();
+            assertThat(extra[i], equalTo(expectedExtra));
+        }
+    }
 }
@@ -34,6 +34,7 @@ import org.joda.time.LocalDate;
 import org.junit.Test;
 import org.libreplan.business.calendars.entities.CombinedWorkHours;
 import org.libreplan.business.calendars.entities.ICalendar;
+import org.libreplan.business.calendars.entities.SameWorkHoursEveryDay;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 
@@ -66,6 +67,24 @@ public class CombinedWorkHoursTest {
         assertThat(duration, equalTo(EffortDuration.hours(2)));
     }
 
+    @Test
+    public void fillsTheCapacitiesOfTheCombinedCalendars() {
+        LocalDate start = new LocalDate(2000, 3, 3);
+        ICalendar minOf = CombinedWorkHours.minOf(
+                new SameWorkHoursEveryDay(4), new SameWorkHoursEveryDay(2));
+        ICalendar maxOf = CombinedWorkHours.maxOf(
+                new SameWorkHoursEveryDay(4), new SameWorkHoursEveryDay(2));
+        int[] standard = new int[3];
+        int[] extra = new int[3];
+
+        minOf.fillCapacitiesBetween(start, start.plusDays(3), standard, extra);
+        assertThat(standard[2], equalTo(EffortDuration.hours(2).getSeconds()));
+        assertThat(extra[2], equalTo(ICalendar.UNLIMITED_EXTRA_EFFORT));
+
+        maxOf.fillCapacitiesBetween(start, start.plusDays(3), standard, extra);
+        assertThat(standard[0], equalTo(EffortDuration.hours(4).getSeconds()));
+    }
+
     private ICalendar hours(int hours) {
         ICalendar result = createNiceMock(ICalendar.class);
         expect(result.getCapacityOn(isA(PartialDay.class))).andReturn(
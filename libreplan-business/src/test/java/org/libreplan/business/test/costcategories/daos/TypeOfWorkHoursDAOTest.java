@@ -29,11 +29,14 @@ import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_
 import static org.libreplan.business.test.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_TEST_FILE;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.libreplan.business.common.daos.IIntegrationEntityVisitor;
 import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.costcategories.daos.ITypeOfWorkHoursDAO;
 import org.libreplan.business.costcategories.entities.TypeOfWorkHours;
@@ -122,4 +125,44 @@ public class TypeOfWorkHoursDAOTest {
         //this call should throw the exception
         typeOfWorkHoursDAO.findUniqueByCode(typeOfWorkHours.getCode());
     }
+
+    @Test
+    @Transactional
+    public void testScrollTypesOfWorkHoursAfterCode() {
+        String prefix = UUID.randomUUID().toString();
+        for (String suffix : new String[] { "-c", "-a", "-b" }) {
+            TypeOfWorkHours typeOfWorkHours = createValidTypeOfWorkHours();
+            typeOfWorkHours.setCode(prefix + suffix);
+            typeOfWorkHoursDAO.save(typeOfWorkHours);
+        }
+
+        final List<String> visited = new ArrayList<String>();
+        typeOfWorkHoursDAO.scrollAll(prefix + "-a", 0, 2,
+                new IIntegrationEntityVisitor<TypeOfWorkHours>() {
+
+                    @Override
+                    public void visit(TypeOfWorkHours entity) {
+                        visited.add(entity.getCode());
+                    }
+                });
+
+        assertEquals(2, visited.size());
+        assertEquals(prefix + "-b", visited.get(0));
+        assertEquals(prefix + "-c", visited.get(1));
+    }
+
+    @Test
+    @Transactional
+    public void testFindTypesOfWorkHoursByCodesIgnoringCase() {
+        TypeOfWorkHours typeOfWorkHours = createValidTypeOfWorkHours();
+        typeOfWorkHoursDAO.save(typeOfWorkHours);
+
+        List<TypeOfWorkHours> found = typeOfWorkHoursDAO.findByCodes(Arrays
+                .asList(" " + typeOfWorkHours.getCode().toUpperCase(),
+                        UUID.randomUUID().toString(), ""));
+
+        assertEquals(1, found.size());
+        assertEquals(typeOfWorkHours, found.get(0));
+    }
+
 }
@@ -27,7 +27,10 @@ import static org.junit.Assert.assertTrue;
 import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
 import static org.libreplan.business.test.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_TEST_FILE;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -44,9 +47,20 @@ import org.libreplan.business.orders.daos.IOrderDAO;
 import org.libreplan.business.orders.entities.Order;
 import org.libreplan.business.scenarios.IScenarioManager;
 import org.libreplan.business.scenarios.bootstrap.IScenariosBootstrap;
+import org.libreplan.business.scenarios.daos.IScenarioDAO;
 import org.libreplan.business.scenarios.entities.OrderVersion;
+import org.libreplan.business.scenarios.entities.Scenario;
 import org.libreplan.business.test.calendars.entities.BaseCalendarTest;
 import org.libreplan.business.test.planner.daos.ResourceAllocationDAOTest;
+import org.libreplan.business.users.daos.IOrderAuthorizationDAO;
+import org.libreplan.business.users.daos.IProfileDAO;
+import org.libreplan.business.users.daos.IUserDAO;
+import org.libreplan.business.users.entities.OrderAuthorizationType;
+import org.libreplan.business.users.entities.Profile;
+import org.libreplan.business.users.entities.ProfileOrderAuthorization;
+import org.libreplan.business.users.entities.User;
+import org.libreplan.business.users.entities.UserOrderAuthorization;
+import org.libreplan.business.users.entities.UserRole;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -88,6 +102,18 @@ public class OrderDAOTest {
     @Autowired
     private IAdHocTransactionService transactionService;
 
+    @Autowired
+    private IScenarioDAO scenarioDAO;
+
+    @Autowired
+    private IUserDAO userDAO;
+
+    @Autowired
+    private IProfileDAO profileDAO;
+
+    @Autowired
+    private IOrderAuthorizationDAO orderAuthorizationDAO;
+
     @Test
     @Transactional
     public void testInSpringContainer() {
@@ -207,4 +233,182 @@ public class OrderDAOTest {
         });
     }
 
+    private Order createOrderOnlyIn(Scenario scenario) {
+        Order order = Order.create();
+        order.setName(UUID.randomUUID().toString());
+        order.setCode(UUID.randomUUID().toString());
+        order.setInitDate(new Date());
+        BaseCalendar basicCalendar = BaseCalendarTest.createBasicCalendar();
+        calendarDAO.save(basicCalendar);
+        order.setCalendar(basicCalendar);
+        OrderVersion orderVersion = OrderVersion.createInitialVersion(scenario);
+        order.setVersionForScenario(scenario, orderVersion);
+        order.useSchedulingDataFor(orderVersion);
+        orderDAO.save(order);
+        return order;
+    }
+
+    private Order createStoredOrder() {
+        Order order = createValidOrder(UUID.randomUUID().toString());
+        orderDAO.save(order);
+        return order;
+    }
+
+    private User createStoredUser(Profile... profiles) {
+        String loginName = UUID.randomUUID().toString();
+        User user = User.create(loginName, loginName,
+                new HashSet<UserRole>());
+        for (Profile each : profiles) {
+            user.addProfile(each);
+        }
+        userDAO.save(user);
+        return user;
+    }
+
+    private Profile createStoredProfile() {
+        Profile profile = Profile.create(UUID.randomUUID().toString(),
+                new HashSet<UserRole>());
+        profileDAO.save(profile);
+        return profile;
+    }
+
+    private void authorize(User user, Order order,
+            OrderAuthorizationType type) {
+        UserOrderAuthorization authorization = UserOrderAuthorization
+                .create(type);
+        authorization.setUser(user);
+        authorization.setOrder(order);
+        orderAuthorizationDAO.save(authorization);
+    }
+
+    private void authorize(Profile profile, Order order,
+            OrderAuthorizationType type) {
+        ProfileOrderAuthorization authorization = ProfileOrderAuthorization
+                .create(type);
+        authorization.setProfile(profile);
+        authorization.setOrder(order);
+        orderAuthorizationDAO.save(authorization);
+    }
+
+    @Test
+    @Transactional
+    public void theOrdersAuthorizedToTheUserOrItsProfilesAreReadable() {
+        Profile profile = createStoredProfile();
+        User user = createStoredUser(profile);
+        User anotherUser = createStoredUser();
+        Order byUser = createStoredOrder();
+        Order byProfile = createStoredOrder();
+        Order byBoth = createStoredOrder();
+        Order byAnotherUser = createStoredOrder();
+        Order notAuthorized = createStoredOrder();
+        authorize(user, byUser, OrderAuthorizationType.READ_AUTHORIZATION);
+        authorize(profile, byProfile,
+                OrderAuthorizationType.READ_AUTHORIZATION);
+        authorize(user, byBoth, OrderAuthorizationType.READ_AUTHORIZATION);
+        authorize(profile, byBoth, OrderAuthorizationType.WRITE_AUTHORIZATION);
+        authorize(anotherUser, byAnotherUser,
+                OrderAuthorizationType.WRITE_AUTHORIZATION);
+        orderDAO.flush();
+
+        List<Order> orders = orderDAO.getOrdersByReadAuthorization(user);
+
+        assertThat(orders.size(), equalTo(3));
+        assertTrue(orders.contains(byUser));
+        assertTrue(orders.contains(byProfile));
+        assertTrue(orders.contains(byBoth));
+        assertFalse(orders.contains(byAnotherUser));
+        assertFalse(orders.contains(notAuthorized));
+    }
+
+    @Test
+    @Transactional
+    public void onlyTheOrdersWithWriteAuthorizationAreWritable() {
+        Profile profile = createStoredProfile();
+        User user = createStoredUser(profile);
+        Order readByUser = createStoredOrder();
+        Order writtenByUser = createStoredOrder();
+        Order writtenByProfile = createStoredOrder();
+        authorize(user, readByUser, OrderAuthorizationType.READ_AUTHORIZATION);
+        authorize(user, writtenByUser,
+                OrderAuthorizationType.WRITE_AUTHORIZATION);
+        authorize(profile, writtenByProfile,
+                OrderAuthorizationType.WRITE_AUTHORIZATION);
+        orderDAO.flush();
+
+        List<Order> orders = orderDAO.getOrdersByWriteAuthorization(user);
+
+        assertThat(orders.size(), equalTo(2));
+        assertTrue(orders.contains(writtenByUser));
+        assertTrue(orders.contains(writtenByProfile));
+        assertFalse(orders.contains(readByUser));
+    }
+
+    @Test
+    @Transactional
+    public void aUserWithoutProfilesOnlyGetsItsOwnAuthorizations() {
+        Profile profile = createStoredProfile();
+        User user = createStoredUser();
+        Order byUser = createStoredOrder();
+        Order byProfile = createStoredOrder();
+        authorize(user, byUser, OrderAuthorizationType.WRITE_AUTHORIZATION);
+        authorize(profile, byProfile,
+                OrderAuthorizationType.WRITE_AUTHORIZATION);
+        orderDAO.flush();
+
+        assertThat(orderDAO.getOrdersByReadAuthorization(user),
+                equalTo(Collections.singletonList(byUser)));
+        assertThat(orderDAO.getOrdersByWriteAuthorization(user),
+                equalTo(Collections.singletonList(byUser)));
+    }
+
+    @Test
+    @Transactional
+    public void onlyTheReadableOrdersOfTheScenarioAreRetrieved() {
+        Scenario current = scenarioManager.getCurrent();
+        Scenario another = Scenario.create(UUID.randomUUID().toString());
+        scenarioDAO.save(another);
+        Profile profile = createStoredProfile();
+        User user = createStoredUser(profile);
+        Order inCurrent = createStoredOrder();
+        Order inAnother = createOrderOnlyIn(another);
+        Order notAuthorized = createStoredOrder();
+        authorize(user, inCurrent, OrderAuthorizationType.READ_AUTHORIZATION);
+        authorize(profile, inAnother,
+                OrderAuthorizationType.READ_AUTHORIZATION);
+        orderDAO.flush();
+
+        List<Order> ofCurrent = orderDAO
+                .getOrdersByReadAuthorizationByScenario(user.getLoginName(),
+                        current);
+        assertTrue(ofCurrent.contains(inCurrent));
+        assertFalse(ofCurrent.contains(inAnother));
+        assertFalse(ofCurrent.contains(notAuthorized));
+
+        List<Order> ofAnother = orderDAO
+                .getOrdersByReadAuthorizationByScenario(user.getLoginName(),
+                        another);
+        assertThat(ofAnother, equalTo(Collections.singletonList(inAnother)));
+    }
+
+    @Test
+    @Transactional
+    public void theOrdersOfANewScenarioAreFilteredInMemory() {
+        User user = createStoredUser();
+        Order included = createStoredOrder();
+        Order notIncluded = createStoredOrder();
+        authorize(user, included, OrderAuthorizationType.READ_AUTHORIZATION);
+        authorize(user, notIncluded, OrderAuthorizationType.READ_AUTHORIZATION);
+        orderDAO.flush();
+        Scenario newScenario = Scenario.create(UUID.randomUUID().toString());
+        newScenario.addOrder(included);
+        assertTrue(newScenario.isNewObject());
+
+        List<Order> orders = orderDAO.getOrdersByReadAuthorizationByScenario(
+                user.getLoginName(), newScenario);
+
+        assertThat(orders, equalTo(Collections.singletonList(included)));
+        assertThat(orderDAO.getOrdersByScenario(newScenario),
+                equalTo(Collections.singletonList(included)));
+    }
+
 }
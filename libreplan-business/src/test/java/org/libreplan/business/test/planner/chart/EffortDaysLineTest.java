@@ -0,0 +1,113 @@
+package org.libreplan.business.test.planner.chart;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.util.SortedMap;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.libreplan.business.planner.chart.EffortDaysLine;
+import org.libreplan.business.workingday.EffortDuration;
+
+public class EffortDaysLineTest {
+
+    // it's a monday
+    private static final LocalDate someDate = new LocalDate(2013, 1, 7);
+
+    private static EffortDaysLine hoursLine(int... hours) {
+        int[] seconds = new int[hours.length];
+        for (int i = 0; i < hours.length; i++) {
+            seconds[i] = hours(hours[i]).getSeconds();
+        }
+        return EffortDaysLine.wrap(someDate, seconds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aLineCannotBeCreatedWithAStartBeforeTheEnd() {
+        EffortDaysLine.create(someDate, someDate.minusDays(1));
+    }
+
+    @Test
+    public void theSizeIsEqualToTheDaysBetweenTheDates() {
+        EffortDaysLine line = EffortDaysLine.create(someDate,
+                someDate.plusDays(10));
+        assertThat(line.size(), equalTo(10));
+        assertThat(line.getEndExclusive(), equalTo(someDate.plusDays(10)));
+        assertThat(line.get(someDate.plusDays(3)),
+                equalTo(EffortDuration.zero()));
+    }
+
+    @Test
+    public void linesCanBeSummed() {
+        EffortDaysLine result = EffortDaysLine.sum(hoursLine(1, 2, 3),
+                hoursLine(3, 2, 1));
+        assertThat(result.get(someDate), equalTo(hours(4)));
+        assertThat(result.get(someDate.plusDays(2)), equalTo(hours(4)));
+    }
+
+    @Test
+    public void theMinOfTwoLinesCanBeCalculated() {
+        EffortDaysLine result = EffortDaysLine.min(hoursLine(1, 2, 3),
+                hoursLine(3, 2, 1));
+        assertThat(result.get(someDate), equalTo(hours(1)));
+        assertThat(result.get(someDate.plusDays(2)), equalTo(hours(1)));
+    }
+
+    @Test
+    public void theSubstractionIsNeverNegative() {
+        EffortDaysLine result = EffortDaysLine.substract(hoursLine(1, 2, 3),
+                hoursLine(3, 2, 1));
+        assertThat(result.get(someDate), equalTo(EffortDuration.zero()));
+        assertThat(result.get(someDate.plusDays(1)),
+                equalTo(EffortDuration.zero()));
+        assertThat(result.get(someDate.plusDays(2)), equalTo(hours(2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyLinesWithTheSameIntervalCanBeJoined() {
+        EffortDaysLine.sum(hoursLine(1, 2, 3), hoursLine(1, 2));
+    }
+
+    @Test
+    public void aSubIntervalSharesTheValuesWithTheOriginal() {
+        EffortDaysLine line = hoursLine(1, 2, 3, 4);
+        EffortDaysLine subInterval = line.subInterval(someDate.plusDays(1),
+                someDate.plusDays(3));
+        assertThat(subInterval.size(), equalTo(2));
+        assertThat(subInterval.getStart(), equalTo(someDate.plusDays(1)));
+        assertThat(subInterval.get(someDate.plusDays(2)), equalTo(hours(3)));
+
+        subInterval.add(EffortDaysLine.wrap(someDate.plusDays(1), new int[] {
+                hours(1).getSeconds(), 0 }));
+        assertThat(line.get(someDate.plusDays(1)), equalTo(hours(3)));
+    }
+
+    @Test
+    public void aSubIntervalOutsideTheLineIsInvalid() {
+        EffortDaysLine line = hoursLine(1, 2, 3, 4);
+        assertTrue(line.subInterval(someDate.plusDays(10),
+                someDate.plusDays(12)).isNotValid());
+    }
+
+    @Test
+    public void theValuesCanBeAveragedPerWeek() {
+        EffortDaysLine line = hoursLine(7, 7, 7, 7, 7, 7, 7, 14);
+        SortedMap<LocalDate, EffortDuration> perWeek = line.averagePerWeek();
+        assertThat(perWeek.size(), equalTo(2));
+        assertThat(perWeek.get(someDate.plusDays(3)), equalTo(hours(7)));
+        assertThat(perWeek.get(someDate.plusDays(10)), equalTo(hours(2)));
+    }
+
+    @Test
+    public void theOverloadIsAccumulated() {
+        int[] accumulated = new int[] { 1, 1 };
+        EffortDaysLine.accumulateOverload(accumulated, new int[] { 5, 2 },
+                new int[] { 3, 4 });
+        assertThat(accumulated[0], equalTo(3));
+        assertThat(accumulated[1], equalTo(1));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.planner.chart;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.util.Arrays;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.libreplan.business.planner.chart.EffortDaysLine;
+import org.libreplan.business.planner.chart.ResourcesLoadAggregator;
+
+public class ResourcesLoadAggregatorTest {
+
+    private static final LocalDate someDate = new LocalDate(2013, 1, 7);
+
+    private ResourcesLoadAggregator aggregator = new ResourcesLoadAggregator();
+
+    private void add(long resourceId, int daysFromStart, int hours) {
+        aggregator.add(resourceId, someDate.plusDays(daysFromStart),
+                hours(hours).getSeconds(), 1L, false);
+    }
+
+    @Test
+    public void withoutValuesTheLoadIsInvalid() {
+        assertTrue(aggregator.getLoad().isNotValid());
+        assertTrue(aggregator.getResourceIds().isEmpty());
+    }
+
+    @Test
+    public void theLoadSpansFromTheFirstToTheLastDay() {
+        add(1L, 40, 2);
+        add(1L, 0, 3);
+        add(2L, -50, 4);
+        add(2L, 0, 1);
+        EffortDaysLine load = aggregator.getLoad();
+        assertThat(load.getStart(), equalTo(someDate.minusDays(50)));
+        assertThat(load.getEndExclusive(), equalTo(someDate.plusDays(41)));
+        assertThat(load.get(someDate), equalTo(hours(4)));
+        assertThat(load.get(someDate.plusDays(40)), equalTo(hours(2)));
+        assertThat(load.get(someDate.minusDays(50)), equalTo(hours(4)));
+        assertThat(load.get(someDate.plusDays(1)), equalTo(hours(0)));
+    }
+
+    @Test
+    public void theLoadOfEachResourceIsKeptApart() {
+        add(1L, 0, 3);
+        add(1L, 2, 5);
+        add(2L, 1, 4);
+        assertTrue(aggregator.hasLoad(1L));
+        assertFalse(aggregator.hasLoad(3L));
+
+        int[] seconds = new int[4];
+        aggregator.fillLoadOf(1L, someDate.minusDays(1), seconds);
+        assertArrayEquals(new int[] { 0, hours(3).getSeconds(), 0,
+                hours(5).getSeconds() }, seconds);
+
+        aggregator.fillLoadOf(3L, someDate, seconds);
+        assertArrayEquals(new int[4], seconds);
+    }
+
+    @Test
+    public void theLoadOfSomeResourcesCanBeReplaced() {
+        add(1L, 0, 3);
+        add(2L, 0, 4);
+        add(2L, 10, 2);
+        ResourcesLoadAggregator newLoads = new ResourcesLoadAggregator();
+        newLoads.add(2L, someDate.plusDays(1), hours(6).getSeconds(), 1L,
+                false);
+        newLoads.add(3L, someDate.plusDays(5), hours(1).getSeconds(), 1L,
+                false);
+
+        ResourcesLoadAggregator replaced = aggregator.replacingLoadOf(
+                Arrays.asList(2L), newLoads);
+
+        assertTrue(replaced.hasLoad(1L));
+        assertTrue(replaced.hasLoad(2L));
+        assertFalse(replaced.hasLoad(3L));
+        EffortDaysLine load = replaced.getLoad();
+        assertThat(load.getStart(), equalTo(someDate));
+        assertThat(load.getEndExclusive(), equalTo(someDate.plusDays(2)));
+        assertThat(load.get(someDate), equalTo(hours(3)));
+        assertThat(load.get(someDate.plusDays(1)), equalTo(hours(6)));
+
+        assertThat(aggregator.getLoad().get(someDate), equalTo(hours(7)));
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.test.planner.daos;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
+import static org.libreplan.business.test.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_TEST_FILE;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Resource;
+
+import org.hibernate.SessionFactory;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.libreplan.business.IDataBootstrap;
+import org.libreplan.business.common.daos.IConfigurationDAO;
+import org.libreplan.business.common.exceptions.ValidationException;
+import org.libreplan.business.orders.daos.IOrderDAO;
+import org.libreplan.business.orders.entities.HoursGroup;
+import org.libreplan.business.orders.entities.Order;
+import org.libreplan.business.orders.entities.OrderLine;
+import org.libreplan.business.orders.entities.TaskSource;
+import org.libreplan.business.orders.entities.TaskSource.TaskSourceSynchronization;
+import org.libreplan.business.planner.daos.DayAssignmentDAO;
+import org.libreplan.business.planner.daos.IDayAssignmentDAO;
+import org.libreplan.business.planner.daos.ITaskElementDAO;
+import org.libreplan.business.planner.daos.ITaskSourceDAO;
+import org.libreplan.business.planner.entities.CompactDayAssignments;
+import org.libreplan.business.planner.entities.DayAssignment;
+import org.libreplan.business.planner.entities.SpecificResourceAllocation;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.resources.daos.IResourceDAO;
+import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.scenarios.IScenarioManager;
+import org.libreplan.business.scenarios.bootstrap.IScenariosBootstrap;
+import org.libreplan.business.scenarios.entities.OrderVersion;
+import org.libreplan.business.scenarios.entities.Scenario;
+import org.libreplan.business.workingday.IntraDayDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Tests for the {@link CompactDayAssignments} methods of
+ * {@link DayAssignmentDAO}.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = { BUSINESS_SPRING_CONFIG_FILE,
+        BUSINESS_SPRING_CONFIG_TEST_FILE })
+public class DayAssignmentDAOTest {
+
+    @Resource
+    private IDataBootstrap defaultAdvanceTypesBootstrapListener;
+
+    @Resource
+    private IDataBootstrap configurationBootstrap;
+
+    @Autowired
+    private IScenariosBootstrap scenariosBootstrap;
+
+    @Autowired
+    private IScenarioManager scenarioManager;
+
+    @Autowired
+    private IDayAssignmentDAO dayAssignmentDAO;
+
+    @Autowired
+    private ITaskElementDAO taskElementDAO;
+
+    @Autowired
+    private ITaskSourceDAO taskSourceDAO;
+
+    @Autowired
+    private IOrderDAO orderDAO;
+
+    @Autowired
+    private IResourceDAO resourceDAO;
+
+    @Autowired
+    private IConfigurationDAO configurationDAO;
+
+    @Autowired
+    private SessionFactory sessionFactory;
+
+    @Before
+    public void loadRequiredData() {
+        defaultAdvanceTypesBootstrapListener.loadRequiredData();
+        configurationBootstrap.loadRequiredData();
+        scenariosBootstrap.loadRequiredData();
+    }
+
+    private Task createValidTask() {
+        HoursGroup hoursGroup = new HoursGroup();
+        hoursGroup.setCode("hours-group-code-" + UUID.randomUUID());
+        OrderLine orderLine = OrderLine.create();
+        orderLine.setName("order-line-" + UUID.randomUUID());
+        orderLine.setCode("code-" + UUID.randomUUID());
+        orderLine.addHoursGroup(hoursGroup);
+        Order order = Order.create();
+        OrderVersion orderVersion = ResourceAllocationDAOTest
+                .setupVersionUsing(scenarioManager, order);
+        order.setName("order-" + UUID.randomUUID());
+        order.setInitDate(new Date());
+        order.setCode("code-" + UUID.randomUUID());
+        order.useSchedulingDataFor(orderVersion);
+        order.add(orderLine);
+        order.setCalendar(configurationDAO.getConfiguration()
+                .getDefaultCalendar());
+        try {
+            orderDAO.save(order);
+            sessionFactory.getCurrentSession().flush();
+        } catch (ValidationException e) {
+            throw new RuntimeException(e);
+        }
+        orderLine.useSchedulingDataFor(orderVersion);
+        TaskSource taskSource = TaskSource.create(
+                orderLine.getCurrentSchedulingDataForVersion(),
+                Arrays.asList(hoursGroup));
+        TaskSourceSynchronization mustAdd = TaskSource.mustAdd(taskSource);
+        mustAdd.apply(TaskSource.persistTaskSources(taskSourceDAO));
+        return (Task) taskSource.getTask();
+    }
+
+    private Worker createValidWorker() {
+        Worker worker = Worker.create();
+        worker.setFirstName(UUID.randomUUID().toString());
+        worker.setSurname(UUID.randomUUID().toString());
+        worker.setNif(UUID.randomUUID().toString());
+        resourceDAO.save(worker);
+        return worker;
+    }
+
+    private SpecificResourceAllocation givenStoredAllocation(Worker worker,
+            int hours) {
+        Task task = createValidTask();
+        SpecificResourceAllocation allocation = SpecificResourceAllocation
+                .create(task);
+        allocation.setResource(worker);
+        LocalDate start = task.getStartAsLocalDate();
+        task.setIntraDayEndDate(IntraDayDate.startOfDay(start.plusDays(3)));
+        allocation.onIntervalWithinTask(start, start.plusDays(3))
+                .allocateHours(hours);
+        task.addResourceAllocation(allocation);
+        taskElementDAO.save(task);
+        sessionFactory.getCurrentSession().flush();
+        return allocation;
+    }
+
+    private List<CompactDayAssignments> findCompacted(Worker worker) {
+        sessionFactory.getCurrentSession().flush();
+        return dayAssignmentDAO.findCompacted(scenarioManager.getCurrent(),
+                Collections.singletonList(worker));
+    }
+
+    private static void assertSameAssignments(
+            List<? extends DayAssignment> expected,
+            List<DayAssignment> decoded) {
+        List<? extends DayAssignment> sorted = DayAssignment
+                .orderedByDay(expected);
+        assertThat(decoded.size(), equalTo(sorted.size()));
+        for (int i = 0; i < sorted.size(); i++) {
+            assertThat(decoded.get(i).getDay(), equalTo(sorted.get(i)
+                    .getDay()));
+            assertThat(decoded.get(i).getDuration(), equalTo(sorted.get(i)
+                    .getDuration()));
+        }
+    }
+
+    @Test
+    @Transactional
+    public void theStoredAssignmentsAreDecodedAsTheOriginalOnes() {
+        Worker worker = createValidWorker();
+        SpecificResourceAllocation allocation = givenStoredAllocation(worker,
+                24);
+        Scenario current = scenarioManager.getCurrent();
+
+        dayAssignmentDAO.saveCompacted(allocation, current);
+        List<CompactDayAssignments> compacted = findCompacted(worker);
+
+        assertThat(compacted.size(), equalTo(1));
+        CompactDayAssignments stored = compacted.get(0);
+        assertFalse(stored.isGeneric());
+        assertThat(stored.getTotalDuration(),
+                equalTo(allocation.getAssignedEffort()));
+        assertSameAssignments(allocation.getAssignments(),
+                stored.getDayAssignments());
+        assertSameAssignments(allocation.getAssignments(), dayAssignmentDAO
+                .findCompactedByResources(current,
+                        Collections.singletonList(worker)));
+    }
+
+    @Test
+    @Transactional
+    public void savingAgainReplacesTheStoredAssignments() {
+        Worker worker = createValidWorker();
+        SpecificResourceAllocation allocation = givenStoredAllocation(worker,
+                24);
+        Scenario current = scenarioManager.getCurrent();
+        dayAssignmentDAO.saveCompacted(allocation, current);
+
+        allocation.onIntervalWithinTask(allocation.getStartDate(),
+                allocation.getStartDate().plusDays(3)).allocateHours(12);
+        taskElementDAO.save(allocation.getTask());
+        sessionFactory.getCurrentSession().flush();
+        dayAssignmentDAO.saveCompacted(allocation, current);
+
+        List<CompactDayAssignments> compacted = findCompacted(worker);
+        assertThat(compacted.size(), equalTo(1));
+        assertThat(compacted.get(0).getTotalDuration(),
+                equalTo(allocation.getAssignedEffort()));
+        assertSameAssignments(allocation.getAssignments(), compacted.get(0)
+                .getDayAssignments());
+    }
+
+    @Test
+    @Transactional
+    public void theAssignmentsOfAllTheAllocationsOfTheScenarioAreMigrated() {
+        Worker worker = createValidWorker();
+        SpecificResourceAllocation first = givenStoredAllocation(worker, 24);
+        SpecificResourceAllocation second = givenStoredAllocation(worker, 12);
+        List<? extends DayAssignment> firstAssignments = first
+                .getAssignments();
+        List<? extends DayAssignment> secondAssignments = second
+                .getAssignments();
+
+        int migrated = dayAssignmentDAO.compactAllFor(scenarioManager
+                .getCurrent());
+
+        assertTrue(migrated >= 2);
+        List<CompactDayAssignments> compacted = findCompacted(worker);
+        assertThat(compacted.size(), equalTo(2));
+        for (CompactDayAssignments each : compacted) {
+            Long allocationId = each.getResourceAllocation().getId();
+            if (allocationId.equals(first.getId())) {
+                assertSameAssignments(firstAssignments,
+                        each.getDayAssignments());
+            } else {
+                assertThat(allocationId, equalTo(second.getId()));
+                assertSameAssignments(secondAssignments,
+                        each.getDayAssignments());
+            }
+        }
+    }
+
+    @Test
+    @Transactional
+    public void nothingIsStoredForAnAllocationThatDoesNotExist() {
+        dayAssignmentDAO.saveCompacted(Long.MAX_VALUE, scenarioManager
+                .getCurrent().getId());
+        sessionFactory.getCurrentSession().flush();
+        assertThat(sessionFactory.getCurrentSession()
+                .createQuery("from CompactDayAssignments c"
+                        + " where c.resourceAllocation.id = :id")
+                .setParameter("id", Long.MAX_VALUE).list().size(), equalTo(0));
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.planner.entities;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import org.junit.Test;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.calendars.entities.CalendarData.Days;
+import org.libreplan.business.calendars.entities.Capacity;
+import org.libreplan.business.planner.entities.AllocationsAffectingState;
+import org.libreplan.business.test.calendars.entities.BaseCalendarTest;
+
+/**
+ * Tests for {@link AllocationsAffectingState}.
+ */
+public class AllocationsAffectingStateTest {
+
+    private BaseCalendar calendar = BaseCalendarTest.createBasicCalendar();
+
+    private AllocationsAffectingState initial = AllocationsAffectingState
+            .of(calendar);
+
+    private boolean hasChanged() {
+        return AllocationsAffectingState.hasChanged(initial,
+                AllocationsAffectingState.of(calendar));
+    }
+
+    @Test
+    public void anUnmodifiedCalendarHasNotChanged() {
+        calendar.setName("other name");
+        assertFalse(hasChanged());
+    }
+
+    @Test
+    public void changingTheCapacityOfADayIsAChange() {
+        calendar.setCapacityAt(Days.SATURDAY, Capacity.create(hours(4)));
+        assertTrue(hasChanged());
+    }
+
+    @Test
+    public void settingTheSameCapacityIsNotAChange() {
+        calendar.setCapacityAt(Days.MONDAY, Capacity.create(hours(8))
+                .overAssignableWithoutLimit());
+        assertFalse(hasChanged());
+    }
+
+    @Test
+    public void addingAnExceptionIsAChange() {
+        BaseCalendarTest.addChristmasAsExceptionDay(calendar);
+        assertTrue(hasChanged());
+    }
+
+    @Test
+    public void addingANewVersionIsAChange() {
+        calendar.newVersion(BaseCalendarTest.MONDAY_LOCAL_DATE);
+        assertTrue(hasChanged());
+    }
+
+    @Test
+    public void aNewEntityHasNotChanged() {
+        assertFalse(AllocationsAffectingState.hasChanged(null,
+                AllocationsAffectingState.of(calendar)));
+    }
+
+}
@@ -0,0 +1,321 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.planner.entities;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.libreplan.business.planner.entities.AllocationsRecalculationProgress;
+import org.libreplan.business.planner.entities.AllocationsRecalculator;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+/**
+ * Tests for {@link AllocationsRecalculator}. The access to the database is
+ * replaced, so only the scheduling of the recalculations is tested.
+ */
+public class AllocationsRecalculatorTest {
+
+    private static final Long SCENARIO_ID = 1L;
+
+    private static final List<Long> RESOURCE_IDS = Arrays.asList(1L);
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+
+    /**
+     * {@link AllocationsRecalculator} that doesn't use the database. The
+     * affected tasks and the errors to throw are configured by the tests, and
+     * the reassignments are recorded.
+     */
+    private static class RecalculatorWithoutDatabase extends
+            AllocationsRecalculator {
+
+        private volatile Map<Long, Set<Long>> tasksByOrder = new HashMap<Long, Set<Long>>();
+
+        private volatile RuntimeException searchError;
+
+        private final Map<Long, LinkedList<RuntimeException>> errors = new HashMap<Long, LinkedList<RuntimeException>>();
+
+        private final List<Set<Long>> reassigned = Collections
+                .synchronizedList(new ArrayList<Set<Long>>());
+
+        private final CountDownLatch firstReassignmentStarted = new CountDownLatch(
+                1);
+
+        private volatile CountDownLatch firstReassignmentAllowed = new CountDownLatch(
+                0);
+
+        void affectedTasks(Long orderId, Set<Long> taskIds) {
+            Map<Long, Set<Long>> result = new HashMap<Long, Set<Long>>();
+            result.put(orderId, taskIds);
+            tasksByOrder = result;
+        }
+
+        void affectedTasks(Map<Long, Set<Long>> tasksByOrder) {
+            this.tasksByOrder = tasksByOrder;
+        }
+
+        synchronized void failing(Long orderId, RuntimeException... errors) {
+            this.errors.put(orderId, new LinkedList<RuntimeException>(Arrays
+                    .asList(errors)));
+        }
+
+        void blockFirstReassignment() {
+            firstReassignmentAllowed = new CountDownLatch(1);
+        }
+
+        void awaitFirstReassignment() throws InterruptedException {
+            assertTrue(firstReassignmentStarted.await(TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS));
+        }
+
+        void allowFirstReassignment() {
+            firstReassignmentAllowed.countDown();
+        }
+
+        @Override
+        protected Map<Long, Set<Long>> findAffectedTasksByOrder(
+                IAffectedResources affectedResources, Long scenarioId) {
+            if (searchError != null) {
+                throw searchError;
+            }
+            return new HashMap<Long, Set<Long>>(tasksByOrder);
+        }
+
+        @Override
+        protected void reassignAllocations(Long orderId, Long scenarioId,
+                Set<Long> taskIds) {
+            reassigned.add(new HashSet<Long>(taskIds));
+            firstReassignmentStarted.countDown();
+            try {
+                firstReassignmentAllowed.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            RuntimeException error = nextError(orderId);
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private synchronized RuntimeException nextError(Long orderId) {
+            LinkedList<RuntimeException> pending = errors.get(orderId);
+            if (pending == null || pending.isEmpty()) {
+                return null;
+            }
+            return pending.size() > 1 ? pending.removeFirst() : pending
+                    .getFirst();
+        }
+
+        private volatile long retryDelay = 0;
+
+        @Override
+        protected long getRetryDelay() {
+            return retryDelay;
+        }
+
+    }
+
+    private RecalculatorWithoutDatabase recalculator = new RecalculatorWithoutDatabase();
+
+    @After
+    public void shutdown() {
+        recalculator.allowFirstReassignment();
+        recalculator.shutdown();
+    }
+
+    private AllocationsRecalculationProgress recalculate() {
+        return recalculator.recalculateAllocationsOf(RESOURCE_IDS,
+                SCENARIO_ID);
+    }
+
+    private static void waitUntilSearchFinished(
+            AllocationsRecalculationProgress progress)
+            throws InterruptedException {
+        long limit = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (!progress.isSearchFinished()) {
+            assertTrue(System.currentTimeMillis() < limit);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitUntilFinished(
+            AllocationsRecalculationProgress progress)
+            throws InterruptedException {
+        long limit = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (!progress.isFinished()) {
+            assertTrue(System.currentTimeMillis() < limit);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void theAffectedOrdersAreRecalculated() throws InterruptedException {
+        Map<Long, Set<Long>> tasksByOrder = new HashMap<Long, Set<Long>>();
+        tasksByOrder.put(1L, ids(10L, 11L));
+        tasksByOrder.put(2L, ids(20L));
+        recalculator.affectedTasks(tasksByOrder);
+
+        AllocationsRecalculationProgress progress = recalculate();
+        waitUntilFinished(progress);
+
+        assertThat(progress.getOrdersToRecalculate(), equalTo(2));
+        assertThat(progress.getRecalculatedOrders(), equalTo(2));
+        assertFalse(progress.hasErrors());
+        assertThat(new HashSet<Set<Long>>(recalculator.reassigned),
+                equalTo(new HashSet<Set<Long>>(Arrays.asList(ids(10L, 11L),
+                        ids(20L)))));
+    }
+
+    @Test
+    public void theRequestsForAnOrderBeingRecalculatedAreMerged()
+            throws InterruptedException {
+        recalculator.blockFirstReassignment();
+        recalculator.affectedTasks(1L, ids(10L));
+        AllocationsRecalculationProgress first = recalculate();
+        recalculator.awaitFirstReassignment();
+
+        recalculator.affectedTasks(1L, ids(11L));
+        AllocationsRecalculationProgress second = recalculate();
+        recalculator.affectedTasks(1L, ids(12L));
+        AllocationsRecalculationProgress third = recalculate();
+        waitUntilSearchFinished(second);
+        waitUntilSearchFinished(third);
+        recalculator.allowFirstReassignment();
+
+        waitUntilFinished(first);
+        waitUntilFinished(second);
+        waitUntilFinished(third);
+        assertThat(recalculator.reassigned, equalTo(Arrays.asList(ids(10L),
+                ids(11L, 12L))));
+        assertThat(second.getRecalculatedOrders(), equalTo(1));
+        assertThat(third.getRecalculatedOrders(), equalTo(1));
+    }
+
+    @Test
+    public void anOrderIsTriedAgainIfThereAreConcurrencyProblems()
+            throws InterruptedException {
+        recalculator.affectedTasks(1L, ids(10L));
+        recalculator.failing(1L, new OptimisticLockingFailureException(
+                "first"), new OptimisticLockingFailureException("second"),
+                null);
+
+        AllocationsRecalculationProgress progress = recalculate();
+        waitUntilFinished(progress);
+
+        assertThat(recalculator.reassigned.size(), equalTo(3));
+        assertThat(progress.getRecalculatedOrders(), equalTo(1));
+        assertFalse(progress.hasErrors());
+    }
+
+    @Test
+    public void anOrderWaitingToBeTriedAgainIsStillBeingRecalculated()
+            throws InterruptedException {
+        recalculator.retryDelay = 200;
+        recalculator.affectedTasks(1L, ids(10L));
+        recalculator.failing(1L, new OptimisticLockingFailureException(
+                "first"), null);
+        AllocationsRecalculationProgress first = recalculate();
+        recalculator.awaitFirstReassignment();
+
+        recalculator.affectedTasks(1L, ids(11L));
+        AllocationsRecalculationProgress second = recalculate();
+
+        waitUntilFinished(first);
+        waitUntilFinished(second);
+        assertThat(recalculator.reassigned, equalTo(Arrays.asList(ids(10L),
+                ids(10L), ids(11L))));
+        assertFalse(first.hasErrors());
+        assertFalse(second.hasErrors());
+    }
+
+    @Test
+    public void theConcurrencyProblemsAreReportedIfTheyPersist()
+            throws InterruptedException {
+        recalculator.affectedTasks(1L, ids(10L));
+        recalculator.failing(1L, new OptimisticLockingFailureException(
+                "always"));
+
+        AllocationsRecalculationProgress progress = recalculate();
+        waitUntilFinished(progress);
+
+        assertThat(progress.getFailedOrders(), equalTo(1));
+        assertThat(progress.getErrors().get(1L),
+                equalTo("concurrency problems"));
+    }
+
+    @Test
+    public void theErrorsOfEachOrderAreReported() throws InterruptedException {
+        Map<Long, Set<Long>> tasksByOrder = new HashMap<Long, Set<Long>>();
+        tasksByOrder.put(1L, ids(10L));
+        tasksByOrder.put(2L, ids(20L));
+        recalculator.affectedTasks(tasksByOrder);
+        recalculator.failing(1L, new IllegalStateException("wrong task"));
+
+        AllocationsRecalculationProgress progress = recalculate();
+        waitUntilFinished(progress);
+
+        assertThat(recalculator.reassigned.size(), equalTo(2));
+        assertThat(progress.getRecalculatedOrders(), equalTo(1));
+        assertThat(progress.getFailedOrders(), equalTo(1));
+        assertTrue(progress.hasErrors());
+        assertThat(progress.getErrors().keySet(), equalTo(ids(1L)));
+        assertThat(progress.getErrors().get(1L),
+                equalTo("IllegalStateException: wrong task"));
+    }
+
+    @Test
+    public void theErrorSearchingTheAffectedOrdersIsReported()
+            throws InterruptedException {
+        recalculator.searchError = new IllegalArgumentException("no calendar");
+
+        AllocationsRecalculationProgress progress = recalculate();
+        waitUntilFinished(progress);
+
+        assertTrue(progress.hasErrors());
+        assertThat(progress.getSearchError(), notNullValue());
+        assertThat(progress.getOrdersToRecalculate(), equalTo(0));
+        assertTrue(recalculator.reassigned.isEmpty());
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.planner.entities;
+
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.planner.entities.CompactDayAssignments;
+import org.libreplan.business.planner.entities.DayAssignment;
+import org.libreplan.business.planner.entities.GenericDayAssignment;
+import org.libreplan.business.planner.entities.GenericResourceAllocation;
+import org.libreplan.business.planner.entities.SpecificDayAssignment;
+import org.libreplan.business.planner.entities.SpecificResourceAllocation;
+import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.scenarios.entities.Scenario;
+import org.libreplan.business.workingday.EffortDuration;
+
+public class CompactDayAssignmentsTest {
+
+    // it's a monday
+    private static final LocalDate someDate = new LocalDate(2013, 1, 7);
+
+    private Worker worker;
+
+    private Scenario scenario;
+
+    @Before
+    public void setUp() {
+        worker = createNiceMock(Worker.class);
+        replay(worker);
+        scenario = createNiceMock(Scenario.class);
+        replay(scenario);
+    }
+
+    private SpecificDayAssignment assignment(int day, EffortDuration duration) {
+        return SpecificDayAssignment.create(someDate.plusDays(day), duration,
+                worker);
+    }
+
+    private CompactDayAssignments compact(List<? extends DayAssignment> assignments) {
+        SpecificResourceAllocation allocation = createNiceMock(SpecificResourceAllocation.class);
+        replay(allocation);
+        return CompactDayAssignments.create(allocation, scenario, worker,
+                false, assignments);
+    }
+
+    private static void assertSameAssignments(
+            List<? extends DayAssignment> expected,
+            List<DayAssignment> decoded) {
+        assertThat(decoded.size(), equalTo(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(decoded.get(i).getDay(), equalTo(expected.get(i)
+                    .getDay()));
+            assertThat(decoded.get(i).getDuration(), equalTo(expected.get(i)
+                    .getDuration()));
+            assertThat(decoded.get(i).isConsolidated(), equalTo(expected
+                    .get(i).isConsolidated()));
+            assertThat(decoded.get(i).getResource(), equalTo(expected.get(i)
+                    .getResource()));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void atLeastOneAssignmentIsNeeded() {
+        compact(new ArrayList<DayAssignment>());
+    }
+
+    @Test
+    public void theAssignmentsAreDecodedSortedByDay() {
+        List<SpecificDayAssignment> assignments = Arrays.asList(
+                assignment(3, hours(4)), assignment(0, hours(8)),
+                assignment(1, hours(8)), assignment(10, hours(0)));
+        CompactDayAssignments compact = compact(assignments);
+
+        assertThat(compact.getFirstDay(), equalTo(someDate));
+        assertThat(compact.getLastDay(), equalTo(someDate.plusDays(10)));
+        assertThat(compact.getTotalDuration(), equalTo(hours(20)));
+        assertSameAssignments(Arrays.asList(assignments.get(1),
+                assignments.get(2), assignments.get(0), assignments.get(3)),
+                compact.getDayAssignments());
+        assertThat(compact.getDayAssignments().get(0),
+                instanceOf(SpecificDayAssignment.class));
+    }
+
+    @Test
+    public void theRunsOfEqualDaysTakeAFewBytes() {
+        List<SpecificDayAssignment> assignments = new ArrayList<SpecificDayAssignment>();
+        for (int i = 0; i < 365; i++) {
+            assignments.add(assignment(i, hours(8)));
+        }
+        CompactDayAssignments compact = compact(assignments);
+        assertTrue(compact.getEncodedSize() < 10);
+        assertSameAssignments(assignments, compact.getDayAssignments());
+    }
+
+    @Test
+    public void theConsolidatedValueIsKept() {
+        SpecificDayAssignment consolidated = assignment(0, hours(8));
+        consolidated.setConsolidated(true);
+        List<SpecificDayAssignment> assignments = Arrays.asList(consolidated,
+                assignment(1, hours(8)));
+        List<DayAssignment> decoded = compact(assignments).getDayAssignments();
+        assertTrue(decoded.get(0).isConsolidated());
+        assertFalse(decoded.get(1).isConsolidated());
+    }
+
+    @Test
+    public void theAssignmentsOfGenericAllocationsAreDecodedAsGeneric() {
+        GenericResourceAllocation allocation = createNiceMock(GenericResourceAllocation.class);
+        replay(allocation);
+        CompactDayAssignments compact = CompactDayAssignments.create(
+                allocation, scenario, worker, true,
+                Arrays.asList(assignment(0, hours(8))));
+        assertTrue(compact.isGeneric());
+        assertThat(compact.getDayAssignments().get(0),
+                instanceOf(GenericDayAssignment.class));
+    }
+
+    @Test
+    public void randomAssignmentsAreDecodedAsEncoded() {
+        Random random = new Random(7);
+        for (int attempt = 0; attempt < 100; attempt++) {
+            List<SpecificDayAssignment> assignments = new ArrayList<SpecificDayAssignment>();
+            int day = random.nextInt(100) - 50;
+            int size = 1 + random.nextInt(200);
+            for (int i = 0; i < size; i++) {
+                day += random.nextInt(4);
+                SpecificDayAssignment each = assignment(day,
+                        EffortDuration.seconds(random.nextInt(3) * 3600 * 4));
+                each.setConsolidated(random.nextInt(5) == 0);
+                assignments.add(each);
+            }
+            assertSameAssignments(assignments,
+                    compact(assignments).getDayAssignments());
+        }
+    }
+
+}
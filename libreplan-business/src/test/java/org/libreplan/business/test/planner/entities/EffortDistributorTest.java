@@ -0,0 +1,478 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.planner.entities;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+import static org.libreplan.business.workingday.EffortDuration.seconds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.easymock.IAnswer;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.libreplan.business.calendars.entities.Capacity;
+import org.libreplan.business.calendars.entities.ICalendar;
+import org.libreplan.business.calendars.entities.ResourceCalendar;
+import org.libreplan.business.planner.entities.AssignedEffortForResource.IAssignedEffortForResource;
+import org.libreplan.business.planner.entities.EffortDistributor;
+import org.libreplan.business.planner.entities.EffortDistributor.ResourceWithAssignedDuration;
+import org.libreplan.business.planner.entities.Share;
+import org.libreplan.business.planner.entities.ShareDivision;
+import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.workingday.EffortDuration;
+import org.libreplan.business.workingday.IntraDayDate;
+import org.libreplan.business.workingday.IntraDayDate.PartialDay;
+import org.libreplan.business.workingday.ResourcesPerDay;
+
+/**
+ * Checks that {@link EffortDistributor} distributes the effort as the object
+ * based implementation it replaced, that is kept here as
+ * {@link PreviousEffortDistributor}.
+ */
+public class EffortDistributorTest {
+
+    private static final LocalDate start = new LocalDate(2013, 1, 7);
+
+    private final Random random = new Random(7);
+
+    private List<Resource> resources;
+
+    private Map<Resource, int[]> loads;
+
+    @Test
+    public void theResourcesWithMoreAvailableCapacityArePickedFirst() {
+        Resource full = givenWorker(Capacity.create(hours(8))
+                .overAssignableWithoutLimit(), 1);
+        Resource empty = givenWorker(Capacity.create(hours(8))
+                .overAssignableWithoutLimit(), 1);
+        resources = Arrays.asList(full, empty);
+        loads = new HashMap<Resource, int[]>();
+        loads.put(full, new int[] { hours(6).getSeconds() });
+        loads.put(empty, new int[] { 0 });
+
+        List<ResourceWithAssignedDuration> result = new EffortDistributor(
+                resources, assignedEffort()).distributeForDay(
+                PartialDay.wholeDay(start), hours(9));
+
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(0).resource, equalTo(empty));
+        assertThat(result.get(0).duration, equalTo(hours(8)));
+        assertThat(result.get(1).resource, equalTo(full));
+        assertThat(result.get(1).duration, equalTo(hours(1)));
+    }
+
+    @Test
+    public void theOvertimeIsLimitedByTheAllowedExtraEffort() {
+        Resource limited = givenWorker(Capacity.create(hours(8))
+                .withAllowedExtraEffort(hours(1)), 1);
+        Resource unlimited = givenWorker(Capacity.create(hours(8))
+                .overAssignableWithoutLimit(), 1);
+        resources = Arrays.asList(limited, unlimited);
+        loads = new HashMap<Resource, int[]>();
+        loads.put(limited, new int[] { 0 });
+        loads.put(unlimited, new int[] { 0 });
+
+        Map<Resource, EffortDuration> result = byResource(new EffortDistributor(
+                resources, assignedEffort()).distributeForDay(
+                PartialDay.wholeDay(start), hours(24)));
+
+        assertThat(result.get(limited), equalTo(hours(9)));
+        assertThat(result.get(unlimited), equalTo(hours(15)));
+    }
+
+    @Test
+    public void distributesTheSameAsThePreviousImplementation() {
+        for (int scenario = 0; scenario < 20; scenario++) {
+            givenRandomResourcesWithLoads(1 + random.nextInt(30), 40);
+            checkSameDistributionEachDay(40);
+        }
+    }
+
+    private void givenRandomResourcesWithLoads(int numberOfResources, int days) {
+        resources = new ArrayList<Resource>();
+        loads = new HashMap<Resource, int[]>();
+        for (int i = 0; i < numberOfResources; i++) {
+            Resource resource = givenWorker(randomCapacity(),
+                    1 + random.nextInt(3));
+            resources.add(resource);
+            int[] load = new int[days];
+            for (int j = 0; j < days; j++) {
+                load[j] = random.nextInt(4) == 0 ? 0 : random
+                        .nextInt(hours(12).getSeconds());
+            }
+            loads.put(resource, load);
+        }
+    }
+
+    private Capacity randomCapacity() {
+        Capacity result = Capacity.create(hours(random.nextInt(9)));
+        switch (random.nextInt(3)) {
+        case 0:
+            return result.overAssignableWithoutLimit();
+        case 1:
+            return result.withAllowedExtraEffort(hours(random.nextInt(4)));
+        default:
+            return result.notOverAssignableWithoutLimit();
+        }
+    }
+
+    private void checkSameDistributionEachDay(int days) {
+        EffortDistributor distributor = new EffortDistributor(resources,
+                assignedEffort());
+        PreviousEffortDistributor previous = new PreviousEffortDistributor(
+                resources, assignedEffort());
+        for (int i = 0; i < days; i++) {
+            PartialDay day = randomDay(start.plusDays(i));
+            EffortDuration total = seconds(random.nextInt(hours(8
+                    * resources.size() * 2).getSeconds()));
+            assertThat(byResource(distributor.distributeForDay(day, total)),
+                    equalTo(previous.distributeForDay(day, total)));
+            assertThat(distributor.getCapacityAt(day),
+                    equalTo(previous.getCapacityAt(day)));
+        }
+    }
+
+    private PartialDay randomDay(LocalDate date) {
+        if (random.nextBoolean()) {
+            return PartialDay.wholeDay(date);
+        }
+        return new PartialDay(IntraDayDate.create(date,
+                hours(random.nextInt(4))), IntraDayDate.startOfDay(date
+                .plusDays(1)));
+    }
+
+    private static Map<Resource, EffortDuration> byResource(
+            List<ResourceWithAssignedDuration> durations) {
+        Map<Resource, EffortDuration> result = new HashMap<Resource, EffortDuration>();
+        for (ResourceWithAssignedDuration each : durations) {
+            result.put(each.resource, each.duration);
+        }
+        return result;
+    }
+
+    private IAssignedEffortForResource assignedEffort() {
+        return new IAssignedEffortForResource() {
+
+            @Override
+            public EffortDuration getAssignedDurationAt(Resource resource,
+                    LocalDate day) {
+                return seconds(loads.get(resource)[day.getDayOfYear()
+                        - start.getDayOfYear()]);
+            }
+        };
+    }
+
+    private Worker givenWorker(Capacity capacity, int units) {
+        ResourceCalendar calendar = createCalendar(capacity, units);
+        Worker result = createNiceMock(Worker.class);
+        expect(result.getCalendar()).andReturn(calendar).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    private ResourceCalendar createCalendar(final Capacity capacity, int units) {
+        final Capacity capacityMultipliedByUnits = capacity.multiplyBy(units);
+        ResourceCalendar calendar = createNiceMock(ResourceCalendar.class);
+        expect(calendar.getCapacityOn(isA(PartialDay.class))).andAnswer(
+                new IAnswer<EffortDuration>() {
+
+                    @Override
+                    public EffortDuration answer() throws Throwable {
+                        PartialDay day = (PartialDay) getCurrentArguments()[0];
+                        return day.limitWorkingDay(capacityMultipliedByUnits
+                                .getStandardEffort());
+                    }
+                }).anyTimes();
+        expect(calendar.canWorkOn(isA(LocalDate.class))).andReturn(true)
+                .anyTimes();
+        expect(
+                calendar.asDurationOn(isA(PartialDay.class),
+                        isA(ResourcesPerDay.class))).andAnswer(
+                new IAnswer<EffortDuration>() {
+                    @Override
+                    public EffortDuration answer() throws Throwable {
+                        PartialDay day = (PartialDay) getCurrentArguments()[0];
+                        ResourcesPerDay resourcesPerDay = (ResourcesPerDay) getCurrentArguments()[1];
+                        return capacityMultipliedByUnits
+                                .limitDuration(resourcesPerDay
+                                        .asDurationGivenWorkingDayOf(day
+                                                .limitWorkingDay(capacity
+                                                        .getStandardEffort())));
+                    }
+                }).anyTimes();
+        expect(calendar.getCapacityWithOvertime(isA(LocalDate.class)))
+                .andReturn(capacityMultipliedByUnits).anyTimes();
+        expect(calendar.getCapacity()).andReturn(units).anyTimes();
+        replay(calendar);
+        return calendar;
+    }
+
+    /**
+     * The implementation of {@link EffortDistributor} before it used arrays,
+     * without the resource selectors
+     */
+    private static class PreviousEffortDistributor {
+
+        private static final ResourcesPerDay ONE = ResourcesPerDay.amount(1);
+
+        private final List<Resource> resources;
+
+        private final IAssignedEffortForResource assignedEffortForResource;
+
+        private final Set<Resource> resourcesAlreadyPicked = new HashSet<Resource>();
+
+        PreviousEffortDistributor(List<Resource> resources,
+                IAssignedEffortForResource assignedEffortForResource) {
+            this.resources = resources;
+            this.assignedEffortForResource = assignedEffortForResource;
+        }
+
+        Capacity getCapacityAt(PartialDay day) {
+            List<Capacity> capacities = new ArrayList<Capacity>();
+            for (Resource each : resources) {
+                Capacity originalCapacity = day.limitCapacity(calendarOf(each)
+                        .getCapacityWithOvertime(day.getDate()));
+                capacities.add(originalCapacity
+                        .minus(assignedEffortForResource.getAssignedDurationAt(
+                                each, day.getDate())));
+            }
+            return Capacity.sum(capacities);
+        }
+
+        private static ICalendar calendarOf(Resource resource) {
+            return resource.getCalendar();
+        }
+
+        Map<Resource, EffortDuration> distributeForDay(PartialDay day,
+                EffortDuration totalDuration) {
+            Map<Resource, EffortDuration> withoutOvertime = assignWithoutOvertime(
+                    day, totalDuration);
+            EffortDuration remaining = totalDuration.minus(sum(withoutOvertime
+                    .values()));
+            Map<Resource, EffortDuration> result = withoutOvertime;
+            if (!remaining.isZero()) {
+                result = join(
+                        withoutOvertime,
+                        distributeInOvertime(day.getDate(), remaining,
+                                sumAssignedEffort(withoutOvertime,
+                                        assignedEffortForResource), resources));
+            }
+            resourcesAlreadyPicked.addAll(result.keySet());
+            return result;
+        }
+
+        private Map<Resource, EffortDuration> assignWithoutOvertime(
+                final PartialDay day, EffortDuration totalDuration) {
+            final Map<Resource, EffortDuration> available = new HashMap<Resource, EffortDuration>();
+            List<Resource> sorted = new ArrayList<Resource>(resources);
+            for (Resource each : resources) {
+                available.put(each, availableOn(each, day));
+            }
+            Collections.sort(sorted, new Comparator<Resource>() {
+
+                @Override
+                public int compare(Resource o1, Resource o2) {
+                    boolean used1 = resourcesAlreadyPicked.contains(o1);
+                    boolean used2 = resourcesAlreadyPicked.contains(o2);
+                    if (used1 != used2) {
+                        return used1 ? -1 : 1;
+                    }
+                    return available.get(o2).compareTo(available.get(o1));
+                }
+            });
+            EffortDuration remaining = totalDuration;
+            Map<Resource, EffortDuration> result = new LinkedHashMap<Resource, EffortDuration>();
+            for (Resource each : sorted) {
+                EffortDuration assigned = EffortDuration.min(remaining,
+                        available.get(each));
+                remaining = remaining.minus(assigned);
+                if (!assigned.isZero()) {
+                    result.put(each, assigned);
+                }
+            }
+            return result;
+        }
+
+        private EffortDuration availableOn(Resource resource, PartialDay day) {
+            ICalendar calendar = calendarOf(resource);
+            EffortDuration allCapacityForDay = calendar
+                    .getCapacityOn(PartialDay.wholeDay(day.getDate()));
+            EffortDuration capacity = calendar.getCapacityOn(day);
+            EffortDuration capacityForAlreadyAssigned = allCapacityForDay
+                    .minus(capacity);
+            EffortDuration assigned = assignedEffortForResource
+                    .getAssignedDurationAt(resource, day.getDate());
+            EffortDuration assignedInterfering = assigned.minus(EffortDuration
+                    .min(assigned, capacityForAlreadyAssigned));
+            return capacity.minus(EffortDuration.min(assignedInterfering,
+                    capacity));
+        }
+
+        private Map<Resource, EffortDuration> distributeInOvertime(
+                LocalDate day, EffortDuration remainingDuration,
+                IAssignedEffortForResource assignedEffort,
+                List<Resource> assignableResources) {
+            Map<Resource, EffortDuration> distribution = suppressOverAssigned(
+                    day, assignedEffort,
+                    distributeRemaining(day, remainingDuration,
+                            assignedEffort, assignableResources));
+            EffortDuration newRemaining = remainingDuration
+                    .minus(sum(distribution.values()));
+            if (newRemaining.isZero()) {
+                return distribution;
+            }
+            IAssignedEffortForResource newAssignedEffort = sumAssignedEffort(
+                    distribution, assignedEffort);
+            List<Resource> withSpareSpace = new ArrayList<Resource>();
+            for (Resource each : assignableResources) {
+                if (calendarOf(each).getCapacityWithOvertime(day)
+                        .hasSpareSpaceForMoreAllocations(
+                                newAssignedEffort.getAssignedDurationAt(each,
+                                        day))) {
+                    withSpareSpace.add(each);
+                }
+            }
+            if (withSpareSpace.isEmpty()) {
+                return distribution;
+            }
+            return join(
+                    distribution,
+                    distributeInOvertime(day, newRemaining, newAssignedEffort,
+                            withSpareSpace));
+        }
+
+        private Map<Resource, EffortDuration> suppressOverAssigned(
+                LocalDate date, IAssignedEffortForResource assignedEffort,
+                Map<Resource, EffortDuration> distribution) {
+            Map<Resource, EffortDuration> result = new LinkedHashMap<Resource, EffortDuration>();
+            for (Resource each : distribution.keySet()) {
+                Capacity capacity = calendarOf(each).getCapacityWithOvertime(
+                        date);
+                EffortDuration toAdd = distribution.get(each);
+                if (!capacity.isOverAssignableWithoutLimit()) {
+                    EffortDuration maximum = capacity.getStandardEffort().plus(
+                            capacity.getAllowedExtraEffort());
+                    EffortDuration alreadyAssigned = assignedEffort
+                            .getAssignedDurationAt(each, date);
+                    toAdd = alreadyAssigned.compareTo(maximum) >= 0 ? EffortDuration
+                            .zero() : EffortDuration.min(toAdd,
+                            maximum.minus(alreadyAssigned));
+                }
+                if (!toAdd.isZero()) {
+                    result.put(each, toAdd);
+                }
+            }
+            return result;
+        }
+
+        private Map<Resource, EffortDuration> distributeRemaining(
+                LocalDate date, EffortDuration remainingDuration,
+                IAssignedEffortForResource assignedEffort,
+                List<Resource> resources) {
+            List<Share> shares = new ArrayList<Share>();
+            for (Resource each : resources) {
+                int alreadyAssigned = assignedEffort.getAssignedDurationAt(
+                        each, date).getSeconds();
+                int capacityEachOne = calendarOf(each).asDurationOn(
+                        PartialDay.wholeDay(date), ONE).getSeconds();
+                int units = each.getCalendar().getCapacity();
+                for (int j = 0; j < units; j++) {
+                    shares.add(new Share(alreadyAssigned / units
+                            + (j < alreadyAssigned % units ? 1 : 0)
+                            - capacityEachOne));
+                }
+            }
+            ShareDivision current = ShareDivision.create(shares);
+            int[] differences = current.to(current.plus(remainingDuration
+                    .getSeconds()));
+            Map<Resource, EffortDuration> result = new LinkedHashMap<Resource, EffortDuration>();
+            int position = 0;
+            for (Resource each : resources) {
+                int sum = 0;
+                for (int j = 0; j < each.getCalendar().getCapacity(); j++) {
+                    sum += differences[position++];
+                }
+                if (sum != 0) {
+                    result.put(each, seconds(sum));
+                }
+            }
+            return result;
+        }
+
+        private static IAssignedEffortForResource sumAssignedEffort(
+                final Map<Resource, EffortDuration> distribution,
+                final IAssignedEffortForResource assignedEffort) {
+            return new IAssignedEffortForResource() {
+
+                @Override
+                public EffortDuration getAssignedDurationAt(
+                        Resource resource, LocalDate day) {
+                    EffortDuration previous = assignedEffort
+                            .getAssignedDurationAt(resource, day);
+                    EffortDuration added = distribution.get(resource);
+                    return added == null ? previous : previous.plus(added);
+                }
+            };
+        }
+
+        private static Map<Resource, EffortDuration> join(
+                Map<Resource, EffortDuration> a,
+                Map<Resource, EffortDuration> b) {
+            Map<Resource, EffortDuration> result = new LinkedHashMap<Resource, EffortDuration>(
+                    a);
+            for (Resource each : b.keySet()) {
+                EffortDuration previous = result.get(each);
+                result.put(each, previous == null ? b.get(each) : previous
+                        .plus(b.get(each)));
+            }
+            return result;
+        }
+
+        private static EffortDuration sum(
+                Iterable<? extends EffortDuration> durations) {
+            EffortDuration result = EffortDuration.zero();
+            for (EffortDuration each : durations) {
+                result = result.plus(each);
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -150,6 +150,18 @@ public class UntilFillingHoursAllocatorTest {
         assertThat(endDate.getEffortDuration(), equalTo(hours(0)));
     }
 
+    @Test
+    public void theEndDateIsFoundForAllocationsLastingManyDays() {
+        givenSpecificAllocations(ResourcesPerDay.amount(1));
+        IntraDayDate endDate = ResourceAllocation.allocating(allocations)
+                .untilAllocating(hours(8 * 100 + 3));
+        assertThat(endDate.getDate(),
+                equalTo(startDate.getDate().plusDays(100)));
+        assertThat(endDate.getEffortDuration(), equalTo(hours(3)));
+        assertThat(allocations.get(0).getBeingModified().getAssignments()
+                .size(), equalTo(101));
+    }
+
     @Test
     public void allTheRequestedHoursAreAssignedFor() {
         givenSpecificAllocations(ResourcesPerDay.amount(2));
@@ -0,0 +1,142 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.planner.limiting.entities;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.calendars.entities.ResourceCalendar;
+import org.libreplan.business.planner.limiting.entities.DateAndHour;
+import org.libreplan.business.planner.limiting.entities.Gap;
+import org.libreplan.business.planner.limiting.entities.LimitingResourceQueueElement;
+import org.libreplan.business.planner.limiting.entities.QueueGapIndex;
+import org.libreplan.business.resources.entities.Resource;
+import org.libreplan.business.workingday.EffortDuration;
+import org.libreplan.business.workingday.IntraDayDate.PartialDay;
+
+public class QueueGapIndexTest {
+
+    private static final LocalDate start = new LocalDate(2013, 1, 7);
+
+    private Resource resource;
+
+    private QueueGapIndex index;
+
+    private static DateAndHour day(int days) {
+        return new DateAndHour(start.plusDays(days), 0);
+    }
+
+    private static LimitingResourceQueueElement element(int startDay,
+            int endDay) {
+        LimitingResourceQueueElement result = createNiceMock(LimitingResourceQueueElement.class);
+        expect(result.getStartDate()).andReturn(start.plusDays(startDay))
+                .anyTimes();
+        expect(result.getStartTime()).andReturn(day(startDay)).anyTimes();
+        expect(result.getEndTime()).andReturn(day(endDay)).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    @Before
+    public void givenAResourceWorkingEightHoursEveryDay() {
+        ResourceCalendar calendar = createNiceMock(ResourceCalendar.class);
+        expect(calendar.getCapacityOn(isA(PartialDay.class))).andReturn(
+                EffortDuration.hours(8)).anyTimes();
+        replay(calendar);
+        resource = createNiceMock(Resource.class);
+        expect(resource.getCalendar()).andReturn(calendar).anyTimes();
+        replay(resource);
+        index = QueueGapIndex.create(resource,
+                Arrays.asList(element(2, 4), element(6, 7), element(10, 12)),
+                null);
+    }
+
+    @Test
+    public void thereIsAGapBeforeEachElementAndAfterTheLastOne() {
+        assertThat(index.size(), equalTo(3));
+        assertThat(index.getGapAt(1, day(0)).getHoursInGap(), equalTo(16));
+        assertThat(index.getGapAt(2, day(0)).getHoursInGap(), equalTo(24));
+        assertThat(index.getGapAt(3, day(0)).getEndTime(),
+                nullValue());
+    }
+
+    @Test
+    public void theFirstPositionSinceATimeIsTheFirstGapNotEndingBeforeIt() {
+        assertThat(index.firstPositionSince(day(0)), equalTo(0));
+        assertThat(index.firstPositionSince(day(5)), equalTo(1));
+        assertThat(index.firstPositionSince(day(6)), equalTo(1));
+        assertThat(index.firstPositionSince(day(8)), equalTo(2));
+        assertThat(index.firstPositionSince(day(13)), equalTo(3));
+    }
+
+    @Test
+    public void theGapsWithoutEnoughHoursAreSkipped() {
+        assertThat(index.nextPositionWithHours(1, 10), equalTo(1));
+        assertThat(index.nextPositionWithHours(1, 20), equalTo(2));
+        assertThat(index.nextPositionWithHours(1, 30), equalTo(3));
+        assertThat(index.nextPositionWithHours(4, 0), equalTo(-1));
+    }
+
+    @Test
+    public void theGapsStartAtTheRequestedTime() {
+        Gap gap = index.getGapAt(2, day(8));
+        assertThat(gap.getStartTime(), equalTo(day(8)));
+        assertThat(gap.getEndTime(), equalTo(day(10)));
+        assertThat(gap.getHoursInGap(), equalTo(16));
+    }
+
+    @Test
+    public void thereIsNoGapBeforeTheFirstElementIfItStartsBeforeTheTime() {
+        assertThat(index.getGapAt(0, day(3)), nullValue());
+        assertThat(index.getGapAt(0, day(0)).getEndTime(), equalTo(day(2)));
+    }
+
+    @Test
+    public void theGapsNotChangedAreReusedWhenTheIndexIsRebuilt() {
+        QueueGapIndex rebuilt = QueueGapIndex.create(resource,
+                Arrays.asList(element(2, 4), element(5, 6), element(6, 7),
+                        element(10, 12)), index);
+        assertThat(rebuilt.getGapAt(3, day(0)),
+                sameInstance(index.getGapAt(2, day(0))));
+        assertThat(rebuilt.getGapAt(2, day(0)).getHoursInGap(), equalTo(0));
+    }
+
+    @Test
+    public void anEmptyQueueHasOnlyTheLastGap() {
+        QueueGapIndex empty = QueueGapIndex.create(resource,
+                Collections.<LimitingResourceQueueElement> emptyList(), null);
+        assertThat(empty.getGapAt(0, day(1)).getStartTime(), equalTo(day(1)));
+        assertThat(empty.nextPositionWithHours(0, 100), equalTo(0));
+    }
+
+}
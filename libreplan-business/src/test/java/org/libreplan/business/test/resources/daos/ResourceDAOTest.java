@@ -24,13 +24,16 @@ package org.libreplan.business.test.resources.daos;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
 import static org.libreplan.business.test.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_TEST_FILE;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -44,6 +47,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.libreplan.business.IDataBootstrap;
+import org.libreplan.business.calendars.daos.IBaseCalendarDAO;
+import org.libreplan.business.calendars.entities.BaseCalendar;
+import org.libreplan.business.calendars.entities.CalendarAvailability;
 import org.libreplan.business.calendars.entities.ResourceCalendar;
 import org.libreplan.business.common.IAdHocTransactionService;
 import org.libreplan.business.common.IOnTransaction;
@@ -59,6 +65,7 @@ import org.libreplan.business.resources.entities.CriterionType;
 import org.libreplan.business.resources.entities.Interval;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.test.calendars.entities.BaseCalendarTest;
 import org.libreplan.business.users.daos.IUserDAO;
 import org.libreplan.business.users.entities.User;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -79,6 +86,9 @@ public class ResourceDAOTest {
     @Autowired
     private IResourceDAO resourceDAO;
 
+    @Autowired
+    private IBaseCalendarDAO baseCalendarDAO;
+
     @Autowired
     private ICriterionDAO criterionDAO;
 
@@ -124,6 +134,57 @@ public class ResourceDAOTest {
                 equalTo(resourceCalendar.getId()));
     }
 
+    @Test
+    @Transactional
+    public void onlyTheResourcesActiveBetweenTheDatesAreReturned() {
+        Worker withoutAvailabilities = givenValidWorker();
+        withoutAvailabilities.setCalendar(givenValidResourceCalendar());
+        resourceDAO.save(withoutAvailabilities);
+
+        Worker notActive = givenValidWorker();
+        ResourceCalendar calendar = givenValidResourceCalendar();
+        calendar.addNewCalendarAvailability(CalendarAvailability.create(
+                new LocalDate(2010, 1, 1), new LocalDate(2010, 12, 31)));
+        notActive.setCalendar(calendar);
+        resourceDAO.save(notActive);
+        resourceDAO.flush();
+
+        List<Resource> found = resourceDAO
+                .getResourcesActiveBetweenSortedByName(new LocalDate(2013, 1,
+                        1), new LocalDate(2013, 12, 31));
+        assertTrue(found.contains(withoutAvailabilities));
+        assertFalse(found.contains(notActive));
+
+        List<Resource> foundWithoutEnd = resourceDAO
+                .getResourcesActiveBetweenSortedByName(new LocalDate(2010, 6,
+                        1), null);
+        assertTrue(foundWithoutEnd.contains(notActive));
+    }
+
+    @Test
+    @Transactional
+    public void theResourcesWithACalendarDerivedFromSomeOfTheGivenAreFound() {
+        BaseCalendar baseCalendar = BaseCalendarTest.createBasicCalendar();
+        baseCalendar.setName("Base calendar " + UUID.randomUUID());
+        baseCalendarDAO.save(baseCalendar);
+
+        Worker derived = givenValidWorker();
+        derived.setCalendar(baseCalendar.newDerivedResourceCalendar());
+        resourceDAO.save(derived);
+
+        Worker notDerived = givenValidWorker();
+        notDerived.setCalendar(givenValidResourceCalendar());
+        resourceDAO.save(notDerived);
+        resourceDAO.flush();
+
+        List<Resource> found = resourceDAO.findUsingAnyOf(Arrays
+                .asList(baseCalendar));
+        assertThat(found.size(), equalTo(1));
+        assertTrue(found.contains(derived));
+        assertTrue(resourceDAO.findUsingAnyOf(
+                new ArrayList<BaseCalendar>()).isEmpty());
+    }
+
     private ResourceCalendar givenValidResourceCalendar() {
         ResourceCalendar resourceCalendar = ResourceCalendar.create();
         resourceCalendar.setName("Calendar");
@@ -0,0 +1,154 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.business.test.resources.entities;
+
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.planner.entities.SpecificDayAssignment;
+import org.libreplan.business.resources.entities.AssignedEffortPerDayCache;
+import org.libreplan.business.resources.entities.AssignedEffortPerDayCache.AssignedEffortPerDay;
+import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.business.workingday.EffortDuration;
+
+public class AssignedEffortPerDayCacheTest {
+
+    private static final LocalDate someDate = new LocalDate(2013, 1, 7);
+
+    private Worker worker;
+
+    private AssignedEffortPerDayCache cache;
+
+    @Before
+    public void setUp() {
+        worker = createNiceMock(Worker.class);
+        replay(worker);
+        cache = new AssignedEffortPerDayCache(2);
+    }
+
+    private SpecificDayAssignment assignment(int day, EffortDuration duration) {
+        return SpecificDayAssignment.create(someDate.plusDays(day), duration,
+                worker);
+    }
+
+    private AssignedEffortPerDay someEffort() {
+        return AssignedEffortPerDay.from(Arrays.asList(assignment(0, hours(8))));
+    }
+
+    @Test
+    public void theEffortOfTheAssignmentsOfTheSameDayIsSummed() {
+        AssignedEffortPerDay effort = AssignedEffortPerDay.from(Arrays.asList(
+                assignment(3, hours(2)), assignment(0, hours(4)),
+                assignment(3, hours(5))));
+        assertThat(effort.getNumberOfDays(), equalTo(2));
+        assertThat(effort.getAssignedEffortAt(someDate), equalTo(hours(4)));
+        assertThat(effort.getAssignedEffortAt(someDate.plusDays(3)),
+                equalTo(hours(7)));
+    }
+
+    @Test
+    public void theDaysWithoutAssignmentsHaveZeroEffort() {
+        AssignedEffortPerDay effort = AssignedEffortPerDay.from(Arrays.asList(
+                assignment(0, hours(4)), assignment(2, hours(4))));
+        assertThat(effort.getAssignedEffortAt(someDate.minusDays(1)),
+                equalTo(EffortDuration.zero()));
+        assertThat(effort.getAssignedEffortAt(someDate.plusDays(1)),
+                equalTo(EffortDuration.zero()));
+        assertThat(effort.getAssignedEffortAt(someDate.plusDays(10)),
+                equalTo(EffortDuration.zero()));
+        assertThat(AssignedEffortPerDay.from(
+                Collections.<SpecificDayAssignment> emptyList())
+                .getAssignedEffortAt(someDate), equalTo(EffortDuration.zero()));
+    }
+
+    @Test
+    public void theEntriesAreStoredByResourceAndScenario() {
+        assertTrue(cache.put(1L, 10L, cache.getVersion(1L), someEffort()));
+        assertThat(cache.get(1L, 10L), notNullValue());
+        assertThat(cache.get(1L, 11L), nullValue());
+        assertThat(cache.get(2L, 10L), nullValue());
+    }
+
+    @Test
+    public void theLeastRecentlyUsedEntryIsEvicted() {
+        cache.put(1L, 10L, cache.getVersion(1L), someEffort());
+        cache.put(2L, 10L, cache.getVersion(2L), someEffort());
+        cache.get(1L, 10L);
+        cache.put(3L, 10L, cache.getVersion(3L), someEffort());
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.get(1L, 10L), notNullValue());
+        assertThat(cache.get(2L, 10L), nullValue());
+        assertThat(cache.get(3L, 10L), notNullValue());
+    }
+
+    @Test
+    public void invalidatingAResourceRemovesAllItsEntries() {
+        cache.put(1L, 10L, cache.getVersion(1L), someEffort());
+        cache.put(1L, 11L, cache.getVersion(1L), someEffort());
+        cache.invalidate(1L);
+        assertThat(cache.size(), equalTo(0));
+    }
+
+    @Test
+    public void anEntryCalculatedBeforeAnInvalidationIsNotStored() {
+        long version = cache.getVersion(1L);
+        cache.invalidate(1L);
+        assertFalse(cache.put(1L, 10L, version, someEffort()));
+        assertThat(cache.get(1L, 10L), nullValue());
+
+        long otherVersion = cache.getVersion(2L);
+        cache.invalidateAll();
+        assertFalse(cache.put(2L, 10L, otherVersion, someEffort()));
+    }
+
+    @Test
+    public void aDayAssignmentAffectsTheEntriesOfItsResource() {
+        Worker stored = createNiceMock(Worker.class);
+        expect(stored.getId()).andReturn(1L).anyTimes();
+        replay(stored);
+        cache.put(1L, 10L, cache.getVersion(1L), someEffort());
+
+        Object key = cache.getKeyAffectedBy(SpecificDayAssignment.create(
+                someDate, hours(8), stored));
+        assertThat(key, equalTo((Object) 1L));
+        cache.invalidate(key);
+        assertThat(cache.get(1L, 10L), nullValue());
+
+        assertThat(cache.getKeyAffectedBy(assignment(0, hours(8))),
+                nullValue());
+        assertThat(cache.getKeyAffectedBy(stored), nullValue());
+    }
+
+}
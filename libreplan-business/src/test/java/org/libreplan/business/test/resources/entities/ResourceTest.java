@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.joda.time.Days;
 import org.joda.time.LocalDate;
@@ -162,6 +163,71 @@ public class ResourceTest {
         assertThat(worker.getCurrentCriterionsFor(type).size(), equalTo(2));
     }
 
+    @Test
+    @Transactional
+    public void theCompiledSatisfactionsAgreeWithTheQuery() {
+        Criterion criterion = CriterionDAOTest.createValidCriterion();
+        CriterionWithItsType criterionWithItsType = new CriterionWithItsType(
+                createTypeThatMatches(criterion), criterion);
+        Worker worker = Worker.create("firstName", "surName", "2333232");
+        worker.addSatisfaction(criterionWithItsType,
+                Interval.range(date(2000, 1, 10), date(2000, 1, 20)));
+        worker.addSatisfaction(criterionWithItsType,
+                Interval.point(date(2000, 1, 25)));
+        worker.addSatisfaction(criterionWithItsType,
+                Interval.from(date(2000, 2, 1)));
+        LocalDate day = date(2000, 1, 1);
+        while (day.isBefore(date(2000, 2, 10))) {
+            boolean expected = !worker.query().from(criterion).at(day)
+                    .result().isEmpty();
+            assertThat(criterion.isSatisfiedBy(worker, day), equalTo(expected));
+            day = day.plusDays(1);
+        }
+    }
+
+    @Test
+    @Transactional
+    public void theCompiledSatisfactionsAreDiscardedWhenTheyChange() {
+        Criterion criterion = CriterionDAOTest.createValidCriterion();
+        CriterionWithItsType criterionWithItsType = new CriterionWithItsType(
+                createTypeThatMatches(criterion), criterion);
+        Worker worker = Worker.create("firstName", "surName", "2333232");
+        assertFalse(criterion.isSatisfiedBy(worker, date(2000, 3, 1)));
+
+        CriterionSatisfaction satisfaction = worker.addSatisfaction(
+                criterionWithItsType, Interval.from(date(2000, 1, 1)));
+        assertTrue(criterion.isSatisfiedBy(worker, date(2000, 3, 1)));
+
+        worker.finishEnforcedAt(criterion, date(2000, 2, 1));
+        assertFalse(criterion.isSatisfiedBy(worker, date(2000, 3, 1)));
+        assertTrue(criterion.isSatisfiedBy(worker, date(2000, 1, 15)));
+
+        worker.removeCriterionSatisfaction(satisfaction);
+        assertFalse(criterion.isSatisfiedBy(worker, date(2000, 1, 15)));
+    }
+
+    @Test
+    @Transactional
+    public void severalCriterionsAreSatisfiedOnlyWhenAllOfThemAre() {
+        Criterion criterion = CriterionDAOTest.createValidCriterion();
+        Criterion otherCriterion = CriterionDAOTest.createValidCriterion();
+        ICriterionType<Criterion> type = createTypeThatMatches(criterion,
+                otherCriterion);
+        Worker worker = Worker.create("firstName", "surName", "2333232");
+        worker.addSatisfaction(new CriterionWithItsType(type, criterion),
+                Interval.range(date(2000, 1, 1), date(2000, 3, 1)));
+        worker.addSatisfaction(new CriterionWithItsType(type, otherCriterion),
+                Interval.from(date(2000, 2, 1)));
+        Set<Criterion> both = new HashSet<Criterion>(Arrays.asList(criterion,
+                otherCriterion));
+
+        assertFalse(worker.satisfiesCriterionsAt(both, date(2000, 1, 15)));
+        assertTrue(worker.satisfiesCriterionsAt(both, date(2000, 2, 15)));
+        assertFalse(worker.satisfiesCriterionsAt(both, date(2000, 3, 15)));
+        assertTrue(worker.satisfiesCriterionsAt(new HashSet<Criterion>(),
+                date(2000, 3, 15)));
+    }
+
     public static CriterionTypeBase createTypeThatMatches(
             final Criterion... criterions) {
         return createTypeThatMatches(true, criterions);
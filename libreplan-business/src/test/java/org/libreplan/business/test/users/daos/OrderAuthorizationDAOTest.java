@@ -24,6 +24,7 @@ package org.libreplan.business.test.users.daos;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
 import static org.libreplan.business.test.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_TEST_FILE;
 
@@ -48,6 +49,7 @@ import org.libreplan.business.users.daos.IProfileDAO;
 import org.libreplan.business.users.daos.IUserDAO;
 import org.libreplan.business.users.entities.OrderAuthorization;
 import org.libreplan.business.users.entities.OrderAuthorizationType;
+import org.libreplan.business.users.entities.OrderPermissionsCache.OrderPermissions;
 import org.libreplan.business.users.entities.Profile;
 import org.libreplan.business.users.entities.ProfileOrderAuthorization;
 import org.libreplan.business.users.entities.User;
@@ -221,4 +223,84 @@ public class OrderAuthorizationDAOTest {
         orderAuthorizationDAO.save(userOrderAuthorization);
         assertEquals(order.getId(),userOrderAuthorization.getOrder().getId());
     }
+
+    @Test
+    @Transactional
+    public void testGetOrderPermissionsOfUserAndItsProfiles() {
+        Profile profile = createValidProfile();
+        profileDAO.save(profile);
+        User user = createValidUser();
+        user.addProfile(profile);
+        userDAO.save(user);
+        User anotherUser = createValidUser();
+        userDAO.save(anotherUser);
+
+        Order readByUser = createValidOrder();
+        orderDAO.save(readByUser);
+        Order writtenByProfile = createValidOrder();
+        orderDAO.save(writtenByProfile);
+        Order readByUserWrittenByProfile = createValidOrder();
+        orderDAO.save(readByUserWrittenByProfile);
+        Order writtenByAnotherUser = createValidOrder();
+        orderDAO.save(writtenByAnotherUser);
+
+        UserOrderAuthorization userAuthorization1 = createValidUserOrderAuthorization();
+        userAuthorization1.setUser(user);
+        userAuthorization1.setOrder(readByUser);
+        orderAuthorizationDAO.save(userAuthorization1);
+
+        ProfileOrderAuthorization profileAuthorization1 = ProfileOrderAuthorization
+                .create(OrderAuthorizationType.WRITE_AUTHORIZATION);
+        profileAuthorization1.setProfile(profile);
+        profileAuthorization1.setOrder(writtenByProfile);
+        orderAuthorizationDAO.save(profileAuthorization1);
+
+        UserOrderAuthorization userAuthorization2 = createValidUserOrderAuthorization();
+        userAuthorization2.setUser(user);
+        userAuthorization2.setOrder(readByUserWrittenByProfile);
+        orderAuthorizationDAO.save(userAuthorization2);
+
+        ProfileOrderAuthorization profileAuthorization2 = ProfileOrderAuthorization
+                .create(OrderAuthorizationType.WRITE_AUTHORIZATION);
+        profileAuthorization2.setProfile(profile);
+        profileAuthorization2.setOrder(readByUserWrittenByProfile);
+        orderAuthorizationDAO.save(profileAuthorization2);
+
+        UserOrderAuthorization anotherUserAuthorization = UserOrderAuthorization
+                .create(OrderAuthorizationType.WRITE_AUTHORIZATION);
+        anotherUserAuthorization.setUser(anotherUser);
+        anotherUserAuthorization.setOrder(writtenByAnotherUser);
+        orderAuthorizationDAO.save(anotherUserAuthorization);
+
+        OrderPermissions permissions = orderAuthorizationDAO
+                .getOrderPermissionsOf(user.getLoginName());
+
+        assertEquals(3, permissions.getReadableOrderIds().size());
+        assertTrue(permissions.canRead(readByUser));
+        assertTrue(permissions.canRead(writtenByProfile));
+        assertTrue(permissions.canRead(readByUserWrittenByProfile));
+        assertFalse(permissions.canRead(writtenByAnotherUser));
+
+        assertFalse(permissions.canWrite(readByUser));
+        assertTrue(permissions.canWrite(writtenByProfile));
+        assertTrue(permissions.canWrite(readByUserWrittenByProfile));
+        assertFalse(permissions.canWrite(writtenByAnotherUser));
+    }
+
+    @Test
+    @Transactional
+    public void testGetOrderPermissionsOfUnknownUser() {
+        Order order = createValidOrder();
+        orderDAO.save(order);
+        UserOrderAuthorization userOrderAuthorization = createValidUserOrderAuthorization();
+        userOrderAuthorization.setOrder(order);
+        orderAuthorizationDAO.save(userOrderAuthorization);
+
+        OrderPermissions permissions = orderAuthorizationDAO
+                .getOrderPermissionsOf(UUID.randomUUID().toString());
+
+        assertTrue(permissions.getReadableOrderIds().isEmpty());
+        assertFalse(permissions.canRead(order));
+        assertFalse(permissions.canWrite(order));
+    }
 }
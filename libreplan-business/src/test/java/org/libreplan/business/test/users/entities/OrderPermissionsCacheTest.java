@@ -0,0 +1,130 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.business.test.users.entities;
+
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.orders.entities.Order;
+import org.libreplan.business.users.entities.OrderPermissionsCache;
+import org.libreplan.business.users.entities.OrderPermissionsCache.OrderPermissions;
+import org.libreplan.business.users.entities.User;
+
+public class OrderPermissionsCacheTest {
+
+    private OrderPermissionsCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new OrderPermissionsCache();
+    }
+
+    private static Order order(Long id) {
+        Order result = createNiceMock(Order.class);
+        expect(result.getId()).andReturn(id).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        Set<Long> result = new HashSet<Long>();
+        Collections.addAll(result, ids);
+        return result;
+    }
+
+    private static OrderPermissions somePermissions() {
+        return new OrderPermissions(ids(1L, 2L), ids(2L));
+    }
+
+    @Test
+    public void theOrdersThatCanBeReadAndWrittenAreKnown() {
+        OrderPermissions permissions = somePermissions();
+        assertTrue(permissions.canRead(order(1L)));
+        assertTrue(permissions.canRead(order(2L)));
+        assertFalse(permissions.canRead(order(3L)));
+        assertFalse(permissions.canWrite(order(1L)));
+        assertTrue(permissions.canWrite(order(2L)));
+    }
+
+    @Test
+    public void aNewOrderCantBeReadNorWritten() {
+        OrderPermissions permissions = somePermissions();
+        assertFalse(permissions.canRead(order(null)));
+        assertFalse(permissions.canWrite(order(null)));
+    }
+
+    @Test
+    public void theStoredPermissionsAreRetrievedByLoginName() {
+        OrderPermissions permissions = somePermissions();
+        assertTrue(cache.put("user", cache.getVersion(), permissions));
+        assertThat(cache.get("user"), equalTo(permissions));
+        assertThat(cache.get("other"), nullValue());
+        assertThat(cache.get(null), nullValue());
+    }
+
+    @Test
+    public void invalidatingRemovesAllTheEntries() {
+        cache.put("user", cache.getVersion(), somePermissions());
+        cache.put("other", cache.getVersion(), somePermissions());
+        cache.invalidateAll();
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.get("user"), nullValue());
+    }
+
+    @Test
+    public void anEntryCalculatedWhileInvalidatingIsDiscarded() {
+        long version = cache.getVersion();
+        cache.invalidateAll();
+        assertFalse(cache.put("user", version, somePermissions()));
+        assertThat(cache.get("user"), nullValue());
+
+        assertTrue(cache.put("user", cache.getVersion(), somePermissions()));
+        assertThat(cache.get("user"), notNullValue());
+    }
+
+    @Test
+    public void theModificationsOfUsersInvalidateAllTheEntries() {
+        cache.put("user", cache.getVersion(), somePermissions());
+        Object key = cache.getKeyAffectedBy(User.create());
+        assertThat(key, notNullValue());
+
+        cache.invalidate(key);
+        assertThat(cache.get("user"), nullValue());
+    }
+
+    @Test
+    public void theModificationsOfOtherEntitiesDontAffectTheCache() {
+        assertThat(cache.getKeyAffectedBy(order(1L)), nullValue());
+    }
+
+}
@@ -136,6 +136,10 @@ public class BaseCalendarCRUDController extends GenericForwardComposer {
             messagesForUser.showMessage(Level.INFO, _(
                     "Base calendar \"{0}\" saved", baseCalendarModel
                             .getBaseCalendar().getName()));
+            if (baseCalendarModel.recalculateAffectedAllocations() != null) {
+                messagesForUser.showMessage(Level.INFO,
+                        _("The affected allocations are being recalculated"));
+            }
             goToList();
         } catch (ValidationException e) {
             messagesForUser.showInvalidValues(e);
@@ -152,6 +156,10 @@ public class BaseCalendarCRUDController extends GenericForwardComposer {
             messagesForUser.showMessage(Level.INFO, _(
                     "Base calendar \"{0}\" saved", baseCalendarModel
                             .getBaseCalendar().getName()));
+            if (baseCalendarModel.recalculateAffectedAllocations() != null) {
+                messagesForUser.showMessage(Level.INFO,
+                        _("The affected allocations are being recalculated"));
+            }
         } catch (ValidationException e) {
             messagesForUser.showInvalidValues(e);
         }
@@ -47,6 +47,10 @@ import org.libreplan.business.common.entities.Configuration;
 import org.libreplan.business.common.entities.EntityNameEnum;
 import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.common.exceptions.ValidationException;
+import org.libreplan.business.planner.entities.AllocationsAffectingState;
+import org.libreplan.business.planner.entities.AllocationsRecalculationProgress;
+import org.libreplan.business.planner.entities.IAllocationsRecalculator;
+import org.libreplan.business.scenarios.IScenarioManager;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 import org.libreplan.web.common.IntegrationEntityModel;
@@ -88,6 +92,18 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
     @Autowired
     private ICalendarExceptionTypeDAO calendarExceptionTypeDAO;
 
+    @Autowired
+    private IAllocationsRecalculator allocationsRecalculator;
+
+    @Autowired
+    private IScenarioManager scenarioManager;
+
+    /**
+     * State of the edited calendar when it was loaded or last saved. It's
+     * <code>null</code> for new calendars, no allocation can use them yet.
+     */
+    private AllocationsAffectingState savedAllocationsAffectingState;
+
     /*
      * Non conversational steps
      */
@@ -116,6 +132,7 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
                 : false;
 
         this.baseCalendar = BaseCalendar.createBasicCalendar("");
+        savedAllocationsAffectingState = null;
 
         if (codeGenerated) {
             setDefaultCode();
@@ -131,6 +148,8 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
 
         this.baseCalendar = getFromDB(baseCalendar);
         forceLoad(this.baseCalendar);
+        savedAllocationsAffectingState = AllocationsAffectingState
+                .of(this.baseCalendar);
         initOldCodes();
     }
 
@@ -142,6 +161,7 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
 
         this.baseCalendar = getFromDB(baseCalendar).newDerivedCalendar();
         forceLoad(this.baseCalendar);
+        savedAllocationsAffectingState = null;
         this.baseCalendar.setCode("");
 
         boolean codeGenerated = (configurationDAO.getConfiguration() != null) ? configurationDAO
@@ -162,6 +182,7 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
 
         this.baseCalendar = getFromDB(baseCalendar).newCopy();
         forceLoad(this.baseCalendar);
+        savedAllocationsAffectingState = null;
         this.baseCalendar.setCode("");
 
         if (this.baseCalendar.isCodeAutogenerated()) {
@@ -576,6 +597,23 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
         dontPoseAsTransientObjectAnymore(baseCalendar);
     }
 
+    @Override
+    public AllocationsRecalculationProgress recalculateAffectedAllocations() {
+        BaseCalendar calendar = getBaseCalendar();
+        if (calendar == null || calendar.getId() == null) {
+            return null;
+        }
+        AllocationsAffectingState current = AllocationsAffectingState
+                .of(calendar);
+        AllocationsAffectingState previous = savedAllocationsAffectingState;
+        savedAllocationsAffectingState = current;
+        if (!AllocationsAffectingState.hasChanged(previous, current)) {
+            return null;
+        }
+        return allocationsRecalculator.recalculateAllocationsAffectedBy(
+                calendar.getId(), scenarioManager.getCurrent().getId());
+    }
+
     /**
      * Don't pose as transient anymore calendar and all data hanging from
      * calendar (data versions, availabilities and exceptions)
@@ -630,6 +668,7 @@ public class BaseCalendarModel extends IntegrationEntityModel implements
 
     private void resetState() {
         baseCalendar = null;
+        savedAllocationsAffectingState = null;
     }
 
     @Override
@@ -34,6 +34,7 @@ import org.libreplan.business.calendars.entities.CalendarException;
 import org.libreplan.business.calendars.entities.CalendarExceptionType;
 import org.libreplan.business.calendars.entities.Capacity;
 import org.libreplan.business.common.exceptions.ValidationException;
+import org.libreplan.business.planner.entities.AllocationsRecalculationProgress;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.web.common.IIntegrationEntityModel;
 
@@ -190,6 +191,16 @@ public interface IBaseCalendarModel extends IIntegrationEntityModel {
 
     void confirmSaveAndContinue() throws ValidationException;
 
+    /**
+     * Recalculates in background the allocations of the resources using the
+     * saved calendar, if its capacities have changed since it was loaded or
+     * last saved. It must be called once the calendar has been saved.
+     *
+     * @return the progress of the recalculation or <code>null</code> if it
+     *         isn't needed
+     */
+    AllocationsRecalculationProgress recalculateAffectedAllocations();
+
     void confirmRemove(BaseCalendar calendar);
 
     void cancel();
@@ -80,10 +80,6 @@ import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.scenarios.bootstrap.PredefinedScenarios;
 import org.libreplan.business.scenarios.entities.Scenario;
 import org.libreplan.business.users.daos.IOrderAuthorizationDAO;
-import org.libreplan.business.users.daos.IUserDAO;
-import org.libreplan.business.users.entities.OrderAuthorization;
-import org.libreplan.business.users.entities.OrderAuthorizationType;
-import org.libreplan.business.users.entities.User;
 import org.libreplan.business.users.entities.UserRole;
 import org.libreplan.business.workingday.EffortDuration;
 import org.libreplan.business.workingday.IntraDayDate;
@@ -107,9 +103,6 @@ public class LimitingResourceQueueModel implements ILimitingResourceQueueModel {
     @Autowired
     private IOrderDAO orderDAO;
 
-    @Autowired
-    private IUserDAO userDAO;
-
     @Autowired
     private IOrderAuthorizationDAO orderAuthorizationDAO;
 
@@ -137,6 +130,11 @@ public class LimitingResourceQueueModel implements ILimitingResourceQueueModel {
 
     private Set<TaskElement> parentElementsToBeUpdated = new HashSet<TaskElement>();
 
+    /**
+     * Only used while several elements are assigned at once
+     */
+    private ParallelGapSearch parallelGapSearch;
+
     private Scenario master;
 
     private Map<LimitingResourceQueueElement, HashSet<LimitingResourceQueueDependency>> toBeSavedDependencies =
@@ -392,21 +390,8 @@ public class LimitingResourceQueueModel implements ILimitingResourceQueueModel {
                 UserRole.ROLE_EDIT_ALL_PROJECTS)) {
             return true;
         }
-        try {
-            User user = userDAO.findByLoginName(loginName);
-            for (OrderAuthorization authorization : orderAuthorizationDAO
-                    .listByOrderUserAndItsProfiles(order, user)) {
-                if (authorization.getAuthorizationType() == OrderAuthorizationType.READ_AUTHORIZATION
-                        || authorization.getAuthorizationType() == OrderAuthorizationType.WRITE_AUTHORIZATION) {
-                    return true;
-                }
-            }
-        } catch (InstanceNotFoundException e) {
-            // this case shouldn't happen, because it would mean that there
-            // isn't a logged user
-            // anyway, if it happenned we don't allow the user to pass
-        }
-        return false;
+        return orderAuthorizationDAO.getOrderPermissionsOf(loginName).canRead(
+                order);
     }
 
     @Override
@@ -641,12 +626,21 @@ public class LimitingResourceQueueModel implements ILimitingResourceQueueModel {
      * @return
      */
     private AllocationSpec findAllocationSpecFor(InsertionRequirements requirements) {
+        if (parallelGapSearch != null) {
+            return parallelGapSearch.findAllocationSpecFor(requirements,
+                    getAssignableQueues(requirements.getElement()));
+        }
         List<GapOnQueue> potentiallyValidGapsFor = queuesState
                 .getPotentiallyValidGapsFor(requirements);
         return findAllocationSpecFor(potentiallyValidGapsFor, requirements);
     }
 
-    private AllocationSpec findAllocationSpecFor(List<GapOnQueue> gapsOnQueue, InsertionRequirements requirements) {
+    /**
+     * Evaluates the gaps one after the other. It's the search that
+     * {@link ParallelGapSearch} must be equivalent to
+     */
+    static AllocationSpec findAllocationSpecFor(List<GapOnQueue> gapsOnQueue,
+            InsertionRequirements requirements) {
         boolean generic = requirements.getElement().isGeneric();
         for (GapOnQueue each : gapsOnQueue) {
             for (GapOnQueue eachSubGap : getSubGaps(each,
@@ -744,7 +738,7 @@ public class LimitingResourceQueueModel implements ILimitingResourceQueueModel {
         return checkAllocationIsAppropriative;
     }
 
-    private List<GapOnQueue> getSubGaps(GapOnQueue each,
+    private static List<GapOnQueue> getSubGaps(GapOnQueue each,
             LimitingResourceQueueElement element, boolean generic) {
         if (generic) {
             return each.splitIntoGapsSatisfyingCriteria(element.getCriteria());
@@ -1236,12 +1230,24 @@ public class LimitingResourceQueueModel implements ILimitingResourceQueueModel {
     }
 
 
+    /**
+     * The elements are assigned one after the other, but the queues where
+     * each one could be assigned are evaluated in parallel. The changes are
+     * saved together on {@link #confirm()}.
+     */
     @Override
     public Set<LimitingResourceQueueElement> assignLimitingResourceQueueElements(
             List<LimitingResourceQueueElement> queueElements) {
         Set<LimitingResourceQueueElement> result = new HashSet<LimitingResourceQueueElement>();
-        for (LimitingResourceQueueElement each: queuesState.inTopologicalOrder(queueElements)) {
-            result.addAll(assignLimitingResourceQueueElement(each));
+        parallelGapSearch = ParallelGapSearch.create();
+        try {
+            for (LimitingResourceQueueElement each : queuesState
+                    .inTopologicalOrder(queueElements)) {
+                result.addAll(assignLimitingResourceQueueElement(each));
+            }
+        } finally {
+            parallelGapSearch.dispose();
+            parallelGapSearch = null;
         }
         return result;
     }
@@ -0,0 +1,218 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.limitingresources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.libreplan.business.calendars.entities.AvailabilityTimeLine;
+import org.libreplan.business.calendars.entities.ResourceCalendar;
+import org.libreplan.business.planner.entities.AvailabilityCalculator;
+import org.libreplan.business.planner.limiting.entities.AllocationSpec;
+import org.libreplan.business.planner.limiting.entities.Gap.GapOnQueue;
+import org.libreplan.business.planner.limiting.entities.InsertionRequirements;
+import org.libreplan.business.planner.limiting.entities.LimitingResourceQueueElement;
+import org.libreplan.business.resources.entities.Criterion;
+import org.libreplan.business.resources.entities.LimitingResourceQueue;
+
+/**
+ * <p>
+ * Finds the first valid {@link AllocationSpec} for an element evaluating each
+ * of the candidate queues in a different thread. It's intended to be used when
+ * a lot of elements are assigned at once, so the threads and the availability
+ * of the criteria of the resources are reused between elements.
+ * </p>
+ * <p>
+ * Everything that could need the session is done in the calling thread before
+ * starting the threads: the potentially valid gaps of each queue are
+ * retrieved, the capacity index of each calendar is built and the
+ * availability of the criteria is calculated. The threads only split the gaps
+ * and check the allocation on them, reading the capacity from the built
+ * indexes, so the calendars mustn't be modified while searching. Then the
+ * result is the first valid one in the order given by {@link GapsMergeSort},
+ * as it happens when the queues are evaluated one after the other.
+ * </p>
+ * <p>
+ * {@link #dispose()} must be called once it's not needed anymore.
+ * </p>
+ */
+public class ParallelGapSearch {
+
+    public static ParallelGapSearch create() {
+        return new ParallelGapSearch(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static class FirstValid {
+
+        private final GapOnQueue gap;
+
+        private final AllocationSpec allocation;
+
+        FirstValid(GapOnQueue gap, AllocationSpec allocation) {
+            this.gap = gap;
+            this.allocation = allocation;
+        }
+    }
+
+    private final ExecutorService executor;
+
+    private final Map<LimitingResourceQueue, Map<Set<Criterion>, AvailabilityTimeLine>> criteriaAvailability = new HashMap<LimitingResourceQueue, Map<Set<Criterion>, AvailabilityTimeLine>>();
+
+    private ParallelGapSearch(int threads) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    }
+
+    /**
+     * @return <code>null</code> if there is no valid allocation in any of the
+     *         queues
+     */
+    public AllocationSpec findAllocationSpecFor(
+            InsertionRequirements requirements,
+            List<LimitingResourceQueue> queues) {
+        List<List<GapOnQueue>> gapsByQueue = new ArrayList<List<GapOnQueue>>();
+        List<Callable<FirstValid>> searches = new ArrayList<Callable<FirstValid>>();
+        for (LimitingResourceQueue each : queues) {
+            List<GapOnQueue> gaps = each.getGapsPotentiallyValidFor(requirements);
+            gapsByQueue.add(gaps);
+            searches.add(firstValidOn(gaps, requirements,
+                    getCriteriaAvailability(each, requirements.getElement())));
+            loadCalendar(each);
+        }
+        Map<GapOnQueue, AllocationSpec> found = new HashMap<GapOnQueue, AllocationSpec>();
+        for (FirstValid each : runAll(searches)) {
+            if (each != null) {
+                found.put(each.gap, each.allocation);
+            }
+        }
+        if (found.isEmpty()) {
+            return null;
+        }
+        for (GapOnQueue each : GapsMergeSort.sort(gapsByQueue)) {
+            AllocationSpec result = found.get(each);
+            if (result != null) {
+                return result;
+            }
+        }
+        throw new IllegalStateException(
+                "the valid gaps must be in the merged gaps");
+    }
+
+    /**
+     * @return <code>null</code> if the element is not generic
+     */
+    private AvailabilityTimeLine getCriteriaAvailability(
+            LimitingResourceQueue queue, LimitingResourceQueueElement element) {
+        if (!element.isGeneric()) {
+            return null;
+        }
+        Map<Set<Criterion>, AvailabilityTimeLine> byCriteria = criteriaAvailability
+                .get(queue);
+        if (byCriteria == null) {
+            byCriteria = new HashMap<Set<Criterion>, AvailabilityTimeLine>();
+            criteriaAvailability.put(queue, byCriteria);
+        }
+        Set<Criterion> criteria = new HashSet<Criterion>(element.getCriteria());
+        AvailabilityTimeLine result = byCriteria.get(criteria);
+        if (result == null) {
+            result = AvailabilityCalculator.getCriterionsAvailabilityFor(
+                    criteria, queue.getResource());
+            byCriteria.put(criteria, result);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the capacity index of the calendar in this thread, so all its
+     * data is retrieved here and the threads only read the built index
+     */
+    private void loadCalendar(LimitingResourceQueue queue) {
+        ResourceCalendar calendar = queue.getResource().getCalendar();
+        if (calendar != null) {
+            calendar.loadCapacityIndex();
+        }
+    }
+
+    private Callable<FirstValid> firstValidOn(final List<GapOnQueue> gaps,
+            final InsertionRequirements requirements,
+            final AvailabilityTimeLine criteriaAvailability) {
+        return new Callable<FirstValid>() {
+
+            @Override
+            public FirstValid call() {
+                for (GapOnQueue each : gaps) {
+                    for (GapOnQueue eachSubGap : getSubGaps(each,
+                            criteriaAvailability)) {
+                        AllocationSpec allocation = requirements
+                                .guessValidity(eachSubGap);
+                        if (allocation.isValid()) {
+                            return new FirstValid(each, allocation);
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private static List<GapOnQueue> getSubGaps(GapOnQueue gap,
+            AvailabilityTimeLine criteriaAvailability) {
+        if (criteriaAvailability != null) {
+            return gap.splitIntoGapsSatisfyingCriteria(criteriaAvailability);
+        }
+        return Collections.singletonList(gap);
+    }
+
+    private List<FirstValid> runAll(List<Callable<FirstValid>> searches) {
+        List<FirstValid> result = new ArrayList<FirstValid>();
+        try {
+            if (searches.size() == 1) {
+                result.add(searches.get(0).call());
+                return result;
+            }
+            for (Future<FirstValid> each : executor.invokeAll(searches)) {
+                result.add(each.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void dispose() {
+        executor.shutdownNow();
+    }
+
+}
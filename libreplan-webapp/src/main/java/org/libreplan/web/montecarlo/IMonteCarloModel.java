@@ -38,6 +38,22 @@ public interface IMonteCarloModel {
     Map<LocalDate, BigDecimal> calculateMonteCarlo(List<MonteCarloTask> tasks,
             int times, IDesktopUpdatesEmitter<Integer> iterationProgress);
 
+    /**
+     * Runs the simulation with the given seed, so the result can be
+     * reproduced
+     */
+    MonteCarloResult simulate(List<MonteCarloTask> tasks, int iterations,
+            long seed, IDesktopUpdatesEmitter<Integer> iterationProgress);
+
+    /**
+     * Runs the simulation over the dependencies among all the tasks of the
+     * order. The values of the tasks specified are used, the rest of tasks
+     * use the default ones.
+     */
+    MonteCarloResult simulateNetwork(List<MonteCarloTask> tasks,
+            int iterations, long seed,
+            IDesktopUpdatesEmitter<Integer> iterationProgress);
+
     void setCriticalPath(List<TaskElement> criticalPath);
 
     String getOrderName();
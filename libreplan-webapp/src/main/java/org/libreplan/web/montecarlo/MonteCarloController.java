@@ -26,9 +26,7 @@ import static org.libreplan.web.I18nHelper._;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.joda.time.LocalDate;
 import org.libreplan.web.common.Util;
 import org.libreplan.web.montecarlo.MonteCarloGraphController.IOnClose;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -86,6 +84,8 @@ public class MonteCarloController extends GenericForwardComposer {
 
     private Checkbox cbGroupByWeeks;
 
+    private Checkbox cbWholeNetwork;
+
     private Listbox lbCriticalPaths;
 
     private Progressmeter progressMonteCarloCalculation;
@@ -131,16 +131,27 @@ public class MonteCarloController extends GenericForwardComposer {
                 try {
                     updatesEmitter.doUpdate(disableButton(true));
                     int iterations = getIterations();
-                    final Map<LocalDate, BigDecimal> monteCarloData = monteCarloModel
-                            .calculateMonteCarlo(getSelectedCriticalPath(),
-                                    iterations,
-                                    percentageCompletedNotifier(updatesEmitter));
+                    final MonteCarloResult monteCarloData = simulate(
+                            iterations,
+                            percentageCompletedNotifier(updatesEmitter));
                     updatesEmitter.doUpdate(showCalculatedData(monteCarloData));
                 } finally {
                     updatesEmitter.doUpdate(disableButton(false));
                 }
             }
 
+            private MonteCarloResult simulate(int iterations,
+                    IDesktopUpdatesEmitter<Integer> iterationProgress) {
+                long seed = System.currentTimeMillis();
+                if (cbWholeNetwork.isChecked()) {
+                    return monteCarloModel.simulateNetwork(
+                            getSelectedCriticalPath(), iterations, seed,
+                            iterationProgress);
+                }
+                return monteCarloModel.simulate(getSelectedCriticalPath(),
+                        iterations, seed, iterationProgress);
+            }
+
             private IDesktopUpdate disableButton(final boolean disable) {
                 return new IDesktopUpdate() {
 
@@ -222,7 +233,7 @@ public class MonteCarloController extends GenericForwardComposer {
             }
 
             private IDesktopUpdate showCalculatedData(
-                    final Map<LocalDate, BigDecimal> monteCarloData) {
+                    final MonteCarloResult monteCarloData) {
                 return new IDesktopUpdate() {
 
                     @Override
@@ -232,7 +243,7 @@ public class MonteCarloController extends GenericForwardComposer {
                 };
             }
 
-            private void showMonteCarloGraph(Map<LocalDate, BigDecimal> data) {
+            private void showMonteCarloGraph(MonteCarloResult data) {
                 monteCarloChartWindow = createMonteCarloGraphWindow(data);
                 try {
                     monteCarloChartWindow.setMode("modal");
@@ -242,7 +253,7 @@ public class MonteCarloController extends GenericForwardComposer {
             }
 
             private Window createMonteCarloGraphWindow(
-                    Map<LocalDate, BigDecimal> data) {
+                    MonteCarloResult data) {
                 HashMap<String, Object> args = new HashMap<String, Object>();
                 args.put("monteCarloGraphController",
                         new MonteCarloGraphController());
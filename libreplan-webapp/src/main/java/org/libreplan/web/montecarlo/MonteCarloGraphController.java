@@ -19,12 +19,17 @@
 package org.libreplan.web.montecarlo;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.StringUtils;
 
 import org.joda.time.LocalDate;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -36,6 +41,7 @@ import org.zkoss.zul.CategoryModel;
 import org.zkoss.zul.Chart;
 import org.zkoss.zul.Datebox;
 import org.zkoss.zul.Decimalbox;
+import org.zkoss.zul.Label;
 import org.zkoss.zul.SimpleCategoryModel;
 
 /**
@@ -60,6 +66,12 @@ public class MonteCarloGraphController extends GenericForwardComposer {
 
     private Decimalbox dbIntervalProbability;
 
+    private Label lbPercentiles;
+
+    private Label lbCriticalTasks;
+
+    private static final int MAX_CRITICAL_TASKS_SHOWN = 5;
+
     private List<LocalDate> dates;
 
     private Map<LocalDate, BigDecimal> monteCarloValues;
@@ -80,6 +92,45 @@ public class MonteCarloGraphController extends GenericForwardComposer {
 
     private IOnClose onClose = null;
 
+    public void generateMonteCarloGraph(String orderName,
+            MonteCarloResult result, boolean byWeek, IOnClose onClose) {
+        generateMonteCarloGraph(orderName, result.getProbabilities(), byWeek,
+                onClose);
+        lbPercentiles.setValue(toString(result.getDefaultPercentiles()));
+        lbCriticalTasks.setValue(mostCriticalTasks(result
+                .getCriticalityIndex()));
+    }
+
+    private String mostCriticalTasks(
+            Map<MonteCarloTask, BigDecimal> criticalityIndex) {
+        List<Entry<MonteCarloTask, BigDecimal>> sorted = new ArrayList<Entry<MonteCarloTask, BigDecimal>>(
+                criticalityIndex.entrySet());
+        Collections.sort(sorted,
+                new Comparator<Entry<MonteCarloTask, BigDecimal>>() {
+                    @Override
+                    public int compare(Entry<MonteCarloTask, BigDecimal> o1,
+                            Entry<MonteCarloTask, BigDecimal> o2) {
+                        return o2.getValue().compareTo(o1.getValue());
+                    }
+                });
+        List<String> result = new ArrayList<String>();
+        for (Entry<MonteCarloTask, BigDecimal> each : sorted.subList(0,
+                Math.min(sorted.size(), MAX_CRITICAL_TASKS_SHOWN))) {
+            result.add(each.getKey().getTaskName() + " ("
+                    + each.getValue().movePointRight(2).setScale(0,
+                            RoundingMode.HALF_UP) + "%)");
+        }
+        return StringUtils.join(result, ", ");
+    }
+
+    private String toString(Map<Integer, LocalDate> percentiles) {
+        List<String> result = new ArrayList<String>();
+        for (Entry<Integer, LocalDate> each : percentiles.entrySet()) {
+            result.add("P" + each.getKey() + ": " + each.getValue());
+        }
+        return StringUtils.join(result, ", ");
+    }
+
     public void generateMonteCarloGraph(String orderName,
             Map<LocalDate, BigDecimal> data, boolean byWeek, IOnClose onClose) {
         this.onClose = onClose;
@@ -24,19 +24,15 @@ package org.libreplan.web.montecarlo;
 import static org.libreplan.web.I18nHelper._;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.Validate;
 import org.hibernate.Hibernate;
 import org.joda.time.LocalDate;
 import org.libreplan.business.orders.entities.Order;
@@ -45,6 +41,7 @@ import org.libreplan.business.planner.daos.ITaskElementDAO;
 import org.libreplan.business.planner.entities.Dependency;
 import org.libreplan.business.planner.entities.Task;
 import org.libreplan.business.planner.entities.TaskElement;
+import org.libreplan.business.planner.entities.TaskGroup;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
@@ -77,6 +74,12 @@ public class MonteCarloModel implements IMonteCarloModel {
 
     private List<Task> tasksInCriticalPath;
 
+    /**
+     * Default values for all the tasks in the order, used when simulating all
+     * the dependencies
+     */
+    private Map<Task, MonteCarloTask> tasksInOrder = new LinkedHashMap<Task, MonteCarloTask>();
+
     @Override
     @Transactional(readOnly = true)
     public void setCriticalPath(List<TaskElement> tasksInCriticalPath) {
@@ -128,6 +131,7 @@ public class MonteCarloModel implements IMonteCarloModel {
      * @param root
      */
     private void initializeTasksInOrder(Order root) {
+        tasksInOrder.clear();
         initializeTask(root);
         for (OrderElement each: root.getAllChildren()) {
             Hibernate.initialize(each);
@@ -141,6 +145,13 @@ public class MonteCarloModel implements IMonteCarloModel {
             taskDAO.reattach(task);
             task.getCalendar();
             initializeDependenciesFor(task);
+            if (task instanceof Task) {
+                tasksInOrder.put((Task) task,
+                        MonteCarloTask.create((Task) task));
+            }
+            if (task instanceof TaskGroup) {
+                Hibernate.initialize(((TaskGroup) task).getChildren());
+            }
         }
     }
 
@@ -194,29 +205,33 @@ public class MonteCarloModel implements IMonteCarloModel {
 
     @Override
     public Map<LocalDate, BigDecimal> calculateMonteCarlo(
-            List<MonteCarloTask> _tasks, int iterations,
+            List<MonteCarloTask> tasks, int iterations,
             IDesktopUpdatesEmitter<Integer> iterationProgress) {
+        return simulate(tasks, iterations, System.currentTimeMillis(),
+                iterationProgress).getProbabilities();
+    }
 
-        MonteCarloCalculation monteCarloCalculation = new MonteCarloCalculation(
-                copyOf(_tasks), iterations, iterationProgress);
-        Map<LocalDate, BigDecimal> monteCarloValues = monteCarloCalculation.doCalculation();
-
-        // Convert number of times to probability
-        for (LocalDate key : monteCarloValues.keySet()) {
-            BigDecimal times = monteCarloValues.get(key);
-            BigDecimal probability = times.divide(
-                    BigDecimal.valueOf(iterations), 8, RoundingMode.HALF_UP);
-            monteCarloValues.put(key, probability);
-        }
-        return monteCarloValues;
+    @Override
+    public MonteCarloResult simulate(List<MonteCarloTask> tasks,
+            int iterations, long seed,
+            IDesktopUpdatesEmitter<Integer> iterationProgress) {
+        return MonteCarloSimulation.onPath(tasks).run(iterations, seed,
+                iterationProgress);
     }
 
-    private List<MonteCarloTask> copyOf(List<MonteCarloTask> _tasks) {
-        List<MonteCarloTask> result = new ArrayList<MonteCarloTask>();
-        for (MonteCarloTask each: _tasks) {
-            result.add(MonteCarloTask.copy(each));
+    @Override
+    public MonteCarloResult simulateNetwork(List<MonteCarloTask> tasks,
+            int iterations, long seed,
+            IDesktopUpdatesEmitter<Integer> iterationProgress) {
+        Map<Task, MonteCarloTask> network = new LinkedHashMap<Task, MonteCarloTask>(
+                tasksInOrder);
+        for (MonteCarloTask each : tasks) {
+            network.put(each.getTask(), each);
         }
-        return result;
+        return MonteCarloSimulation.onNetwork(
+                MonteCarloNetwork.fromDependencies(new ArrayList<MonteCarloTask>(
+                        network.values()))).run(iterations, seed,
+                iterationProgress);
     }
 
     @Override
@@ -232,120 +247,4 @@ public class MonteCarloModel implements IMonteCarloModel {
         return StringUtils.join(result, ",");
     }
 
-    private static class MonteCarloCalculation {
-
-        private Map<MonteCarloTask, Set<EstimationRange>> estimationRangesForTasks = new HashMap<MonteCarloTask, Set<EstimationRange>>();
-
-        private List<MonteCarloTask> tasks;
-
-        private int iterations;
-
-        private IDesktopUpdatesEmitter<Integer> iterationProgress;
-
-        public MonteCarloCalculation(List<MonteCarloTask> tasks,
-                int iterations,
-                IDesktopUpdatesEmitter<Integer> iterationProgress) {
-            adjustDurationDays(tasks);
-            initializeEstimationRanges(tasks);
-            this.tasks = tasks;
-            this.iterations = iterations;
-            this.iterationProgress = iterationProgress;
-        }
-
-        public Map<LocalDate, BigDecimal> doCalculation() {
-            Map<LocalDate, BigDecimal> result = new HashMap<LocalDate, BigDecimal>();
-
-            final int ONE_PERCENT = iterations / 100;
-            Random randomGenerator = new Random((new Date()).getTime());
-            // Calculate number of times a date is repeated
-            for (int i = 0; i < iterations; i++) {
-                LocalDate endDate = calculateEndDateFor(tasks, randomGenerator);
-                BigDecimal times = result.get(endDate);
-                times = times != null ? times.add(BigDecimal.ONE) : BigDecimal.ONE;
-                result.put(endDate, times);
-                if (i % ONE_PERCENT == 0) {
-                    increaseProgressMeter((i * 100) / iterations);
-                }
-            }
-
-            return result;
-        }
-
-        private void increaseProgressMeter(int completedPercent) {
-            iterationProgress.doUpdate(completedPercent);
-        }
-
-        private LocalDate calculateEndDateFor(List<MonteCarloTask> tasks,
-                Random randomGenerator) {
-            Validate.notEmpty(tasks);
-            BigDecimal durationDays = BigDecimal.ZERO;
-            MonteCarloTask first = tasks.get(0);
-
-            for (MonteCarloTask each : tasks) {
-                BigDecimal randomNumber = generate(randomGenerator);
-                durationDays = durationDays.add(getDuration(each, randomNumber));
-            }
-            return first.getStartDate().plusDays(durationDays.intValue());
-        }
-
-        private BigDecimal generate(Random randomGenerator) {
-            return BigDecimal.valueOf(randomGenerator.nextDouble());
-        }
-
-        private BigDecimal getDuration(MonteCarloTask each, BigDecimal random) {
-            ESTIMATION_TYPE type = getEstimationType(each, random);
-            Validate.notNull(type);
-            switch (type) {
-            case PESSIMISTIC:
-                BigDecimal duration = each.getPessimisticDuration();
-                return duration;
-            case NORMAL:
-                return each.getNormalDuration();
-            case OPTIMISTIC:
-                return each.getOptimisticDuration();
-            }
-            return BigDecimal.ZERO;
-        }
-
-        private void adjustDurationDays(List<MonteCarloTask> tasks) {
-            for (MonteCarloTask each : tasks) {
-                each.setPessimisticDuration(MonteCarloTask
-                        .calculateRealDurationFor(each,
-                                each.getPessimisticDuration()));
-                each.setNormalDuration(MonteCarloTask.calculateRealDurationFor(
-                        each, each.getNormalDuration()));
-                each.setOptimisticDuration(MonteCarloTask.calculateRealDurationFor(
-                        each, each.getOptimisticDuration()));
-            }
-        }
-
-        private void initializeEstimationRanges(List<MonteCarloTask> tasks) {
-            estimationRangesForTasks.clear();
-            for (MonteCarloTask each : tasks) {
-                createEstimationRangesFor(each);
-            }
-        }
-
-        private void createEstimationRangesFor(MonteCarloTask task) {
-            Set<EstimationRange> estimationRanges = new HashSet<EstimationRange>();
-            estimationRanges.add(EstimationRange.pessimisticRangeFor(task));
-            estimationRanges.add(EstimationRange.normalRangeFor(task));
-            estimationRanges.add(EstimationRange.optimisticRangeFor(task));
-            estimationRangesForTasks.put(task, estimationRanges);
-        }
-
-        public ESTIMATION_TYPE getEstimationType(MonteCarloTask task,
-                BigDecimal random) {
-            Set<EstimationRange> estimationRanges = estimationRangesForTasks
-                    .get(task);
-            for (EstimationRange each : estimationRanges) {
-                if (each.contains(random)) {
-                    return each.getEstimationType();
-                }
-            }
-            return null;
-        }
-
-    }
-
 }
@@ -0,0 +1,388 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.montecarlo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.Validate;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.libreplan.business.planner.entities.Dependency;
+import org.libreplan.business.planner.entities.TaskElement;
+import org.libreplan.business.planner.entities.TaskGroup;
+
+/**
+ * <p>
+ * Dependency network simulated by {@link MonteCarloSimulation}. Every node is
+ * a leaf of the plan: a {@link MonteCarloTask} or a milestone, that always
+ * lasts zero days.
+ * </p>
+ * <p>
+ * The nodes are sorted topologically and the predecessors of each node are
+ * kept in arrays, as in a compressed sparse row matrix, so a forward pass is
+ * just a loop over arrays. The dates are days from {@link #getStart()}.
+ * </p>
+ */
+public class MonteCarloNetwork {
+
+    static final int END_START = 0;
+
+    static final int START_START = 1;
+
+    static final int END_END = 2;
+
+    static final int START_END = 3;
+
+    /**
+     * The tasks are done one after the other beginning at the start of the
+     * first one, as in a critical path
+     */
+    public static MonteCarloNetwork path(List<MonteCarloTask> tasks) {
+        Validate.notEmpty(tasks);
+        int size = tasks.size();
+        int[] predecessorsStart = new int[size + 1];
+        int[] predecessors = new int[Math.max(0, size - 1)];
+        int[] types = new int[predecessors.length];
+        for (int i = 1; i < size; i++) {
+            predecessorsStart[i + 1] = i;
+            predecessors[i - 1] = i - 1;
+            types[i - 1] = END_START;
+        }
+        return new MonteCarloNetwork(tasks.get(0).getStartDate(), tasks,
+                new int[size], predecessorsStart, predecessors, types);
+    }
+
+    /**
+     * Builds the network following the {@link Dependency dependencies} among
+     * the tasks. A dependency involving a {@link TaskGroup} is applied to all
+     * its leaves. So, a dependency from the start of a {@link TaskGroup} is
+     * regarded as a dependency from the start of each one of its leaves.
+     * The nodes without predecessors begin at their current start date.
+     */
+    public static MonteCarloNetwork fromDependencies(List<MonteCarloTask> tasks) {
+        Validate.notEmpty(tasks);
+        return new NetworkBuilder(tasks).build();
+    }
+
+    private static class NetworkBuilder {
+
+        private final Map<TaskElement, MonteCarloTask> monteCarloTasks = new HashMap<TaskElement, MonteCarloTask>();
+
+        /**
+         * Incoming edges of each node as pairs: origin and type
+         */
+        private final Map<TaskElement, List<Object[]>> incoming = new LinkedHashMap<TaskElement, List<Object[]>>();
+
+        NetworkBuilder(List<MonteCarloTask> tasks) {
+            for (MonteCarloTask each : tasks) {
+                monteCarloTasks.put(each.getTask(), each);
+            }
+        }
+
+        MonteCarloNetwork build() {
+            LinkedList<TaskElement> toVisit = new LinkedList<TaskElement>(
+                    monteCarloTasks.keySet());
+            while (!toVisit.isEmpty()) {
+                TaskElement node = toVisit.removeFirst();
+                if (incoming.containsKey(node)) {
+                    continue;
+                }
+                List<Object[]> edges = new ArrayList<Object[]>();
+                incoming.put(node, edges);
+                for (TaskElement each = node; each != null; each = each
+                        .getParent()) {
+                    for (Dependency dependency : each
+                            .getDependenciesWithThisDestination()) {
+                        for (TaskElement origin : leavesOf(dependency
+                                .getOrigin())) {
+                            edges.add(new Object[] { origin,
+                                    typeOf(dependency.getType()) });
+                            toVisit.add(origin);
+                        }
+                    }
+                }
+            }
+            return toNetwork(topologicalOrder());
+        }
+
+        private static List<TaskElement> leavesOf(TaskElement taskElement) {
+            if (!(taskElement instanceof TaskGroup)) {
+                return Collections.singletonList(taskElement);
+            }
+            List<TaskElement> result = new ArrayList<TaskElement>();
+            for (TaskElement each : ((TaskGroup) taskElement).getChildren()) {
+                result.addAll(leavesOf(each));
+            }
+            return result;
+        }
+
+        private static int typeOf(Dependency.Type type) {
+            switch (type) {
+            case START_START:
+                return START_START;
+            case END_END:
+                return END_END;
+            case START_END:
+                return START_END;
+            default:
+                return END_START;
+            }
+        }
+
+        private List<TaskElement> topologicalOrder() {
+            Map<TaskElement, Integer> pending = new HashMap<TaskElement, Integer>();
+            Map<TaskElement, List<TaskElement>> successors = new HashMap<TaskElement, List<TaskElement>>();
+            LinkedList<TaskElement> ready = new LinkedList<TaskElement>();
+            for (TaskElement node : incoming.keySet()) {
+                List<Object[]> edges = incoming.get(node);
+                pending.put(node, edges.size());
+                if (edges.isEmpty()) {
+                    ready.add(node);
+                }
+                for (Object[] edge : edges) {
+                    TaskElement origin = (TaskElement) edge[0];
+                    if (!successors.containsKey(origin)) {
+                        successors.put(origin, new ArrayList<TaskElement>());
+                    }
+                    successors.get(origin).add(node);
+                }
+            }
+            List<TaskElement> result = new ArrayList<TaskElement>();
+            while (!ready.isEmpty()) {
+                TaskElement node = ready.removeFirst();
+                result.add(node);
+                List<TaskElement> next = successors.get(node);
+                if (next == null) {
+                    continue;
+                }
+                for (TaskElement each : next) {
+                    int remaining = pending.get(each) - 1;
+                    pending.put(each, remaining);
+                    if (remaining == 0) {
+                        ready.add(each);
+                    }
+                }
+            }
+            if (result.size() != incoming.size()) {
+                throw new IllegalStateException(
+                        "there is a cycle among the dependencies");
+            }
+            return result;
+        }
+
+        private MonteCarloNetwork toNetwork(List<TaskElement> sorted) {
+            Map<TaskElement, Integer> positions = new HashMap<TaskElement, Integer>();
+            LocalDate start = null;
+            for (TaskElement each : sorted) {
+                positions.put(each, positions.size());
+                LocalDate taskStart = each.getStartAsLocalDate();
+                if (start == null || taskStart.isBefore(start)) {
+                    start = taskStart;
+                }
+            }
+            int size = sorted.size();
+            int[] release = new int[size];
+            int[] predecessorsStart = new int[size + 1];
+            List<MonteCarloTask> nodes = new ArrayList<MonteCarloTask>();
+            List<Integer> predecessors = new ArrayList<Integer>();
+            List<Integer> types = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++) {
+                TaskElement each = sorted.get(i);
+                nodes.add(monteCarloTasks.get(each));
+                release[i] = Days.daysBetween(start,
+                        each.getStartAsLocalDate()).getDays();
+                predecessorsStart[i] = predecessors.size();
+                for (Object[] edge : incoming.get(each)) {
+                    predecessors.add(positions.get(edge[0]));
+                    types.add((Integer) edge[1]);
+                }
+            }
+            predecessorsStart[size] = predecessors.size();
+            return new MonteCarloNetwork(start, nodes, release,
+                    predecessorsStart, toArray(predecessors), toArray(types));
+        }
+
+        private static int[] toArray(List<Integer> values) {
+            int[] result = new int[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+
+    }
+
+    private final LocalDate start;
+
+    /**
+     * The {@link MonteCarloTask} of each node or <code>null</code> for
+     * milestones
+     */
+    private final List<MonteCarloTask> tasks;
+
+    final int[] release;
+
+    /**
+     * Pessimistic, normal and optimistic durations in calendar days for each
+     * node
+     */
+    final int[] durations;
+
+    /**
+     * Upper limits of the pessimistic and normal ranges for each node
+     */
+    final double[] limits;
+
+    /**
+     * The predecessors of node <code>i</code> are at positions from
+     * <code>predecessorsStart[i]</code> (inclusive) to
+     * <code>predecessorsStart[i + 1]</code> (exclusive) of
+     * {@link #predecessors} and {@link #types}
+     */
+    final int[] predecessorsStart;
+
+    final int[] predecessors;
+
+    final int[] types;
+
+    private MonteCarloNetwork(LocalDate start, List<MonteCarloTask> tasks,
+            int[] release, int[] predecessorsStart, int[] predecessors,
+            int[] types) {
+        this(start, tasks, release, realDurationsOf(tasks), limitsOf(tasks),
+                predecessorsStart, predecessors, types);
+    }
+
+    /**
+     * The nodes must be sorted topologically
+     */
+    MonteCarloNetwork(LocalDate start, List<MonteCarloTask> tasks,
+            int[] release, int[] durations, double[] limits,
+            int[] predecessorsStart, int[] predecessors, int[] types) {
+        this.start = start;
+        this.tasks = tasks;
+        this.release = release;
+        this.durations = durations;
+        this.limits = limits;
+        this.predecessorsStart = predecessorsStart;
+        this.predecessors = predecessors;
+        this.types = types;
+    }
+
+    private static int[] realDurationsOf(List<MonteCarloTask> tasks) {
+        int[] result = new int[tasks.size() * 3];
+        for (int i = 0; i < tasks.size(); i++) {
+            MonteCarloTask each = tasks.get(i);
+            if (each != null) {
+                System.arraycopy(MonteCarloTask.calculateRealDurationsFor(
+                        each, each.getPessimisticDuration(),
+                        each.getNormalDuration(),
+                        each.getOptimisticDuration()), 0, result, i * 3, 3);
+            }
+        }
+        return result;
+    }
+
+    private static double[] limitsOf(List<MonteCarloTask> tasks) {
+        double[] result = new double[tasks.size() * 2];
+        for (int i = 0; i < tasks.size(); i++) {
+            MonteCarloTask each = tasks.get(i);
+            if (each != null) {
+                result[i * 2] = each
+                        .getPessimisticDurationPercentageUpperLimit()
+                        .doubleValue();
+                result[i * 2 + 1] = each
+                        .getNormalDurationPercentageUpperLimit()
+                        .doubleValue();
+            }
+        }
+        return result;
+    }
+
+    public LocalDate getStart() {
+        return start;
+    }
+
+    public int size() {
+        return release.length;
+    }
+
+    /**
+     * @return the {@link MonteCarloTask} of the node or <code>null</code> if
+     *         it's a milestone
+     */
+    public MonteCarloTask getTask(int node) {
+        return tasks.get(node);
+    }
+
+    /**
+     * Calculates the start and end of each node for the given durations
+     *
+     * @param binding
+     *            receives for each node the predecessor that determined its
+     *            start or <code>-1</code> if it begins at its release date
+     * @return the node that finishes the last
+     */
+    int forwardPass(int[] duration, int[] starts, int[] ends, int[] binding) {
+        int last = 0;
+        for (int i = 0; i < release.length; i++) {
+            int d = duration[i];
+            int start = release[i];
+            int bindingPredecessor = -1;
+            boolean first = true;
+            for (int k = predecessorsStart[i]; k < predecessorsStart[i + 1]; k++) {
+                int p = predecessors[k];
+                int candidate;
+                switch (types[k]) {
+                case START_START:
+                    candidate = starts[p];
+                    break;
+                case END_END:
+                    candidate = ends[p] - d;
+                    break;
+                case START_END:
+                    candidate = starts[p] - d;
+                    break;
+                default:
+                    candidate = ends[p];
+                }
+                if (first || candidate > start) {
+                    start = candidate;
+                    bindingPredecessor = p;
+                    first = false;
+                }
+            }
+            starts[i] = start;
+            ends[i] = start + d;
+            binding[i] = bindingPredecessor;
+            if (ends[i] > ends[last]) {
+                last = i;
+            }
+        }
+        return last;
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.montecarlo;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang.Validate;
+import org.joda.time.LocalDate;
+
+/**
+ * Histogram of the end dates obtained in a {@link MonteCarloSimulation}
+ */
+public class MonteCarloResult {
+
+    public static final int[] DEFAULT_PERCENTILES = { 50, 80, 95 };
+
+    private final LocalDate start;
+
+    private final int minOffset;
+
+    /**
+     * Number of iterations ending at <code>start + minOffset + i</code>
+     */
+    private final long[] counts;
+
+    private final int iterations;
+
+    private final MonteCarloNetwork network;
+
+    /**
+     * Number of iterations in which each node of the network was critical
+     */
+    private final long[] critical;
+
+    MonteCarloResult(LocalDate start, int minOffset, long[] counts,
+            int iterations) {
+        this.start = start;
+        this.minOffset = minOffset;
+        this.counts = counts;
+        this.iterations = iterations;
+        this.network = null;
+        this.critical = new long[0];
+    }
+
+    MonteCarloResult(MonteCarloNetwork network, int minOffset, long[] counts,
+            long[] critical, int iterations) {
+        this.start = network.getStart();
+        this.minOffset = minOffset;
+        this.counts = counts;
+        this.iterations = iterations;
+        this.network = network;
+        this.critical = critical;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    private LocalDate dateAt(int position) {
+        return start.plusDays(minOffset + position);
+    }
+
+    /**
+     * @return the number of iterations for each end date. The dates that
+     *         weren't reached in any iteration are not included
+     */
+    public SortedMap<LocalDate, Long> getHistogram() {
+        SortedMap<LocalDate, Long> result = new TreeMap<LocalDate, Long>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result.put(dateAt(i), counts[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the probability of each end date
+     */
+    public Map<LocalDate, BigDecimal> getProbabilities() {
+        Map<LocalDate, BigDecimal> result = new HashMap<LocalDate, BigDecimal>();
+        BigDecimal total = BigDecimal.valueOf(iterations);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result.put(dateAt(i), BigDecimal.valueOf(counts[i]).divide(
+                        total, 8, RoundingMode.HALF_UP));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param percent
+     *            between 1 and 100
+     * @return the first date where at least the <code>percent</code> of the
+     *         iterations have finished
+     */
+    public LocalDate getPercentile(int percent) {
+        Validate.isTrue(percent > 0 && percent <= 100,
+                "percent must be between 1 and 100");
+        long needed = (iterations * (long) percent + 99) / 100;
+        long accumulated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            accumulated += counts[i];
+            if (accumulated >= needed) {
+                return dateAt(i);
+            }
+        }
+        return dateAt(counts.length - 1);
+    }
+
+    /**
+     * @return the dates for {@link #DEFAULT_PERCENTILES}
+     */
+    public SortedMap<Integer, LocalDate> getDefaultPercentiles() {
+        SortedMap<Integer, LocalDate> result = new TreeMap<Integer, LocalDate>();
+        for (int each : DEFAULT_PERCENTILES) {
+            result.put(each, getPercentile(each));
+        }
+        return result;
+    }
+
+    /**
+     * @return for each task, the probability of being in the chain of tasks
+     *         that determines the end of the project
+     */
+    public Map<MonteCarloTask, BigDecimal> getCriticalityIndex() {
+        Map<MonteCarloTask, BigDecimal> result = new LinkedHashMap<MonteCarloTask, BigDecimal>();
+        BigDecimal total = BigDecimal.valueOf(iterations);
+        for (int i = 0; i < critical.length; i++) {
+            MonteCarloTask task = network.getTask(i);
+            if (task != null) {
+                result.put(task, BigDecimal.valueOf(critical[i]).divide(total,
+                        8, RoundingMode.HALF_UP));
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,353 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.montecarlo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.Validate;
+import org.zkoss.ganttz.util.LongOperationFeedback.IDesktopUpdatesEmitter;
+
+/**
+ * <p>
+ * Runs the MonteCarlo simulation over a {@link MonteCarloNetwork}. In each
+ * iteration a duration is sampled for every task and the dates are propagated
+ * through the network to get the end of the project. The tasks on the chain of
+ * predecessors that determined that end are counted to get their criticality
+ * index.
+ * </p>
+ * <p>
+ * The durations of the tasks are converted to calendar days only once and kept
+ * in arrays, so the iterations don't create any object. The iterations are
+ * split in chunks that are run in parallel. Each chunk has its own random
+ * generator derived from the seed, so the same seed always produces the same
+ * result regardless of the number of threads used.
+ * </p>
+ * <p>
+ * The end of the project doesn't always grow with the durations: with
+ * {@link MonteCarloNetwork#END_END} or {@link MonteCarloNetwork#START_END}
+ * dependencies a longer predecessor can pull the start of a successor earlier.
+ * So the ends obtained with the minimum and maximum durations are only used as
+ * the initial bounds of the histograms, that grow if an iteration ends outside
+ * them.
+ * </p>
+ */
+public class MonteCarloSimulation {
+
+    private static final int ITERATIONS_PER_CHUNK = 10000;
+
+    private static final int PROGRESS_INTERVAL_MILLISECONDS = 200;
+
+    private static final boolean MIN_DURATION = true;
+
+    private static final boolean MAX_DURATION = false;
+
+    /**
+     * The tasks are done one after the other, usually a critical path
+     */
+    public static MonteCarloSimulation onPath(List<MonteCarloTask> tasks) {
+        return new MonteCarloSimulation(MonteCarloNetwork.path(tasks));
+    }
+
+    public static MonteCarloSimulation onNetwork(MonteCarloNetwork network) {
+        return new MonteCarloSimulation(network);
+    }
+
+    private final MonteCarloNetwork network;
+
+    private final int estimatedMinOffset;
+
+    private final int estimatedMaxOffset;
+
+    private MonteCarloSimulation(MonteCarloNetwork network) {
+        this.network = network;
+        int withMinDurations = endOffsetWith(MIN_DURATION);
+        int withMaxDurations = endOffsetWith(MAX_DURATION);
+        this.estimatedMinOffset = Math.min(withMinDurations, withMaxDurations);
+        this.estimatedMaxOffset = Math.max(withMinDurations, withMaxDurations);
+    }
+
+    private int endOffsetWith(boolean minimum) {
+        int size = network.size();
+        int[] duration = new int[size];
+        for (int i = 0; i < size; i++) {
+            int pessimistic = network.durations[i * 3];
+            int normal = network.durations[i * 3 + 1];
+            int optimistic = network.durations[i * 3 + 2];
+            duration[i] = minimum ? Math.min(pessimistic,
+                    Math.min(normal, optimistic)) : Math.max(pessimistic,
+                    Math.max(normal, optimistic));
+        }
+        int[] ends = new int[size];
+        int last = network.forwardPass(duration, new int[size], ends,
+                new int[size]);
+        return ends[last];
+    }
+
+    /**
+     * Scratch arrays and partial results of a thread
+     */
+    private class Worker {
+
+        private final int[] duration = new int[network.size()];
+
+        private final int[] starts = new int[network.size()];
+
+        private final int[] ends = new int[network.size()];
+
+        private final int[] binding = new int[network.size()];
+
+        /**
+         * Number of iterations ending at <code>countsOffset + i</code>
+         */
+        private long[] counts = new long[estimatedMaxOffset
+                - estimatedMinOffset + 1];
+
+        private int countsOffset = estimatedMinOffset;
+
+        private int minOffset = Integer.MAX_VALUE;
+
+        private int maxOffset = Integer.MIN_VALUE;
+
+        private final long[] critical = new long[network.size()];
+
+        void iterate(SplitMix64 random) {
+            int[] durations = network.durations;
+            double[] limits = network.limits;
+            for (int i = 0; i < duration.length; i++) {
+                double value = random.nextDouble();
+                if (value < limits[i * 2]) {
+                    duration[i] = durations[i * 3];
+                } else if (value < limits[i * 2 + 1]) {
+                    duration[i] = durations[i * 3 + 1];
+                } else {
+                    duration[i] = durations[i * 3 + 2];
+                }
+            }
+            int last = network.forwardPass(duration, starts, ends, binding);
+            count(ends[last]);
+            for (int i = last; i != -1; i = binding[i]) {
+                critical[i]++;
+            }
+        }
+
+        private void count(int endOffset) {
+            if (endOffset < countsOffset
+                    || endOffset >= countsOffset + counts.length) {
+                growToInclude(endOffset);
+            }
+            counts[endOffset - countsOffset]++;
+            minOffset = Math.min(minOffset, endOffset);
+            maxOffset = Math.max(maxOffset, endOffset);
+        }
+
+        /**
+         * The histogram is at least doubled, so it's grown only a few times
+         */
+        private void growToInclude(int endOffset) {
+            int first = Math.min(countsOffset, endOffset);
+            int last = Math.max(countsOffset + counts.length - 1, endOffset);
+            int size = Math.max(last - first + 1, counts.length * 2);
+            if (endOffset < countsOffset) {
+                first = last - size + 1;
+            }
+            long[] grown = new long[size];
+            System.arraycopy(counts, 0, grown, countsOffset - first,
+                    counts.length);
+            counts = grown;
+            countsOffset = first;
+        }
+
+        private boolean hasIterations() {
+            return minOffset <= maxOffset;
+        }
+
+        private void addCountsTo(long[] accumulated, int accumulatedOffset) {
+            for (int offset = minOffset; offset <= maxOffset; offset++) {
+                accumulated[offset - accumulatedOffset] += counts[offset
+                        - countsOffset];
+            }
+        }
+    }
+
+    /**
+     * @param iterationProgress
+     *            it receives the percentage of iterations done. It's called
+     *            from the thread calling this method. It can be
+     *            <code>null</code>
+     */
+    public MonteCarloResult run(int iterations, long seed,
+            IDesktopUpdatesEmitter<Integer> iterationProgress) {
+        Validate.isTrue(iterations > 0, "iterations must be positive");
+        int chunks = (iterations + ITERATIONS_PER_CHUNK - 1)
+                / ITERATIONS_PER_CHUNK;
+        int threads = Math.max(1, Math.min(chunks, Runtime.getRuntime()
+                .availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch pendingChunks = new CountDownLatch(chunks);
+            AtomicInteger done = new AtomicInteger();
+            List<Future<Worker>> workers = new ArrayList<Future<Worker>>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(worker(i, threads, chunks,
+                        iterations, seed, pendingChunks, done)));
+            }
+            while (!pendingChunks.await(PROGRESS_INTERVAL_MILLISECONDS,
+                    TimeUnit.MILLISECONDS)) {
+                checkFailures(workers);
+                notifyProgress(iterationProgress, done.get(), iterations);
+            }
+            List<Worker> finished = new ArrayList<Worker>();
+            for (Future<Worker> each : workers) {
+                finished.add(each.get());
+            }
+            int minOffset = Integer.MAX_VALUE;
+            int maxOffset = Integer.MIN_VALUE;
+            for (Worker each : finished) {
+                if (each.hasIterations()) {
+                    minOffset = Math.min(minOffset, each.minOffset);
+                    maxOffset = Math.max(maxOffset, each.maxOffset);
+                }
+            }
+            long[] counts = new long[maxOffset - minOffset + 1];
+            long[] critical = new long[network.size()];
+            for (Worker each : finished) {
+                if (each.hasIterations()) {
+                    each.addCountsTo(counts, minOffset);
+                }
+                add(critical, each.critical);
+            }
+            notifyProgress(iterationProgress, iterations, iterations);
+            return new MonteCarloResult(network, minOffset, counts, critical,
+                    iterations);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * If a worker fails the remaining chunks are never done, so the failure
+     * must be detected while waiting for them
+     */
+    private static void checkFailures(List<Future<Worker>> workers)
+            throws InterruptedException, ExecutionException {
+        for (Future<Worker> each : workers) {
+            if (each.isDone()) {
+                each.get();
+            }
+        }
+    }
+
+    private static void notifyProgress(
+            IDesktopUpdatesEmitter<Integer> iterationProgress, int done,
+            int iterations) {
+        if (iterationProgress != null) {
+            iterationProgress.doUpdate((int) ((done * 100L) / iterations));
+        }
+    }
+
+    /**
+     * The worker <code>n</code> runs the chunks <code>n</code>,
+     * <code>n + workers</code>, <code>n + 2 * workers</code>...
+     */
+    private Callable<Worker> worker(final int n, final int workers,
+            final int chunks, final int iterations, final long seed,
+            final CountDownLatch pendingChunks, final AtomicInteger done) {
+        return new Callable<Worker>() {
+
+            @Override
+            public Worker call() {
+                Worker worker = new Worker();
+                for (int chunk = n; chunk < chunks; chunk += workers) {
+                    SplitMix64 random = SplitMix64.forChunk(seed, chunk);
+                    int first = chunk * ITERATIONS_PER_CHUNK;
+                    int last = Math.min(iterations, first
+                            + ITERATIONS_PER_CHUNK);
+                    for (int i = first; i < last; i++) {
+                        worker.iterate(random);
+                    }
+                    done.addAndGet(last - first);
+                    pendingChunks.countDown();
+                }
+                return worker;
+            }
+        };
+    }
+
+    private static void add(long[] accumulated, long[] values) {
+        for (int i = 0; i < accumulated.length; i++) {
+            accumulated[i] += values[i];
+        }
+    }
+
+    /**
+     * SplitMix64 generator. It's small, fast and the generators created for
+     * different chunks from the same seed are independent.
+     */
+    static class SplitMix64 {
+
+        private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+        private static final double DOUBLE_UNIT = 1.0 / (1L << 53);
+
+        static SplitMix64 forChunk(long seed, int chunk) {
+            return new SplitMix64(mix(seed + GOLDEN_GAMMA * (chunk + 1)));
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+        private long state;
+
+        SplitMix64(long seed) {
+            this.state = seed;
+        }
+
+        long nextLong() {
+            state += GOLDEN_GAMMA;
+            return mix(state);
+        }
+
+        /**
+         * @return a value between 0 (inclusive) and 1 (exclusive)
+         */
+        double nextDouble() {
+            return (nextLong() >>> 11) * DOUBLE_UNIT;
+        }
+    }
+
+}
@@ -23,12 +23,9 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 
 import org.apache.commons.lang.Validate;
-import org.joda.time.Days;
 import org.joda.time.LocalDate;
 import org.libreplan.business.calendars.entities.BaseCalendar;
 import org.libreplan.business.planner.entities.Task;
-import org.libreplan.business.workingday.EffortDuration;
-import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 
 /**
  *
@@ -37,6 +34,8 @@ import org.libreplan.business.workingday.IntraDayDate.PartialDay;
  */
 public class MonteCarloTask {
 
+    private static final int DAYS_PER_WEEK = 7;
+
     public static MonteCarloTask create(Task task) {
         return new MonteCarloTask(task);
     }
@@ -45,29 +44,69 @@ public class MonteCarloTask {
         return new MonteCarloTask(task);
     }
 
+    /**
+     * Maximum number of days explored in the calendar looking for workable
+     * days. If the calendar has not enough workable days, every remaining day
+     * is regarded as workable.
+     */
+    private static final int MAX_DAYS_EXPLORED = 100 * 366;
+
     public static BigDecimal calculateRealDurationFor(MonteCarloTask task, BigDecimal daysDuration) {
+        return BigDecimal.valueOf(calculateRealDurationsFor(task,
+                daysDuration)[0]);
+    }
+
+    /**
+     * Calculates the calendar days needed to work the specified workable days
+     * from the start of the task. The capacities of the calendar are retrieved
+     * at once for all the durations.
+     */
+    public static int[] calculateRealDurationsFor(MonteCarloTask task,
+            BigDecimal... daysDurations) {
         LocalDate start = task.getStartDate();
         Validate.notNull(start);
-        LocalDate end = calculateEndDateFor(task, daysDuration);
-        Days daysBetween = Days.daysBetween(start, end);
-        return BigDecimal.valueOf(daysBetween.getDays());
-    }
-
-    private static LocalDate calculateEndDateFor(MonteCarloTask task, BigDecimal daysDuration) {
-        BaseCalendar calendar = task.getCalendar();
-        LocalDate start = new LocalDate(task.getStartDate());
-        LocalDate day = start;
-
-        double duration = daysDuration.doubleValue();
-        for (int i = 0; i < duration;) {
-            EffortDuration workableTime = calendar.getCapacityOn(PartialDay
-                    .wholeDay(day));
-            if (!EffortDuration.zero().equals(workableTime)) {
-                i++;
+        int[] workableDays = new int[daysDurations.length];
+        int maxWorkableDays = 0;
+        for (int i = 0; i < daysDurations.length; i++) {
+            workableDays[i] = (int) Math.ceil(daysDurations[i].doubleValue());
+            maxWorkableDays = Math.max(maxWorkableDays, workableDays[i]);
+        }
+        int[] offsets = workableDayOffsets(task.getCalendar(), start,
+                maxWorkableDays);
+        int[] result = new int[daysDurations.length];
+        for (int i = 0; i < workableDays.length; i++) {
+            result[i] = workableDays[i] <= 0 ? 0
+                    : offsets[workableDays[i] - 1] + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return the days from <code>start</code> to each one of the first
+     *         <code>count</code> workable days
+     */
+    private static int[] workableDayOffsets(BaseCalendar calendar,
+            LocalDate start, int count) {
+        int[] result = new int[count];
+        int found = 0;
+        int explored = 0;
+        int chunkSize = Math.max(DAYS_PER_WEEK, count * 2);
+        int[] capacities = new int[chunkSize];
+        while (found < count && explored < MAX_DAYS_EXPLORED) {
+            LocalDate chunkStart = start.plusDays(explored);
+            calendar.fillCapacitiesBetween(chunkStart,
+                    chunkStart.plusDays(chunkSize), capacities, null);
+            for (int i = 0; i < chunkSize && found < count; i++) {
+                if (capacities[i] != 0) {
+                    result[found++] = explored + i;
+                }
             }
-            day = day.plusDays(1);
+            explored += chunkSize;
+        }
+        for (; found < count; found++) {
+            result[found] = explored++;
         }
-        return day;
+        return result;
     }
 
     private Task task;
@@ -78,8 +78,6 @@ import org.libreplan.business.templates.entities.OrderElementTemplate;
 import org.libreplan.business.templates.entities.OrderTemplate;
 import org.libreplan.business.users.daos.IOrderAuthorizationDAO;
 import org.libreplan.business.users.daos.IUserDAO;
-import org.libreplan.business.users.entities.OrderAuthorization;
-import org.libreplan.business.users.entities.OrderAuthorizationType;
 import org.libreplan.business.users.entities.User;
 import org.libreplan.business.users.entities.UserRole;
 import org.libreplan.web.calendars.BaseCalendarModel;
@@ -792,23 +790,8 @@ public class OrderModel extends IntegrationEntityModel implements IOrderModel {
                         .isSuperuserOrUserInRoles(UserRole.ROLE_CREATE_PROJECTS)) {
             return true;
         }
-        try {
-            User user = userDAO.findByLoginName(loginName);
-            for(OrderAuthorization authorization :
-                    orderAuthorizationDAO.listByOrderUserAndItsProfiles(order, user)) {
-                if(authorization.getAuthorizationType() ==
-                        OrderAuthorizationType.READ_AUTHORIZATION ||
-                    authorization.getAuthorizationType() ==
-                        OrderAuthorizationType.WRITE_AUTHORIZATION) {
-                    return true;
-                }
-            }
-        }
-        catch(InstanceNotFoundException e) {
-            //this case shouldn't happen, because it would mean that there isn't a logged user
-            //anyway, if it happenned we don't allow the user to pass
-        }
-        return false;
+        return orderAuthorizationDAO.getOrderPermissionsOf(loginName).canRead(
+                order);
     }
 
     @Override
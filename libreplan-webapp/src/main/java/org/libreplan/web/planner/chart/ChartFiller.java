@@ -45,10 +45,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.joda.time.DateTime;
 import org.joda.time.Days;
 import org.joda.time.LocalDate;
+import org.libreplan.business.planner.chart.EffortDaysLine;
 import org.libreplan.business.planner.entities.DayAssignment;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.workingday.EffortDuration;
-import org.libreplan.business.workingday.IntraDayDate.PartialDay;
 import org.zkforge.timeplot.Plotinfo;
 import org.zkforge.timeplot.Timeplot;
 import org.zkforge.timeplot.data.PlotDataSource;
@@ -97,22 +97,6 @@ public abstract class ChartFiller implements IChartFiller {
         }
     }
 
-    protected static EffortDuration sumCalendarCapacitiesForDay(
-            Collection<? extends Resource> resources, LocalDate day) {
-        PartialDay wholeDay = PartialDay.wholeDay(day);
-        EffortDuration sum = zero();
-        for (Resource resource : resources) {
-            sum = sum.plus(calendarCapacityFor(resource,
-                    wholeDay));
-        }
-        return sum;
-    }
-
-    protected static EffortDuration calendarCapacityFor(Resource resource,
-            PartialDay day) {
-        return resource.getCalendarOrDefault().getCapacityOn(day);
-    }
-
     protected abstract class GraphicSpecificationCreator implements
             IServletRequestHandler {
 
@@ -389,6 +373,14 @@ public abstract class ChartFiller implements IChartFiller {
         return groupByWeekDurations(map);
     }
 
+    protected SortedMap<LocalDate, EffortDuration> groupAsNeededByZoom(
+            EffortDaysLine line) {
+        if (isZoomByDayOrWeek()) {
+            return line.toSortedMap();
+        }
+        return line.averagePerWeek();
+    }
+
     protected SortedMap<LocalDate, EffortDuration> groupByWeekDurations(
             SortedMap<LocalDate, EffortDuration> map) {
         return average(accumulatePerWeek(map));
@@ -39,7 +39,7 @@ import org.libreplan.web.planner.order.PlanningStateCreator.IActionsOnRetrieval;
 import org.libreplan.web.planner.order.PlanningStateCreator.PlanningState;
 import org.zkoss.ganttz.data.GanttDiagramGraph;
 import org.zkoss.ganttz.data.GanttDiagramGraph.IAdapter;
-import org.zkoss.ganttz.data.criticalpath.CriticalPathCalculator;
+import org.zkoss.ganttz.data.criticalpath.CriticalPathEngine;
 import org.zkoss.zk.ui.Desktop;
 
 /**
@@ -105,9 +105,9 @@ public class CriticalPathBuilder {
                         asLocalDate(order.getDeadline()), resourcesSearcher);
         GanttDiagramGraph<TaskElement, DependencyWithVisibility> graph = GanttDiagramBuilder
                 .createForcingDependencies(order, adapter);
-        CriticalPathCalculator<TaskElement, DependencyWithVisibility> criticalPathCalculator = CriticalPathCalculator
-                .create(order.getDependenciesConstraintsHavePriority());
-        return criticalPathCalculator.calculateCriticalPath(graph);
+        return CriticalPathEngine.compile(graph,
+                order.getDependenciesConstraintsHavePriority())
+                .calculateCriticalPath();
     }
 
     private LocalDate asLocalDate(Date date) {
@@ -21,9 +21,6 @@
 
 package org.libreplan.web.resourceload;
 
-import static org.libreplan.business.workingday.IntraDayDate.max;
-import static org.libreplan.business.workingday.IntraDayDate.min;
-
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -52,6 +49,9 @@ import org.zkoss.ganttz.data.resourceload.LoadPeriod;
 
 interface LoadPeriodGeneratorFactory {
     LoadPeriodGenerator create(ResourceAllocation<?> allocation);
+
+    LoadPeriodGenerator create(IntraDayDate start, IntraDayDate end,
+            List<ResourceAllocation<?>> allocationsOnInterval);
 }
 
 
@@ -93,6 +93,14 @@ abstract class LoadPeriodGenerator {
                     criterion);
         }
 
+        @Override
+        public LoadPeriodGenerator create(IntraDayDate start,
+                IntraDayDate end,
+                List<ResourceAllocation<?>> allocationsOnInterval) {
+            return new LoadPeriodGeneratorOnResource(resource, start, end,
+                    allocationsOnInterval, criterion);
+        }
+
     }
 
     public static LoadPeriodGeneratorFactory onCriterion(
@@ -107,6 +115,14 @@ abstract class LoadPeriodGenerator {
                 return new LoadPeriodGeneratorOnCriterion(criterion,
                         allocation, potentialResources);
             }
+
+            @Override
+            public LoadPeriodGenerator create(IntraDayDate start,
+                    IntraDayDate end,
+                    List<ResourceAllocation<?>> allocationsOnInterval) {
+                return new LoadPeriodGeneratorOnCriterion(criterion, start,
+                        end, allocationsOnInterval, potentialResources);
+            }
         };
     }
 
@@ -126,72 +142,10 @@ abstract class LoadPeriodGenerator {
                 .getSatisfied(allocationsOnInterval);
     }
 
-    public List<LoadPeriodGenerator> join(LoadPeriodGenerator next) {
-        if (!overlaps(next)) {
-            return stripEmpty(this, next);
-        }
-        if (isIncluded(next)) {
-            return stripEmpty(this.until(next.start), intersect(next), this
-                    .from(next.end));
-        }
-        assert overlaps(next) && !isIncluded(next);
-        return stripEmpty(this.until(next.start), intersect(next), next
-                .from(end));
-    }
-
     protected List<ResourceAllocation<?>> getAllocationsOnInterval() {
         return allocationsOnInterval;
     }
 
-    private List<LoadPeriodGenerator> stripEmpty(
-            LoadPeriodGenerator... generators) {
-        List<LoadPeriodGenerator> result = new ArrayList<LoadPeriodGenerator>();
-        for (LoadPeriodGenerator loadPeriodGenerator : generators) {
-            if (!loadPeriodGenerator.isEmpty()) {
-                result.add(loadPeriodGenerator);
-            }
-        }
-        return result;
-    }
-
-    private boolean isEmpty() {
-        return start.equals(end);
-    }
-
-    protected abstract LoadPeriodGenerator create(IntraDayDate start,
-            IntraDayDate end, List<ResourceAllocation<?>> allocationsOnInterval);
-
-    private LoadPeriodGenerator intersect(LoadPeriodGenerator other) {
-        return create(max(this.start, other.start),
-                min(this.end, other.end), plusAllocations(other));
-    }
-
-    private List<ResourceAllocation<?>> plusAllocations(
-            LoadPeriodGenerator other) {
-        List<ResourceAllocation<?>> result = new ArrayList<ResourceAllocation<?>>();
-        result.addAll(allocationsOnInterval);
-        result.addAll(other.allocationsOnInterval);
-        return result;
-    }
-
-    private LoadPeriodGenerator from(IntraDayDate newStart) {
-        return create(newStart, end, allocationsOnInterval);
-    }
-
-    private LoadPeriodGenerator until(IntraDayDate newEnd) {
-        return create(start, newEnd, allocationsOnInterval);
-    }
-
-    boolean overlaps(LoadPeriodGenerator other) {
-        return (start.compareTo(other.end) < 0 && other.start
-                .compareTo(this.end) < 0);
-    }
-
-    private boolean isIncluded(LoadPeriodGenerator other) {
-        return other.start.compareTo(start) >= 0
-                && other.end.compareTo(end) <= 0;
-    }
-
     /**
      * @return <code>null</code> if the data is invalid
      */
@@ -297,13 +251,6 @@ class LoadPeriodGeneratorOnResource extends LoadPeriodGenerator {
         this.criterion = criterion;
     }
 
-    @Override
-    protected LoadPeriodGenerator create(IntraDayDate start, IntraDayDate end,
-            List<ResourceAllocation<?>> allocationsOnInterval) {
-        return new LoadPeriodGeneratorOnResource(resource, start, end,
-                allocationsOnInterval, criterion);
-    }
-
     @Override
     protected EffortDuration getTotalAvailableEffort() {
         return resource.getTotalEffortFor(start, end, criterion);
@@ -345,15 +292,6 @@ class LoadPeriodGeneratorOnCriterion extends LoadPeriodGenerator {
         this.resourcesSatisfyingCriterionAtSomePoint = resourcesSatisfyingCriterionAtSomePoint;
     }
 
-    @Override
-    protected LoadPeriodGenerator create(IntraDayDate start, IntraDayDate end,
-            List<ResourceAllocation<?>> allocationsOnInterval) {
-        LoadPeriodGeneratorOnCriterion result = new LoadPeriodGeneratorOnCriterion(
-                criterion, start, end, allocationsOnInterval,
-                resourcesSatisfyingCriterionAtSomePoint);
-        return result;
-    }
-
     @Override
     protected EffortDuration getAssignedEffortFor(
             ResourceAllocation<?> resourceAllocation) {
@@ -28,14 +28,13 @@ import static org.libreplan.web.planner.order.PlanningStateCreator.and;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -66,10 +65,9 @@ import org.libreplan.business.scenarios.IScenarioManager;
 import org.libreplan.business.scenarios.entities.Scenario;
 import org.libreplan.business.users.daos.IOrderAuthorizationDAO;
 import org.libreplan.business.users.daos.IUserDAO;
-import org.libreplan.business.users.entities.OrderAuthorization;
-import org.libreplan.business.users.entities.OrderAuthorizationType;
 import org.libreplan.business.users.entities.User;
 import org.libreplan.business.users.entities.UserRole;
+import org.libreplan.business.workingday.IntraDayDate;
 import org.libreplan.web.calendars.BaseCalendarModel;
 import org.libreplan.web.planner.order.PlanningStateCreator.IAllocationCriteria;
 import org.libreplan.web.planner.order.PlanningStateCreator.PlanningState;
@@ -161,21 +159,8 @@ public class ResourceLoadModel implements IResourceLoadModel {
                 UserRole.ROLE_EDIT_ALL_PROJECTS)) {
             return true;
         }
-        try {
-            User user = userDAO.findByLoginName(loginName);
-            for (OrderAuthorization authorization : orderAuthorizationDAO
-                    .listByOrderUserAndItsProfiles(order, user)) {
-                if (authorization.getAuthorizationType() == OrderAuthorizationType.READ_AUTHORIZATION
-                        || authorization.getAuthorizationType() == OrderAuthorizationType.WRITE_AUTHORIZATION) {
-                    return true;
-                }
-            }
-        } catch (InstanceNotFoundException e) {
-            // this case shouldn't happen, because it would mean that there
-            // isn't a logged user
-            // anyway, if it happenned we don't allow the user to pass
-        }
-        return false;
+        return orderAuthorizationDAO.getOrderPermissionsOf(loginName).canRead(
+                order);
     }
 
     public ResourceAllocationsFinder<?> create(ResourceLoadParameters parameters) {
@@ -323,24 +308,9 @@ public class ResourceLoadModel implements IResourceLoadModel {
 
                         private List<Resource> allResourcesActiveBetween(
                                 LocalDate startDate, LocalDate endDate) {
-                            List<Resource> allResources = allResources();
-                            if (startDate == null && endDate == null) {
-                                return allResources;
-                            }
-
-                            List<Resource> resources = new ArrayList<Resource>();
-                            for (Resource resource : allResources) {
-                                if (resource
-                                        .isActiveBetween(startDate, endDate)) {
-                                    resources.add(resource);
-                                }
-                            }
-                            return resources;
-                        }
-
-                        private List<Resource> allResources() {
-                            return Resource.sortByName(resourcesDAO
-                                    .list(Resource.class));
+                            return resourcesDAO
+                                    .getResourcesActiveBetweenSortedByName(
+                                            startDate, endDate);
                         }
                     }, new IReattacher<Resource>() {
 
@@ -355,16 +325,18 @@ public class ResourceLoadModel implements IResourceLoadModel {
         private Map<Resource, List<ResourceAllocation<?>>> eachWithAllocations(
                 List<Resource> allResources) {
             Map<Resource, List<ResourceAllocation<?>>> result = new LinkedHashMap<Resource, List<ResourceAllocation<?>>>();
-            for (Resource resource : allResources) {
+            Map<Resource, List<ResourceAllocation<?>>> found = resourceAllocationDAO
+                    .findAllocationsRelatedToByResource(getCurrentScenario(),
+                            allResources, parameters.getInitDateFilter(),
+                            parameters.getEndDateFilter());
+            for (Entry<Resource, List<ResourceAllocation<?>>> each : found
+                    .entrySet()) {
+                Resource resource = each.getKey();
                 IAllocationCriteria criteria = and(onInterval(),
                         relatedToResource(resource));
                 result.put(resource, ResourceAllocation
                         .sortedByStartDate(doReplacementsIfNeeded(
-                                resourceAllocationDAO.findAllocationsRelatedTo(
-                                        getCurrentScenario(), resource,
-                                        parameters.getInitDateFilter(),
-                                        parameters.getEndDateFilter()),
-                                criteria)));
+                                each.getValue(), criteria)));
             }
             return result;
         }
@@ -1109,9 +1081,32 @@ class PeriodBuilderFactory {
 
 class PeriodsBuilder {
 
-    private final List<? extends ResourceAllocation<?>> sortedByStartDate;
+    private static final Comparator<ResourceAllocation<?>> BY_START = new Comparator<ResourceAllocation<?>>() {
 
-    private final List<LoadPeriodGenerator> loadPeriodsGenerators = new LinkedList<LoadPeriodGenerator>();
+        @Override
+        public int compare(ResourceAllocation<?> o1, ResourceAllocation<?> o2) {
+            return o1.getIntraDayStartDate().compareTo(
+                    o2.getIntraDayStartDate());
+        }
+    };
+
+    private static final Comparator<ResourceAllocation<?>> BY_END = new Comparator<ResourceAllocation<?>>() {
+
+        @Override
+        public int compare(ResourceAllocation<?> o1, ResourceAllocation<?> o2) {
+            return o1.getIntraDayEndDate().compareTo(o2.getIntraDayEndDate());
+        }
+    };
+
+    private static final Comparator<LoadPeriodGenerator> GENERATOR_BY_START = new Comparator<LoadPeriodGenerator>() {
+
+        @Override
+        public int compare(LoadPeriodGenerator o1, LoadPeriodGenerator o2) {
+            return o1.getStart().compareTo(o2.getStart());
+        }
+    };
+
+    private final List<? extends ResourceAllocation<?>> sortedByStartDate;
 
     private final LoadPeriodGeneratorFactory factory;
 
@@ -1159,11 +1154,7 @@ class PeriodsBuilder {
     }
 
     private List<LoadPeriod> buildPeriods() {
-        for (ResourceAllocation<?> resourceAllocation : sortedByStartDate) {
-            loadPeriodsGenerators.add(factory.create(resourceAllocation));
-        }
-        joinPeriodGenerators();
-        return toGenerators(loadPeriodsGenerators);
+        return toGenerators(sweep());
     }
 
     private List<LoadPeriod> toGenerators(List<LoadPeriodGenerator> generators) {
@@ -1177,104 +1168,59 @@ class PeriodsBuilder {
         return result;
     }
 
-    private void joinPeriodGenerators() {
-        ListIterator<LoadPeriodGenerator> iterator = loadPeriodsGenerators
-                .listIterator();
-        while (iterator.hasNext()) {
-            final LoadPeriodGenerator current = findNextOneOverlapping(iterator);
-            if (current != null) {
-                rewind(iterator, current);
-                iterator.remove();
-                LoadPeriodGenerator next = iterator.next();
-                iterator.remove();
-                List<LoadPeriodGenerator> generated = current.join(next);
-                final LoadPeriodGenerator positionToComeBack = generated.get(0);
-                final List<LoadPeriodGenerator> remaining = loadPeriodsGenerators
-                        .subList(iterator.nextIndex(), loadPeriodsGenerators
-                                .size());
-                List<LoadPeriodGenerator> generatorsSortedByStartDate = mergeListsKeepingByStartSortOrder(
-                        generated, remaining);
-                final int takenFromRemaining = generatorsSortedByStartDate
-                        .size()
-                        - generated.size();
-                removeNextElements(iterator, takenFromRemaining);
-                addAtCurrentPosition(iterator, generatorsSortedByStartDate);
-                rewind(iterator, positionToComeBack);
+    /**
+     * Walks the starts and ends of the allocations in order keeping the
+     * allocations active at each moment. A generator is created for every
+     * interval between two consecutive boundaries with some active
+     * allocation, so the allocations are sorted once instead of joining the
+     * overlapping generators pair by pair. The allocations with an empty or
+     * inverted interval get their own generator. Unlike when the generators
+     * were joined, they don't split the period of the allocations active at
+     * their date.
+     */
+    private List<LoadPeriodGenerator> sweep() {
+        List<LoadPeriodGenerator> result = new ArrayList<LoadPeriodGenerator>();
+        List<ResourceAllocation<?>> byStart = new ArrayList<ResourceAllocation<?>>();
+        List<LoadPeriodGenerator> withoutInterval = new ArrayList<LoadPeriodGenerator>();
+        for (ResourceAllocation<?> each : sortedByStartDate) {
+            if (each.getIntraDayStartDate().compareTo(
+                    each.getIntraDayEndDate()) < 0) {
+                byStart.add(each);
+            } else {
+                withoutInterval.add(factory.create(each));
             }
         }
-    }
-
-    private LoadPeriodGenerator findNextOneOverlapping(
-            ListIterator<LoadPeriodGenerator> iterator) {
-        while (iterator.hasNext()) {
-            LoadPeriodGenerator current = iterator.next();
-            if (!iterator.hasNext()) {
-                return null;
+        List<ResourceAllocation<?>> byEnd = new ArrayList<ResourceAllocation<?>>(
+                byStart);
+        Collections.sort(byStart, BY_START);
+        Collections.sort(byEnd, BY_END);
+
+        Set<ResourceAllocation<?>> active = new LinkedHashSet<ResourceAllocation<?>>();
+        IntraDayDate current = null;
+        int i = 0;
+        int j = 0;
+        while (j < byEnd.size()) {
+            IntraDayDate next = byEnd.get(j).getIntraDayEndDate();
+            if (i < byStart.size()
+                    && byStart.get(i).getIntraDayStartDate().compareTo(next) <= 0) {
+                next = byStart.get(i).getIntraDayStartDate();
             }
-            LoadPeriodGenerator next = peekNext(iterator);
-            if (current.overlaps(next)) {
-                return current;
+            if (!active.isEmpty() && current.compareTo(next) < 0) {
+                result.add(factory.create(current, next,
+                        new ArrayList<ResourceAllocation<?>>(active)));
             }
-        }
-        return null;
-    }
-
-    private void addAtCurrentPosition(
-            ListIterator<LoadPeriodGenerator> iterator,
-            List<LoadPeriodGenerator> sortedByStartDate) {
-        for (LoadPeriodGenerator l : sortedByStartDate) {
-            iterator.add(l);
-        }
-    }
-
-    private void removeNextElements(ListIterator<LoadPeriodGenerator> iterator,
-            final int elementsNumber) {
-        for (int i = 0; i < elementsNumber; i++) {
-            iterator.next();
-            iterator.remove();
-        }
-    }
-
-    private void rewind(ListIterator<LoadPeriodGenerator> iterator,
-            LoadPeriodGenerator nextOne) {
-        while (peekNext(iterator) != nextOne) {
-            iterator.previous();
-        }
-    }
-
-    private List<LoadPeriodGenerator> mergeListsKeepingByStartSortOrder(
-            List<LoadPeriodGenerator> joined,
-            List<LoadPeriodGenerator> remaining) {
-        List<LoadPeriodGenerator> result = new ArrayList<LoadPeriodGenerator>();
-        ListIterator<LoadPeriodGenerator> joinedIterator = joined
-                .listIterator();
-        ListIterator<LoadPeriodGenerator> remainingIterator = remaining
-                .listIterator();
-        while (joinedIterator.hasNext() && remainingIterator.hasNext()) {
-            LoadPeriodGenerator fromJoined = peekNext(joinedIterator);
-            LoadPeriodGenerator fromRemaining = peekNext(remainingIterator);
-            if (fromJoined.getStart().compareTo(fromRemaining.getStart()) <= 0) {
-                result.add(fromJoined);
-                joinedIterator.next();
-            } else {
-                result.add(fromRemaining);
-                remainingIterator.next();
+            while (j < byEnd.size()
+                    && byEnd.get(j).getIntraDayEndDate().equals(next)) {
+                active.remove(byEnd.get(j++));
             }
+            while (i < byStart.size()
+                    && byStart.get(i).getIntraDayStartDate().equals(next)) {
+                active.add(byStart.get(i++));
+            }
+            current = next;
         }
-        if (joinedIterator.hasNext()) {
-            result.addAll(joined.subList(joinedIterator.nextIndex(), joined
-                    .size()));
-        }
-        return result;
-    }
-
-    private LoadPeriodGenerator peekNext(
-            ListIterator<LoadPeriodGenerator> iterator) {
-        if (!iterator.hasNext()) {
-            return null;
-        }
-        LoadPeriodGenerator result = iterator.next();
-        iterator.previous();
+        result.addAll(withoutInterval);
+        Collections.sort(result, GENERATOR_BY_START);
         return result;
     }
 
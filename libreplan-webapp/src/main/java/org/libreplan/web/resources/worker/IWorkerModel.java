@@ -29,6 +29,7 @@ import org.libreplan.business.calendars.entities.BaseCalendar;
 import org.libreplan.business.calendars.entities.ResourceCalendar;
 import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.common.exceptions.ValidationException;
+import org.libreplan.business.planner.entities.AllocationsRecalculationProgress;
 import org.libreplan.business.resources.entities.Criterion;
 import org.libreplan.business.resources.entities.CriterionSatisfaction;
 import org.libreplan.business.resources.entities.ICriterionType;
@@ -79,6 +80,16 @@ public interface IWorkerModel extends IIntegrationEntityModel {
 
     void save() throws ValidationException;
 
+    /**
+     * Recalculates in background the allocations of the worker, if its
+     * calendar or criteria have changed since it was loaded or last saved. It
+     * must be called once the worker has been saved.
+     *
+     * @return the progress of the recalculation or <code>null</code> if it
+     *         isn't needed
+     */
+    AllocationsRecalculationProgress recalculateAllocations();
+
     List<Worker> getWorkers();
 
     List<Worker> getRealWorkers();
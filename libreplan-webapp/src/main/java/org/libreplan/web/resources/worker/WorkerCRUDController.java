@@ -277,6 +277,10 @@ public class WorkerCRUDController extends GenericForwardComposer implements
             }
             workerModel.save();
             messages.showMessage(Level.INFO, _("Worker saved"));
+            if (workerModel.recalculateAllocations() != null) {
+                messages.showMessage(Level.INFO,
+                        _("The affected allocations are being recalculated"));
+            }
             return true;
         } catch (ValidationException e) {
             messages.showInvalidValues(e);
@@ -26,6 +26,7 @@ import static org.libreplan.web.I18nHelper._;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -47,6 +48,9 @@ import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.common.exceptions.ValidationException;
 import org.libreplan.business.planner.daos.IDayAssignmentDAO;
 import org.libreplan.business.planner.daos.IResourceAllocationDAO;
+import org.libreplan.business.planner.entities.AllocationsAffectingState;
+import org.libreplan.business.planner.entities.AllocationsRecalculationProgress;
+import org.libreplan.business.planner.entities.IAllocationsRecalculator;
 import org.libreplan.business.resources.daos.ICriterionDAO;
 import org.libreplan.business.resources.daos.IResourceDAO;
 import org.libreplan.business.resources.entities.Criterion;
@@ -134,6 +138,15 @@ public class WorkerModel extends IntegrationEntityModel implements IWorkerModel
     @Autowired
     private IScenarioManager scenarioManager;
 
+    @Autowired
+    private IAllocationsRecalculator allocationsRecalculator;
+
+    /**
+     * State of the edited worker when it was loaded or last saved. It's
+     * <code>null</code> for new workers, they can't have allocations yet.
+     */
+    private AllocationsAffectingState savedAllocationsAffectingState;
+
     @Autowired
     private IUserDAO userDAO;
 
@@ -161,6 +174,23 @@ public class WorkerModel extends IntegrationEntityModel implements IWorkerModel
         localizationsAssigner = null;
     }
 
+    @Override
+    public AllocationsRecalculationProgress recalculateAllocations() {
+        if (worker == null || worker.getId() == null) {
+            return null;
+        }
+        AllocationsAffectingState current = AllocationsAffectingState
+                .of(worker);
+        AllocationsAffectingState previous = savedAllocationsAffectingState;
+        savedAllocationsAffectingState = current;
+        if (!AllocationsAffectingState.hasChanged(previous, current)) {
+            return null;
+        }
+        return allocationsRecalculator.recalculateAllocationsOf(
+                Collections.singletonList(worker.getId()), scenarioManager
+                        .getCurrent().getId());
+    }
+
     private void resetRoleInOriginalBoundUser() {
         if (boundUser != null) {
             User user = worker.getUser();
@@ -237,6 +267,7 @@ public class WorkerModel extends IntegrationEntityModel implements IWorkerModel
         localizationsAssigner = new MultipleCriterionActiveAssigner(
                 criterionDAO, worker, PredefinedCriterionTypes.LOCATION);
         boundUser = null;
+        savedAllocationsAffectingState = null;
     }
 
     @Override
@@ -248,6 +279,8 @@ public class WorkerModel extends IntegrationEntityModel implements IWorkerModel
             forceLoadSatisfactions(this.worker);
             forceLoadCalendar(this.worker);
             forceLoadUser(this.worker);
+            savedAllocationsAffectingState = AllocationsAffectingState
+                    .of(this.worker);
             this.boundUser = this.worker.getUser();
             localizationsAssigner = new MultipleCriterionActiveAssigner(
                     criterionDAO, this.worker,
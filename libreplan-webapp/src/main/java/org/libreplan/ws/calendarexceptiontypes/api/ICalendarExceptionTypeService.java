@@ -35,6 +35,9 @@ public interface ICalendarExceptionTypeService {
 
     CalendarExceptionTypeListDTO getCalendarExceptionType();
 
+    Response streamCalendarExceptionTypes(String afterCode,
+            int offset, int limit);
+
     InstanceConstraintViolationsListDTO addCalendarExceptionTypes(
             CalendarExceptionTypeListDTO calendarExceptionTypeListDTO);
 
@@ -35,6 +35,8 @@ public interface ICalendarService {
 
     BaseCalendarListDTO getBaseCalendars();
 
+    Response streamBaseCalendars(String afterCode, int offset, int limit);
+
     InstanceConstraintViolationsListDTO addBaseCalendars(
             BaseCalendarListDTO BaseCalendraListDTO);
 
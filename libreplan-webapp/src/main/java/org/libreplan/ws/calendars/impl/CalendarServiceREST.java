@@ -24,11 +24,13 @@ package org.libreplan.ws.calendars.impl;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import org.libreplan.business.calendars.daos.IBaseCalendarDAO;
@@ -93,6 +95,15 @@ public class CalendarServiceREST extends
         return new BaseCalendarListDTO(toDTO(justBaseCalendars));
     }
 
+    @Override
+    @GET
+    @Path("/stream/")
+    public Response streamBaseCalendars(@QueryParam("after") String afterCode,
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        return streamAll(BaseCalendarListDTO.class, afterCode, offset, limit);
+    }
+
     @Override
     @POST
     @Consumes("application/xml")
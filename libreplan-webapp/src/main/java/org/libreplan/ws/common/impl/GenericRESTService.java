@@ -21,16 +21,22 @@
 
 package org.libreplan.ws.common.impl;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.libreplan.business.common.IAdHocTransactionService;
 import org.libreplan.business.common.IOnTransaction;
 import org.libreplan.business.common.IntegrationEntity;
 import org.libreplan.business.common.daos.IIntegrationEntityDAO;
+import org.libreplan.business.common.daos.IIntegrationEntityVisitor;
 import org.libreplan.business.common.exceptions.InstanceNotFoundException;
 import org.libreplan.business.common.exceptions.ValidationException;
 import org.libreplan.ws.common.api.InstanceConstraintViolationsDTO;
@@ -47,6 +53,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 public abstract class GenericRESTService<E extends IntegrationEntity,
     DTO extends IntegrationEntityDTO> {
 
+    /**
+     * Default number of entities saved in each transaction by
+     * {@link #saveInChunks(List)}
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
     @Autowired
     protected IAdHocTransactionService transactionService;
 
@@ -57,6 +69,56 @@ public abstract class GenericRESTService<E extends IntegrationEntity,
         return toDTO(getIntegrationEntityDAO().findAll());
     }
 
+    /**
+     * It retrieves the entities ordered by code as the list DTO of the
+     * specified class. Each entity is converted and written as it is
+     * scrolled from the database, so they are never all in memory.
+     *
+     * If <code>afterCode</code> is not <code>null</code> only the entities
+     * with a greater code are retrieved. Together with <code>limit</code> it
+     * allows to page through the entities without the cost of a big
+     * <code>offset</code>. If <code>limit</code> is zero there is no limit.
+     *
+     * If <code>offset</code> or <code>limit</code> are negative returns 400
+     * HTTP status code (BAD_REQUEST).
+     */
+    protected Response streamAll(Class<?> listDTOClass,
+            final String afterCode, final int offset, final int limit) {
+        if (offset < 0 || limit < 0) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+        final ListDTOStreamWriter writer = ListDTOStreamWriter
+                .forListDTO(listDTOClass);
+
+        StreamingOutput output = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException {
+                final ListDTOStreamWriter.Output list = writer.open(out);
+                transactionService
+                        .runOnReadOnlyTransaction(new IOnTransaction<Void>() {
+
+                            @Override
+                            public Void execute() {
+                                getIntegrationEntityDAO().scrollAll(afterCode,
+                                        offset, limit,
+                                        new IIntegrationEntityVisitor<E>() {
+
+                                            @Override
+                                            public void visit(E entity) {
+                                                list.write(toDTO(entity));
+                                            }
+                                        });
+                                return null;
+                            }
+                        });
+                list.close();
+            }
+        };
+
+        return Response.ok(output).build();
+    }
+
     /**
      * It saves (inserts or updates) a list of entities. Each entity is
      * saved in a separate transaction.
@@ -64,9 +126,60 @@ public abstract class GenericRESTService<E extends IntegrationEntity,
     protected InstanceConstraintViolationsListDTO save(
         List<? extends DTO> entityDTOs) {
 
+        return new InstanceConstraintViolationsListDTO(saveOneByOne(
+                entityDTOs, 1));
+
+    }
+
+    /**
+     * It saves (inserts or updates) a list of entities like
+     * {@link #save(List)}, but several entities are saved in each
+     * transaction, so it's much faster for big lists. The existent entities
+     * of each chunk are retrieved with a single query and all of them are
+     * flushed when the transaction of the chunk is committed.
+     *
+     * If saving any entity of a chunk fails, the transaction of the chunk is
+     * rolled back and its entities are saved again each one in a separate
+     * transaction, so the errors are reported for each entity and the right
+     * ones are saved anyway.
+     */
+    protected InstanceConstraintViolationsListDTO saveInChunks(
+        List<? extends DTO> entityDTOs) {
+
+        List<InstanceConstraintViolationsDTO> instanceConstraintViolationsList =
+            new ArrayList<InstanceConstraintViolationsDTO>();
+        int chunkSize = getChunkSize();
+
+        for (int i = 0; i < entityDTOs.size(); i += chunkSize) {
+            List<? extends DTO> chunk = entityDTOs.subList(i,
+                    Math.min(entityDTOs.size(), i + chunkSize));
+            try {
+                insertOrUpdateChunk(chunk);
+            } catch (RuntimeException e) {
+                instanceConstraintViolationsList.addAll(saveOneByOne(chunk,
+                        i + 1));
+            }
+        }
+
+        return new InstanceConstraintViolationsListDTO(
+            instanceConstraintViolationsList);
+
+    }
+
+    /**
+     * It returns the number of entities saved in each transaction by
+     * {@link #saveInChunks(List)}.
+     */
+    protected int getChunkSize() {
+        return DEFAULT_CHUNK_SIZE;
+    }
+
+    private List<InstanceConstraintViolationsDTO> saveOneByOne(
+        List<? extends DTO> entityDTOs, long firstNumItem) {
+
         List<InstanceConstraintViolationsDTO> instanceConstraintViolationsList =
             new ArrayList<InstanceConstraintViolationsDTO>();
-        long numItem = 1;
+        long numItem = firstNumItem;
 
         for (DTO entityDTO : entityDTOs) {
 
@@ -101,8 +214,7 @@ public abstract class GenericRESTService<E extends IntegrationEntity,
 
         }
 
-        return new InstanceConstraintViolationsListDTO(
-            instanceConstraintViolationsList);
+        return instanceConstraintViolationsList;
 
     }
 
@@ -155,6 +267,72 @@ public abstract class GenericRESTService<E extends IntegrationEntity,
 
     }
 
+    /**
+     * It saves (inserts or updates) some entity DTOs by using a single new
+     * transaction.
+     *
+     * @throws RuntimeException
+     *             if any of them can't be saved. In that case none of them
+     *             is saved.
+     */
+    private void insertOrUpdateChunk(final List<? extends DTO> entityDTOs) {
+
+        IOnTransaction<Void> save = new IOnTransaction<Void>() {
+
+            @Override
+            public Void execute() {
+
+                IIntegrationEntityDAO<E> entityDAO =
+                    getIntegrationEntityDAO();
+                Map<String, E> existent = findExistent(entityDAO, entityDTOs);
+
+                for (DTO entityDTO : entityDTOs) {
+
+                    /* Insert or update? */
+                    E entity = existent.get(toKey(entityDTO.code));
+                    if (entity != null) {
+                        updateEntity(entity, entityDTO);
+                    } else {
+                        entity = toEntity(entityDTO);
+                    }
+
+                    entity.validate();
+                    beforeSaving(entity);
+                    entityDAO.saveWithoutValidating(entity);
+                    afterSaving(entity);
+
+                    /* Later DTOs in the chunk with the same code update it */
+                    existent.put(toKey(entity.getCode()), entity);
+
+                }
+
+                return null;
+
+            }
+
+        };
+
+        transactionService.runOnAnotherTransaction(save);
+
+    }
+
+    private Map<String, E> findExistent(IIntegrationEntityDAO<E> entityDAO,
+            List<? extends DTO> entityDTOs) {
+        List<String> codes = new ArrayList<String>();
+        for (DTO each : entityDTOs) {
+            codes.add(each.code);
+        }
+        Map<String, E> result = new HashMap<String, E>();
+        for (E each : entityDAO.findByCodes(codes)) {
+            result.put(toKey(each.getCode()), each);
+        }
+        return result;
+    }
+
+    private static String toKey(String code) {
+        return code == null ? null : code.trim().toLowerCase();
+    }
+
     /**
      * It allows to add operations that must be done before saving.
      *
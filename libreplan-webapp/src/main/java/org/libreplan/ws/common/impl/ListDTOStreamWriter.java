@@ -0,0 +1,196 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.ws.common.impl;
+
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.WebApplicationException;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElements;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlSchema;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * It writes the same XML that JAXB generates for a list DTO, but the items are
+ * written one by one as they are received instead of having them all in
+ * memory. The names of the elements are taken from the
+ * {@link XmlRootElement} annotation of the list DTO class and the
+ * {@link XmlElement} or {@link XmlElements} annotations of its fields.
+ */
+public class ListDTOStreamWriter {
+
+    private static final String DEFAULT_NAME = "##default";
+
+    private static final String ENCODING = "UTF-8";
+
+    private static final ConcurrentMap<Class<?>, ListDTOStreamWriter> writers = new ConcurrentHashMap<Class<?>, ListDTOStreamWriter>();
+
+    public static ListDTOStreamWriter forListDTO(Class<?> listDTOClass) {
+        ListDTOStreamWriter result = writers.get(listDTOClass);
+        if (result == null) {
+            result = new ListDTOStreamWriter(listDTOClass);
+            writers.putIfAbsent(listDTOClass, result);
+        }
+        return result;
+    }
+
+    private final JAXBContext context;
+
+    private final QName rootName;
+
+    private final Map<Class<?>, QName> itemNames = new HashMap<Class<?>, QName>();
+
+    private ListDTOStreamWriter(Class<?> listDTOClass) {
+        XmlRootElement root = listDTOClass.getAnnotation(XmlRootElement.class);
+        if (root == null || DEFAULT_NAME.equals(root.name())) {
+            throw new IllegalArgumentException(listDTOClass
+                    + " must have a named XmlRootElement annotation");
+        }
+        String namespace = namespaceOf(listDTOClass);
+        rootName = new QName(namespace, root.name());
+        for (Field each : listDTOClass.getFields()) {
+            XmlElement element = each.getAnnotation(XmlElement.class);
+            if (element != null) {
+                addItemName(namespace, element);
+            }
+            XmlElements elements = each.getAnnotation(XmlElements.class);
+            if (elements != null) {
+                for (XmlElement eachElement : elements.value()) {
+                    addItemName(namespace, eachElement);
+                }
+            }
+        }
+        try {
+            context = JAXBContext.newInstance(listDTOClass);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String namespaceOf(Class<?> listDTOClass) {
+        XmlSchema schema = listDTOClass.getPackage().getAnnotation(
+                XmlSchema.class);
+        return schema != null ? schema.namespace() : "";
+    }
+
+    private void addItemName(String namespace, XmlElement element) {
+        if (DEFAULT_NAME.equals(element.name())) {
+            throw new IllegalArgumentException("the XmlElement annotations "
+                    + "of a list DTO must be named");
+        }
+        Class<?> type = element.type() == XmlElement.DEFAULT.class ? Object.class
+                : element.type();
+        itemNames.put(type, new QName(namespace, element.name()));
+    }
+
+    private QName itemNameFor(Class<?> dtoClass) {
+        for (Class<?> each = dtoClass; each != null; each = each
+                .getSuperclass()) {
+            QName result = itemNames.get(each);
+            if (result != null) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("no element for " + dtoClass);
+    }
+
+    /**
+     * It writes the start of the list. {@link Output#close()} must be called
+     * after writing the items.
+     *
+     * @throws WebApplicationException
+     *             if the XML can't be written
+     */
+    public Output open(OutputStream out) {
+        try {
+            return new Output(out);
+        } catch (XMLStreamException e) {
+            throw new WebApplicationException(e);
+        } catch (JAXBException e) {
+            throw new WebApplicationException(e);
+        }
+    }
+
+    public class Output {
+
+        private final XMLStreamWriter writer;
+
+        private final Marshaller marshaller;
+
+        private Output(OutputStream out) throws XMLStreamException,
+                JAXBException {
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out,
+                    ENCODING);
+            marshaller = context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, ENCODING);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.setDefaultNamespace(rootName.getNamespaceURI());
+            writer.writeStartElement(rootName.getNamespaceURI(),
+                    rootName.getLocalPart());
+            writer.writeDefaultNamespace(rootName.getNamespaceURI());
+        }
+
+        /**
+         * @throws WebApplicationException
+         *             if the XML can't be written
+         */
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public void write(Object dto) {
+            try {
+                marshaller.marshal(new JAXBElement(itemNameFor(dto.getClass()),
+                        dto.getClass(), dto), writer);
+            } catch (JAXBException e) {
+                throw new WebApplicationException(e);
+            }
+        }
+
+        /**
+         * It writes the end of the list and flushes the output
+         *
+         * @throws WebApplicationException
+         *             if the XML can't be written
+         */
+        public void close() {
+            try {
+                writer.writeEndElement();
+                writer.writeEndDocument();
+                writer.flush();
+            } catch (XMLStreamException e) {
+                throw new WebApplicationException(e);
+            }
+        }
+
+    }
+
+}
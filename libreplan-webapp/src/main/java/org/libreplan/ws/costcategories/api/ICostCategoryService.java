@@ -36,5 +36,8 @@ public interface ICostCategoryService {
 
     public CostCategoryListDTO getCostCotegories();
 
+    public Response streamCostCategories(String afterCode,
+            int offset, int limit);
+
     Response getCostCategory(String code);
 }
\ No newline at end of file
@@ -33,6 +33,8 @@ public interface IExpenseSheetService {
 
     ExpenseSheetListDTO getExpenseSheets();
 
+    Response streamExpenseSheets(String afterCode, int offset, int limit);
+
     InstanceConstraintViolationsListDTO addExpenseSheets(
             ExpenseSheetListDTO expenseSheetListDTO);
 
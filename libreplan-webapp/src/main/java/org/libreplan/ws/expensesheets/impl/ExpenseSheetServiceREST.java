@@ -20,11 +20,13 @@
 package org.libreplan.ws.expensesheets.impl;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import org.libreplan.business.common.daos.IIntegrationEntityDAO;
@@ -113,4 +115,13 @@ public class ExpenseSheetServiceREST extends
     public ExpenseSheetListDTO getExpenseSheets() {
         return new ExpenseSheetListDTO(findAll());
     }
+
+    @Override
+    @GET
+    @Path("/stream/")
+    public Response streamExpenseSheets(@QueryParam("after") String afterCode,
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        return streamAll(ExpenseSheetListDTO.class, afterCode, offset, limit);
+    }
 }
@@ -35,6 +35,8 @@ public interface ILabelService {
 
     LabelTypeListDTO getLabelTypes();
 
+    Response streamLabelTypes(String afterCode, int offset, int limit);
+
     InstanceConstraintViolationsListDTO addLabelTypes(
             LabelTypeListDTO labelTypes);
 
@@ -33,6 +33,8 @@ public interface IMaterialService {
 
     public MaterialCategoryListDTO getMaterials();
 
+    public Response streamMaterials(String afterCode, int offset, int limit);
+
     public InstanceConstraintViolationsListDTO addMaterials(
             MaterialCategoryListDTO materialCategoryListDTO);
 
@@ -37,6 +37,8 @@ public interface IOrderElementService {
 
     OrderListDTO getOrders();
 
+    Response streamOrders(String afterCode, int offset, int limit);
+
     Response getOrderElement(String code);
 
     Response removeOrderElement(String code);
@@ -25,11 +25,13 @@ import java.util.UUID;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -83,6 +85,15 @@ public class OrderElementServiceREST extends
         return new OrderListDTO(findAll());
     }
 
+    @Override
+    @GET
+    @Path("/stream/")
+    public Response streamOrders(@QueryParam("after") String afterCode,
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        return streamAll(OrderListDTO.class, afterCode, offset, limit);
+    }
+
     @Override
     @POST
     @Consumes("application/xml")
@@ -43,6 +43,8 @@ public interface IResourceService {
 
     public ResourceListDTO getResources();
 
+    public Response streamResources(String afterCode, int offset, int limit);
+
     Response getResource(String code);
 
 }
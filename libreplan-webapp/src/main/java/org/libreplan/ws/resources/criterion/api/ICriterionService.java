@@ -34,6 +34,9 @@ public interface ICriterionService {
 
     public CriterionTypeListDTO getCriterionTypes();
 
+    public Response streamCriterionTypes(String afterCode,
+            int offset, int limit);
+
     public InstanceConstraintViolationsListDTO addCriterionTypes(
         CriterionTypeListDTO criterionTypes);
 
@@ -26,11 +26,13 @@ import java.util.ConcurrentModificationException;
 import java.util.List;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import org.apache.commons.lang.StringUtils;
@@ -131,6 +133,15 @@ public class ResourceServiceREST
         return new ResourceListDTO(findAll());
     }
 
+    @Override
+    @GET
+    @Path("/stream/")
+    public Response streamResources(@QueryParam("after") String afterCode,
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        return streamAll(ResourceListDTO.class, afterCode, offset, limit);
+    }
+
     @Override
     protected List<ResourceDTO> findAll() {
         List<Resource> result = new ArrayList<Resource>();
@@ -36,5 +36,8 @@ public interface ITypeOfWorkHoursService {
 
     public TypeOfWorkHoursListDTO getTypeOfWorkHours();
 
+    public Response streamTypeOfWorkHours(String afterCode,
+            int offset, int limit);
+
     Response getTypeOfWorkHours(String code);
 }
\ No newline at end of file
@@ -22,11 +22,13 @@
 package org.libreplan.ws.typeofworkhours.impl;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 import org.libreplan.business.common.daos.IIntegrationEntityDAO;
@@ -64,6 +66,16 @@ public class TypeOfWorkHoursServiceREST extends
         return new TypeOfWorkHoursListDTO(findAll());
     }
 
+    @Override
+    @GET
+    @Path("/stream/")
+    public Response streamTypeOfWorkHours(@QueryParam("after") String afterCode,
+            @QueryParam("offset") @DefaultValue("0") int offset,
+            @QueryParam("limit") @DefaultValue("0") int limit) {
+        return streamAll(TypeOfWorkHoursListDTO.class, afterCode, offset,
+                limit);
+    }
+
     @Override
     @POST
     @Consumes("application/xml")
@@ -29,6 +29,8 @@ public interface IUnitTypeService {
 
     public UnitTypeListDTO getUnitTypes();
 
+    public Response streamUnitTypes(String afterCode, int offset, int limit);
+
     public InstanceConstraintViolationsListDTO addUnitTypes(
             UnitTypeListDTO unitTypeListDTO);
 
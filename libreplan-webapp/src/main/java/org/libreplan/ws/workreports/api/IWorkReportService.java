@@ -34,6 +34,8 @@ public interface IWorkReportService {
 
     public WorkReportListDTO getWorkReports();
 
+    public Response streamWorkReports(String afterCode, int offset, int limit);
+
     public InstanceConstraintViolationsListDTO addWorkReports(
             WorkReportListDTO workReportListDTO);
 
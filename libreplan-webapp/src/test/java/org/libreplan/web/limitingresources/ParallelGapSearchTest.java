@@ -0,0 +1,209 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.libreplan.web.limitingresources;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.libreplan.business.workingday.EffortDuration.hours;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.libreplan.business.calendars.entities.CalendarData.Days;
+import org.libreplan.business.calendars.entities.Capacity;
+import org.libreplan.business.calendars.entities.ResourceCalendar;
+import org.libreplan.business.planner.entities.Dependency;
+import org.libreplan.business.planner.entities.Task;
+import org.libreplan.business.planner.limiting.entities.AllocationSpec;
+import org.libreplan.business.planner.limiting.entities.DateAndHour;
+import org.libreplan.business.planner.limiting.entities.Gap;
+import org.libreplan.business.planner.limiting.entities.Gap.GapOnQueue;
+import org.libreplan.business.planner.limiting.entities.InsertionRequirements;
+import org.libreplan.business.planner.limiting.entities.LimitingResourceQueueElement;
+import org.libreplan.business.resources.entities.LimitingResourceQueue;
+import org.libreplan.business.resources.entities.Resource;
+
+/**
+ * Checks that {@link ParallelGapSearch} chooses the same gap than evaluating
+ * the merged gaps of the queues one after the other. The calendars are real
+ * ones, so their capacity indexes are used from several threads.
+ */
+public class ParallelGapSearchTest {
+
+    /**
+     * The resource calendars are available since the day they are created
+     */
+    private static final LocalDate start = new LocalDate().plusDays(1);
+
+    private static DateAndHour day(int days) {
+        return new DateAndHour(start.plusDays(days), 0);
+    }
+
+    private ParallelGapSearch search;
+
+    private LimitingResourceQueue slow;
+
+    private LimitingResourceQueue medium;
+
+    private LimitingResourceQueue fast;
+
+    private List<LimitingResourceQueue> queues;
+
+    private static ResourceCalendar calendarWorking(int hoursPerDay) {
+        ResourceCalendar result = ResourceCalendar.create();
+        for (Days each : Days.values()) {
+            result.setCapacityAt(each, Capacity.create(hours(hoursPerDay))
+                    .overAssignableWithoutLimit());
+        }
+        return result;
+    }
+
+    /**
+     * @param gaps
+     *            the start and end days of each gap. If the last gap has no
+     *            end day it goes until the end.
+     */
+    private static LimitingResourceQueue queueWorking(int hoursPerDay,
+            int... gaps) {
+        Resource resource = createNiceMock(Resource.class);
+        expect(resource.getCalendar()).andReturn(calendarWorking(hoursPerDay))
+                .anyTimes();
+        replay(resource);
+        List<GapOnQueue> potentiallyValid = new ArrayList<GapOnQueue>();
+        LimitingResourceQueue result = createNiceMock(LimitingResourceQueue.class);
+        expect(result.getResource()).andReturn(resource).anyTimes();
+        expect(
+                result.getGapsPotentiallyValidFor(isA(InsertionRequirements.class)))
+                .andReturn(potentiallyValid).anyTimes();
+        replay(result);
+        for (int i = 0; i < gaps.length; i += 2) {
+            DateAndHour end = i + 1 < gaps.length ? day(gaps[i + 1]) : null;
+            potentiallyValid.add(Gap.create(resource, day(gaps[i]), end)
+                    .onQueue(result));
+        }
+        return result;
+    }
+
+    private static InsertionRequirements requirementsFor(int hours) {
+        Task task = createNiceMock(Task.class);
+        expect(task.getDependenciesWithThisOrigin()).andReturn(
+                Collections.<Dependency> emptySet()).anyTimes();
+        replay(task);
+        LimitingResourceQueueElement element = createNiceMock(LimitingResourceQueueElement.class);
+        expect(element.getTask()).andReturn(task).anyTimes();
+        expect(element.isGeneric()).andReturn(false).anyTimes();
+        expect(element.getIntentedTotalHours()).andReturn(hours).anyTimes();
+        replay(element);
+        return InsertionRequirements.create(element, day(0), day(0));
+    }
+
+    private AllocationSpec evaluatingOneAfterTheOther(
+            InsertionRequirements requirements) {
+        List<List<GapOnQueue>> gaps = new ArrayList<List<GapOnQueue>>();
+        for (LimitingResourceQueue each : queues) {
+            gaps.add(each.getGapsPotentiallyValidFor(requirements));
+        }
+        return LimitingResourceQueueModel.findAllocationSpecFor(
+                GapsMergeSort.sort(gaps), requirements);
+    }
+
+    private void assertSameAllocation(AllocationSpec parallel,
+            AllocationSpec sequential) {
+        assertThat(parallel.getGap(), sameInstance(sequential.getGap()));
+        assertThat(parallel.getStartInclusive(),
+                equalTo(sequential.getStartInclusive()));
+        assertThat(parallel.getEndExclusive(),
+                equalTo(sequential.getEndExclusive()));
+    }
+
+    @Before
+    public void givenQueuesWithDifferentCapacity() {
+        search = ParallelGapSearch.create();
+        slow = queueWorking(2, 0, 2, 4);
+        medium = queueWorking(4, 0, 3, 5, 6);
+        fast = queueWorking(8, 1, 2, 3);
+        queues = Arrays.asList(slow, medium, fast);
+    }
+
+    @After
+    public void disposeSearch() {
+        search.dispose();
+    }
+
+    @Test
+    public void theFirstValidGapInTheMergedOrderIsChosen() {
+        InsertionRequirements requirements = requirementsFor(10);
+
+        AllocationSpec parallel = search.findAllocationSpecFor(requirements,
+                queues);
+        AllocationSpec sequential = evaluatingOneAfterTheOther(requirements);
+
+        assertSameAllocation(parallel, sequential);
+        assertThat(parallel.getGap(), sameInstance(medium
+                .getGapsPotentiallyValidFor(requirements).get(0).getGap()));
+    }
+
+    @Test
+    public void theEarlierGapsWithoutEnoughHoursAreSkipped() {
+        InsertionRequirements requirements = requirementsFor(16);
+
+        AllocationSpec parallel = search.findAllocationSpecFor(requirements,
+                queues);
+        AllocationSpec sequential = evaluatingOneAfterTheOther(requirements);
+
+        assertSameAllocation(parallel, sequential);
+        assertThat(parallel.getGap(), sameInstance(fast
+                .getGapsPotentiallyValidFor(requirements).get(1).getGap()));
+    }
+
+    @Test
+    public void theSearchCanBeReusedForSeveralElements() {
+        for (int hours : Arrays.asList(4, 10, 16, 30)) {
+            InsertionRequirements requirements = requirementsFor(hours);
+
+            assertSameAllocation(
+                    search.findAllocationSpecFor(requirements, queues),
+                    evaluatingOneAfterTheOther(requirements));
+        }
+    }
+
+    @Test
+    public void ifNoGapIsBigEnoughNothingIsChosen() {
+        queues = Arrays.asList(queueWorking(2, 0, 2), queueWorking(8, 1, 2));
+        InsertionRequirements requirements = requirementsFor(40);
+
+        assertThat(evaluatingOneAfterTheOther(requirements), nullValue());
+        assertThat(search.findAllocationSpecFor(requirements, queues),
+                nullValue());
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.montecarlo;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class MonteCarloResultTest {
+
+    private static final LocalDate start = new LocalDate(2013, 1, 7);
+
+    // 100 iterations ending 10, 11, 12 and 14 days after the start
+    private MonteCarloResult result = new MonteCarloResult(start, 10,
+            new long[] { 40, 40, 15, 0, 5 }, 100);
+
+    @Test
+    public void theProbabilitiesOnlyIncludeReachedDates() {
+        Map<LocalDate, BigDecimal> probabilities = result.getProbabilities();
+        assertThat(probabilities.size(), equalTo(4));
+        assertThat(probabilities.get(start.plusDays(10)).doubleValue(),
+                equalTo(0.4));
+        assertThat(probabilities.get(start.plusDays(14)).doubleValue(),
+                equalTo(0.05));
+    }
+
+    @Test
+    public void thePercentileIsTheFirstDateReachingThePercentage() {
+        assertThat(result.getPercentile(40), equalTo(start.plusDays(10)));
+        assertThat(result.getPercentile(50), equalTo(start.plusDays(11)));
+        assertThat(result.getPercentile(80), equalTo(start.plusDays(11)));
+        assertThat(result.getPercentile(95), equalTo(start.plusDays(12)));
+        assertThat(result.getPercentile(100), equalTo(start.plusDays(14)));
+    }
+
+    @Test
+    public void theSameSeedGivesTheSameSequence() {
+        MonteCarloSimulation.SplitMix64 a = MonteCarloSimulation.SplitMix64
+                .forChunk(42, 3);
+        MonteCarloSimulation.SplitMix64 b = MonteCarloSimulation.SplitMix64
+                .forChunk(42, 3);
+        for (int i = 0; i < 100; i++) {
+            double value = a.nextDouble();
+            assertThat(value, equalTo(b.nextDouble()));
+            assertThat(value >= 0 && value < 1, equalTo(true));
+        }
+    }
+
+}
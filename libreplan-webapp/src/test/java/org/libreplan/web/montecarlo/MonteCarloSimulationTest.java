@@ -0,0 +1,165 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.montecarlo;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.libreplan.business.planner.entities.Task;
+
+public class MonteCarloSimulationTest {
+
+    private static final LocalDate start = new LocalDate(2013, 1, 7);
+
+    private static List<MonteCarloTask> tasks(int size) {
+        List<MonteCarloTask> result = new ArrayList<MonteCarloTask>();
+        for (int i = 0; i < size; i++) {
+            Task task = createNiceMock(Task.class);
+            expect(task.getWorkableDays()).andReturn(1).anyTimes();
+            replay(task);
+            result.add(MonteCarloTask.create(task));
+        }
+        return result;
+    }
+
+    private static int[] fixedDurations(int... days) {
+        int[] result = new int[days.length * 3];
+        for (int i = 0; i < days.length; i++) {
+            result[i * 3] = result[i * 3 + 1] = result[i * 3 + 2] = days[i];
+        }
+        return result;
+    }
+
+    /**
+     * A is followed by B and C, D is after both of them
+     */
+    private static MonteCarloNetwork diamond(List<MonteCarloTask> tasks,
+            int[] durations) {
+        return new MonteCarloNetwork(start, tasks, new int[4], durations,
+                new double[8], new int[] { 0, 0, 1, 2, 4 }, new int[] { 0, 0,
+                        1, 2 }, new int[] { MonteCarloNetwork.END_START,
+                        MonteCarloNetwork.END_START,
+                        MonteCarloNetwork.END_START,
+                        MonteCarloNetwork.END_START });
+    }
+
+    @Test
+    public void theEndIsTheLongestChainOfTheNetwork() {
+        List<MonteCarloTask> tasks = tasks(4);
+        MonteCarloResult result = MonteCarloSimulation.onNetwork(
+                diamond(tasks, fixedDurations(2, 5, 3, 1))).run(100, 1, null);
+
+        assertThat(result.getHistogram().size(), equalTo(1));
+        assertThat(result.getPercentile(50), equalTo(start.plusDays(8)));
+
+        Map<MonteCarloTask, BigDecimal> criticality = result
+                .getCriticalityIndex();
+        assertThat(criticality.get(tasks.get(0)).intValue(), equalTo(1));
+        assertThat(criticality.get(tasks.get(1)).intValue(), equalTo(1));
+        assertThat(criticality.get(tasks.get(2)).intValue(), equalTo(0));
+        assertThat(criticality.get(tasks.get(3)).intValue(), equalTo(1));
+    }
+
+    @Test
+    public void theSameSeedGivesTheSameResult() {
+        List<MonteCarloTask> tasks = tasks(4);
+        int[] durations = new int[] { 3, 2, 1, 6, 5, 4, 5, 4, 3, 2, 1, 1 };
+        double[] limits = new double[] { 0.3, 0.8, 0.3, 0.8, 0.3, 0.8, 0.3,
+                0.8 };
+        MonteCarloNetwork network = new MonteCarloNetwork(start, tasks,
+                new int[4], durations, limits, new int[] { 0, 0, 1, 2, 4 },
+                new int[] { 0, 0, 1, 2 }, new int[4]);
+
+        MonteCarloResult first = MonteCarloSimulation.onNetwork(network).run(
+                50000, 42, null);
+        MonteCarloResult second = MonteCarloSimulation.onNetwork(network)
+                .run(50000, 42, null);
+
+        assertThat(first.getHistogram(), equalTo(second.getHistogram()));
+        assertThat(first.getCriticalityIndex(),
+                equalTo(second.getCriticalityIndex()));
+    }
+
+    /**
+     * A is followed by B with the given dependency type and C starts with B.
+     * C is the longest, so the longer B is the sooner the project ends.
+     */
+    private static MonteCarloNetwork pulledBackwards(
+            List<MonteCarloTask> tasks, int typeBetweenAAndB) {
+        int[] durations = new int[] { 1, 1, 1, 6, 4, 2, 10, 10, 10 };
+        double[] limits = new double[] { 0.3, 0.8, 0.3, 0.8, 0.3, 0.8 };
+        return new MonteCarloNetwork(start, tasks, new int[3], durations,
+                limits, new int[] { 0, 0, 1, 2 }, new int[] { 0, 1 },
+                new int[] { typeBetweenAAndB, MonteCarloNetwork.START_START });
+    }
+
+    private static void assertEndsAt(MonteCarloResult result,
+            int iterations, LocalDate... expected) {
+        Set<LocalDate> expectedEnds = new HashSet<LocalDate>(
+                Arrays.asList(expected));
+        assertThat(result.getHistogram().keySet(), equalTo(expectedEnds));
+        long total = 0;
+        for (Long each : result.getHistogram().values()) {
+            total += each;
+        }
+        assertThat(total, equalTo((long) iterations));
+    }
+
+    @Test
+    public void theEndCanBeSoonerWithLongerDurationsUsingEndEnd() {
+        List<MonteCarloTask> tasks = tasks(3);
+        MonteCarloResult result = MonteCarloSimulation.onNetwork(
+                pulledBackwards(tasks, MonteCarloNetwork.END_END)).run(30000,
+                7, null);
+
+        // B ends with A at 1, so C starts at 1 - B
+        assertEndsAt(result, 30000, start.plusDays(5), start.plusDays(7),
+                start.plusDays(9));
+        assertTrue(result.getPercentile(50).isBefore(start.plusDays(9)));
+    }
+
+    @Test
+    public void theEndCanBeSoonerWithLongerDurationsUsingStartEnd() {
+        List<MonteCarloTask> tasks = tasks(3);
+        MonteCarloResult result = MonteCarloSimulation.onNetwork(
+                pulledBackwards(tasks, MonteCarloNetwork.START_END)).run(
+                30000, 7, null);
+
+        // B ends when A starts at 0, so C starts at -B
+        assertEndsAt(result, 30000, start.plusDays(4), start.plusDays(6),
+                start.plusDays(8));
+    }
+
+}
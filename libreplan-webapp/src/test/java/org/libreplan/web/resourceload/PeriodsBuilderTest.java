@@ -0,0 +1,177 @@
+/*
+ * This file is part of LibrePlan
+ *
+ * Copyright (C) 2013 Igalia, S.L.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.libreplan.web.resourceload;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.classextension.EasyMock.createNiceMock;
+import static org.easymock.classextension.EasyMock.replay;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.libreplan.business.planner.entities.ResourceAllocation;
+import org.libreplan.business.workingday.EffortDuration;
+import org.libreplan.business.workingday.IntraDayDate;
+import org.zkoss.ganttz.data.GanttDate;
+import org.zkoss.ganttz.data.resourceload.LoadLevel;
+import org.zkoss.ganttz.data.resourceload.LoadPeriod;
+
+/**
+ * Tests for {@link PeriodsBuilder}. The generated periods report the number of
+ * allocations on them as their assigned effort.
+ */
+public class PeriodsBuilderTest {
+
+    private static final LocalDate monday = new LocalDate(2013, 1, 7);
+
+    private static class CountingGenerator extends LoadPeriodGenerator {
+
+        CountingGenerator(IntraDayDate start, IntraDayDate end,
+                List<ResourceAllocation<?>> allocationsOnInterval) {
+            super(start, end, allocationsOnInterval);
+        }
+
+        @Override
+        public LoadPeriod build() {
+            return new LoadPeriod(GanttDate.createFrom(start.getDate()),
+                    GanttDate.createFrom(end.getDate()), "",
+                    getAllocationsOnInterval().size() + "", new LoadLevel(0));
+        }
+
+        @Override
+        protected EffortDuration getTotalAvailableEffort() {
+            return EffortDuration.zero();
+        }
+
+        @Override
+        protected EffortDuration getEffortAssigned() {
+            return EffortDuration.zero();
+        }
+
+        @Override
+        protected EffortDuration getAssignedEffortFor(
+                ResourceAllocation<?> resourceAllocation) {
+            return EffortDuration.zero();
+        }
+    }
+
+    private static final LoadPeriodGeneratorFactory countingFactory = new LoadPeriodGeneratorFactory() {
+
+        @Override
+        public LoadPeriodGenerator create(ResourceAllocation<?> allocation) {
+            return create(allocation.getIntraDayStartDate(),
+                    allocation.getIntraDayEndDate(),
+                    Arrays.<ResourceAllocation<?>> asList(allocation));
+        }
+
+        @Override
+        public LoadPeriodGenerator create(IntraDayDate start,
+                IntraDayDate end,
+                List<ResourceAllocation<?>> allocationsOnInterval) {
+            return new CountingGenerator(start, end, allocationsOnInterval);
+        }
+    };
+
+    private static IntraDayDate day(int days) {
+        return IntraDayDate.startOfDay(monday.plusDays(days));
+    }
+
+    private static ResourceAllocation<?> allocation(int startDay, int endDay) {
+        ResourceAllocation<?> result = createNiceMock(ResourceAllocation.class);
+        expect(result.getIntraDayStartDate()).andReturn(day(startDay))
+                .anyTimes();
+        expect(result.getIntraDayEndDate()).andReturn(day(endDay)).anyTimes();
+        expect(result.isSatisfied()).andReturn(true).anyTimes();
+        replay(result);
+        return result;
+    }
+
+    private static List<LoadPeriod> build(ResourceAllocation<?>... allocations) {
+        return PeriodsBuilder.build(countingFactory,
+                new ArrayList<ResourceAllocation<?>>(Arrays.asList(allocations)));
+    }
+
+    private static void assertPeriod(LoadPeriod period, int startDay,
+            int endDay, int allocations) {
+        assertThat(period.getStart().toLocalDate(),
+                equalTo(monday.plusDays(startDay)));
+        assertThat(period.getEnd().toLocalDate(),
+                equalTo(monday.plusDays(endDay)));
+        assertThat(period.getAssignedEffort(), equalTo(allocations + ""));
+    }
+
+    @Test
+    public void anAllocationAloneGeneratesOnePeriod() {
+        List<LoadPeriod> periods = build(allocation(0, 10));
+        assertThat(periods.size(), equalTo(1));
+        assertPeriod(periods.get(0), 0, 10, 1);
+    }
+
+    @Test
+    public void overlappingAllocationsAreSplitAtTheirBoundaries() {
+        List<LoadPeriod> periods = build(allocation(0, 10), allocation(5, 15));
+        assertThat(periods.size(), equalTo(3));
+        assertPeriod(periods.get(0), 0, 5, 1);
+        assertPeriod(periods.get(1), 5, 10, 2);
+        assertPeriod(periods.get(2), 10, 15, 1);
+    }
+
+    @Test
+    public void anIncludedAllocationSplitsTheOtherOne() {
+        List<LoadPeriod> periods = build(allocation(0, 10), allocation(2, 4));
+        assertThat(periods.size(), equalTo(3));
+        assertPeriod(periods.get(0), 0, 2, 1);
+        assertPeriod(periods.get(1), 2, 4, 2);
+        assertPeriod(periods.get(2), 4, 10, 1);
+    }
+
+    @Test
+    public void noPeriodIsGeneratedBetweenDisjointAllocations() {
+        List<LoadPeriod> periods = build(allocation(5, 7), allocation(0, 2),
+                allocation(2, 3));
+        assertThat(periods.size(), equalTo(3));
+        assertPeriod(periods.get(0), 0, 2, 1);
+        assertPeriod(periods.get(1), 2, 3, 1);
+        assertPeriod(periods.get(2), 5, 7, 1);
+    }
+
+    @Test
+    public void allocationsWithTheSameIntervalAreJoined() {
+        List<LoadPeriod> periods = build(allocation(0, 10), allocation(0, 10),
+                allocation(0, 10));
+        assertThat(periods.size(), equalTo(1));
+        assertPeriod(periods.get(0), 0, 10, 3);
+    }
+
+    @Test
+    public void anEmptyAllocationIsKeptApart() {
+        List<LoadPeriod> periods = build(allocation(0, 10), allocation(4, 4));
+        assertThat(periods.size(), equalTo(2));
+        assertPeriod(periods.get(0), 0, 10, 1);
+        assertPeriod(periods.get(1), 4, 4, 1);
+    }
+
+}
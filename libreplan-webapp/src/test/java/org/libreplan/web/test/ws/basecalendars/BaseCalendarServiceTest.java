@@ -22,13 +22,17 @@
 package org.libreplan.web.test.ws.basecalendars;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
 import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_CONFIG_FILE;
 import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_CONFIG_TEST_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_TEST_FILE;
+import static org.libreplan.web.test.ws.common.Util.getCodes;
+import static org.libreplan.web.test.ws.common.Util.getSortedCodes;
 import static org.libreplan.web.test.ws.common.Util.getUniqueName;
+import static org.libreplan.web.test.ws.common.Util.unmarshalStreamed;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -53,6 +57,7 @@ import org.libreplan.business.calendars.entities.CalendarException;
 import org.libreplan.business.calendars.entities.CalendarExceptionType;
 import org.libreplan.business.calendars.entities.CalendarExceptionTypeColor;
 import org.libreplan.business.calendars.entities.Capacity;
+import org.libreplan.business.calendars.entities.ResourceCalendar;
 import org.libreplan.business.common.IAdHocTransactionService;
 import org.libreplan.business.common.IOnTransaction;
 import org.libreplan.business.common.daos.IConfigurationDAO;
@@ -364,6 +369,28 @@ public class BaseCalendarServiceTest {
                 instanceConstraintViolationsList.size() == 1);
     }
 
+    @Test
+    @Transactional
+    public void testStreamBaseCalendarsWithoutResourceCalendars() {
+        BaseCalendar baseCalendar = BaseCalendar.createBasicCalendar();
+        baseCalendar.setCode(getUniqueName());
+        baseCalendar.setName(getUniqueName());
+        baseCalendarDAO.save(baseCalendar);
+        ResourceCalendar resourceCalendar = baseCalendar
+                .newDerivedResourceCalendar();
+        resourceCalendar.setCode(getUniqueName());
+        baseCalendarDAO.saveWithoutValidating(resourceCalendar);
+
+        List<BaseCalendarDTO> listed = calendarService.getBaseCalendars().baseCalendars;
+        List<BaseCalendarDTO> streamed = unmarshalStreamed(
+                BaseCalendarListDTO.class,
+                calendarService.streamBaseCalendars(null, 0, 0)).baseCalendars;
+
+        assertEquals(getSortedCodes(listed), getSortedCodes(streamed));
+        assertTrue(getCodes(streamed).contains(baseCalendar.getCode()));
+        assertFalse(getCodes(streamed).contains(resourceCalendar.getCode()));
+    }
+
     private BaseCalendarListDTO createBaseCalendarListDTO(
             BaseCalendarDTO... calendarDTOs) {
 
@@ -21,16 +21,31 @@
 
 package org.libreplan.web.test.ws.common;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
+import org.libreplan.ws.common.api.IntegrationEntityDTO;
 import org.libreplan.ws.common.api.InstanceConstraintViolationsDTO;
 import org.libreplan.ws.common.api.InstanceConstraintViolationsListDTO;
 
@@ -65,6 +80,60 @@ public class Util {
         return UUID.randomUUID().toString();
     }
 
+    /**
+     * It writes the XML of a response returned by a <code>/stream/</code>
+     * method and unmarshals it as the list DTO class.
+     */
+    public static <T> T unmarshalStreamed(Class<T> listDTOClass,
+        Response response) {
+
+        assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ((StreamingOutput) response.getEntity()).write(out);
+            Object result = JAXBContext.newInstance(listDTOClass)
+                .createUnmarshaller().unmarshal(
+                    new ByteArrayInputStream(out.toByteArray()));
+            return listDTOClass.cast(result);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (JAXBException e) {
+            throw new RuntimeException(e);
+        }
+
+    }
+
+    public static List<String> getCodes(
+        List<? extends IntegrationEntityDTO> dtos) {
+
+        List<String> result = new ArrayList<String>();
+        for (IntegrationEntityDTO each : dtos) {
+            result.add(each.code);
+        }
+        return result;
+
+    }
+
+    public static List<String> getSortedCodes(
+        List<? extends IntegrationEntityDTO> dtos) {
+
+        List<String> result = getCodes(dtos);
+        Collections.sort(result);
+        return result;
+
+    }
+
+    public static <T extends IntegrationEntityDTO> Map<String, T> byCode(
+        List<? extends T> dtos) {
+
+        Map<String, T> result = new HashMap<String, T>();
+        for (T each : dtos) {
+            result.put(each.code, each);
+        }
+        return result;
+
+    }
+
     public static void assertNoConstraintViolations(
         InstanceConstraintViolationsListDTO
         instanceConstraintViolationsListDTO) {
@@ -21,6 +21,8 @@
 
 package org.libreplan.web.test.ws.materials;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
@@ -28,10 +30,15 @@ import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_CONFIG_FILE;
 import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_CONFIG_TEST_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_TEST_FILE;
+import static org.libreplan.web.test.ws.common.Util.byCode;
+import static org.libreplan.web.test.ws.common.Util.getCodes;
+import static org.libreplan.web.test.ws.common.Util.getSortedCodes;
 import static org.libreplan.web.test.ws.common.Util.getUniqueName;
+import static org.libreplan.web.test.ws.common.Util.unmarshalStreamed;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.annotation.Resource;
@@ -325,6 +332,31 @@ public class MaterialServiceTest {
 
     }
 
+    @Test
+    @Transactional
+    public void testStreamOnlyRootMaterialCategories() {
+        MaterialCategory root = MaterialCategory.createUnvalidated(
+                getUniqueName(), getUniqueName());
+        MaterialCategory subcategory = MaterialCategory.createUnvalidated(
+                getUniqueName(), getUniqueName());
+        root.addSubcategory(subcategory);
+        materialCategoryDAO.save(root);
+
+        List<MaterialCategoryDTO> listed = materialService.getMaterials().materialCategoryDTOs;
+        List<MaterialCategoryDTO> streamed = unmarshalStreamed(
+                MaterialCategoryListDTO.class,
+                materialService.streamMaterials(null, 0, 0)).materialCategoryDTOs;
+
+        assertEquals(getSortedCodes(listed), getSortedCodes(streamed));
+        assertTrue(getCodes(streamed).contains(root.getCode()));
+        assertFalse(getCodes(streamed).contains(subcategory.getCode()));
+
+        MaterialCategoryDTO streamedRoot = byCode(streamed).get(
+                root.getCode());
+        assertEquals(Arrays.asList(subcategory.getCode()),
+                getCodes(streamedRoot.subcategories.materialCategoryDTOs));
+    }
+
     private MaterialCategoryListDTO createMaterialCategoryListDTO(
             MaterialCategoryDTO... materialCategoryDTOs) {
 
@@ -33,13 +33,18 @@ import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_CONFIG_FILE;
 import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_CONFIG_TEST_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_TEST_FILE;
+import static org.libreplan.web.test.ws.common.Util.byCode;
+import static org.libreplan.web.test.ws.common.Util.getCodes;
+import static org.libreplan.web.test.ws.common.Util.getSortedCodes;
 import static org.libreplan.web.test.ws.common.Util.mustEnd;
+import static org.libreplan.web.test.ws.common.Util.unmarshalStreamed;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.UUID;
@@ -1836,6 +1841,46 @@ public class OrderElementServiceTest {
                 .getCriterionRequirements().iterator().next()).isValid());
     }
 
+    @Test
+    @Transactional
+    public void streamedOrdersAreTheListedOnes() {
+        OrderDTO orderDTO = new OrderDTO();
+        orderDTO.name = "Order name " + UUID.randomUUID().toString();
+        orderDTO.code = "order-code " + UUID.randomUUID().toString();
+        orderDTO.initDate = DateConverter.toXMLGregorianCalendar(new Date());
+
+        OrderLineDTO orderLineDTO = new OrderLineDTO();
+        orderLineDTO.name = "Order line " + UUID.randomUUID().toString();
+        orderLineDTO.code = "order-line-code " + UUID.randomUUID().toString();
+        HoursGroupDTO hoursGroupDTO = new HoursGroupDTO("hours-group",
+                ResourceEnumDTO.WORKER, 1000,
+                new HashSet<CriterionRequirementDTO>());
+        orderLineDTO.hoursGroups.add(hoursGroupDTO);
+        orderDTO.children.add(orderLineDTO);
+
+        List<InstanceConstraintViolationsDTO> instanceConstraintViolationsList = orderElementService
+                .addOrders(createOrderListDTO(orderDTO)).instanceConstraintViolationsList;
+        assertThat(instanceConstraintViolationsList.size(), equalTo(0));
+
+        List<OrderDTO> listed = orderElementService.getOrders().orderDTOs;
+        List<OrderDTO> streamed = unmarshalStreamed(OrderListDTO.class,
+                orderElementService.streamOrders(null, 0, 0)).orderDTOs;
+
+        assertThat(getSortedCodes(streamed), equalTo(getSortedCodes(listed)));
+        Map<String, OrderDTO> streamedByCode = byCode(streamed);
+        for (OrderDTO each : listed) {
+            OrderDTO other = streamedByCode.get(each.code);
+            assertThat(other.name, equalTo(each.name));
+            assertThat(getCodes(other.children),
+                    equalTo(getCodes(each.children)));
+        }
+
+        OrderDTO streamedOrder = streamedByCode.get(orderDTO.code);
+        assertNotNull(streamedOrder);
+        assertThat(getCodes(streamedOrder.children),
+                equalTo(getCodes(orderDTO.children)));
+    }
+
     private OrderListDTO createOrderListDTO(OrderDTO... orderDTOs) {
 
         List<OrderDTO> orderList = new ArrayList<OrderDTO>();
@@ -34,13 +34,17 @@ import static org.libreplan.web.test.ws.common.Util.assertNoConstraintViolations
 import static org.libreplan.web.test.ws.common.Util.assertOneConstraintViolation;
 import static org.libreplan.web.test.ws.common.Util.assertOneConstraintViolationPerInstance;
 import static org.libreplan.web.test.ws.common.Util.assertOneRecoverableError;
+import static org.libreplan.web.test.ws.common.Util.getCodes;
+import static org.libreplan.web.test.ws.common.Util.getSortedCodes;
 import static org.libreplan.web.test.ws.common.Util.getUniqueName;
+import static org.libreplan.web.test.ws.common.Util.unmarshalStreamed;
 
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeConstants;
@@ -71,7 +75,9 @@ import org.libreplan.business.resources.entities.CriterionType;
 import org.libreplan.business.resources.entities.Machine;
 import org.libreplan.business.resources.entities.Resource;
 import org.libreplan.business.resources.entities.ResourceEnum;
+import org.libreplan.business.resources.entities.VirtualWorker;
 import org.libreplan.business.resources.entities.Worker;
+import org.libreplan.web.test.ws.common.Util;
 import org.libreplan.ws.common.api.InstanceConstraintViolationsDTO;
 import org.libreplan.ws.resources.api.CriterionSatisfactionDTO;
 import org.libreplan.ws.resources.api.IResourceService;
@@ -880,6 +886,51 @@ constraintViolations
 
     }
 
+    @Test
+    @Transactional
+    public void testStreamResourcesAsTheListWithoutVirtualWorkers() {
+
+        /* Create a machine, a worker and a virtual worker. */
+        MachineDTO machineDTO = new MachineDTO(getUniqueName(), "desc");
+        WorkerDTO workerDTO = new WorkerDTO(getUniqueName(), "surname",
+            getUniqueName());
+        assertNoConstraintViolations(resourceService.addResources(
+            createResourceListDTO(machineDTO, workerDTO)));
+
+        VirtualWorker virtualWorker = VirtualWorker.create(getUniqueName());
+        virtualWorker.setFirstName(getUniqueName());
+        resourceDAO.saveWithoutValidating(virtualWorker);
+
+        /* Test. */
+        List<? extends ResourceDTO> listed = resourceService.getResources().
+            resources;
+        List<? extends ResourceDTO> streamed = unmarshalStreamed(
+            ResourceListDTO.class, resourceService.streamResources(null, 0, 0)).
+                resources;
+
+        assertEquals(getSortedCodes(listed), getSortedCodes(streamed));
+        assertFalse(getCodes(streamed).contains(virtualWorker.getCode()));
+
+        Map<String, ResourceDTO> streamedByCode =
+            Util.<ResourceDTO> byCode(streamed);
+        for (ResourceDTO each : listed) {
+            ResourceDTO other = streamedByCode.get(each.code);
+            assertEquals(each.getClass(), other.getClass());
+        }
+
+        WorkerDTO streamedWorker = (WorkerDTO) streamedByCode.get(
+            workerDTO.code);
+        assertEquals(workerDTO.firstName, streamedWorker.firstName);
+        assertEquals(workerDTO.surname, streamedWorker.surname);
+        assertEquals(workerDTO.nif, streamedWorker.nif);
+
+        MachineDTO streamedMachine = (MachineDTO) streamedByCode.get(
+            machineDTO.code);
+        assertEquals(machineDTO.name, streamedMachine.name);
+        assertEquals(machineDTO.description, streamedMachine.description);
+
+    }
+
     private void saveResource(final Resource resource) {
 
         IOnTransaction<Void> save = new IOnTransaction<Void>() {
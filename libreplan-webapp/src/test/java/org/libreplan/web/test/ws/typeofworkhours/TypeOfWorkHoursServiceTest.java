@@ -21,6 +21,7 @@
 
 package org.libreplan.web.test.ws.typeofworkhours;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.libreplan.business.BusinessGlobalNames.BUSINESS_SPRING_CONFIG_FILE;
@@ -28,10 +29,18 @@ import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_CONFIG_FILE;
 import static org.libreplan.web.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_CONFIG_TEST_FILE;
 import static org.libreplan.web.test.WebappGlobalNames.WEBAPP_SPRING_SECURITY_CONFIG_TEST_FILE;
+import static org.libreplan.web.test.ws.common.Util.byCode;
+import static org.libreplan.web.test.ws.common.Util.getCodes;
+import static org.libreplan.web.test.ws.common.Util.getSortedCodes;
+import static org.libreplan.web.test.ws.common.Util.getUniqueName;
+import static org.libreplan.web.test.ws.common.Util.unmarshalStreamed;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.Response.Status;
 
 import org.hibernate.SessionFactory;
 import org.junit.Before;
@@ -227,6 +236,62 @@ public class TypeOfWorkHoursServiceTest {
                 new BigDecimal(100)) == 0);
     }
 
+    @Test
+    @Transactional
+    public void testStreamTypeOfWorkHoursAsTheList() {
+        TypeOfWorkHoursDTO dto = new TypeOfWorkHoursDTO(getUniqueName(),
+                getUniqueName(), true, new BigDecimal(7));
+        typeOfWorkHoursService
+                .addTypeOfWorkHours(createTypeOfWorkHoursListDTO(dto));
+
+        List<TypeOfWorkHoursDTO> listed = typeOfWorkHoursService
+                .getTypeOfWorkHours().typeOfWorkHoursDTOs;
+        List<TypeOfWorkHoursDTO> streamed = streamTypeOfWorkHours(null, 0, 0);
+
+        assertEquals(getSortedCodes(listed), getSortedCodes(streamed));
+        assertTrue(getCodes(streamed).contains(dto.code));
+        Map<String, TypeOfWorkHoursDTO> streamedByCode = byCode(streamed);
+        for (TypeOfWorkHoursDTO each : listed) {
+            TypeOfWorkHoursDTO other = streamedByCode.get(each.code);
+            assertEquals(each.name, other.name);
+            assertEquals(each.enabled, other.enabled);
+            assertTrue(each.defaultPrice.compareTo(other.defaultPrice) == 0);
+        }
+    }
+
+    @Test
+    @Transactional
+    public void testStreamTypeOfWorkHoursPaged() {
+        typeOfWorkHoursService.addTypeOfWorkHours(createTypeOfWorkHoursListDTO(
+                new TypeOfWorkHoursDTO(getUniqueName(), getUniqueName(), true,
+                        new BigDecimal(5)),
+                new TypeOfWorkHoursDTO(getUniqueName(), getUniqueName(), true,
+                        new BigDecimal(5))));
+
+        List<String> all = getCodes(streamTypeOfWorkHours(null, 0, 0));
+        assertTrue(all.size() >= 2);
+
+        List<String> first = getCodes(streamTypeOfWorkHours(null, 0, 1));
+        assertEquals(all.subList(0, 1), first);
+
+        List<String> skipped = getCodes(streamTypeOfWorkHours(null, 1, 0));
+        assertEquals(all.subList(1, all.size()), skipped);
+
+        List<String> after = getCodes(streamTypeOfWorkHours(all.get(0), 0, 0));
+        assertEquals(all.subList(1, all.size()), after);
+
+        assertEquals(Status.BAD_REQUEST.getStatusCode(),
+                typeOfWorkHoursService.streamTypeOfWorkHours(null, -1, 0)
+                        .getStatus());
+    }
+
+    private List<TypeOfWorkHoursDTO> streamTypeOfWorkHours(String afterCode,
+            int offset, int limit) {
+        return unmarshalStreamed(TypeOfWorkHoursListDTO.class,
+                typeOfWorkHoursService.streamTypeOfWorkHours(afterCode,
+                        offset, limit)).typeOfWorkHoursDTOs;
+    }
+
     private TypeOfWorkHoursListDTO createTypeOfWorkHoursListDTO(
             TypeOfWorkHoursDTO... typeOfWorkHours) {
 
@@ -77,6 +77,7 @@ import org.libreplan.ws.common.api.InstanceConstraintViolationsDTO;
 import org.libreplan.ws.common.api.InstanceConstraintViolationsListDTO;
 import org.libreplan.ws.common.api.LabelReferenceDTO;
 import org.libreplan.ws.common.impl.DateConverter;
+import org.libreplan.ws.common.impl.GenericRESTService;
 import org.libreplan.ws.workreports.api.DescriptionValueDTO;
 import org.libreplan.ws.workreports.api.IWorkReportService;
 import org.libreplan.ws.workreports.api.WorkReportDTO;
@@ -558,6 +559,53 @@ public class WorkReportServiceTest {
         assertThat(workReports.size(), equalTo(previous));
     }
 
+    @Test
+    @Transactional
+    public void importValidAndInvalidWorkReportsTogether() {
+        int previous = workReportDAO.getAll().size();
+
+        WorkReportListDTO workReportListDTO = new WorkReportListDTO(Arrays
+                .asList(createWorkReportDTO(workReportTypeCode),
+                        createWorkReportDTO(workReportTypeCode2)));
+
+        InstanceConstraintViolationsListDTO instanceConstraintViolationsListDTO = workReportService
+                .addWorkReports(workReportListDTO);
+        assertThat(
+                instanceConstraintViolationsListDTO.instanceConstraintViolationsList
+                        .size(), equalTo(1));
+        assertThat(
+                instanceConstraintViolationsListDTO.instanceConstraintViolationsList
+                        .get(0).numItem, equalTo(2L));
+        List<WorkReport> workReports = workReportDAO.getAll();
+        assertThat(workReports.size(), equalTo(previous + 1));
+    }
+
+    @Test
+    @Transactional
+    public void importSeveralChunksWithAnInvalidWorkReportInTheMiddle() {
+        int previous = workReportDAO.getAll().size();
+
+        int size = 2 * GenericRESTService.DEFAULT_CHUNK_SIZE + 10;
+        int invalidPosition = GenericRESTService.DEFAULT_CHUNK_SIZE + 50;
+        List<WorkReportDTO> workReportDTOs = new ArrayList<WorkReportDTO>();
+        for (int i = 0; i < size; i++) {
+            // the work reports of the second type need a date
+            workReportDTOs.add(createWorkReportDTO(i == invalidPosition
+                    ? workReportTypeCode2 : workReportTypeCode));
+        }
+
+        InstanceConstraintViolationsListDTO instanceConstraintViolationsListDTO = workReportService
+                .addWorkReports(new WorkReportListDTO(workReportDTOs));
+        assertThat(
+                instanceConstraintViolationsListDTO.instanceConstraintViolationsList
+                        .size(), equalTo(1));
+        assertThat(
+                instanceConstraintViolationsListDTO.instanceConstraintViolationsList
+                        .get(0).numItem, equalTo(invalidPosition + 1L));
+        List<WorkReport> workReports = workReportDAO.getAll();
+        assertThat(workReports.size(), equalTo(previous + size - 1));
+    }
+
     @Test
     @Transactional
     public void importValidWorkReportWithDateAtWorkReportLevel() {